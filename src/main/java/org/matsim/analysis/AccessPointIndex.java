@@ -0,0 +1,306 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Spatial index of the green space access points used by the {@link AgentBasedGreenSpaceAnalysis}. The points are stored in a static, packed
+ * KD-tree (an implicit tree on a permutation of the point array). Queries return the same access point as a linear search in feature order,
+ * i.e. among points with equal distance the one read first wins. All queries are read only and can be run from multiple threads.
+ * <p>
+ * Besides the beeline distance the index can also provide distances on the pedestrian network, see {@link #withNetwork(Network)}.
+ */
+final class AccessPointIndex {
+
+	private static final Logger log = LogManager.getLogger(AccessPointIndex.class);
+
+	private final String[] osmIds;
+	private final double[] xs;
+	private final double[] ys;
+
+	/**
+	 * permutation of the point indices forming the tree, the node of a range [from, to) is located at its middle
+	 */
+	private final int[] tree;
+
+	private AccessPointIndex(String[] osmIds, double[] xs, double[] ys) {
+		this.osmIds = osmIds;
+		this.xs = xs;
+		this.ys = ys;
+		this.tree = new int[osmIds.length];
+		for (int i = 0; i < tree.length; i++) {
+			tree[i] = i;
+		}
+		build(0, tree.length, 0);
+	}
+
+	/**
+	 * method creates the index from all point features, other geometries are ignored like in the former linear search
+	 */
+	static AccessPointIndex create(Collection<SimpleFeature> features) {
+		List<String> osmIds = new ArrayList<>();
+		List<Coord> coords = new ArrayList<>();
+
+		for (SimpleFeature feature : features) {
+			Geometry geometry = (Geometry) feature.getDefaultGeometry();
+			if (geometry instanceof Point point) {
+				osmIds.add((String) feature.getAttribute("osm_id"));
+				coords.add(new Coord(point.getX(), point.getY()));
+			}
+		}
+
+		double[] xs = new double[coords.size()];
+		double[] ys = new double[coords.size()];
+		for (int i = 0; i < coords.size(); i++) {
+			xs[i] = coords.get(i).getX();
+			ys[i] = coords.get(i).getY();
+		}
+
+		return new AccessPointIndex(osmIds.toArray(new String[0]), xs, ys);
+	}
+
+	int size() {
+		return osmIds.length;
+	}
+
+	String getOsmId(int accessPoint) {
+		return osmIds[accessPoint];
+	}
+
+	/**
+	 * beeline distance, calculated exactly like {@link CoordUtils#calcEuclideanDistance(Coord, Coord)}
+	 */
+	double getDistance(int accessPoint, double x, double y) {
+		double xDiff = xs[accessPoint] - x;
+		double yDiff = ys[accessPoint] - y;
+		return Math.sqrt((xDiff * xDiff) + (yDiff * yDiff));
+	}
+
+	/**
+	 * nearest access point by beeline or -1 if there are none
+	 */
+	int getNearest(double x, double y) {
+		int[] nearest = getNearest(x, y, 1);
+		return nearest.length == 0 ? -1 : nearest[0];
+	}
+
+	/**
+	 * k nearest access points by beeline, ordered by distance and feature order
+	 */
+	int[] getNearest(double x, double y, int k) {
+		k = Math.min(k, size());
+		int[] found = new int[k];
+		double[] distances = new double[k];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		Arrays.fill(found, -1);
+
+		search(0, tree.length, 0, x, y, found, distances);
+
+		int n = 0;
+		while (n < k && found[n] >= 0) {
+			n++;
+		}
+		return n == k ? found : Arrays.copyOf(found, n);
+	}
+
+	private void search(int from, int to, int axis, double x, double y, int[] found, double[] distances) {
+		if (from >= to) {
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		int point = tree[mid];
+
+		insert(point, getDistance(point, x, y), found, distances);
+
+		double diff = axis == 0 ? x - xs[point] : y - ys[point];
+		int nextAxis = 1 - axis;
+
+		// the side containing the query point first, the other side only if it can contain a point at most as far as the current k-th point
+		if (diff < 0) {
+			search(from, mid, nextAxis, x, y, found, distances);
+			if (-diff <= distances[distances.length - 1]) {
+				search(mid + 1, to, nextAxis, x, y, found, distances);
+			}
+		} else {
+			search(mid + 1, to, nextAxis, x, y, found, distances);
+			if (diff <= distances[distances.length - 1]) {
+				search(from, mid, nextAxis, x, y, found, distances);
+			}
+		}
+	}
+
+	/**
+	 * inserts a point into the sorted result arrays, ties are ordered by the feature order
+	 */
+	private static void insert(int point, double distance, int[] found, double[] distances) {
+		int k = found.length;
+		if (k == 0 || !isCloser(point, distance, found[k - 1], distances[k - 1])) {
+			return;
+		}
+
+		int pos = k - 1;
+		while (pos > 0 && isCloser(point, distance, found[pos - 1], distances[pos - 1])) {
+			found[pos] = found[pos - 1];
+			distances[pos] = distances[pos - 1];
+			pos--;
+		}
+		found[pos] = point;
+		distances[pos] = distance;
+	}
+
+	private static boolean isCloser(int point, double distance, int other, double otherDistance) {
+		return other < 0 || distance < otherDistance || (distance == otherDistance && point < other);
+	}
+
+	private void build(int from, int to, int axis) {
+		if (to - from <= 1) {
+			return;
+		}
+
+		double[] values = axis == 0 ? xs : ys;
+		IntArrays.quickSort(tree, from, to, (a, b) -> Double.compare(values[a], values[b]));
+
+		int mid = (from + to) >>> 1;
+		build(from, mid, 1 - axis);
+		build(mid + 1, to, 1 - axis);
+	}
+
+	/**
+	 * method calculates the distances on the pedestrian network from every node to the closest access point with one multi source search
+	 */
+	NetworkDistances withNetwork(Network network) {
+		return new NetworkDistances(network);
+	}
+
+	/**
+	 * Shortest path distances on the pedestrian network (links allowing walk, or all links not only used by pt if no link allows walk) from every
+	 * node to the closest access point. Links are used in both directions. Home and access points are connected to their nearest node by beeline.
+	 */
+	final class NetworkDistances {
+
+		private final Network network;
+		private final double[] distancePerNode;
+		private final int[] accessPointPerNode;
+
+		private NetworkDistances(Network fullNetwork) {
+			this.network = createPedestrianNetwork(fullNetwork);
+			int nodeCount = Id.getNumberOfIds(Node.class);
+			this.distancePerNode = new double[nodeCount];
+			this.accessPointPerNode = new int[nodeCount];
+			Arrays.fill(distancePerNode, Double.POSITIVE_INFINITY);
+			Arrays.fill(accessPointPerNode, -1);
+
+			// adjacency per node with both directions
+			List<List<Link>> adjacent = new ArrayList<>(nodeCount);
+			for (int i = 0; i < nodeCount; i++) {
+				adjacent.add(null);
+			}
+			for (Link link : network.getLinks().values()) {
+				addAdjacent(adjacent, link.getFromNode(), link);
+				addAdjacent(adjacent, link.getToNode(), link);
+			}
+
+			// every access point is a source with the beeline distance to its nearest node as initial value
+			PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[2], b[2]));
+			for (int accessPoint = 0; accessPoint < size(); accessPoint++) {
+				Node node = NetworkUtils.getNearestNode(network, new Coord(xs[accessPoint], ys[accessPoint]));
+				double distance = getDistance(accessPoint, node.getCoord().getX(), node.getCoord().getY());
+				queue.add(new double[]{distance, node.getId().index(), accessPoint});
+			}
+
+			Node[] nodes = new Node[nodeCount];
+			for (Node node : network.getNodes().values()) {
+				nodes[node.getId().index()] = node;
+			}
+
+			while (!queue.isEmpty()) {
+				double[] entry = queue.poll();
+				int node = (int) entry[1];
+				if (accessPointPerNode[node] >= 0) {
+					continue;
+				}
+				distancePerNode[node] = entry[0];
+				accessPointPerNode[node] = (int) entry[2];
+
+				List<Link> links = adjacent.get(node);
+				if (links == null) {
+					continue;
+				}
+				for (Link link : links) {
+					Node other = link.getFromNode() == nodes[node] ? link.getToNode() : link.getFromNode();
+					if (accessPointPerNode[other.getId().index()] < 0) {
+						queue.add(new double[]{entry[0] + link.getLength(), other.getId().index(), entry[2]});
+					}
+				}
+			}
+
+			log.info("Network distances to {} access points calculated for {} nodes", size(), network.getNodes().size());
+		}
+
+		private static Network createPedestrianNetwork(Network fullNetwork) {
+			Set<String> modes = new HashSet<>();
+			for (Link link : fullNetwork.getLinks().values()) {
+				modes.addAll(link.getAllowedModes());
+			}
+
+			if (modes.contains(TransportMode.walk)) {
+				modes = Set.of(TransportMode.walk);
+			} else {
+				modes.remove(TransportMode.pt);
+			}
+
+			Network pedestrianNetwork = NetworkUtils.createNetwork();
+			new TransportModeNetworkFilter(fullNetwork).filter(pedestrianNetwork, modes);
+			return pedestrianNetwork;
+		}
+
+		private void addAdjacent(List<List<Link>> adjacent, Node node, Link link) {
+			int index = node.getId().index();
+			if (adjacent.get(index) == null) {
+				adjacent.set(index, new ArrayList<>(4));
+			}
+			adjacent.get(index).add(link);
+		}
+
+		/**
+		 * closest access point on the network or -1 if none can be reached
+		 */
+		int getNearest(double x, double y) {
+			return accessPointPerNode[getNearestNode(x, y).getId().index()];
+		}
+
+		/**
+		 * network distance including the beeline from the coordinate to the nearest node
+		 */
+		double getDistance(double x, double y) {
+			Node node = getNearestNode(x, y);
+			return distancePerNode[node.getId().index()] + CoordUtils.calcEuclideanDistance(new Coord(x, y), node.getCoord());
+		}
+
+		private Node getNearestNode(double x, double y) {
+			return NetworkUtils.getNearestNode(network, new Coord(x, y));
+		}
+	}
+}
@@ -1,15 +1,11 @@
 package org.matsim.analysis;
 
 import com.opencsv.CSVWriter;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.*;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.application.ApplicationUtils;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.Dependency;
@@ -18,8 +14,6 @@ import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.gis.GeoFileReader;
 import org.matsim.core.utils.gis.GeoFileWriter;
 import org.matsim.core.utils.gis.PointFeatureFactory;
@@ -31,8 +25,7 @@ import picocli.CommandLine;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
+import java.util.stream.IntStream;
 
 import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 
@@ -47,8 +40,8 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 	requireRunDirectory = true,
 	group="liveability",
 	dependsOn = {
-		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "agentLiveabilityInfo.csv"),
-		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overallRankingTile.csv")
+		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overall_stats_agentLiveabilityInfo.csv"),
+		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overall_tiles_indexDimensionValues.csv")
 	},
 	produces = {
 		"greenSpace_stats_perAgent.csv",
@@ -56,9 +49,9 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 		"greenSpace_TilesOverall.csv",
 		"greenSpace_TilesDistance.csv",
 		"greenSpace_TilesUtilization.csv",
-		"XYTAgentBasedGreenSpaceMap.xyt.csv",
-		"XYTGreenSpaceDistanceMap.xyt.csv",
-		"XYTGreenSpaceUtilizationMap.xyt.csv",
+		"XYTAgentBasedGreenSpaceMap.xyt.csv.gz",
+		"XYTGreenSpaceDistanceMap.xyt.csv.gz",
+		"XYTGreenSpaceUtilizationMap.xyt.csv.gz",
 		"greenSpace_perAgentGeofile.gpkg",
 		"greenSpace_statsGeofile.gpkg"
 	}
@@ -80,6 +73,9 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 	@CommandLine.Mixin
 	private final OutputOptions output = OutputOptions.ofCommand(AgentBasedGreenSpaceAnalysis.class);
 
+	@CommandLine.Option(names = "--green-space-distance", description = "Distance to the nearest access point: ${COMPLETION-CANDIDATES}", defaultValue = "beeline")
+	private DistanceMode distanceMode;
+
 	//overwritten with config value at beginning of call method
 	double sampleSize = 0.1;
 
@@ -94,11 +90,12 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 	private final Path inputAccessPointShpPath = ApplicationUtils.matchInput("accessPoints.shp", getValidInputDirectory());
 	private final Path inputGreenSpaceShpPath = ApplicationUtils.matchInput("allGreenSpaces_min1ha.shp", getValidInputDirectory());
 	private final Path inputAgentLiveabilityInfoPath = ApplicationUtils.matchInput("agentLiveabilityInfo.csv", getValidLiveabilityOutputDirectory());
+	private final Path inputNetworkPath = ApplicationUtils.matchInput("network.xml.gz", getValidOutputDirectory());
 
 	// output paths
-	private final Path xytAgentBasedGreenSpaceMapPath = getValidLiveabilityOutputDirectory().resolve("XYTAgentBasedGreenSpaceMap.xyt.csv");
-	private final Path xytGreenSpaceDistanceMapPath = getValidLiveabilityOutputDirectory().resolve("XYTGreenSpaceDistanceMap.xyt.csv");
-	private final Path xytGreenSpaceUtilizationMapPath = getValidLiveabilityOutputDirectory().resolve("XYTGreenSpaceUtilizationMap.xyt.csv");
+	private final Path xytAgentBasedGreenSpaceMapPath = getValidLiveabilityOutputDirectory().resolve("XYTAgentBasedGreenSpaceMap.xyt.csv.gz");
+	private final Path xytGreenSpaceDistanceMapPath = getValidLiveabilityOutputDirectory().resolve("XYTGreenSpaceDistanceMap.xyt.csv.gz");
+	private final Path xytGreenSpaceUtilizationMapPath = getValidLiveabilityOutputDirectory().resolve("XYTGreenSpaceUtilizationMap.xyt.csv.gz");
 	private final Path outputRankingValueCSVPath = getValidLiveabilityOutputDirectory().resolve("greenSpace_TilesOverall.csv");
 	private final Path outputUtilizationTilesCSVPath = getValidLiveabilityOutputDirectory().resolve("greenSpace_TilesUtilization.csv");
 	private final Path outputDistanceTilesCSVPath = getValidLiveabilityOutputDirectory().resolve("greenSpace_TilesDistance.csv");
@@ -120,7 +117,7 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 	public Integer call() throws Exception {
 
 		//loads sample size from config
-		Config config = ConfigUtils.loadConfig(ApplicationUtils.matchInput("config.xml", input.getRunDirectory()).toAbsolutePath().toString());
+		Config config = getRunOutputContext().getConfig();
 		SimWrapperConfigGroup simwrapper = ConfigUtils.addOrGetModule(config, SimWrapperConfigGroup.class);
 		// todo: sampleSize is currently not imported correctly (this line returns 1 while the config says 0.1 which results in errors in the results). For now the sample size is hard coded at the top.
 		//this.sampleSize = simwrapper.sampleSize;
@@ -129,22 +126,26 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 		AgentLiveabilityInfoCollection agentLiveabilityInfoCollection = new AgentLiveabilityInfoCollection();
 		Collection<SimpleFeature> accessPointFeatures = GeoFileReader.getAllFeatures(IOUtils.resolveFileOrResource(String.valueOf(inputAccessPointShpPath)));
 
-		// defining all maps to be able to put and get values of those throughout the analysis
-		Map<String, List<String>> homeCoordinatesPerAgent = new HashMap<>();
-		Map<String, List<String>> homeCoordinatesPerAgentInStudyArea = new HashMap<>();
+		// all study area agents with their home coordinates, the per agent values are stored over the dense agent index
+		AgentIndex agents = AgentIndex.read(inputAgentLiveabilityInfoPath, getRunOutputContext().getOutputTables());
+		double[] homeXPerAgent = new double[agents.size()];
+		double[] homeYPerAgent = new double[agents.size()];
+		String[] greenSpaceIdPerAgent = new String[agents.size()];
+		AgentLiveabilityTable.DoubleColumn distancePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn utilizationPerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn limitDistanceToGreenSpace = agents.createMetric(limitEuclideanDistanceToGreenSpace);
+		// for better understanding the return value of the limit is used for the dashboard display
+		AgentLiveabilityTable.DoubleColumn limitUtilizationOfGreenSpace = agents.createMetric(1/limitGreenSpaceUtilization);
+		AgentLiveabilityTable.DoubleColumn greenSpaceUtilizationDeviationValuePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn distanceToGreenSpaceDeviationValuePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn greenSpaceOverallRankingValuePerAgent = agents.createMetric();
+
+		// defining all maps to be able to put and get values per green space throughout the analysis
 		Map<String, List<Double>> greenSpaceUtilization = new HashMap<>();
-		Map<String, Double> distancePerAgent = new HashMap<>();
-		Map<String, String> greenSpaceIdPerAgent = new HashMap<>();
 		Map<String, Double> utilizationPerGreenSpace = new HashMap<>();
-		Map<String, Double> utilizationPerAgent = new HashMap<>();
 		Map<String, Double> areaPerGreenSpace = new HashMap<>();
 		Map<String, Integer> nrOfPeoplePerGreenSpace = new HashMap<>();
 		Map<String, Double> greenSpaceUtilizationDeviationValuePerGreenSpace = new HashMap<>();
-		Map<String, Double> limitDistanceToGreenSpace = new HashMap<>();
-		Map<String, Double> limitUtilizationOfGreenSpace = new HashMap<>();
-		Map<String, Double> greenSpaceUtilizationDeviationValuePerAgent = new HashMap<>();
-		Map<String, Double> distanceToGreenSpaceDeviationValuePerAgent = new HashMap<>();
-		Map<String, Double> greenSpaceOverallRankingValuePerAgent = new HashMap<>();
 
 		// initializing counters for index value calculations
 		double counterOverall = 0;
@@ -176,24 +177,11 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 		String formattedMedianUtilization;
 
 
-		//prepping a map for all study area agents to be used for writing files and calculating index values
-		try (Reader studyAreaAgentReader = new FileReader(inputAgentLiveabilityInfoPath.toFile());
-			 CSVParser studyAreaAgentParser = new CSVParser(studyAreaAgentReader, CSVFormat.DEFAULT.withFirstRecordAsHeader())){
-
-			for (CSVRecord csvAgentRecord : studyAreaAgentParser) {
-				String id = csvAgentRecord.get("person");
-				String homeX = csvAgentRecord.get("home_x");
-				String homeY = csvAgentRecord.get("home_y");
-				homeCoordinatesPerAgentInStudyArea.put(id, Arrays.asList(homeX, homeY));
-			}
-		}
+		// persons are read once and shared with the other dimensions
+		OutputTables.Persons persons = getRunOutputContext().getOutputTables().persons(inputPersonsCSVPath);
 
 		// collecting data and calculating values for all simulated agents of the scenario
-		try (InputStream fileStream = new FileInputStream(inputPersonsCSVPath.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader personsReader = new InputStreamReader(gzipStream);
-			 CSVParser personsParser = new CSVParser(personsReader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'));
-			 CSVWriter agentCSVWriter = new CSVWriter(new FileWriter(String.valueOf(outputPersonsCSVPath)),
+		try (CSVWriter agentCSVWriter = new CSVWriter(new FileWriter(String.valueOf(outputPersonsCSVPath)),
 				 CSVWriter.DEFAULT_SEPARATOR,
 				 CSVWriter.NO_QUOTE_CHARACTER,
 				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
@@ -230,52 +218,62 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 				}
 			}
 
-			for (CSVRecord csvPersonRecord : personsParser) {
-				String id = csvPersonRecord.get("person");
-				String homeX = csvPersonRecord.get("home_x");
-				String homeY = csvPersonRecord.get("home_y");
+			// excluding all agents without valid home coordinates (keeping all other agents for calculations to reduce edge effects)
+			List<Integer> personRowsWithHome = new ArrayList<>();
+			for (int row = 0; row < persons.size(); row++) {
+				if (persons.hasHome(row)) {
+					personRowsWithHome.add(row);
+				}
+			}
 
-				// excluding all agents without valid home coordinates (keeping all other agents for calculations to reduce edge effects)
-				if (homeX != null && !homeX.isEmpty() && homeY != null && !homeY.isEmpty()) {
-					homeCoordinatesPerAgent.put(id, Arrays.asList(homeX, homeY));
-					identifyClosestGreenSpacePerAgent(id, homeX, homeY, accessPointFeatures, greenSpaceIdPerAgent, distancePerAgent, nrOfPeoplePerGreenSpace, greenSpaceUtilization);
+			// the nearest access point is looked up in parallel, the results are then aggregated in the order of the persons file
+			int[] closestAccessPoints = new int[personRowsWithHome.size()];
+			double[] closestDistances = new double[personRowsWithHome.size()];
+			String[] closestAccessPointIds = findClosestAccessPoints(accessPointFeatures, persons, personRowsWithHome, closestAccessPoints, closestDistances);
+
+			for (int i = 0; i < personRowsWithHome.size(); i++) {
+				int row = personRowsWithHome.get(i);
+				// all agents are counted on their green space, the values per agent are only kept for the agents of the study area
+				int agent = agents.indexOf(persons.getPerson(row));
+				if (agent >= 0) {
+					homeXPerAgent[agent] = persons.getHomeX(row);
+					homeYPerAgent[agent] = persons.getHomeY(row);
+				}
+				if (closestAccessPoints[i] >= 0) {
+					assignClosestGreenSpaceToAgent(closestAccessPointIds[i], closestDistances[i], nrOfPeoplePerGreenSpace, greenSpaceUtilization);
+					if (agent >= 0) {
+						greenSpaceIdPerAgent[agent] = closestAccessPointIds[i];
+						distancePerAgent.set(agent, closestDistances[i]);
+					}
 				}
 			}
 
 			// calculate utilization per Green Space
 			calculateGreenSpaceUtilization(areaPerGreenSpace, nrOfPeoplePerGreenSpace, utilizationPerGreenSpace, greenSpaceUtilizationDeviationValuePerGreenSpace);
 
-			for (Map.Entry<String, String> entry : greenSpaceIdPerAgent.entrySet()) {
-				String agentID = entry.getKey();
-				String nearestGreenSpaceId = greenSpaceIdPerAgent.get(agentID);
-				utilizationPerAgent.put(agentID, utilizationPerGreenSpace.get(nearestGreenSpaceId));
-				greenSpaceUtilizationDeviationValuePerAgent.put(agentID, greenSpaceUtilizationDeviationValuePerGreenSpace.get(nearestGreenSpaceId));
-			}
-
 			// calculating deviation per Agent for distance and utilization
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentId = entry.getKey();
+			for (int agent = 0; agent < agents.size(); agent++) {
+				String nearestGreenSpaceId = greenSpaceIdPerAgent[agent];
+				if (nearestGreenSpaceId == null) {
+					throw new IllegalStateException("No green space found for agent " + agents.getPerson(agent));
+				}
+				utilizationPerAgent.set(agent, utilizationPerGreenSpace.get(nearestGreenSpaceId));
+				greenSpaceUtilizationDeviationValuePerAgent.set(agent, greenSpaceUtilizationDeviationValuePerGreenSpace.get(nearestGreenSpaceId));
 
-				double distanceDeviation = (distancePerAgent.get(agentId) - limitEuclideanDistanceToGreenSpace) / limitEuclideanDistanceToGreenSpace;
-				distanceToGreenSpaceDeviationValuePerAgent.put(agentId, distanceDeviation);
+				double distanceDeviation = (distancePerAgent.get(agent) - limitEuclideanDistanceToGreenSpace) / limitEuclideanDistanceToGreenSpace;
+				distanceToGreenSpaceDeviationValuePerAgent.set(agent, distanceDeviation);
 
-				double utilizationDeviation = greenSpaceUtilizationDeviationValuePerAgent.get(agentId);
+				double utilizationDeviation = greenSpaceUtilizationDeviationValuePerAgent.get(agent);
 
 				double overallGreenSpaceDeviationValue = Math.max(distanceDeviation, utilizationDeviation);
-				greenSpaceOverallRankingValuePerAgent.put(agentId, overallGreenSpaceDeviationValue);
-
-				limitDistanceToGreenSpace.put(agentId, limitEuclideanDistanceToGreenSpace);
-				// for better understanding the return value of the limit is used for the dashboard display
-				limitUtilizationOfGreenSpace.put(agentId, 1/limitGreenSpaceUtilization);
+				greenSpaceOverallRankingValuePerAgent.set(agent, overallGreenSpaceDeviationValue);
 			}
 
 			// calculating percentage of agents with deviation under 0 (index value per indicator) and for further analysis also for deviation -0.5 and +0.5
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentId = entry.getKey();
-
-				double distanceDeviation = distanceToGreenSpaceDeviationValuePerAgent.get(agentId);
-				double utilizationDeviation = greenSpaceUtilizationDeviationValuePerAgent.get(agentId);
-				double overallGreenSpaceRankingValue = greenSpaceOverallRankingValuePerAgent.get(agentId);
+			for (int agent = 0; agent < agents.size(); agent++) {
+				double distanceDeviation = distanceToGreenSpaceDeviationValuePerAgent.get(agent);
+				double utilizationDeviation = greenSpaceUtilizationDeviationValuePerAgent.get(agent);
+				double overallGreenSpaceRankingValue = greenSpaceOverallRankingValuePerAgent.get(agent);
 
 				if (distanceDeviation <= 0) {
 					counterDistance++;
@@ -293,48 +291,49 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 					counter50PercentOverLimit++;
 				}
 
-				sumDistance += distancePerAgent.get(agentId);
-				sumUtilization += utilizationPerAgent.get(agentId);
+				sumDistance += distancePerAgent.get(agent);
+				sumUtilization += utilizationPerAgent.get(agent);
 			}
 
 			// calculating overall index value and indicator index values
-			greenSpaceRankingValue = counterOverall / homeCoordinatesPerAgentInStudyArea.size();
+			greenSpaceRankingValue = counterOverall / agents.size();
 			formattedRankingGreenSpace = String.format(Locale.US, "%.2f%%", greenSpaceRankingValue * 100);
 
-			greenSpace50PercentUnderLimitIndexValue = counter50PercentUnderLimit / homeCoordinatesPerAgentInStudyArea.size();
+			greenSpace50PercentUnderLimitIndexValue = counter50PercentUnderLimit / agents.size();
 			formatted50PercentUnderLimitIndexGreenSpace = String.format(Locale.US, "%.2f%%", greenSpace50PercentUnderLimitIndexValue * 100);
 
-			greenSpace50PercentOVerLimitIndexValue = counter50PercentOverLimit / homeCoordinatesPerAgentInStudyArea.size();
+			greenSpace50PercentOVerLimitIndexValue = counter50PercentOverLimit / agents.size();
 			formatted50PercentOverLimitIndexGreenSpace = String.format(Locale.US, "%.2f%%", greenSpace50PercentOVerLimitIndexValue * 100);
 
-			greenSpaceDistanceRankingValue = counterDistance / homeCoordinatesPerAgentInStudyArea.size();
+			greenSpaceDistanceRankingValue = counterDistance / agents.size();
 			formattedDistanceRankingGreenSpace = String.format(Locale.US, "%.2f%%", greenSpaceDistanceRankingValue * 100);
 
-			greenSpaceUtilizationRankingValue = counterUtilization / homeCoordinatesPerAgentInStudyArea.size();
+			greenSpaceUtilizationRankingValue = counterUtilization / agents.size();
 			formattedRankingUtilizationGreenSpace = String.format(Locale.US, "%.2f%%", greenSpaceUtilizationRankingValue * 100);
 
-			avgDistance = sumDistance / homeCoordinatesPerAgentInStudyArea.size();
+			avgDistance = sumDistance / agents.size();
 			formattedAvgDistance = String.format(Locale.US, "%.2f", avgDistance);
 
 			// the values are turned here to generate the formatted output in the readable format of m²/person instead of person/m²
-			avgUtilization = homeCoordinatesPerAgentInStudyArea.size() / sumUtilization;
+			avgUtilization = agents.size() / sumUtilization;
 			formattedAvgUtilization = String.format(Locale.US, "%.2f", avgUtilization);
 
-			medianDistance = calculateMedian(homeCoordinatesPerAgentInStudyArea, distancePerAgent);
+			medianDistance = calculateMedian(distancePerAgent);
 			// the values are turned here to generate the formatted output in the readable format of m²/person instead of person/m²
-			medianUtilization = calculateMedian(homeCoordinatesPerAgentInStudyArea, utilizationPerAgent);
+			medianUtilization = calculateMedian(utilizationPerAgent);
 
 			formattedMedianDistance = String.format(Locale.US, "%.2f", medianDistance);
 			formattedMedianUtilization = String.format(Locale.US, "%.2f", 1.0/medianUtilization);
 
 			// handing results over to the superior SummaryDashboard files
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(distancePerAgent, "MinGreenSpaceEuclideanDistance");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(limitDistanceToGreenSpace, "limit_EuclideanDistanceToNearestGreenSpace");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(distanceToGreenSpaceDeviationValuePerAgent, "indexValue_DistanceToGreenSpace");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, distancePerAgent, "MinGreenSpaceEuclideanDistance");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, limitDistanceToGreenSpace, "limit_EuclideanDistanceToNearestGreenSpace");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, distanceToGreenSpaceDeviationValuePerAgent, "indexValue_DistanceToGreenSpace");
 
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(utilizationPerAgent, "GreenSpaceUtilization (m²/person)");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(limitUtilizationOfGreenSpace, "limit_SpacePerAgentAtNearestGreenSpace");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(greenSpaceUtilizationDeviationValuePerAgent, "indexValue_GreenSpaceUtilization");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, utilizationPerAgent, "GreenSpaceUtilization (m²/person)");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, limitUtilizationOfGreenSpace, "limit_SpacePerAgentAtNearestGreenSpace");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, greenSpaceUtilizationDeviationValuePerAgent, "indexValue_GreenSpaceUtilization");
+			agentLiveabilityInfoCollection.writeAgentLiveabilityInfoCsv();
 
 			agentLiveabilityInfoCollection.extendSummaryTilesCsvWithAttribute(formattedRankingGreenSpace, "Green Space Index Value");
 
@@ -379,17 +378,16 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 				greenSpaceUtilizationWriter.writeNext(new String[]{id, String.valueOf(count), meanDistance, utilization, String.valueOf(area), areaCategory});
 			}
 
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentId = entry.getKey();
+			for (int agent = 0; agent < agents.size(); agent++) {
 				agentCSVWriter.writeNext(new String[]{
-					agentId,
-					String.valueOf(homeCoordinatesPerAgent.get(agentId).get(0)),
-					String.valueOf(homeCoordinatesPerAgent.get(agentId).get(1)),
-					greenSpaceIdPerAgent.get(agentId),
-					String.valueOf(distancePerAgent.get(agentId)),
-					String.valueOf(utilizationPerGreenSpace.get(greenSpaceIdPerAgent.get(agentId))),
-					String.valueOf(distanceToGreenSpaceDeviationValuePerAgent.get(agentId)),
-					String.valueOf(greenSpaceUtilizationDeviationValuePerAgent.get(agentId))
+					agents.getPerson(agent),
+					String.valueOf(homeXPerAgent[agent]),
+					String.valueOf(homeYPerAgent[agent]),
+					greenSpaceIdPerAgent[agent],
+					String.valueOf(distancePerAgent.get(agent)),
+					String.valueOf(utilizationPerGreenSpace.get(greenSpaceIdPerAgent[agent])),
+					String.valueOf(distanceToGreenSpaceDeviationValuePerAgent.get(agent)),
+					String.valueOf(greenSpaceUtilizationDeviationValuePerAgent.get(agent))
 				});
 			}
 		} catch (IOException e) {
@@ -400,21 +398,9 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 		try (CSVWriter GSTileWriter = new CSVWriter(new FileWriter(outputRankingValueCSVPath.toFile()));
 			 CSVWriter DistanceTileWriter = new CSVWriter(new FileWriter(outputDistanceTilesCSVPath.toFile()));
 			 CSVWriter UtilizationTileWriter = new CSVWriter(new FileWriter(outputUtilizationTilesCSVPath.toFile()));
-			 CSVWriter GSxytAgentMapWriter = new CSVWriter(new FileWriter(String.valueOf(xytAgentBasedGreenSpaceMapPath)),
-				 CSVWriter.DEFAULT_SEPARATOR,
-				 CSVWriter.NO_QUOTE_CHARACTER,
-				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-				 CSVWriter.DEFAULT_LINE_END);
-			 CSVWriter GSxytAgentDistanceMapWriter = new CSVWriter(new FileWriter(String.valueOf(xytGreenSpaceDistanceMapPath)),
-				 CSVWriter.DEFAULT_SEPARATOR,
-				 CSVWriter.NO_QUOTE_CHARACTER,
-				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-				 CSVWriter.DEFAULT_LINE_END);
-			 CSVWriter GSxytAgentUtilizationMapWriter = new CSVWriter(new FileWriter(String.valueOf(xytGreenSpaceUtilizationMapPath)),
-				 CSVWriter.DEFAULT_SEPARATOR,
-				 CSVWriter.NO_QUOTE_CHARACTER,
-				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-				 CSVWriter.DEFAULT_LINE_END)) {
+			 XYTMapWriter GSxytAgentMapWriter = new XYTMapWriter(xytAgentBasedGreenSpaceMapPath);
+			 XYTMapWriter GSxytAgentDistanceMapWriter = new XYTMapWriter(xytGreenSpaceDistanceMapPath);
+			 XYTMapWriter GSxytAgentUtilizationMapWriter = new XYTMapWriter(xytGreenSpaceUtilizationMapPath)) {
 
 			GSTileWriter.writeNext(new String[]{"Green Space 50% under Limit", formatted50PercentUnderLimitIndexGreenSpace});
 			GSTileWriter.writeNext(new String[]{"Green Space Within Limit", formattedRankingGreenSpace});
@@ -428,29 +414,12 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 			DistanceTileWriter.writeNext(new String[]{"Mean Distance (m)", formattedAvgDistance});
 			DistanceTileWriter.writeNext(new String[]{"Median Distance (m)", formattedMedianDistance});
 
-			GSxytAgentMapWriter.writeNext(new String[]{"# EPSG:25832"});
-			GSxytAgentMapWriter.writeNext(new String[]{"time", "x", "y", "value"});
-
-			GSxytAgentDistanceMapWriter.writeNext(new String[]{"# EPSG:25832"});
-			GSxytAgentDistanceMapWriter.writeNext(new String[]{"time", "x", "y", "value"});
-
-			GSxytAgentUtilizationMapWriter.writeNext(new String[]{"# EPSG:25832"});
-			GSxytAgentUtilizationMapWriter.writeNext(new String[]{"time", "x", "y", "value"});
-
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentName = entry.getKey();
-				GSxytAgentMapWriter.writeNext(new String[]{String.valueOf(0.0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(1),
-					String.valueOf(greenSpaceOverallRankingValuePerAgent.get(entry.getKey()))});
-				GSxytAgentDistanceMapWriter.writeNext(new String[]{String.valueOf(0.0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(1),
-					String.valueOf(distanceToGreenSpaceDeviationValuePerAgent.get(entry.getKey()))});
-				GSxytAgentUtilizationMapWriter.writeNext(new String[]{String.valueOf(0.0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(0),
-					homeCoordinatesPerAgentInStudyArea.get(agentName).get(1),
-					String.valueOf(greenSpaceUtilizationDeviationValuePerAgent.get(entry.getKey()))});
+			for (int agent = 0; agent < agents.size(); agent++) {
+				double homeX = agents.getHomeX(agent);
+				double homeY = agents.getHomeY(agent);
+				addXYTPoint(GSxytAgentMapWriter, homeX, homeY, greenSpaceOverallRankingValuePerAgent, agent);
+				addXYTPoint(GSxytAgentDistanceMapWriter, homeX, homeY, distanceToGreenSpaceDeviationValuePerAgent, agent);
+				addXYTPoint(GSxytAgentUtilizationMapWriter, homeX, homeY, greenSpaceUtilizationDeviationValuePerAgent, agent);
 			}
 		}
 
@@ -468,26 +437,19 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 		Collection<SimpleFeature> featureCollection = new ArrayList<SimpleFeature>();
 
 		// creating a SimpleFeature with attributes for every agent and adding them to the collection
-		for (String agentId : homeCoordinatesPerAgentInStudyArea.keySet()) {
-			List<String> coordinates = homeCoordinatesPerAgentInStudyArea.get(agentId);
-			double x = (coordinates.get(0).isEmpty() || coordinates.get(0).equals("0")) ? 0.0 : Double.parseDouble(coordinates.get(0));
-			double y = (coordinates.get(1).isEmpty() || coordinates.get(1).equals("0")) ? 0.0 : Double.parseDouble(coordinates.get(1));
-			Coord coord = new Coord(x, y);
-			Coordinate coordinate = new Coordinate(coord.getX(), coord.getY());
-			if (coordinates == null || coordinates.size() < 2 || coordinates.get(0).isEmpty() || coordinates.get(1).isEmpty()) {
-				continue; // skip false agents
-			}
+		for (int agent = 0; agent < agents.size(); agent++) {
+			Coordinate coordinate = new Coordinate(agents.getHomeX(agent), agents.getHomeY(agent));
 
 			Object[] attributes = new Object[]{
-				greenSpaceIdPerAgent.getOrDefault(agentId, null),
-				greenSpaceUtilizationDeviationValuePerAgent.getOrDefault(agentId, 0.0),
-				distanceToGreenSpaceDeviationValuePerAgent.getOrDefault(agentId, 0.0),
-				greenSpaceOverallRankingValuePerAgent.getOrDefault(agentId,0.0)
+				greenSpaceIdPerAgent[agent],
+				greenSpaceUtilizationDeviationValuePerAgent.getOrDefault(agent, 0.0),
+				distanceToGreenSpaceDeviationValuePerAgent.getOrDefault(agent, 0.0),
+				greenSpaceOverallRankingValuePerAgent.getOrDefault(agent, 0.0)
 			};
 
 			SimpleFeature feature = pointFactoryBuilder.createPoint(coordinate, attributes, null);
 			if (feature == null) {
-				System.err.println("Feature konnte nicht erstellt werden für Agent: " + agentId);
+				System.err.println("Feature konnte nicht erstellt werden für Agent: " + agents.getPerson(agent));
 			}
 			featureCollection.add(feature);
 		}
@@ -560,55 +522,71 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 		}
 	}
 
+	/**
+	 * every study area agent is part of the green space maps, agents without a value are written as "null"
+	 */
+	private static void addXYTPoint(XYTMapWriter writer, double homeX, double homeY, AgentLiveabilityTable.DoubleColumn metric, int agent) throws IOException {
+		if (metric.isSet(agent)) {
+			writer.add(homeX, homeY, metric.get(agent));
+		} else {
+			writer.addMissing(homeX, homeY);
+		}
+	}
+
 	/**
 	 * because of repeated use - method to calculate the median value is excluded from the call method into its own method
 	 */
-		private double calculateMedian(Map<String, List<String>> mapOfRelevantAgents, Map<String, Double> mapToAnalyse) {
-		double medianValue;
-		medianValue = mapToAnalyse.entrySet().stream()
-			.filter(stringDoubleEntry -> mapOfRelevantAgents.containsKey(stringDoubleEntry.getKey()))
-			.map(Map.Entry::getValue)
-			.sorted() // sorting the values
-			.collect(Collectors.collectingAndThen(Collectors.toList(), list -> {
-				int size = list.size();
-				if (size == 0) return 0.0; // in case the list is empty
-				if (size % 2 == 1) { // odd number of entries
-					return list.get(size / 2);
-				} else { // even number of entries
-					return (list.get(size / 2 - 1) + list.get(size / 2)) / 2.0;
-				}
-			}));
-		return medianValue;
+	private double calculateMedian(AgentLiveabilityTable.DoubleColumn metricToAnalyse) {
+		double[] values = metricToAnalyse.toArray();
+		if (values.length == 0) return 0.0; // in case the list is empty
+		return Quantiles.quantileInPlace(values, values.length, 0.5);
 	}
 
 	/**
-	 * method to identify the nearest green space for each agent and put the information into a map as well as count this person
-	 * on the identified green space
- 	 */
-	 private void identifyClosestGreenSpacePerAgent(String id, String homeX, String homeY, Collection<SimpleFeature> features,
-												   Map<String, String> greenSpaceIdPerAgent, Map<String, Double> distancePerAgent,
-												   Map<String, Integer> nrOfPeoplePerGreenSpace, Map<String, List<Double>> greenSpaceUtilization) {
-		Coord homeCoord = new Coord(Double.parseDouble(homeX), Double.parseDouble(homeY));
-		double shortestDistance = Double.MAX_VALUE;
-		String closestGreenSpace = null;
-
-		for (SimpleFeature feature : features) {
-			Geometry geometry = (Geometry) feature.getDefaultGeometry();
-			if (geometry instanceof Point point) {
-				double distance = CoordUtils.calcEuclideanDistance(homeCoord, MGC.point2Coord(point));
-				if (distance < shortestDistance) {
-					shortestDistance = distance;
-					closestGreenSpace = (String) feature.getAttribute("osm_id");
-				}
+	 * method to identify the nearest access point for each agent home with the spatial index of the access points, either by beeline or on
+	 * the pedestrian network - returns the osm id of the green space per agent, null if no access point can be reached
+	 */
+	private String[] findClosestAccessPoints(Collection<SimpleFeature> accessPointFeatures, OutputTables.Persons persons, List<Integer> personRows,
+											 int[] closestAccessPoints, double[] closestDistances) {
+		AccessPointIndex index = AccessPointIndex.create(accessPointFeatures);
+		log.info("Spatial index of {} access points created, identifying the closest access point per agent by {}", index.size(), distanceMode);
+
+		AccessPointIndex.NetworkDistances networkDistances = null;
+		if (distanceMode == DistanceMode.network) {
+			try {
+				networkDistances = index.withNetwork(getRunOutputContext().getNetwork());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
 		}
+		AccessPointIndex.NetworkDistances finalNetworkDistances = networkDistances;
+
+		IntStream.range(0, personRows.size()).parallel().forEach(i -> {
+			double homeX = persons.getHomeX(personRows.get(i));
+			double homeY = persons.getHomeY(personRows.get(i));
+			if (finalNetworkDistances == null) {
+				closestAccessPoints[i] = index.getNearest(homeX, homeY);
+				closestDistances[i] = closestAccessPoints[i] >= 0 ? index.getDistance(closestAccessPoints[i], homeX, homeY) : Double.NaN;
+			} else {
+				closestAccessPoints[i] = finalNetworkDistances.getNearest(homeX, homeY);
+				closestDistances[i] = closestAccessPoints[i] >= 0 ? finalNetworkDistances.getDistance(homeX, homeY) : Double.NaN;
+			}
+		});
 
-		if (closestGreenSpace != null) {
-			greenSpaceIdPerAgent.put(id, closestGreenSpace);
-			distancePerAgent.put(id, shortestDistance);
-			nrOfPeoplePerGreenSpace.merge(closestGreenSpace, (int) (1/sampleSize), Integer::sum);
-			calculateMeanDistancePerGreenSpace(greenSpaceUtilization, closestGreenSpace, shortestDistance);
+		String[] osmIds = new String[closestAccessPoints.length];
+		for (int i = 0; i < closestAccessPoints.length; i++) {
+			osmIds[i] = closestAccessPoints[i] >= 0 ? index.getOsmId(closestAccessPoints[i]) : null;
 		}
+		return osmIds;
+	}
+
+	/**
+	 * method to count a person on the identified nearest green space and to update the mean distance to it
+ 	 */
+	private void assignClosestGreenSpaceToAgent(String closestGreenSpace, double shortestDistance,
+												Map<String, Integer> nrOfPeoplePerGreenSpace, Map<String, List<Double>> greenSpaceUtilization) {
+		nrOfPeoplePerGreenSpace.merge(closestGreenSpace, (int) (1/sampleSize), Integer::sum);
+		calculateMeanDistancePerGreenSpace(greenSpaceUtilization, closestGreenSpace, shortestDistance);
 	}
 
 	/**
@@ -638,4 +616,9 @@ public class AgentBasedGreenSpaceAnalysis implements MATSimAppCommand {
 			greenSpaceUtilizationDeviationValuePerGreenSpace.put(greenSpaceId, ((peopleCount/area)-limitGreenSpaceUtilization)/limitGreenSpaceUtilization);
 		}
 	}
+
+	/**
+	 * distance measure for the nearest green space, the network distance walks the pedestrian graph of the network
+	 */
+	enum DistanceMode {beeline, network}
 }
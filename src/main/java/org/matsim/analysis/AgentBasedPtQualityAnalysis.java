@@ -2,33 +2,29 @@ package org.matsim.analysis;
 
 import ch.sbb.matsim.routing.pt.raptor.*;
 import com.opencsv.CSVWriter;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
-import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.ApplicationUtils;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.Dependency;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
-import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.RoutingConfigGroup;
-import org.matsim.core.events.EventsUtils;
-import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.router.DefaultRoutingRequest;
 import org.matsim.core.router.DijkstraFactory;
 import org.matsim.core.router.LinkWrapperFacilityWithSpecificCoord;
@@ -36,10 +32,7 @@ import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
-import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.trafficmonitoring.TravelTimeCalculator;
 import org.matsim.facilities.Facility;
-import org.matsim.pt.router.TransitRouter;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.Vehicles;
@@ -48,9 +41,13 @@ import picocli.CommandLine;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
 
+import static org.matsim.dashboard.RunLiveabilityDashboard.getRunOutputContext;
 import static org.matsim.dashboard.RunLiveabilityDashboard.getValidLiveabilityOutputDirectory;
 import static org.matsim.dashboard.RunLiveabilityDashboard.getValidOutputDirectory;
 
@@ -74,10 +71,10 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.getValidOutputDirecto
 		"ptAccessibility_RankingValue.csv",
 		"ptQuality_stats_travelTimeComparison.csv",
 		"ptQuality_stats_RankingValue.csv",
-		"ptQuality_XYT_agentBasedPtQuality.csv",
-		"ptQuality_XYT_maxWalkToPTPerAgent.csv",
-		"ptQuality_XYT_PtToCarRatioPerAgent.csv",
-		"ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv",
+		"ptQuality_XYT_agentBasedPtQuality.csv.gz",
+		"ptQuality_XYT_maxWalkToPTPerAgent.csv.gz",
+		"ptQuality_XYT_PtToCarRatioPerAgent.csv.gz",
+		"ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv.gz",
 		"ptQuality_Tiles_PtQuality.csv",
 		"ptQuality_Tiles_MaxWalkToPt.csv",
 		"ptQuality_Tiles_PtToCarRatio.csv",
@@ -89,27 +86,35 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 	private static final Logger log = LogManager.getLogger(AgentBasedPtQualityAnalysis.class);
 	private final double limitTravelTimeComparison = 2.0;
 	private final double limitMaxWalkToPTDistance = 500;
+	private static final int CAR_PATH_CACHE_SIZE = 200_000;
+	private static final int ROUTING_CHUNK_SIZE = 256;
 
 
 	@CommandLine.Mixin
 	private final InputOptions input = InputOptions.ofCommand(AgentBasedPtQualityAnalysis.class);
 	@CommandLine.Mixin
 	private final OutputOptions output = OutputOptions.ofCommand(AgentBasedPtQualityAnalysis.class);
+	@CommandLine.Option(names = "--pt-profile-routing", description = "Route pt alternatives with one range query per origin cell, destination cell and departure hour instead of one query per trip", defaultValue = "false")
+	private boolean ptProfileRouting;
+	@CommandLine.Option(names = "--pt-profile-cell-size", description = "Size of the origin and destination cells for the pt profile routing in meters", defaultValue = "300")
+	private double ptProfileCellSize;
 
 	private Config config;
 	private RoutingConfigGroup routingConfig;
-	private Scenario scenario;
 	private Network network;
 	private org.matsim.pt.transitSchedule.api.TransitSchedule TransitSchedule;
-	private TransitRouter transitRouter;
-	private TravelTimeCalculator travelTimeCalculator;
+	private Supplier<SwissRailRaptor> raptorFactory;
+	private ThreadLocal<SwissRailRaptor> transitRouter;
 	private TravelTime travelTime;
 	private TravelDisutility travelDisutility;
-	private LeastCostPathCalculator router;
+	private CarPathCache carPathCache;
+	private Int2ObjectMap<Map<String, Double>> ptTripValuesPerTripRow = new Int2ObjectOpenHashMap<>();
 
 
-	//Input paths
+	//Input paths - config, network, schedule and events are read via the RunOutputContext, they are listed for the fingerprint of the manifest
 	private final Path CONFIG_FILE = ApplicationUtils.matchInput("config.xml", getValidOutputDirectory());
+	private final Path networkPath = ApplicationUtils.matchInput("network.xml.gz", getValidOutputDirectory());
+	private final Path transitSchedulePath = ApplicationUtils.matchInput("transitSchedule.xml.gz", getValidOutputDirectory());
 	private final Path tripsPath = ApplicationUtils.matchInput("trips.csv.gz", getValidOutputDirectory());
 	private final Path legsPath = ApplicationUtils.matchInput("legs.csv.gz", getValidOutputDirectory());
 	private final Path eventsPath = ApplicationUtils.matchInput("events.xml.gz", getValidOutputDirectory());
@@ -118,10 +123,10 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 	//Output paths
 	private final Path statsPtQualityPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_stats_perAgent.csv");
 	private final Path statsModeComparisonPerTripPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_stats_modeComparisonPerTrip.csv");
-	private final Path XYTPtToCarRatioMap = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_PtToCarRatioPerAgent.csv");
-	private final Path XYTEcoMobilityToCarRatioMap = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv");
-	private final Path XYTWalkToPtPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_maxWalkToPTPerAgent.csv");
-	private final Path XYTPtQualityPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_agentBasedPtQuality.csv");
+	private final Path XYTPtToCarRatioMap = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_PtToCarRatioPerAgent.csv.gz");
+	private final Path XYTEcoMobilityToCarRatioMap = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv.gz");
+	private final Path XYTWalkToPtPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_maxWalkToPTPerAgent.csv.gz");
+	private final Path XYTPtQualityPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_XYT_agentBasedPtQuality.csv.gz");
 	private final Path TilesPtQualityPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_Tiles_PtQuality.csv");
 	private final Path TilesMaxWalkToPtPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_Tiles_MaxWalkToPt.csv");
 	private final Path TilesPtToCarPath = getValidLiveabilityOutputDirectory().resolve("ptQuality_Tiles_PtToCarRatio.csv");
@@ -155,21 +160,21 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 
 		log.info("Beeline and teleportedModeSpeed successfully entered into maps.");
 
-		// defining all maps to be able to put and get values of those throughout the analysis
-		Map<String, List<String>> homeCoordinatesPerAgentInStudyArea = new HashMap<>();
-		Map<String, String> mainModePerTrip = new HashMap<>();
-		Map<String, List<String>> startCoordinatesPerTrip = new HashMap<>();
-		Map<String, List<String>> endCoordinatesPerTrip = new HashMap<>();
-		Map<String, Double> euclideanDistancePerTrip = new HashMap<>();
-		Map<String, Double> maxWalkDistancesPerAgent = new HashMap<>();
-		Map<String, Double> maxWalkDistancesPerAgentIndexValue = new HashMap<>();
-		Map<String, Double> maxPtToCarRatioPerAgent = new HashMap<>();
-		Map<String, Double> maxPtToCarRatioPerAgentIndexValue = new HashMap<>();
-		Map<String, Double> maxEcoMobilityToCarRatioPerAgent = new HashMap<>();
-		Map<String, Double> maxEcoMobilityToCarRatioPerAgentIndexValue = new HashMap<>();
-		Map<String, Double> overallPtQualityPerAgentIndexValue = new HashMap<>();
-		Map<String, Map<String, Map<String, Map<String, Double>>>> valuesPerModePerTripPerAgent = new HashMap<>();
-		Map<String, Double> tripMaxWalkDistances = new HashMap<>();
+		// all study area agents with their home coordinates, the per agent values are stored over the dense agent index
+		AgentIndex agents = AgentIndex.read(inputAgentLiveabilityInfoPath, getRunOutputContext().getOutputTables());
+		AgentLiveabilityTable.DoubleColumn maxWalkDistancesPerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn maxWalkDistancesPerAgentIndexValue = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn maxPtToCarRatioPerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn maxPtToCarRatioPerAgentIndexValue = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn maxEcoMobilityToCarRatioPerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn maxEcoMobilityToCarRatioPerAgentIndexValue = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn overallPtQualityPerAgentIndexValue = agents.createMetric();
+
+		// the mode values of the last routed trip per agent (-1 / null for agents without a routed trip)
+		int[] tripRowPerAgent = new int[agents.size()];
+		Arrays.fill(tripRowPerAgent, -1);
+		List<Map<String, Map<String, Double>>> modeValuesPerAgent = new ArrayList<>(Collections.nCopies(agents.size(), null));
+		Long2DoubleMap tripMaxWalkDistances;
 
 		// initializing counters
 		int counterTesting = 0;
@@ -216,240 +221,146 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 
 		tripMaxWalkDistances = getAllLegWalkDistanceMax();
 
-		//prepping a map for all study area agents to be used for writing files and calculating index values
-		try (Reader studyAreaAgentReader = new FileReader(inputAgentLiveabilityInfoPath.toFile());
-			 CSVParser studyAreaAgentParser = new CSVParser(studyAreaAgentReader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-
-			for (CSVRecord record : studyAreaAgentParser) {
-				String id = record.get("person");
-				String homeX = record.get("home_x");
-				String homeY = record.get("home_y");
-				homeCoordinatesPerAgentInStudyArea.put(id, Arrays.asList(homeX, homeY));
-				maxWalkDistancesPerAgent.put(id, null);
-				maxWalkDistancesPerAgentIndexValue.put(id, null);
-				maxPtToCarRatioPerAgent.put(id, null);
-				maxPtToCarRatioPerAgentIndexValue.put(id, null);
-				overallPtQualityPerAgentIndexValue.put(id, null);
-				maxEcoMobilityToCarRatioPerAgent.put(id, null);
-				maxEcoMobilityToCarRatioPerAgentIndexValue.put(id, null);
-			}
-		}
-
 		log.info("Travel Time calculations per Trip for comparison begin.");
 
-		//use CSVParser for reading the trips.csv.gz file and CSVWriter for writing the output files
-		try (InputStream fileStream = new FileInputStream(tripsPath.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader reader = new InputStreamReader(gzipStream);
-			 CSVParser tripParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'))) {
+		//trips are read once and shared with the other dimensions
+		OutputTables.Movements trips = getRunOutputContext().getOutputTables().trips(tripsPath);
 
-			//read trips input file line by line, extract the content and use for iterations over all trips (instead of other for or while-loop)
-			for (CSVRecord tripRecord : tripParser) {
+		//collect the trips of the study area agents, routing is done afterwards in parallel
+		IntArrayList studyAreaTripRows = new IntArrayList();
+		for (int tripRow = 0; tripRow < trips.size(); tripRow++) {
 
-				++this.counter;
-				if (this.counter == this.nextCounterMsg) {
-					this.nextCounterMsg *= 2L;
-					log.info(" trip # " + this.counter);
-				}
+			++this.counter;
+			if (this.counter == this.nextCounterMsg) {
+				this.nextCounterMsg *= 2L;
+				log.info(" trip # " + this.counter);
+			}
 
-				Map<String, Map<String, Double>> modeValues = new HashMap<>();
-				Map<String, Double> ptTripValues = new HashMap<>();
-				Map<String, Double> carTripValues = new HashMap<>();
-				Map<String, Double> backupCarTripValues = new HashMap<>();
-				Map<String, Double> bikeTripValues = new HashMap<>();
-				Map<String, Double> walkTripValues = new HashMap<>();
-				Map<String, Map<String, Map<String, Double>>> tripValues = new HashMap<>();
+			//avoid calculation for people outside the study area
+			if (agents.indexOf(trips, tripRow) < 0) {
+				continue;
+			}
 
-				String person = tripRecord.get("person");
-				String tripId = tripRecord.get("trip_id");
+			//limit iterations for code testing code
+			if (counterTesting >= limitTesting && limitTesting != -1) {
+				System.out.println("Limit of iterations for testing reached");
+				break;
+			}
+			counterTesting++;
 
-				startCoordinatesPerTrip.put(tripId, Arrays.asList(tripRecord.get("start_x"), tripRecord.get("start_y")));
-				endCoordinatesPerTrip.put(tripId, Arrays.asList(tripRecord.get("end_x"), tripRecord.get("end_y")));
+			studyAreaTripRows.add(tripRow);
+		}
 
-				double euclideanDistance = Double.parseDouble(tripRecord.get("euclidean_distance"));
+		//optionally resolve the pt alternatives of most trips from profiles of grouped trips first
+		if (ptProfileRouting) {
+			ptTripValuesPerTripRow = calculatePtTripsWithProfiles(trips, studyAreaTripRows);
+		}
 
-				euclideanDistancePerTrip.put(tripId, euclideanDistance);
+		//pt and car routing of the trips in chunks on the threads left to this analysis by the scheduler, every thread uses its own routers
+		int routingThreads = LiveabilityAnalysisScheduler.threadBudget();
+		log.info("Routing of {} trips on {} threads begins.", studyAreaTripRows.size(), routingThreads);
+		ExecutorService executor = Executors.newFixedThreadPool(routingThreads);
+		List<CompletableFuture<List<Map<String, Map<String, Double>>>>> futures = new ArrayList<>();
 
-				//avoid calculation for people outside the study area
-				if (!homeCoordinatesPerAgentInStudyArea.containsKey(person)) {
-					continue;
-				}
+		for (int chunkStart = 0; chunkStart < studyAreaTripRows.size(); chunkStart += ROUTING_CHUNK_SIZE) {
+			int[] chunk = studyAreaTripRows.subList(chunkStart, Math.min(chunkStart + ROUTING_CHUNK_SIZE, studyAreaTripRows.size())).toIntArray();
 
-				//limit iterations for code testing code
-				if (counterTesting >= limitTesting && limitTesting != -1) {
-					System.out.println("Limit of iterations for testing reached");
-					break;
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				List<Map<String, Map<String, Double>>> chunkValues = new ArrayList<>(chunk.length);
+				for (int tripRow : chunk) {
+					chunkValues.add(calculateModeValues(trips, tripRow, tripMaxWalkDistances, beelineDistanceFactors, teleportedModeSpeeds));
 				}
-				counterTesting++;
-
-				//sort out all very short trips as they should be neither using car nor pt but walk - pt routing will most likely not be successful, leading to car vs. walk which makes little sense
-				String mainMode = null;
-				mainMode = tripRecord.get("main_mode");
-				mainModePerTrip.put(tripId, mainMode);
-				String currentTravTime = tripRecord.get("trav_time");
-				String depTime = tripRecord.get("dep_time");
-
-				//Create Start and End Facility
-				String startLink = tripRecord.get("start_link");
-				String endLink = tripRecord.get("end_link");
-				Facility startFacility = createFacility(tripRecord.get("start_x"), tripRecord.get("start_y"), startLink);
-				Facility endFacility = createFacility(tripRecord.get("end_x"), tripRecord.get("end_y"), endLink);
-				if (euclideanDistance > 300.0) {
-
-					switch (mainMode) {
-						case "car":
-						case "ride":
-							ptTripValues = calculatePtTrip(startFacility, endFacility, depTime);
-							carTripValues.put("tripOverallTravelTime", (double) timeToSeconds(currentTravTime));
-							walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
-							bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
-							backupCarTripValues.put("tripOverallTravelTime", null);
-							break;
-
-						case "drt":
-						case "pt":
-							ptTripValues.put("legWalkMaxDistance", tripMaxWalkDistances.getOrDefault(tripId, null));
-							ptTripValues.put("tripOverallTravelTime", (double) timeToSeconds(currentTravTime));
-							carTripValues = calculateCarTrip(startLink, endLink, depTime);
-							walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
-							bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
-							backupCarTripValues.put("tripOverallTravelTime", null);
-							break;
-
-						case "walk":
-							ptTripValues = calculatePtTrip(startFacility, endFacility, depTime);
-							carTripValues = calculateCarTrip(startLink, endLink, depTime);
-							walkTripValues.put("tripOverallTravelTime", (double) timeToSeconds(currentTravTime));
-							bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
-							backupCarTripValues.put("tripOverallTravelTime", null);
-							break;
-
-						case "bike":
-							ptTripValues = calculatePtTrip(startFacility, endFacility, depTime);
-							carTripValues = calculateCarTrip(startLink, endLink, depTime);
-							walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
-							bikeTripValues.put("tripOverallTravelTime", (double) timeToSeconds(currentTravTime));
-							backupCarTripValues.put("tripOverallTravelTime", null);
-							break;
-
-						default:
-							ptTripValues = calculatePtTrip(startFacility, endFacility, depTime);
-							carTripValues = calculateCarTrip(startLink, endLink, depTime);
-							walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
-							bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
-							backupCarTripValues.put("tripOverallTravelTime", null);
-							break;
-					}
-				} else {
-					// Insert the default null values into the map
-					ptTripValues.put("tripOverallTravelTime", null);
-					ptTripValues.put("legWalkMaxDistance", null);
-					carTripValues.put("tripOverallTravelTime", null);
-					walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
-					bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
-					backupCarTripValues = calculateCarTrip(startLink, endLink, depTime);
-				}
-				modeValues.put("pt", ptTripValues);
-				modeValues.put("car", carTripValues);
-				modeValues.put("walk", walkTripValues);
-				modeValues.put("bike", bikeTripValues);
-				modeValues.put("backupCar", backupCarTripValues);
-
-				tripValues.put(tripId, modeValues);
-				valuesPerModePerTripPerAgent.put(person, tripValues);
-			}
-			log.info("PT and Car Routing completed.");
+				return chunkValues;
+			}, executor));
 		}
 
-		for (String agent : valuesPerModePerTripPerAgent.keySet()) {
-			Double maxWalkDistance = null;
-			Double maxRatio = null;
-			Double maxPtToCarRatioIndexValue = null;
-			Double maxEcoMobilityRatio = null;
-			Double maxEcoMobilityToCarRatioIndexValue = null;
-			Double maxWalkDistanceIndexValue = null;
-			Map<String, Map<String, Map<String, Double>>> trips = valuesPerModePerTripPerAgent.get(agent);
-
-
-			for (String tripId : trips.keySet()) {
-				Double ecoCarTime;
-				Double legWalkMaxDistance = trips.get(tripId).get("pt").get("legWalkMaxDistance");
-				Double ptTime = trips.get(tripId).get("pt").get("tripOverallTravelTime");
-				Double carTime = trips.get(tripId).get("car").get("tripOverallTravelTime");
-				Double walkTime = trips.get(tripId).get("walk").get("tripOverallTravelTime");
-				Double bikeTime = trips.get(tripId).get("bike").get("tripOverallTravelTime");
-				Double backupCarTime = trips.get(tripId).get("backupCar").get("tripOverallTravelTime");
-				List<Double> ecoMobilityTimes = Arrays.asList(ptTime, walkTime, bikeTime);
-				double minEcoMobilityTime = ecoMobilityTimes.stream().filter(Objects::nonNull).min(Double::compareTo).orElse(Double.MAX_VALUE);
-
-				// Get longest walk to PT
-				if (legWalkMaxDistance != null) {
-					if (maxWalkDistance == null) {
-						maxWalkDistance = legWalkMaxDistance;
-					} else {
-						maxWalkDistance = Math.max(maxWalkDistance, legWalkMaxDistance);
-					}
-					maxWalkDistanceIndexValue = (maxWalkDistance - limitMaxWalkToPTDistance) / limitMaxWalkToPTDistance;
-				}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+			.exceptionally(ex -> {
+				log.error("Error while routing the trips", ex);
+				return null;
+			})
+			.join();
 
-				//Get PT to Car travel time ratio
-				if (ptTime != null && carTime != null) {
-					double ratio = ptTime / carTime;
-					if (maxRatio == null) {
-						maxRatio = ratio;
-					} else {
-						maxRatio = Math.max(maxRatio, ratio);
-					}
-					maxPtToCarRatioIndexValue = (maxRatio - limitTravelTimeComparison) / limitTravelTimeComparison;
-				}
+		executor.shutdown();
 
-				if (carTime != null || backupCarTime != null) {
-					ecoCarTime = (carTime != null) ? carTime : backupCarTime;
-					double ratio = minEcoMobilityTime / ecoCarTime;
-					if (maxEcoMobilityRatio == null) {
-						maxEcoMobilityRatio = ratio;
-					} else {
-						maxEcoMobilityRatio = Math.max(maxEcoMobilityRatio, ratio);
-					}
-					maxEcoMobilityToCarRatioIndexValue = (maxEcoMobilityRatio - limitTravelTimeComparison) / limitTravelTimeComparison;
-				}
+		//results are collected in the order of the trips file to keep the output deterministic
+		int tripIndex = 0;
+		for (CompletableFuture<List<Map<String, Map<String, Double>>>> future : futures) {
+			for (Map<String, Map<String, Double>> modeValues : future.get()) {
+				int tripRow = studyAreaTripRows.getInt(tripIndex++);
+				int agent = agents.indexOf(trips, tripRow);
+
+				tripRowPerAgent[agent] = tripRow;
+				modeValuesPerAgent.set(agent, modeValues);
 			}
-				maxWalkDistancesPerAgent.put(agent, maxWalkDistance);
-				maxWalkDistancesPerAgentIndexValue.put(agent, maxWalkDistanceIndexValue);
-				maxPtToCarRatioPerAgent.put(agent, maxRatio);
-				maxPtToCarRatioPerAgentIndexValue.put(agent, maxPtToCarRatioIndexValue);
-				maxEcoMobilityToCarRatioPerAgent.put(agent, maxEcoMobilityRatio);
-				maxEcoMobilityToCarRatioPerAgentIndexValue.put(agent, maxEcoMobilityToCarRatioIndexValue);
+		}
+		log.info("PT and Car Routing completed.");
+		carPathCache.logStatistics();
+
+		// every agent keeps the values of its last routed trip
+		for (int agent = 0; agent < agents.size(); agent++) {
+			Map<String, Map<String, Double>> modeValues = modeValuesPerAgent.get(agent);
+			if (modeValues == null) {
+				continue;
 			}
 
-			// calculating percentage of agents with deviation under 0 (index value per indicator) and for further analysis also for deviation -0.5 and +0.5
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentId = entry.getKey();
-				Double overallPtQualityIndexValue = null;
+			Double legWalkMaxDistance = modeValues.get("pt").get("legWalkMaxDistance");
+			Double ptTime = modeValues.get("pt").get("tripOverallTravelTime");
+			Double carTime = modeValues.get("car").get("tripOverallTravelTime");
+			Double walkTime = modeValues.get("walk").get("tripOverallTravelTime");
+			Double bikeTime = modeValues.get("bike").get("tripOverallTravelTime");
+			Double backupCarTime = modeValues.get("backupCar").get("tripOverallTravelTime");
+			List<Double> ecoMobilityTimes = Arrays.asList(ptTime, walkTime, bikeTime);
+			double minEcoMobilityTime = ecoMobilityTimes.stream().filter(Objects::nonNull).min(Double::compareTo).orElse(Double.MAX_VALUE);
+
+			// Get longest walk to PT
+			if (legWalkMaxDistance != null) {
+				maxWalkDistancesPerAgent.set(agent, legWalkMaxDistance);
+				maxWalkDistancesPerAgentIndexValue.set(agent, (legWalkMaxDistance - limitMaxWalkToPTDistance) / limitMaxWalkToPTDistance);
+			}
 
-				boolean hasMaxWalkDistance = maxWalkDistancesPerAgentIndexValue.get(agentId) != null;
-				boolean hasMaxPtToCarRatio = maxPtToCarRatioPerAgentIndexValue.get(agentId) != null;
+			//Get PT to Car travel time ratio
+			if (ptTime != null && carTime != null) {
+				double ratio = ptTime / carTime;
+				maxPtToCarRatioPerAgent.set(agent, ratio);
+				maxPtToCarRatioPerAgentIndexValue.set(agent, (ratio - limitTravelTimeComparison) / limitTravelTimeComparison);
+			}
 
-				// If neither map has an entry for the agent, skip the iteration
-				if (!hasMaxWalkDistance && !hasMaxPtToCarRatio) {
-					continue;
-				}
+			if (carTime != null || backupCarTime != null) {
+				double ecoCarTime = (carTime != null) ? carTime : backupCarTime;
+				double ratio = minEcoMobilityTime / ecoCarTime;
+				maxEcoMobilityToCarRatioPerAgent.set(agent, ratio);
+				maxEcoMobilityToCarRatioPerAgentIndexValue.set(agent, (ratio - limitTravelTimeComparison) / limitTravelTimeComparison);
+			}
+		}
 
-				Double maxWalkDistancesIndexValue = hasMaxWalkDistance ? maxWalkDistancesPerAgentIndexValue.get(agentId) : null;
-				Double maxPtToCarRatioIndexValue = hasMaxPtToCarRatio ? maxPtToCarRatioPerAgentIndexValue.get(agentId) : null;
+		// calculating percentage of agents with deviation under 0 (index value per indicator) and for further analysis also for deviation -0.5 and +0.5
+		for (int agent = 0; agent < agents.size(); agent++) {
+			double overallPtQualityIndexValue;
 
-				// If one value is missing, the other value alone should apply
-				if (!hasMaxWalkDistance) {
-					overallPtQualityIndexValue = maxPtToCarRatioIndexValue;
-				} else if (!hasMaxPtToCarRatio) {
-					overallPtQualityIndexValue = maxWalkDistancesIndexValue;
-				} else {
-					overallPtQualityIndexValue = Math.max(maxWalkDistancesIndexValue, maxPtToCarRatioIndexValue);
-				}
+			boolean hasMaxWalkDistance = maxWalkDistancesPerAgentIndexValue.isSet(agent);
+			boolean hasMaxPtToCarRatio = maxPtToCarRatioPerAgentIndexValue.isSet(agent);
+
+			// If neither metric has a value for the agent, skip the iteration
+			if (!hasMaxWalkDistance && !hasMaxPtToCarRatio) {
+				continue;
+			}
 
-				overallPtQualityPerAgentIndexValue.put(agentId, overallPtQualityIndexValue);
+			double maxWalkDistancesIndexValue = maxWalkDistancesPerAgentIndexValue.get(agent);
+			double maxPtToCarRatioIndexValue = maxPtToCarRatioPerAgentIndexValue.get(agent);
 
-			// Only increment the counter if the respective map contains the agent
+			// If one value is missing, the other value alone should apply
+			if (!hasMaxWalkDistance) {
+				overallPtQualityIndexValue = maxPtToCarRatioIndexValue;
+			} else if (!hasMaxPtToCarRatio) {
+				overallPtQualityIndexValue = maxWalkDistancesIndexValue;
+			} else {
+				overallPtQualityIndexValue = Math.max(maxWalkDistancesIndexValue, maxPtToCarRatioIndexValue);
+			}
+
+			overallPtQualityPerAgentIndexValue.set(agent, overallPtQualityIndexValue);
+
+			// Only increment the counter if the respective metric contains the agent
 			if (hasMaxWalkDistance && maxWalkDistancesIndexValue <= 0) {
 				counterIndexMaxWalk++;
 			}
@@ -465,49 +376,52 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 			if (overallPtQualityIndexValue <= 0.5) {
 				counter50PercentOverLimit++;
 			}
-			if (maxEcoMobilityToCarRatioPerAgentIndexValue.get(agentId) <= 0) {
-				counterIndexEcoToCarRatio++;
-			}
-			if (maxEcoMobilityToCarRatioPerAgentIndexValue.get(agentId)  <= -0.5) {
-				counterEco50PercentUnderLimit++;
-			}
-			if (maxEcoMobilityToCarRatioPerAgentIndexValue.get(agentId)  <= 0.5) {
-				counterEco50PercentOverLimit++;
+			if (maxEcoMobilityToCarRatioPerAgentIndexValue.isSet(agent)) {
+				double ecoMobilityToCarRatioIndexValue = maxEcoMobilityToCarRatioPerAgentIndexValue.get(agent);
+				if (ecoMobilityToCarRatioIndexValue <= 0) {
+					counterIndexEcoToCarRatio++;
+				}
+				if (ecoMobilityToCarRatioIndexValue <= -0.5) {
+					counterEco50PercentUnderLimit++;
+				}
+				if (ecoMobilityToCarRatioIndexValue <= 0.5) {
+					counterEco50PercentOverLimit++;
+				}
 			}
 		}
 
 		// calculating overall index values and indicator index values
-		maxWalkToPtIndexValue = counterIndexMaxWalk / sizeWithoutNulls(maxWalkDistancesPerAgentIndexValue);
+		maxWalkToPtIndexValue = counterIndexMaxWalk / maxWalkDistancesPerAgentIndexValue.count();
 		formattedMaxWalkToPtIndexValue = String.format(Locale.US, "%.2f%%", maxWalkToPtIndexValue * 100);
 
-		ptToCarRatioIndexValue = counterIndexPtToCarRatio / sizeWithoutNulls(maxPtToCarRatioPerAgentIndexValue);
+		ptToCarRatioIndexValue = counterIndexPtToCarRatio / maxPtToCarRatioPerAgentIndexValue.count();
 		formattedPtToCarRatioIndexValue = String.format(Locale.US, "%.2f%%", ptToCarRatioIndexValue * 100);
 
-		ptQualityIndexValue = counterOverallPtQuality / sizeWithoutNulls(overallPtQualityPerAgentIndexValue);
+		ptQualityIndexValue = counterOverallPtQuality / overallPtQualityPerAgentIndexValue.count();
 		formattedPtQualityIndexValue = String.format(Locale.US, "%.2f%%", ptQualityIndexValue * 100);
 
-		ptQuality50PercentUnderIndexValue = counter50PercentUnderLimit / sizeWithoutNulls(overallPtQualityPerAgentIndexValue);
+		ptQuality50PercentUnderIndexValue = counter50PercentUnderLimit / overallPtQualityPerAgentIndexValue.count();
 		formattedPtQuality50PercentUnderIndexValue = String.format(Locale.US, "%.2f%%", ptQuality50PercentUnderIndexValue * 100);
 
-		ptQuality50PercentOverIndexValue = counter50PercentOverLimit / sizeWithoutNulls(overallPtQualityPerAgentIndexValue);
+		ptQuality50PercentOverIndexValue = counter50PercentOverLimit / overallPtQualityPerAgentIndexValue.count();
 		formattedPtQuality50PercentOverIndexValue = String.format(Locale.US, "%.2f%%", ptQuality50PercentOverIndexValue * 100);
 
-		ecoMobilityRatioIndexValue = counterIndexEcoToCarRatio / sizeWithoutNulls(maxEcoMobilityToCarRatioPerAgentIndexValue);
+		ecoMobilityRatioIndexValue = counterIndexEcoToCarRatio / maxEcoMobilityToCarRatioPerAgentIndexValue.count();
 		formattedEcoMobilityRatioIndexValue = String.format(Locale.US, "%.2f%%", ecoMobilityRatioIndexValue * 100);
 
-		ecoMobilityRatio50PercentUnderIndexValue = counterEco50PercentUnderLimit / sizeWithoutNulls(maxEcoMobilityToCarRatioPerAgentIndexValue);
+		ecoMobilityRatio50PercentUnderIndexValue = counterEco50PercentUnderLimit / maxEcoMobilityToCarRatioPerAgentIndexValue.count();
 		formattedEcoMobilityRatio50PercentUnderIndexValue = String.format(Locale.US, "%.2f%%", ecoMobilityRatio50PercentUnderIndexValue * 100);
 
-		ecoMobilityRatio50PercentOverIndexValue = counterEco50PercentOverLimit / sizeWithoutNulls(maxEcoMobilityToCarRatioPerAgentIndexValue);
+		ecoMobilityRatio50PercentOverIndexValue = counterEco50PercentOverLimit / maxEcoMobilityToCarRatioPerAgentIndexValue.count();
 		formattedEcoMobilityRatio50PercentOverIndexValue = String.format(Locale.US, "%.2f%%", ecoMobilityRatio50PercentOverIndexValue * 100);
 
-		meanMaxWalkToPt = maxWalkDistancesPerAgent.values().stream().filter(Objects::nonNull).collect(Collectors.averagingDouble(Double::doubleValue));
+		meanMaxWalkToPt = DoubleStream.of(maxWalkDistancesPerAgent.toArray()).average().orElse(0);
 		formattedMeanMaxWalkToPt = String.format(Locale.US, "%.2f m", meanMaxWalkToPt);
 
 		medianMaxWalkToPt = AgentLiveabilityInfoCollection.calculateMedian(maxWalkDistancesPerAgent);
 		formattedMedianMaxWalkToPt = String.format(Locale.US, "%.2f m", medianMaxWalkToPt);
 
-		meanPtToCarRatio = maxPtToCarRatioPerAgent.values().stream().filter(Objects::nonNull).collect(Collectors.averagingDouble(Double::doubleValue));
+		meanPtToCarRatio = DoubleStream.of(maxPtToCarRatioPerAgent.toArray()).average().orElse(0);
 		formattedMeanPtToCarRatio = String.format(Locale.US, "%.2f", meanPtToCarRatio);
 
 		medianPtToCarRatio = AgentLiveabilityInfoCollection.calculateMedian(maxPtToCarRatioPerAgent);
@@ -515,20 +429,22 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 
 
 		//Write Information in Agent Livability Info Collection
-		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(maxWalkDistancesPerAgent, "maxWalkToPtDistance");
-		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(maxWalkDistancesPerAgentIndexValue, "indexValue_maxWalkToPtDistance");
-		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(maxPtToCarRatioPerAgent, "maxPtToCarRatio");
-		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(maxPtToCarRatioPerAgentIndexValue, "indexValue_maxPtToCarRatio");
+		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, maxWalkDistancesPerAgent, "maxWalkToPtDistance");
+		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, maxWalkDistancesPerAgentIndexValue, "indexValue_maxWalkToPtDistance");
+		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, maxPtToCarRatioPerAgent, "maxPtToCarRatio");
+		agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, maxPtToCarRatioPerAgentIndexValue, "indexValue_maxPtToCarRatio");
+		agentLiveabilityInfoCollection.writeAgentLiveabilityInfoCsv();
 
 		agentLiveabilityInfoCollection.extendSummaryTilesCsvWithAttribute(formattedPtQualityIndexValue, "Pt Quality Index Value");
 
 		agentLiveabilityInfoCollection.extendIndicatorValuesCsvWithAttribute("Pt Quality", "Max Walk To Pt Distance", formattedMedianMaxWalkToPt, String.valueOf(limitMaxWalkToPTDistance), formattedMaxWalkToPtIndexValue);
 		agentLiveabilityInfoCollection.extendIndicatorValuesCsvWithAttribute("Pt Quality", "Pt to Car travel time ratio", formattedMedianPtToCarRatio, String.valueOf(limitTravelTimeComparison), formattedPtToCarRatioIndexValue);
 
-		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTPtQualityPath, overallPtQualityPerAgentIndexValue, homeCoordinatesPerAgentInStudyArea);
-		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTPtToCarRatioMap, maxPtToCarRatioPerAgentIndexValue, homeCoordinatesPerAgentInStudyArea);
-		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTWalkToPtPath, maxWalkDistancesPerAgentIndexValue, homeCoordinatesPerAgentInStudyArea);
-		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTEcoMobilityToCarRatioMap, maxEcoMobilityToCarRatioPerAgentIndexValue, homeCoordinatesPerAgentInStudyArea);
+		// every study area agent is part of the pt maps, agents without a value are written as "null"
+		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTPtQualityPath, agents, overallPtQualityPerAgentIndexValue, true);
+		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTPtToCarRatioMap, agents, maxPtToCarRatioPerAgentIndexValue, true);
+		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTWalkToPtPath, agents, maxWalkDistancesPerAgentIndexValue, true);
+		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTEcoMobilityToCarRatioMap, agents, maxEcoMobilityToCarRatioPerAgentIndexValue, true);
 
 		// generating output files for the green space dashboard page
 		try (CSVWriter PTQTileWriter = new CSVWriter(new FileWriter(TilesPtQualityPath.toFile()));
@@ -568,14 +484,14 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 				"PtQuality IndexValue"
 			});
 
-			for (String person : homeCoordinatesPerAgentInStudyArea.keySet()) {
+			for (int agent = 0; agent < agents.size(); agent++) {
 				agentBasedWriter.writeNext(new String[]{
-					person,
-					String.valueOf(maxWalkDistancesPerAgent.getOrDefault(person, null)),
-					String.valueOf(maxWalkDistancesPerAgentIndexValue.getOrDefault(person, null)),
-					String.valueOf(maxPtToCarRatioPerAgent.getOrDefault(person, null)),
-					String.valueOf(maxPtToCarRatioPerAgentIndexValue.getOrDefault(person, null)),
-					String.valueOf(overallPtQualityPerAgentIndexValue.getOrDefault(person, null)),
+					agents.getPerson(agent),
+					formatValue(maxWalkDistancesPerAgent, agent),
+					formatValue(maxWalkDistancesPerAgentIndexValue, agent),
+					formatValue(maxPtToCarRatioPerAgent, agent),
+					formatValue(maxPtToCarRatioPerAgentIndexValue, agent),
+					formatValue(overallPtQualityPerAgentIndexValue, agent),
 				});
 			}
 		}
@@ -603,46 +519,133 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 				"endY"
 			});
 
-			for (String person : valuesPerModePerTripPerAgent.keySet()) {
-				for (String trip : valuesPerModePerTripPerAgent.get(person).keySet()) {
-					modeComparisonWriter.writeNext(new String[]{
-						person,
-						trip,
-						mainModePerTrip.get(trip),
-						String.valueOf(euclideanDistancePerTrip.get(trip)),
-						String.valueOf(valuesPerModePerTripPerAgent.get(person).get(trip).get("car").getOrDefault("tripOverallTravelTime", null)),
-						String.valueOf(valuesPerModePerTripPerAgent.get(person).get(trip).get("pt").getOrDefault("tripOverallTravelTime", null)),
-						String.valueOf(valuesPerModePerTripPerAgent.get(person).get(trip).get("bike").getOrDefault("tripOverallTravelTime", null)),
-						String.valueOf(valuesPerModePerTripPerAgent.get(person).get(trip).get("walk").getOrDefault("tripOverallTravelTime", null)),
-						String.valueOf(valuesPerModePerTripPerAgent.get(person).get(trip).get("pt").getOrDefault("legWalkMaxDistance", null)),
-						String.valueOf(startCoordinatesPerTrip.get(trip).get(0)),
-						String.valueOf(startCoordinatesPerTrip.get(trip).get(1)),
-						String.valueOf(endCoordinatesPerTrip.get(trip).get(0)),
-						String.valueOf(endCoordinatesPerTrip.get(trip).get(1))
-					});
+			for (int agent = 0; agent < agents.size(); agent++) {
+				Map<String, Map<String, Double>> modeValues = modeValuesPerAgent.get(agent);
+				if (modeValues == null) {
+					continue;
 				}
+
+				int tripRow = tripRowPerAgent[agent];
+				modeComparisonWriter.writeNext(new String[]{
+					agents.getPerson(agent),
+					trips.getTripId(tripRow),
+					trips.getMode(tripRow),
+					String.valueOf(trips.getDistance(tripRow)),
+					String.valueOf(modeValues.get("car").getOrDefault("tripOverallTravelTime", null)),
+					String.valueOf(modeValues.get("pt").getOrDefault("tripOverallTravelTime", null)),
+					String.valueOf(modeValues.get("bike").getOrDefault("tripOverallTravelTime", null)),
+					String.valueOf(modeValues.get("walk").getOrDefault("tripOverallTravelTime", null)),
+					String.valueOf(modeValues.get("pt").getOrDefault("legWalkMaxDistance", null)),
+					String.valueOf(trips.getStartX(tripRow)),
+					String.valueOf(trips.getStartY(tripRow)),
+					String.valueOf(trips.getEndX(tripRow)),
+					String.valueOf(trips.getEndY(tripRow))
+				});
 			}
 		}
 		return 0;
 	}
 
 	/**
-	 * method that transfers time formats to seconds
+	 * method to calculate the travel times of the alternative modes (and the max walk distance to pt) of one trip - called in parallel for
+	 * all trips of the study area agents
 	 */
-	public static int timeToSeconds (String time){
-		// Split the time string into hours, minutes, and seconds
-		String[] parts = time.split(":");
-		if (parts.length != 3) {
-			throw new IllegalArgumentException("Invalid time format: " + time);
+	private Map<String, Map<String, Double>> calculateModeValues(OutputTables.Movements trips, int tripRow, Long2DoubleMap tripMaxWalkDistances,
+																 Map<String, Double> beelineDistanceFactors, Map<String, Double> teleportedModeSpeeds) {
+		Map<String, Map<String, Double>> modeValues = new HashMap<>();
+		Map<String, Double> ptTripValues = new HashMap<>();
+		Map<String, Double> carTripValues = new HashMap<>();
+		Map<String, Double> backupCarTripValues = new HashMap<>();
+		Map<String, Double> bikeTripValues = new HashMap<>();
+		Map<String, Double> walkTripValues = new HashMap<>();
+
+		double euclideanDistance = trips.getDistance(tripRow);
+
+		//sort out all very short trips as they should be neither using car nor pt but walk - pt routing will most likely not be successful, leading to car vs. walk which makes little sense
+		String mainMode = trips.getMode(tripRow);
+		int currentTravTime = trips.getTravTime(tripRow);
+		int depTime = trips.getDepTime(tripRow);
+
+		//Create Start and End Facility
+		String startLink = trips.getStartLink(tripRow);
+		String endLink = trips.getEndLink(tripRow);
+		Facility startFacility = createFacility(String.valueOf(trips.getStartX(tripRow)), String.valueOf(trips.getStartY(tripRow)), startLink);
+		Facility endFacility = createFacility(String.valueOf(trips.getEndX(tripRow)), String.valueOf(trips.getEndY(tripRow)), endLink);
+		if (euclideanDistance > 300.0) {
+
+			switch (mainMode) {
+				case "car":
+				case "ride":
+					ptTripValues = getPtTrip(tripRow, startFacility, endFacility, depTime);
+					carTripValues.put("tripOverallTravelTime", (double) currentTravTime);
+					walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
+					bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
+					backupCarTripValues.put("tripOverallTravelTime", null);
+					break;
+
+				case "drt":
+				case "pt":
+					ptTripValues.put("legWalkMaxDistance", tripMaxWalkDistances.containsKey(trips.getTripKey(tripRow)) ? tripMaxWalkDistances.get(trips.getTripKey(tripRow)) : null);
+					ptTripValues.put("tripOverallTravelTime", (double) currentTravTime);
+					carTripValues = calculateCarTrip(startLink, endLink, depTime);
+					walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
+					bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
+					backupCarTripValues.put("tripOverallTravelTime", null);
+					break;
+
+				case "walk":
+					ptTripValues = getPtTrip(tripRow, startFacility, endFacility, depTime);
+					carTripValues = calculateCarTrip(startLink, endLink, depTime);
+					walkTripValues.put("tripOverallTravelTime", (double) currentTravTime);
+					bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
+					backupCarTripValues.put("tripOverallTravelTime", null);
+					break;
+
+				case "bike":
+					ptTripValues = getPtTrip(tripRow, startFacility, endFacility, depTime);
+					carTripValues = calculateCarTrip(startLink, endLink, depTime);
+					walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
+					bikeTripValues.put("tripOverallTravelTime", (double) currentTravTime);
+					backupCarTripValues.put("tripOverallTravelTime", null);
+					break;
+
+				default:
+					ptTripValues = getPtTrip(tripRow, startFacility, endFacility, depTime);
+					carTripValues = calculateCarTrip(startLink, endLink, depTime);
+					walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
+					bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
+					backupCarTripValues.put("tripOverallTravelTime", null);
+					break;
+			}
+		} else {
+			// Insert the default null values into the map
+			ptTripValues.put("tripOverallTravelTime", null);
+			ptTripValues.put("legWalkMaxDistance", null);
+			carTripValues.put("tripOverallTravelTime", null);
+			walkTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("walk") / teleportedModeSpeeds.get("walk"));
+			bikeTripValues.put("tripOverallTravelTime", euclideanDistance * beelineDistanceFactors.get("bike") / teleportedModeSpeeds.get("bike"));
+			backupCarTripValues = calculateCarTrip(startLink, endLink, depTime);
 		}
+		modeValues.put("pt", ptTripValues);
+		modeValues.put("car", carTripValues);
+		modeValues.put("walk", walkTripValues);
+		modeValues.put("bike", bikeTripValues);
+		modeValues.put("backupCar", backupCarTripValues);
+		return modeValues;
+	}
 
-		// Parse hours, minutes, and seconds
-		int hours = Integer.parseInt(parts[0]);
-		int minutes = Integer.parseInt(parts[1]);
-		int seconds = Integer.parseInt(parts[2]);
+	/**
+	 * method that transfers time formats to seconds
+	 */
+	public static int timeToSeconds (String time){
+		return AnalysisTimeUtils.parseTime(time);
+	}
 
-		// Convert to total seconds
-		return hours * 3600 + minutes * 60 + seconds;
+	/**
+	 * method formats the value of an agent for the stats file, agents without a value are written as "null"
+	 */
+	private static String formatValue(AgentLiveabilityTable.DoubleColumn metric, int agent) {
+		return metric.isSet(agent) ? String.valueOf(metric.get(agent)) : "null";
 	}
 
 	/**
@@ -657,9 +660,10 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 	/**
 	 * method to create the Transit Router for the SwissRailRaptor
 	 */
-		private SwissRailRaptor createTransitRouter (TransitSchedule schedule, Config config, Network network){
+		private Supplier<SwissRailRaptor> createTransitRouter (TransitSchedule schedule, Config config, Network network){
+		// the raptor data is immutable and shared, every thread gets its own raptor instance
 		SwissRailRaptorData data = SwissRailRaptorData.create(schedule, (Vehicles) null, RaptorUtils.createStaticConfig(config), network, (OccupancyData) null);
-		return (new SwissRailRaptor.Builder(data, config)).build();
+		return () -> new SwissRailRaptor.Builder(data, config).build();
 	}
 
 	/**
@@ -667,59 +671,80 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
  	 */
 	public void initializeSwissRailRaptor () {
 		RaptorParameters raptorParams = RaptorUtils.createParameters(config);
-		this.transitRouter = this.createTransitRouter(TransitSchedule, config, network);
+		this.raptorFactory = this.createTransitRouter(TransitSchedule, config, network);
+		// only used on the routing pool, which is shut down after the routing
+		this.transitRouter = ThreadLocal.withInitial(raptorFactory);
 	}
 
 	/**
 	 * method to calculate the car trip in the occupied network for all trips that are not car trips
  	 */
-	private Map<String, Double> calculateCarTrip (String startLinkID, String endLinkID, String departureTime){
-		double tripOverallTravelTime = 0.0;
-		double currentTime = timeToSeconds(departureTime);
+	private Map<String, Double> calculateCarTrip (String startLinkID, String endLinkID, int departureTime){
 		Map<String, Double> CarTripValues = new HashMap<>();
 
 		// Define start and end link
 		Link startLink = network.getLinks().get(Id.createLinkId(startLinkID));
 		Link endLink = network.getLinks().get(Id.createLinkId(endLinkID));
 
-		// Calculate optimal Route
+		// Calculate optimal Route - the travel time of the path is the sum of the link travel times along the route, repeated requests are taken from the cache
 		Node startNode = startLink.getToNode();
 		Node endNode = endLink.getToNode();
-		LeastCostPathCalculator.Path path = router.calcLeastCostPath(startNode, endNode, timeToSeconds(departureTime), null, null);
-
-		if (path == null) {
-			//	System.out.println("No car route found for " + startLinkID + " and " + endLinkID);
-			CarTripValues.put("tripOverallTravelTime", null);
-		}
-
-		// Calculate Overall Car travel time
-		for (Link link : path.links) {
-			tripOverallTravelTime += travelTime.getLinkTravelTime(link, currentTime, null, null);
-			currentTime += travelTime.getLinkTravelTime(link, currentTime, null, null);
-		}
+		Double tripOverallTravelTime = carPathCache.getTravelTime(startNode, endNode, departureTime);
 
+		// null if no car route is found
 		CarTripValues.put("tripOverallTravelTime", tripOverallTravelTime);
 		return CarTripValues;
 	}
 
 	/**
-	 * method to get the information for the occupation of the network from the events file
- 	 */
-	public TravelTimeCalculator readEventsIntoTravelTimeCalculator (Network network ){
-		EventsManager manager = EventsUtils.createEventsManager();
-		TravelTimeCalculator.Builder builder = new TravelTimeCalculator.Builder(network);
-		TravelTimeCalculator tcc = builder.build();
-		manager.addHandler(tcc);
-		manager.initProcessing();
-		new MatsimEventsReader(manager).readFile(String.valueOf(eventsPath));
-		manager.finishProcessing();
-		return tcc;
+	 * method to get the pt trip of a trip from the profile routing if available, otherwise it is routed individually
+	 */
+	private Map<String, Double> getPtTrip(int tripRow, Facility start, Facility end, int time) {
+		Map<String, Double> ptTripValues = ptTripValuesPerTripRow.get(tripRow);
+		return ptTripValues != null ? new HashMap<>(ptTripValues) : calculatePtTrip(start, end, time);
+	}
+
+	/**
+	 * method to calculate the pt trips of all trips requiring a pt alternative with range queries for groups of trips with similar origin,
+	 * destination and departure hour
+	 */
+	private Int2ObjectMap<Map<String, Double>> calculatePtTripsWithProfiles(OutputTables.Movements trips, IntArrayList tripRows) {
+		IntArrayList ptTripRows = new IntArrayList();
+		for (int tripRow : tripRows) {
+			String mainMode = trips.getMode(tripRow);
+			if (trips.getDistance(tripRow) > 300.0 && !mainMode.equals("pt") && !mainMode.equals("drt")) {
+				ptTripRows.add(tripRow);
+			}
+		}
+
+		Facility[] startFacilities = new Facility[ptTripRows.size()];
+		Facility[] endFacilities = new Facility[ptTripRows.size()];
+		double[] departureTimes = new double[ptTripRows.size()];
+		for (int i = 0; i < ptTripRows.size(); i++) {
+			int tripRow = ptTripRows.getInt(i);
+			startFacilities[i] = createFacility(String.valueOf(trips.getStartX(tripRow)), String.valueOf(trips.getStartY(tripRow)), trips.getStartLink(tripRow));
+			endFacilities[i] = createFacility(String.valueOf(trips.getEndX(tripRow)), String.valueOf(trips.getEndY(tripRow)), trips.getEndLink(tripRow));
+			departureTimes[i] = trips.getDepTime(tripRow);
+		}
+
+		double[][] profileValues = new PtProfileRouter(raptorFactory, ptProfileCellSize).calcTravelTimes(startFacilities, endFacilities, departureTimes);
+
+		Int2ObjectMap<Map<String, Double>> ptTripValues = new Int2ObjectOpenHashMap<>();
+		for (int i = 0; i < ptTripRows.size(); i++) {
+			if (profileValues[i] != null) {
+				Map<String, Double> values = new HashMap<>();
+				values.put("tripOverallTravelTime", profileValues[i][0]);
+				values.put("legWalkMaxDistance", profileValues[i][1]);
+				ptTripValues.put(ptTripRows.getInt(i), values);
+			}
+		}
+		return ptTripValues;
 	}
 
 	/**
 	 * method to calculate the pt trip
  	 */
-	private Map<String, Double> calculatePtTrip (Facility start, Facility end, String time){
+	private Map<String, Double> calculatePtTrip (Facility start, Facility end, int time){
 		double tripOverallTravelTime = 0.0;
 		double legWalkMaxDistance = 0.0;
 		Map<String, Double> PtTripValues = new HashMap<>();
@@ -728,7 +753,7 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 			throw new IllegalStateException("TransitRouter has not been initialized. Call initializeSwissRailRaptor first.");
 		}
 
-		List<? extends PlanElement> planElements = transitRouter.calcRoute(DefaultRoutingRequest.withoutAttributes(start, end, timeToSeconds(time), (Person) null));
+		List<? extends PlanElement> planElements = transitRouter.get().calcRoute(DefaultRoutingRequest.withoutAttributes(start, end, time, (Person) null));
 
 		if (planElements == null) {
 			//	System.out.println("No pt route found for " + start + " and " + end);
@@ -765,16 +790,15 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 	/**
 	 * method to initialize the scenario
  	 */
-	private void initializeScenario () {
-		if (this.scenario == null) {
-			this.config = ConfigUtils.loadConfig(String.valueOf(CONFIG_FILE));
+	private void initializeScenario () throws IOException {
+		if (this.network == null) {
+			// config, network, schedule and travel times are shared with the other analyses of the run
+			RunOutputContext context = getRunOutputContext();
+			this.config = context.getConfig();
 			this.routingConfig = config.routing();
-			this.scenario = ScenarioUtils.loadScenario(config);
-			Population population = scenario.getPopulation();
-			this.network = scenario.getNetwork();
-			this.TransitSchedule = scenario.getTransitSchedule();
-			this.travelTimeCalculator = readEventsIntoTravelTimeCalculator(network);
-			this.travelTime = travelTimeCalculator.getLinkTravelTimes();
+			this.network = context.getNetwork();
+			this.TransitSchedule = context.getTransitSchedule();
+			this.travelTime = context.getLinkTravelTimes();
 			// initialize router
 			this.travelDisutility = new TravelDisutility() {
 				@Override
@@ -788,35 +812,34 @@ public class AgentBasedPtQualityAnalysis implements MATSimAppCommand {
 				}
 			};
 
-			this.router = new DijkstraFactory().createPathCalculator(network, travelDisutility, travelTime);
+			// routers are not thread safe, the cache creates one per routing thread - routes are shared within the bins of the link travel times
+			this.carPathCache = new CarPathCache(() -> new DijkstraFactory().createPathCalculator(network, travelDisutility, travelTime),
+				CAR_PATH_CACHE_SIZE, LinkTravelTimeMatrix.BIN_SIZE);
 		}
 	}
 
 	/**
-	 * catch all maximum leg walk distances per trip
+	 * catch all maximum leg walk distances per trip, the map is keyed by the trip key of the shared legs and trips tables
 	 */
-	private Map<String, Double> getAllLegWalkDistanceMax() throws IOException {
-		Map<String, Double> tripMaxDistances = new HashMap<>();
-		try (InputStream fileStream = new FileInputStream(legsPath.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader reader = new InputStreamReader(gzipStream);
-			 CSVParser legsParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'))) {
-
-			// Iteration über alle Zeilen der CSV-Datei
-			for (CSVRecord legsRecord : legsParser) {
-				++this.counterWalkLegs;
-				if (this.counterWalkLegs == this.nextCounterWalkLegsMsg) {
-					this.nextCounterWalkLegsMsg *= 4L;
-					log.info(" GetTripWithWalk # " + this.counterWalkLegs);
-				}
-
-				String tripId = legsRecord.get("trip_id");
-				String mode = legsRecord.get("mode");
-				double distance = Double.parseDouble(legsRecord.get("distance"));
+	private Long2DoubleMap getAllLegWalkDistanceMax() throws IOException {
+		Long2DoubleMap tripMaxDistances = new Long2DoubleOpenHashMap();
+		OutputTables tables = getRunOutputContext().getOutputTables();
+		OutputTables.Movements legs = tables.legs(legsPath);
+
+		// walk legs are compared by their mode code instead of the mode string
+		int walk = tables.getModeCode("walk");
+
+		// Iteration über alle Legs
+		for (int row = 0; row < legs.size(); row++) {
+			++this.counterWalkLegs;
+			if (this.counterWalkLegs == this.nextCounterWalkLegsMsg) {
+				this.nextCounterWalkLegsMsg *= 4L;
+				log.info(" GetTripWithWalk # " + this.counterWalkLegs);
+			}
 
-				if (Objects.equals(mode, "walk")) {
-					tripMaxDistances.put(tripId, Math.max(tripMaxDistances.getOrDefault(tripId, 0.0), distance));
-				}
+			if (legs.getModeCode(row) == walk) {
+				long tripKey = legs.getTripKey(row);
+				tripMaxDistances.put(tripKey, Math.max(tripMaxDistances.getOrDefault(tripKey, 0.0), legs.getDistance(row)));
 			}
 		}
 		return tripMaxDistances;
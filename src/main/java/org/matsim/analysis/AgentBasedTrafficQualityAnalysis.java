@@ -1,9 +1,9 @@
 package org.matsim.analysis;
 
 import com.opencsv.CSVWriter;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
@@ -19,26 +19,17 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.RoutingConfigGroup;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.network.algorithms.NetworkCleaner;
-import org.matsim.core.router.DijkstraFactory;
-import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
-import org.matsim.core.router.util.LeastCostPathCalculator;
-import org.matsim.core.router.util.TravelDisutility;
-import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.simwrapper.SimWrapperConfigGroup;
 import picocli.CommandLine;
 
 import java.io.*;
 import java.nio.file.Path;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.*;
 
 import java.io.IOException;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
+import java.util.stream.DoubleStream;
 
 import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 
@@ -53,16 +44,16 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 	requireRunDirectory = true,
 	group="liveability",
 	dependsOn = {
-		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "agentLiveabilityInfo.csv"),
-		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overallRankingTile.csv")
+		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overall_stats_agentLiveabilityInfo.csv"),
+		@Dependency(value = AgentLiveabilityInfoCollection.class, files = "overall_tiles_indexDimensionValues.csv")
 	},
 	produces = {
 		"travelTime_stats_legsLossTime.csv",
 		"travelTime_stats_LegsLossTimePerMode.csv",
 		"travelTime_stats_perAgent.csv",
-		"travelTime_XYT_agentBasedTrafficQuality.xyt.csv",
-		"travelTime_XYT_agentBasedLongestTrip.xyt.csv",
-		"travelTime_XYT_agentBasedLossTime.xyt.csv",
+		"travelTime_XYT_agentBasedTrafficQuality.xyt.csv.gz",
+		"travelTime_XYT_agentBasedLongestTrip.xyt.csv.gz",
+		"travelTime_XYT_agentBasedLossTime.xyt.csv.gz",
 		"travelTime_tiles_overall.csv",
 		"travelTime_tiles_longestTrip.csv",
 		"travelTime_tiles_lossTime.csv",
@@ -78,7 +69,7 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 
 	private static final Logger log = LogManager.getLogger(AgentBasedTrafficQualityAnalysis.class);
-	private static RoutingConfigGroup routingConfig;
+	private RoutingConfigGroup routingConfig;
 
 	// defining the limits for the indicators
 	private static final Map<String, Duration> LIMIT_ABSOLUTE_TRAVEL_TIME_PER_MODE = Map.of(
@@ -93,7 +84,8 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 		"fright", Duration.ofNanos(Long.MAX_VALUE)
 	);
 
-	private static final Map<String, Long> failedRoutingOccurances = new HashMap<>();
+	// free speed routers of the network of the current run, built once per mode, they also hold the number of failed routings
+	private final Map<String, FreeSpeedRouter> freeSpeedRouterPerMode = new HashMap<>();
 
 	@CommandLine.Mixin
 	private final InputOptions input = InputOptions.ofCommand(AgentBasedTrafficQualityAnalysis.class);
@@ -115,9 +107,9 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 	private final Path BarChartLossTimePerMode = getValidLiveabilityOutputDirectory().resolve("travelTime_stats_LegsLossTimePerMode.csv");
 	private final Path outputCSVPath = getValidLiveabilityOutputDirectory().resolve("travelTime_stats_legsLossTime.csv");
 	private final Path statsTravelTimePerAgentPath = getValidLiveabilityOutputDirectory().resolve("travelTime_stats_perAgent.csv");
-	private final Path xytLossTimeAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedLossTime.xyt.csv");
-	private final Path xytLongestTripAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedLongestTrip.xyt.csv");
-	private final Path xytTravelTimeAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedTrafficQuality.xyt.csv");
+	private final Path xytLossTimeAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedLossTime.xyt.csv.gz");
+	private final Path xytLongestTripAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedLongestTrip.xyt.csv.gz");
+	private final Path xytTravelTimeAgentMapPath = getValidLiveabilityOutputDirectory().resolve("travelTime_XYT_agentBasedTrafficQuality.xyt.csv.gz");
 	private final Path tilesTravelTimePath = getValidLiveabilityOutputDirectory().resolve("travelTime_tiles_overall.csv");
 	private final Path tilesLogestTripTimePath = getValidLiveabilityOutputDirectory().resolve("travelTime_tiles_longestTrip.csv");
 	private final Path tilesLossTimePath = getValidLiveabilityOutputDirectory().resolve("travelTime_tiles_lossTime.csv");
@@ -140,14 +132,15 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 
-		//load network & execute NetworkCleaner
-		Network network = NetworkUtils.readNetwork(String.valueOf(networkPath));
-
-		NetworkCleaner cleaner = new NetworkCleaner();
-		cleaner.run(network);
+		//load network & execute NetworkCleaner, the cleaned network is shared with the other analyses of the run
+		Network network = getRunOutputContext().getCleanedNetwork();
+		// routers of a previous call may belong to another network
+		freeSpeedRouterPerMode.clear();
 
 		// loads sample size from config
-		Config config = ConfigUtils.loadConfig(ApplicationUtils.matchInput("config.xml", input.getRunDirectory()).toAbsolutePath().toString());
+		Config config = getRunOutputContext().getConfig();
+		// trips and legs of the run, shared with the other dimensions
+		OutputTables tables = getRunOutputContext().getOutputTables();
 		SimWrapperConfigGroup simwrapper = ConfigUtils.addOrGetModule(config, SimWrapperConfigGroup.class);
 		// todo: sampleSize is currently not imported correctly (this line returns 1 while the config says 0.1 which results in errors in the results). For now the sample size is hard coded at the top. - Same for GreenSpace
 		//	this.sampleSize = simwrapper.sampleSize;
@@ -156,29 +149,30 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 		// initialising collections and data structures
 		AgentLiveabilityInfoCollection agentLiveabilityInfoCollection = new AgentLiveabilityInfoCollection();
 
-		// defining all maps to be able to put and get values of those throughout the analysis
-		Map<String, Double> overallTravelTimeIndexValuePerAgent = new HashMap<>();
+		// all agents of the study area with a dense index, the per agent values are stored in primitive metrics over this index
+		AgentIndex agents = AgentIndex.read(inputAgentLiveabilityInfoPath, tables);
+
+		// defining all metrics and maps to be able to put and get values of those throughout the analysis
+		AgentLiveabilityTable.DoubleColumn overallTravelTimeIndexValuePerAgent = agents.createMetric();
 		Map<String, Long> counterModesPerLeg = new TreeMap<>();
-		Map<String, Map<String, List<Object>>> longestTripsPerModePerAgentAbsoluteValue = new HashMap<>();
-		Map<String, Map<String, Double>> longestTripsPerModePerAgentIndexValue = new HashMap<>();
-		Map<String, Double> longestTripIndexValuePerAgent = new HashMap<>();
-		Map<String, Double> longestTripLimitPerAgent = new HashMap<>();
-		Map<String, String> longestTripModePerAgent = new HashMap<>();
-		Map<String, Double> longestTripTravelTimePerAgent = new HashMap<>();
-		Map<String, Double> longestTripCarTravelTimePerAgent = new HashMap<>();
-		Map<String, Double> longestTripRideTravelTimePerAgent = new HashMap<>();
-		Map<String, Double> longestTripPtTravelTimePerAgent = new HashMap<>();
-		Map<String,String> longestTripDepTimePerAgent = new HashMap<>();
-
-		Map<String, List<String>> homeCoordinatesPerAgentInStudyArea = new HashMap<>();
-		Map<String, Double> travTimePerAgent = new HashMap<>();
-		Map<String, Double> freeSpeedTravTimePerAgent = new HashMap<>();
-		Map<String, Double> lossTimePerAgent = new HashMap<>();
-		Map<String, Double> lossTimeLimitPerAgent = new HashMap<>();
-		Map<String, Double> lossTimePercentagePerAgent = new HashMap<>();
-		Map<String, Double> lossTimeIndexValuePerAgent = new HashMap<>();
+		AgentLiveabilityTable.DoubleColumn longestTripIndexValuePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn longestTripLimitPerAgent = agents.createMetric();
+		String[] longestTripModePerAgent = new String[agents.size()];
+		AgentLiveabilityTable.DoubleColumn longestTripTravelTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn longestTripCarTravelTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn longestTripRideTravelTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn longestTripPtTravelTimePerAgent = agents.createMetric();
+		int[] longestTripDepTimePerAgent = new int[agents.size()];
+
+		AgentLiveabilityTable.DoubleColumn travTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn freeSpeedTravTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn lossTimePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn lossTimeLimitPerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn lossTimePercentagePerAgent = agents.createMetric();
+		AgentLiveabilityTable.DoubleColumn lossTimeIndexValuePerAgent = agents.createMetric();
 		Map<String, Double> lossTimePerMode = new TreeMap<>();
-		Map<String, Set<String>> modePerPerson = new HashMap<>();
+		// modes used per agent as bit set over the mode codes of the legs, one word of 64 modes per row which is added for more modes
+		long[][] modesPerAgent = new long[1][agents.size()];
 		Map<String,Double> lossTimePerTimeIntervall = new HashMap<>();
 
 
@@ -222,157 +216,108 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 
 		//******************** indicator absolute travel time *******************************
 
-		//prepping a map for all study area agents to be used for writing files and calculating index values
-		try (Reader studyAreaAgentReader = new FileReader(inputAgentLiveabilityInfoPath.toFile());
-			 CSVParser studyAreaAgentParser = new CSVParser(studyAreaAgentReader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-
-			for (CSVRecord record : studyAreaAgentParser) {
-				String id = record.get("person");
-				String homeX = record.get("home_x");
-				String homeY = record.get("home_y");
-				homeCoordinatesPerAgentInStudyArea.put(id, Arrays.asList(homeX, homeY));
-			}
-		}
-
-		try (InputStream fileStream = new FileInputStream(inputTripsCsvFile.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader reader = new InputStreamReader(gzipStream);
-			 CSVParser tripsParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'))) {
-
-			// Iterate over each row of the CSV file
-			for (CSVRecord record : tripsParser) {
-
-				String person = record.get("person");
-				if (!homeCoordinatesPerAgentInStudyArea.containsKey(person)) {
-					continue;
-				}
-
-				// Extract relevant values from the CSV
-				String mainMode = record.get("main_mode");
-				String travTimeStr = record.get("trav_time");
-				String depTimeStr = record.get("dep_time");
-
-				// Parse the travel time (trav_time) into a Duration
-				Duration travelTime = parseTime(travTimeStr);
-
-				// Parse the departure time (dep_time) -Assuming dep_time is in a parsable format (e.g., HH:mm:ss)
-				String depTime = depTimeStr;
+		// trips are read once and shared with the other dimensions
+		OutputTables.Movements trips = tables.trips(inputTripsCsvFile);
 
-				// Initialize the inner map if not already present
-				longestTripsPerModePerAgentAbsoluteValue.putIfAbsent(person, new HashMap<>());
-				Map<String, List<Object>> modeMap = longestTripsPerModePerAgentAbsoluteValue.get(person);
+		// longest trip per mode and agent, as travel time and departure time per mode code (-1 for agents without a trip of the mode)
+		Int2ObjectMap<int[]> longestTravelTimePerMode = new Int2ObjectOpenHashMap<>();
+		Int2ObjectMap<int[]> longestTripDepTimePerMode = new Int2ObjectOpenHashMap<>();
+		Int2ObjectMap<String> modeNames = new Int2ObjectOpenHashMap<>();
 
-				// Create a list to store both the travel time and departure time
-				List<Object> tripInfo = new ArrayList<>();
-				// Index 0 will store travel time
-				tripInfo.add(travelTime);
-				// Index 1 will store departure time
-				tripInfo.add(depTime);
+		// Iterate over each trip
+		for (int row = 0; row < trips.size(); row++) {
 
-				// Calculate the longest trip per mode and store the maximum duration with dep_time
-				modeMap.merge(mainMode, tripInfo, (existing, newTripInfo) -> {
-					Duration existingTravelTime = (Duration) ((List<Object>) existing).get(0);
-					Duration newTravelTime = (Duration) newTripInfo.get(0);
-
-					return newTravelTime.compareTo(existingTravelTime) > 0 ? newTripInfo : existing;
-				});
+			int agent = agents.indexOf(trips, row);
+			if (agent < 0) {
+				continue;
 			}
 
-			// After processing all records, add missing agents with default values
-			for (String agent : homeCoordinatesPerAgentInStudyArea.keySet()) {
-				if (!longestTripsPerModePerAgentAbsoluteValue.containsKey(agent)) {
-					// Create a list to store default values (00:00:00 for travel time, 00:00:00 for depTime, inactive for mainMode)
-					List<Object> defaultTripInfo = new ArrayList<>();
-					defaultTripInfo.add(Duration.ZERO);  // Default travel time = 00:00:00
-					defaultTripInfo.add("00:00:00");    // Default depTime = 00:00:00
-
-					// Initialize with default mainMode as "inactive"
-					Map<String, List<Object>> defaultModeMap = new HashMap<>();
-					defaultModeMap.put("inactive", defaultTripInfo);
-
-					// Add the agent with default values
-					longestTripsPerModePerAgentAbsoluteValue.put(agent, defaultModeMap);
-				}
+			int modeCode = trips.getModeCode(row);
+			int[] travelTimes = longestTravelTimePerMode.get(modeCode);
+			if (travelTimes == null) {
+				travelTimes = new int[agents.size()];
+				Arrays.fill(travelTimes, -1);
+				longestTravelTimePerMode.put(modeCode, travelTimes);
+				longestTripDepTimePerMode.put(modeCode, new int[agents.size()]);
+				modeNames.put(modeCode, trips.getMode(row));
 			}
 
-			// Now process the data
-			for (Map.Entry<String, Map<String, List<Object>>> personEntry : longestTripsPerModePerAgentAbsoluteValue.entrySet()) {
-				String person = personEntry.getKey();
-				Map<String, List<Object>> modeMap = personEntry.getValue();
-
-				// Initialize the inner map for the second map if not already present
-				longestTripsPerModePerAgentIndexValue.putIfAbsent(person, new HashMap<>());
-				Map<String, Double> modeIndexMap = longestTripsPerModePerAgentIndexValue.get(person);
-
-				// Initialize variables for storing max values
-				double maxValue = -1;
-				double limitPerAgent = 0;
-				double maxTravelTime = Double.MAX_VALUE;
-				String mode = "";
-				String depTimeForMaxTrip = "";  // Variable to store the dep_time for the longest trip
-
-				// Iterate over the mode map of the respective person
-				for (Map.Entry<String, List<Object>> modeEntry : modeMap.entrySet()) {
-					String currentMode = modeEntry.getKey();
-					List<Object> tripInfo = modeEntry.getValue();
-					// Get the travel time
-					Duration longestDuration = (Duration) tripInfo.get(0);
-					// Get the departure time
-					String depTime = (String) tripInfo.get(1);
-
-					double longestDurationInSeconds = longestDuration.toSeconds();
-					double indexLimitSec = LIMIT_ABSOLUTE_TRAVEL_TIME_PER_MODE.getOrDefault(currentMode, Duration.ofNanos(Long.MAX_VALUE)).toSeconds(); // Default biggest possible value as duration
-
-					// Calculate the expression (Duration - indexLimit) / indexLimit
-					double calculatedValue = (longestDurationInSeconds - indexLimitSec) / indexLimitSec;
-
-					// Update the maximum values
-					if (calculatedValue > maxValue) {
-						maxValue = calculatedValue;
-						mode = currentMode;
-						limitPerAgent = LIMIT_ABSOLUTE_TRAVEL_TIME_PER_MODE.get(mode).toSeconds();
-						maxTravelTime = longestDuration.toSeconds();
-						// Store the departure time for the longest trip
-						depTimeForMaxTrip = depTime;
-					}
+			// Calculate the longest trip per mode and store the maximum duration with dep_time
+			int travelTime = trips.getTravTime(row);
+			if (travelTime > travelTimes[agent]) {
+				travelTimes[agent] = travelTime;
+				longestTripDepTimePerMode.get(modeCode)[agent] = trips.getDepTime(row);
+			}
+		}
 
-					// Store the result in the second map
-					modeIndexMap.put(currentMode, calculatedValue);
+		// the modes are evaluated in the order of their names for every agent, so that ties are resolved deterministically, agents without any
+		// trip are inactive
+		int[] modeCodesInOrder = modeNames.int2ObjectEntrySet().stream()
+			.sorted(Map.Entry.comparingByValue())
+			.mapToInt(Int2ObjectMap.Entry::getIntKey)
+			.toArray();
+
+		// Now process the data
+		for (int agent = 0; agent < agents.size(); agent++) {
+
+			// Initialize variables for storing max values
+			double maxValue = -1;
+			double limitPerAgent = 0;
+			double maxTravelTime = Double.MAX_VALUE;
+			String mode = "";
+			int depTimeForMaxTrip = -1;  // Variable to store the dep_time for the longest trip
+
+			// Iterate over the modes used by the agent
+			for (int modeCode : modeCodesInOrder) {
+				int longestDurationInSeconds = longestTravelTimePerMode.get(modeCode)[agent];
+				if (longestDurationInSeconds < 0) {
+					continue;
 				}
-
-				// Store the results for the current person
-				longestTripLimitPerAgent.put(person, limitPerAgent);
-				longestTripIndexValuePerAgent.put(person, maxValue);
-				longestTripTravelTimePerAgent.put(person, maxTravelTime);
-				longestTripModePerAgent.put(person, mode);
-				longestTripDepTimePerAgent.put(person, depTimeForMaxTrip);
-
-				// Switch statement to store the longest trip travel time per agent for each mode
-				switch (mode) {
-					case "car":
-						longestTripCarTravelTimePerAgent.put(person, maxTravelTime);
-						break;
-					case "ride":
-						longestTripRideTravelTimePerAgent.put(person, maxTravelTime);
-						break;
-					case "pt":
-						longestTripPtTravelTimePerAgent.put(person, maxTravelTime);
-						break;
-					default:
-						break;
+				String currentMode = modeNames.get(modeCode);
+				double indexLimitSec = LIMIT_ABSOLUTE_TRAVEL_TIME_PER_MODE.getOrDefault(currentMode, Duration.ofNanos(Long.MAX_VALUE)).toSeconds(); // Default biggest possible value as duration
+
+				// Calculate the expression (Duration - indexLimit) / indexLimit
+				double calculatedValue = (longestDurationInSeconds - indexLimitSec) / indexLimitSec;
+
+				// Update the maximum values
+				if (calculatedValue > maxValue) {
+					maxValue = calculatedValue;
+					mode = currentMode;
+					limitPerAgent = LIMIT_ABSOLUTE_TRAVEL_TIME_PER_MODE.get(mode).toSeconds();
+					maxTravelTime = longestDurationInSeconds;
+					// Store the departure time for the longest trip
+					depTimeForMaxTrip = longestTripDepTimePerMode.get(modeCode)[agent];
 				}
 			}
+
+			// Store the results for the current agent
+			longestTripLimitPerAgent.set(agent, limitPerAgent);
+			longestTripIndexValuePerAgent.set(agent, maxValue);
+			longestTripTravelTimePerAgent.set(agent, maxTravelTime);
+			longestTripModePerAgent[agent] = mode;
+			longestTripDepTimePerAgent[agent] = depTimeForMaxTrip;
+
+			// Switch statement to store the longest trip travel time per agent for each mode
+			switch (mode) {
+				case "car":
+					longestTripCarTravelTimePerAgent.set(agent, maxTravelTime);
+					break;
+				case "ride":
+					longestTripRideTravelTimePerAgent.set(agent, maxTravelTime);
+					break;
+				case "pt":
+					longestTripPtTravelTimePerAgent.set(agent, maxTravelTime);
+					break;
+				default:
+					break;
+			}
 		}
 
 
 		//******************** indicator loss time *******************************
 
 		//read Input-legs.csv file and write new output files for loss time analysis
-		try (InputStream fileStream = new FileInputStream(inputLegsCsvFile.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader reader = new InputStreamReader(gzipStream);
-			 CSVParser legsParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'));
-			 CSVWriter legsLossTimeWriter = new CSVWriter(new FileWriter(String.valueOf(outputCSVPath)),
+		try (CSVWriter legsLossTimeWriter = new CSVWriter(new FileWriter(String.valueOf(outputCSVPath)),
 				 CSVWriter.DEFAULT_SEPARATOR,
 				 CSVWriter.NO_QUOTE_CHARACTER,
 				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
@@ -404,10 +349,14 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 
 			log.info("Leg loss time calculation begins");
 
-			for (CSVRecord legRecord : legsParser) {
+			// legs are read once and shared with the other dimensions
+			OutputTables.Movements legs = tables.legs(inputLegsCsvFile);
 
-				String person = legRecord.get("person");
-				if (!homeCoordinatesPerAgentInStudyArea.containsKey(person)) {
+			// collecting all relevant legs first, so that the free speed routing can be done in one batch for all legs
+			IntArrayList legRows = new IntArrayList();
+			for (int row = 0; row < legs.size(); row++) {
+
+				if (agents.indexOf(legs, row) < 0) {
 					continue;
 				}
 
@@ -416,6 +365,21 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					break;
 				}
 
+				legRows.add(row);
+				count++;
+			}
+
+			// free speed travel time is calculated for every start-end-point-combination in one batch
+			Node[] startNodesFound = new Node[legRows.size()];
+			Node[] endNodesFound = new Node[legRows.size()];
+			double[] legFreeSpeedTravTimes = calculateFreeSpeedTravelTimes(network, legs, legRows, startNodesFound, endNodesFound);
+
+			for (int legIndex = 0; legIndex < legRows.size(); legIndex++) {
+
+				int legRow = legRows.getInt(legIndex);
+				int agent = agents.indexOf(legs, legRow);
+				String person = agents.getPerson(agent);
+
 				// logarithmic counter for logger
 				++this.counter;
 				if (this.counter == this.nextCounterMsg) {
@@ -437,30 +401,24 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 				String formattedLegLegLossTime;
 
 				// collection of values from existing legs.csv to take over to the new legsLossTime.csv
-				double startX = Double.parseDouble(legRecord.get("start_x"));
-				double startY = Double.parseDouble(legRecord.get("start_y"));
-				String startLink = legRecord.get("start_link");
-				double endX = Double.parseDouble(legRecord.get("end_x"));
-				double endY = Double.parseDouble(legRecord.get("end_y"));
-				String endLink = legRecord.get("end_link");
-				String tripId = legRecord.get("trip_id");
-				String mode = legRecord.get("mode");
-				String depTime = legRecord.get("dep_time");
-				String travTimeString = legRecord.get("trav_time");
+				double startX = legs.getStartX(legRow);
+				double startY = legs.getStartY(legRow);
+				String startLink = legs.getStartLink(legRow);
+				double endX = legs.getEndX(legRow);
+				double endY = legs.getEndY(legRow);
+				String endLink = legs.getEndLink(legRow);
+				String tripId = legs.getTripId(legRow);
+				String mode = legs.getMode(legRow);
+				String depTime = AnalysisTimeUtils.formatTime(legs.getDepTime(legRow));
 
 				// calculate actual simulation values for export
-				legTravTime = parseTime(travTimeString);
+				legTravTime = Duration.ofSeconds(legs.getTravTime(legRow));
 				formattedLegTravTime = formatDuration(legTravTime);
 
-				// prep data for free speed travel time calculation
-				Coord startPoint = new Coord(startX, startY);
-				Coord endPoint = new Coord(endX, endY);
+				Node startNodeFound = startNodesFound[legIndex];
+				Node endNodeFound = endNodesFound[legIndex];
 
-				Node startNodeFound = NetworkUtils.getNearestNode(network, startPoint);
-				Node endNodeFound = NetworkUtils.getNearestNode(network, endPoint);
-
-				// free speed travel time is calculated by calling the calculateFreeSpeedTravelTime method for every start-end-point-combination
-				legFreeSpeedTravTimeInSeconds = (long) calculateFreeSpeedTravelTime(network, startPoint, endPoint, mode, legTravTime.getSeconds());
+				legFreeSpeedTravTimeInSeconds = (long) legFreeSpeedTravTimes[legIndex];
 
 				//transforming the resulting free speed travel time into the duration format as well es the String hh:mm:ss format
 				legFreeSpeedTravTime = Duration.ofSeconds(legFreeSpeedTravTimeInSeconds);
@@ -487,17 +445,26 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 				//	System.out.println("Warnung: Division by Zero for trip " + tripId + " avoided.");
 				}
 
-				SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
-				String intervalStart = getIntervalStart(timeFormat.parse(depTime), 15);
+				String intervalStart = AnalysisTimeUtils.getTimeOfDayIntervalStart(legs.getDepTime(legRow), 15);
 				lossTimePerTimeIntervall.put(intervalStart, lossTimePerTimeIntervall.getOrDefault(intervalStart, 0.0) + legLossTime.getSeconds());
 
 				// calculate sum of travel time and of loss time per agent. overall loss time sum and mode per person info
-				freeSpeedTravTimePerAgent.put(person, freeSpeedTravTimePerAgent.getOrDefault(person, 0.0) + legFreeSpeedTravTime.getSeconds());
-				lossTimePerAgent.put(person, lossTimePerAgent.getOrDefault(person, 0.0) + legLossTime.getSeconds());
+				freeSpeedTravTimePerAgent.add(agent, legFreeSpeedTravTime.getSeconds());
+				lossTimePerAgent.add(agent, legLossTime.getSeconds());
 				lossTimePerMode.put(mode, lossTimePerMode.getOrDefault(mode, 0.0) + (legLossTime.getSeconds()/sampleSize));
-				travTimePerAgent.put(person, travTimePerAgent.getOrDefault((Object) person, 0.0) + legTravTime.getSeconds());
-				modePerPerson.computeIfAbsent(person, k -> new HashSet<>()).add(mode);
-				lossTimeLimitPerAgent.put(person, limitRelativeLossTime);
+				travTimePerAgent.add(agent, legTravTime.getSeconds());
+				// the number of modes is usually far below 64, further words are only added for more modes
+				int modeCode = legs.getModeCode(legRow);
+				int word = modeCode / Long.SIZE;
+				if (word >= modesPerAgent.length) {
+					int words = modesPerAgent.length;
+					modesPerAgent = Arrays.copyOf(modesPerAgent, word + 1);
+					for (int w = words; w <= word; w++) {
+						modesPerAgent[w] = new long[agents.size()];
+					}
+				}
+				modesPerAgent[word][agent] |= 1L << (modeCode % Long.SIZE);
+				lossTimeLimitPerAgent.set(agent, limitRelativeLossTime);
 				counterModesPerLeg.compute(mode, (key, counter) -> (counter == null) ? 1 : counter + 1);
 
 				// writing the desired columns in the new legsLossTime output csv file
@@ -522,39 +489,38 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					String.valueOf(endNodeFound.getId()),
 					endLink
 				});
-
-				count++;
 			}
 
-			// After processing all records, add missing agents with default values
-			for (String person : homeCoordinatesPerAgentInStudyArea.keySet()) {
-				if (!freeSpeedTravTimePerAgent.containsKey(person)) {
-					freeSpeedTravTimePerAgent.put(person, 0.0);
-					lossTimePerAgent.put(person, 0.0);
-					travTimePerAgent.put(person, 0.0);
-					modePerPerson.put(person, Collections.singleton("inactive"));
-					lossTimeLimitPerAgent.put(person, limitRelativeLossTime);
+			// After processing all records, add missing agents with default values (agents without legs are inactive)
+			for (int agent = 0; agent < agents.size(); agent++) {
+				if (!freeSpeedTravTimePerAgent.isSet(agent)) {
+					freeSpeedTravTimePerAgent.set(agent, 0.0);
+					lossTimePerAgent.set(agent, 0.0);
+					travTimePerAgent.set(agent, 0.0);
+					lossTimeLimitPerAgent.set(agent, limitRelativeLossTime);
 				}
 			}
 
 			//calculate percentage loss time per agent
-			for (String person : freeSpeedTravTimePerAgent.keySet()) {
+			for (int agent = 0; agent < agents.size(); agent++) {
 				double temp_lossTimeIndexValue;
+				double freeSpeedTravTime = freeSpeedTravTimePerAgent.get(agent);
+				double travTime = travTimePerAgent.get(agent);
 
 				// Avoid division by 0
-				if (freeSpeedTravTimePerAgent.get(person) != 0 && travTimePerAgent.get(person) >=freeSpeedTravTimePerAgent.get(person)) {
-					double percentage = ((travTimePerAgent.get(person) - freeSpeedTravTimePerAgent.get(person)) / freeSpeedTravTimePerAgent.get(person));
-					lossTimePercentagePerAgent.put(person, percentage);
+				if (freeSpeedTravTime != 0 && travTime >= freeSpeedTravTime) {
+					double percentage = ((travTime - freeSpeedTravTime) / freeSpeedTravTime);
+					lossTimePercentagePerAgent.set(agent, percentage);
 				} else {
 					// If freeSpeedTime is 0 or greater than travTimePerAgent, we set the loss to 0%
-					lossTimePercentagePerAgent.put(person, 0.0);
+					lossTimePercentagePerAgent.set(agent, 0.0);
 				}
 
-				temp_lossTimeIndexValue = (lossTimePercentagePerAgent.get(person) - limitRelativeLossTime) / limitRelativeLossTime;
-				lossTimeIndexValuePerAgent.put(person, temp_lossTimeIndexValue);
+				temp_lossTimeIndexValue = (lossTimePercentagePerAgent.get(agent) - limitRelativeLossTime) / limitRelativeLossTime;
+				lossTimeIndexValuePerAgent.set(agent, temp_lossTimeIndexValue);
 			}
 
-			for (double lossTime : lossTimePerAgent.values()) {
+			for (double lossTime : lossTimePerAgent.toArray()) {
 				sumTotalLossTime += (lossTime/sampleSize);
 			}
 
@@ -564,14 +530,13 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 			//****************** Overall Traffic Quality Index calculating ******************************************************
 
 			// calculating percentage of agents with deviation under 0 (index value per indicator) and for further analysis also for deviation -0.5 and +0.5
-			for (Map.Entry<String, List<String>> entry : homeCoordinatesPerAgentInStudyArea.entrySet()) {
-				String agentId = entry.getKey();
+			for (int agent = 0; agent < agents.size(); agent++) {
 
-				double longestTripDeviation = longestTripIndexValuePerAgent.get(agentId);
-				double lossTimeDeviation = lossTimeIndexValuePerAgent.get(agentId);
+				double longestTripDeviation = longestTripIndexValuePerAgent.get(agent);
+				double lossTimeDeviation = lossTimeIndexValuePerAgent.get(agent);
 				double overallTravelTimeIndexValue = Math.max(longestTripDeviation, lossTimeDeviation);
 
-				overallTravelTimeIndexValuePerAgent.put(agentId, overallTravelTimeIndexValue);
+				overallTravelTimeIndexValuePerAgent.set(agent, overallTravelTimeIndexValue);
 
 				if (longestTripDeviation <= 0) {
 					counterIndexLongestTrip++;
@@ -591,64 +556,60 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 			}
 
 			// calculating overall index values and indicator index values
-			longestTripIndexValue = counterIndexLongestTrip / homeCoordinatesPerAgentInStudyArea.size();
+			longestTripIndexValue = counterIndexLongestTrip / agents.size();
 			formattedLongestTripIndexValue = String.format(Locale.US, "%.2f%%", longestTripIndexValue * 100);
 
-			lossTimeIndexValue = counterIndexLossTime / homeCoordinatesPerAgentInStudyArea.size();
+			lossTimeIndexValue = counterIndexLossTime / agents.size();
 			formattedLossTimeIndexValue = String.format(Locale.US, "%.2f%%", lossTimeIndexValue * 100);
 
-			travelTimeIndexValue = counterOverallTravelTime / homeCoordinatesPerAgentInStudyArea.size();
+			travelTimeIndexValue = counterOverallTravelTime / agents.size();
 			formattedTravelTimeIndexValue = String.format(Locale.US, "%.2f%%", travelTimeIndexValue * 100);
 
-			travelTime50PercentUnderIndexValue = counter50PercentUnderLimit / homeCoordinatesPerAgentInStudyArea.size();
+			travelTime50PercentUnderIndexValue = counter50PercentUnderLimit / agents.size();
 			formattedTravelTime50PercentUnderIndexValue = String.format(Locale.US, "%.2f%%", travelTime50PercentUnderIndexValue * 100);
 
-			travelTime50PercentOverIndexValue = counter50PercentOverLimit / homeCoordinatesPerAgentInStudyArea.size();
+			travelTime50PercentOverIndexValue = counter50PercentOverLimit / agents.size();
 			formattedTravelTime50PercentOverIndexValue = String.format(Locale.US, "%.2f%%", travelTime50PercentOverIndexValue * 100);
 
-			meanTotalLossTime = lossTimePerAgent.values().stream().collect(Collectors.averagingDouble(Double::doubleValue));
+			meanTotalLossTime = DoubleStream.of(lossTimePerAgent.toArray()).average().orElse(0);
 			formattedMeanTotalLossTime = formatDuration(Duration.ofSeconds((long) meanTotalLossTime));
 
 			medianTotalLossTime = AgentLiveabilityInfoCollection.calculateMedian(lossTimePerAgent);
 			formattedMedianTotalLossTime = formatDuration(Duration.ofSeconds((long) medianTotalLossTime));
 
-			medianLongestCarTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripTravelTimePerAgent.entrySet().stream()
-				.filter(entry -> "car".equals(longestTripModePerAgent.get(entry.getKey())))
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+			// the longest trips per mode contain exactly the agents whose longest trip has this mode
+			medianLongestCarTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripCarTravelTimePerAgent);
 			formattedMedianLongestCarTrip = formatDuration(Duration.ofSeconds((long) medianLongestCarTrip));
 
-			medianLongestPTTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripTravelTimePerAgent.entrySet().stream()
-				.filter(entry -> "pt".equals(longestTripModePerAgent.get(entry.getKey())))
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+			medianLongestPTTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripPtTravelTimePerAgent);
 			formattedMedianLongestPTTrip = formatDuration(Duration.ofSeconds((long) medianLongestPTTrip));
 
-			medianLongestRideTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripTravelTimePerAgent.entrySet().stream()
-				.filter(entry -> "ride".equals(longestTripModePerAgent.get(entry.getKey())))
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+			medianLongestRideTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripRideTravelTimePerAgent);
 			formattedMedianLongestRideTrip = formatDuration(Duration.ofSeconds((long) medianLongestRideTrip));
 
 			medianLongestTrip = AgentLiveabilityInfoCollection.calculateMedian(longestTripTravelTimePerAgent);
 			formattedMedianLongestTrip = formatDuration(Duration.ofSeconds((long) medianLongestTrip));
 
 			//Write Information in Agent Livability Info Collection
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(longestTripTravelTimePerAgent, "maxTravelTimePerTrip");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(longestTripLimitPerAgent, "limit_maxTravelTimePerTrip");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(longestTripIndexValuePerAgent, "indexValue_maxTravelTimePerTrip");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, longestTripTravelTimePerAgent, "maxTravelTimePerTrip");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, longestTripLimitPerAgent, "limit_maxTravelTimePerTrip");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, longestTripIndexValuePerAgent, "indexValue_maxTravelTimePerTrip");
 
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(lossTimePerAgent, "Loss Time");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(travTimePerAgent, "Travel Time");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(lossTimePercentagePerAgent, "percentageLossTime");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(lossTimeLimitPerAgent, "limit_relativeLossTime");
-			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(lossTimeIndexValuePerAgent, "indexValue_relativeLossTime");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, lossTimePerAgent, "Loss Time");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, travTimePerAgent, "Travel Time");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, lossTimePercentagePerAgent, "percentageLossTime");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, lossTimeLimitPerAgent, "limit_relativeLossTime");
+			agentLiveabilityInfoCollection.extendAgentLiveabilityInfoCsvWithAttribute(agents, lossTimeIndexValuePerAgent, "indexValue_relativeLossTime");
+			agentLiveabilityInfoCollection.writeAgentLiveabilityInfoCsv();
 
 			agentLiveabilityInfoCollection.extendSummaryTilesCsvWithAttribute(formattedTravelTimeIndexValue, "Traffic Quality Time Index Value");
 
 			agentLiveabilityInfoCollection.extendIndicatorValuesCsvWithAttribute("Traffic Quality", "Longest trip", formattedMedianLongestTrip, "60 / 30 / inf min", formattedLongestTripIndexValue);
 			agentLiveabilityInfoCollection.extendIndicatorValuesCsvWithAttribute("Traffic Quality", "Loss time", formattedMedianTotalLossTime, String.valueOf(limitRelativeLossTime), formattedLossTimeIndexValue);
 
-			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytLossTimeAgentMapPath, lossTimeIndexValuePerAgent, homeCoordinatesPerAgentInStudyArea);
-			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytLongestTripAgentMapPath, longestTripIndexValuePerAgent, homeCoordinatesPerAgentInStudyArea);
-			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytTravelTimeAgentMapPath, overallTravelTimeIndexValuePerAgent, homeCoordinatesPerAgentInStudyArea);
+			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytLossTimeAgentMapPath, agents, lossTimeIndexValuePerAgent);
+			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytLongestTripAgentMapPath, agents, longestTripIndexValuePerAgent);
+			AgentLiveabilityInfoCollection.writeXYTDataToCSV(xytTravelTimeAgentMapPath, agents, overallTravelTimeIndexValuePerAgent);
 
 			try (CSVWriter agentBasedWriter = new CSVWriter(new FileWriter(String.valueOf(statsTravelTimePerAgentPath)),
 				CSVWriter.DEFAULT_SEPARATOR,
@@ -669,18 +630,18 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					"Travel Quality Index Value"
 				});
 
-				for (String person : homeCoordinatesPerAgentInStudyArea.keySet()) {
+				for (int agent = 0; agent < agents.size(); agent++) {
 					agentBasedWriter.writeNext(new String[]{
-						person,
-						String.valueOf(lossTimePerAgent.getOrDefault(person, 0.0)),
-						String.valueOf(travTimePerAgent.getOrDefault(person, 0.0)),
-						String.valueOf(lossTimePercentagePerAgent.getOrDefault(person, 0.0)),
-						String.valueOf(lossTimeIndexValuePerAgent.getOrDefault(person, 0.0)),
-						String.join("-", modePerPerson.getOrDefault(person, Set.of())),
-						String.valueOf(longestTripModePerAgent.getOrDefault(person, "")),
-						String.valueOf(longestTripTravelTimePerAgent.getOrDefault(person, 0.0)),
-						String.valueOf(longestTripIndexValuePerAgent.getOrDefault(person, 0.0)),
-						String.valueOf(overallTravelTimeIndexValuePerAgent.get(person))
+						agents.getPerson(agent),
+						String.valueOf(lossTimePerAgent.getOrDefault(agent, 0.0)),
+						String.valueOf(travTimePerAgent.getOrDefault(agent, 0.0)),
+						String.valueOf(lossTimePercentagePerAgent.getOrDefault(agent, 0.0)),
+						String.valueOf(lossTimeIndexValuePerAgent.getOrDefault(agent, 0.0)),
+						formatModes(tables, modesPerAgent, agent),
+						String.valueOf(longestTripModePerAgent[agent]),
+						String.valueOf(longestTripTravelTimePerAgent.getOrDefault(agent, 0.0)),
+						String.valueOf(longestTripIndexValuePerAgent.getOrDefault(agent, 0.0)),
+						String.valueOf(overallTravelTimeIndexValuePerAgent.get(agent))
 					});
 				}
 			}
@@ -696,11 +657,13 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					"travTimePerAgent"
 				});
 
-				for (String person : longestTripCarTravelTimePerAgent.keySet()) {
-					longestTripCarTravelTimePerAgentWriter.writeNext(new String[]{
-						person,
-						String.valueOf(longestTripCarTravelTimePerAgent.get(person)/60),
-					});
+				for (int agent = 0; agent < agents.size(); agent++) {
+					if (longestTripCarTravelTimePerAgent.isSet(agent)) {
+						longestTripCarTravelTimePerAgentWriter.writeNext(new String[]{
+							agents.getPerson(agent),
+							String.valueOf(longestTripCarTravelTimePerAgent.get(agent)/60),
+						});
+					}
 				}
 			}
 
@@ -715,11 +678,13 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					"travTimePerAgent"
 				});
 
-				for (String person : longestTripRideTravelTimePerAgent.keySet()) {
-					longestTripRideTravelTimePerAgentWriter.writeNext(new String[]{
-						person,
-						String.valueOf(longestTripRideTravelTimePerAgent.get(person)/60),
-					});
+				for (int agent = 0; agent < agents.size(); agent++) {
+					if (longestTripRideTravelTimePerAgent.isSet(agent)) {
+						longestTripRideTravelTimePerAgentWriter.writeNext(new String[]{
+							agents.getPerson(agent),
+							String.valueOf(longestTripRideTravelTimePerAgent.get(agent)/60),
+						});
+					}
 				}
 			}
 
@@ -734,11 +699,13 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					"travTimePerAgent"
 				});
 
-				for (String person : longestTripPtTravelTimePerAgent.keySet()) {
-					longestTripPtTravelTimePerAgentWriter.writeNext(new String[]{
-						person,
-						String.valueOf(longestTripPtTravelTimePerAgent.get(person)/60),
-					});
+				for (int agent = 0; agent < agents.size(); agent++) {
+					if (longestTripPtTravelTimePerAgent.isSet(agent)) {
+						longestTripPtTravelTimePerAgentWriter.writeNext(new String[]{
+							agents.getPerson(agent),
+							String.valueOf(longestTripPtTravelTimePerAgent.get(agent)/60),
+						});
+					}
 				}
 			}
 
@@ -793,7 +760,7 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 					lossTimePerModeWriter.writeNext(new String[]{
 						mode,
 						String.valueOf(lossTimePerMode.getOrDefault(mode, 0.0)/60),
-						String.valueOf(failedRoutingOccurances.getOrDefault(mode, 0L))
+						String.valueOf(freeSpeedRouterPerMode.containsKey(mode) ? freeSpeedRouterPerMode.get(mode).getFailedRoutings() : 0L)
 					});
 				}
 			}
@@ -846,101 +813,97 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 	}
 
 	/**
-	 * method to calculate the free speed travel time to compare to the actual travel time
+	 * method to calculate the free speed travel time to compare to the actual travel time for all legs. The nearest network nodes of the
+	 * leg start and end points are written into the given arrays. Network modes are routed per mode in one batch by the {@link FreeSpeedRouter},
+	 * teleported modes use the beeline distance and pt as well as unknown modes keep their actual travel time.
 	 */
-	private static double calculateFreeSpeedTravelTime(Network network, Coord point1, Coord point2, String mode, long backup_travelTime) {
-		double travelTimeInSeconds = 0;
+	private double[] calculateFreeSpeedTravelTimes(Network network, OutputTables.Movements legs, IntArrayList legRows, Node[] startNodes, Node[] endNodes) {
+		double[] travelTimesInSeconds = new double[legRows.size()];
 		Map<String, Double> beelineDistanceFactors = routingConfig.getBeelineDistanceFactors();
 		Map<String, Double> teleportedModeSpeeds = routingConfig.getTeleportedModeSpeeds();
 
-		switch (mode.toLowerCase()) {
-			case "bike":
-			case "walk":
-				double distance = CoordUtils.calcEuclideanDistance(point1, point2);
-				// use of beeline factor
-				distance *= beelineDistanceFactors.getOrDefault(mode, 1.3);
-
-				return distance / teleportedModeSpeeds.getOrDefault(mode, 1.23);
-
-			case "car":
-			case "freight":
-			case "truck":
-			case "ride":
-				Node startNode = NetworkUtils.getNearestNode(network, point1);
-				Node endNode = NetworkUtils.getNearestNode(network, point2);
-
-				// TravelTime-Implementierung für Freifahrtgeschwindigkeit
-				TravelTime freeSpeedTravelTime = (link, time, person, vehicle) -> {
-					if (link.getAllowedModes().contains(mode)) {
-						return link.getLength() / link.getFreespeed();
-					} else {
-					//	System.out.println("Mode " + mode + " is not allowed on this link.");
-						failedRoutingOccurances.put(mode, failedRoutingOccurances.getOrDefault(mode, 0L) + 1);
-						return backup_travelTime;
-					}
-				};
+		// leg indices per network mode to be routed together
+		Map<String, List<Integer>> networkLegsPerMode = new HashMap<>();
 
-				TravelDisutility travelDisutility = new OnlyTimeDependentTravelDisutility(freeSpeedTravelTime);
-				LeastCostPathCalculator router = new DijkstraFactory().createPathCalculator(network, travelDisutility, freeSpeedTravelTime);
-				LeastCostPathCalculator.Path path = router.calcLeastCostPath(startNode, endNode, 0, null, null);
+		for (int i = 0; i < legRows.size(); i++) {
+			int row = legRows.getInt(i);
+			String mode = legs.getMode(row);
+			Coord startPoint = new Coord(legs.getStartX(row), legs.getStartY(row));
+			Coord endPoint = new Coord(legs.getEndX(row), legs.getEndY(row));
 
-				if (path == null || path.links.isEmpty()) {
-				failedRoutingOccurances.put(mode, failedRoutingOccurances.getOrDefault(mode, 0L) + 1);
-					return backup_travelTime;
-				} else {
-					// Use the total time of the calculated path
-					return path.travelTime;
-				}
+			startNodes[i] = NetworkUtils.getNearestNode(network, startPoint);
+			endNodes[i] = NetworkUtils.getNearestNode(network, endPoint);
+
+			// backup value is the actual travel time
+			travelTimesInSeconds[i] = legs.getTravTime(row);
+
+			switch (mode.toLowerCase()) {
+				case "bike":
+				case "walk":
+					double distance = CoordUtils.calcEuclideanDistance(startPoint, endPoint);
+					// use of beeline factor
+					distance *= beelineDistanceFactors.getOrDefault(mode, 1.3);
+
+					travelTimesInSeconds[i] = distance / teleportedModeSpeeds.getOrDefault(mode, 1.23);
+					break;
+
+				case "car":
+				case "freight":
+				case "truck":
+				case "ride":
+					networkLegsPerMode.computeIfAbsent(mode, k -> new ArrayList<>()).add(i);
+					break;
 
-			case "pt":
-			default:
+				case "pt":
+				default:
+			}
 		}
-		return backup_travelTime;
-	}
 
-	/**
-	 * method the parse time from String
- 	 */
-	private static Duration parseTime(String timeString) {
-		if (timeString != null && timeString.matches("\\d{2}:\\d{2}:\\d{2}")) {
-			String[] parts = timeString.split(":");
-			return Duration.ofHours(Long.parseLong(parts[0]))
-				.plusMinutes(Long.parseLong(parts[1]))
-				.plusSeconds(Long.parseLong(parts[2]));
+		for (Map.Entry<String, List<Integer>> entry : networkLegsPerMode.entrySet()) {
+			List<Integer> modeLegs = entry.getValue();
+			log.info("Free speed routing of {} {} legs", modeLegs.size(), entry.getKey());
+
+			FreeSpeedRouter router = freeSpeedRouterPerMode.computeIfAbsent(entry.getKey(), mode -> new FreeSpeedRouter(network, mode));
+
+			Node[] from = new Node[modeLegs.size()];
+			Node[] to = new Node[modeLegs.size()];
+			double[] backup = new double[modeLegs.size()];
+			for (int j = 0; j < modeLegs.size(); j++) {
+				from[j] = startNodes[modeLegs.get(j)];
+				to[j] = endNodes[modeLegs.get(j)];
+				backup[j] = travelTimesInSeconds[modeLegs.get(j)];
+			}
+
+			double[] freeSpeedTravelTimes = router.calcTravelTimes(from, to, backup);
+			for (int j = 0; j < modeLegs.size(); j++) {
+				travelTimesInSeconds[modeLegs.get(j)] = freeSpeedTravelTimes[j];
+			}
 		}
-		throw new IllegalArgumentException("Ungültiges Zeitformat: " + timeString);
+
+		return travelTimesInSeconds;
 	}
 
 	/**
 	 * method to change duration to readable format
  	 */
 	private static String formatDuration(Duration duration) {
-		long hours = duration.toHours();
-		long minutes = duration.toMinutesPart();
-		long seconds = duration.toSecondsPart();
-		return String.format("%02d:%02d:%02d", hours, minutes, seconds);
+		return AnalysisTimeUtils.formatTime(duration.getSeconds());
 	}
 
 	/**
-	 * method that calculates the departures per time interval, starting at 00:00
+	 * method that calculates the departures per time interval, starting at 00:00 - negative departure times (agents without trips) are skipped
  	 */
-	public static Map<String, Integer> calculateDeparturesPerInterval(Map<String, String> depTimePerAgent, int intervalInMinutes) throws ParseException {
+	public static Map<String, Integer> calculateDeparturesPerInterval(int[] depTimePerAgent, int intervalInMinutes) {
 		Map<String, Integer> departuresPerInterval = new HashMap<>();
 
-		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
-
-		// Iterate over all persons and their departure times
-		for (String person : depTimePerAgent.keySet()) {
-			String depTimeStr = depTimePerAgent.get(person);
-			Date depTime;
-			try {
-				depTime = timeFormat.parse(depTimeStr);
-			} catch (ParseException e) {
+		// Iterate over all agents and their departure times
+		for (int depTime : depTimePerAgent) {
+			if (depTime < 0) {
 				continue;
 			}
 
 			// Determine the interval into which the departure time falls
-			String intervalStart = getIntervalStart(depTime, intervalInMinutes);
+			String intervalStart = AnalysisTimeUtils.getTimeOfDayIntervalStart(depTime, intervalInMinutes);
 			departuresPerInterval.put(intervalStart, departuresPerInterval.getOrDefault(intervalStart, 0) + 1);
 		}
 
@@ -948,27 +911,22 @@ public class AgentBasedTrafficQualityAnalysis implements MATSimAppCommand {
 	}
 
 	/**
-	 * 	method to determine the interval start based on the departure time
- 	 */
-	private static String getIntervalStart(Date depTime, int intervalInMinutes) {
-
-		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-		Calendar cal = Calendar.getInstance();
-		cal.setTime(depTime);
-
-		// Calculate the minutes since midnight (00:00)
-		int minutesSinceMidnight = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
-
-		// Determine the interval by dividing the minutes by the length of the interval
-		int intervalIndex = minutesSinceMidnight / intervalInMinutes;
-
-		// Calculate the start time of the interval, set to midnight
-		Calendar intervalStartCal = Calendar.getInstance();
-		intervalStartCal.set(Calendar.HOUR_OF_DAY, 0);
-		intervalStartCal.set(Calendar.MINUTE, intervalIndex * intervalInMinutes);
-		intervalStartCal.set(Calendar.SECOND, 0);
-		intervalStartCal.set(Calendar.MILLISECOND, 0);
-
-		return timeFormat.format(intervalStartCal.getTime());
+	 * method joins the modes of an agent from the bit set over the mode codes sorted by name, agents without legs are inactive
+	 */
+	private static String formatModes(OutputTables tables, long[][] modesPerAgent, int agent) {
+		List<String> modes = new ArrayList<>();
+		for (int word = 0; word < modesPerAgent.length; word++) {
+			long bits = modesPerAgent[word][agent];
+			while (bits != 0) {
+				int bit = Long.numberOfTrailingZeros(bits);
+				modes.add(tables.getMode(word * Long.SIZE + bit));
+				bits &= bits - 1;
+			}
+		}
+		if (modes.isEmpty()) {
+			return "inactive";
+		}
+		Collections.sort(modes);
+		return String.join("-", modes);
 	}
 }
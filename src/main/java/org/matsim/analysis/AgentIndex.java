@@ -0,0 +1,143 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Dense registry of the agents within the study area as listed in the agentLiveabilityInfo.csv. Every agent gets an index from 0 to
+ * {@link #size()} - 1 in file order, per agent metrics of the dimension analyses are stored as primitive arrays over this index
+ * ({@link AgentLiveabilityTable.DoubleColumn}) instead of maps keyed by the person id. Rows of the {@link OutputTables} are mapped to the index via the shared
+ * person codes without creating id strings.
+ */
+final class AgentIndex {
+
+	private final String[] persons;
+	private final double[] homeX;
+	private final double[] homeY;
+	private final Object2IntMap<String> indexPerPerson;
+	private final OutputTables tables;
+
+	/**
+	 * agent index per person code of the {@link OutputTables}, -1 for persons outside the study area
+	 */
+	private volatile int[] indexPerPersonCode = new int[0];
+
+	private AgentIndex(OutputTables tables, String[] persons, double[] homeX, double[] homeY) {
+		this.tables = tables;
+		this.persons = persons;
+		this.homeX = homeX;
+		this.homeY = homeY;
+		this.indexPerPerson = new Object2IntOpenHashMap<>(persons.length);
+		this.indexPerPerson.defaultReturnValue(-1);
+		for (int i = 0; i < persons.length; i++) {
+			indexPerPerson.put(persons[i], i);
+		}
+	}
+
+	/**
+	 * method reads the agents and their home coordinates from the agentLiveabilityInfo.csv, rows are mapped with the person codes of the
+	 * given tables
+	 */
+	static AgentIndex read(Path agentLiveabilityInfoPath, OutputTables tables) throws IOException {
+		String[] persons = new String[1024];
+		double[] homeX = new double[1024];
+		double[] homeY = new double[1024];
+		int size = 0;
+
+		try (Reader reader = new FileReader(agentLiveabilityInfoPath.toFile());
+			 CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+
+			for (CSVRecord record : parser) {
+				if (size == persons.length) {
+					persons = Arrays.copyOf(persons, size * 2);
+					homeX = Arrays.copyOf(homeX, size * 2);
+					homeY = Arrays.copyOf(homeY, size * 2);
+				}
+				persons[size] = record.get("person");
+				homeX[size] = Double.parseDouble(record.get("home_x"));
+				homeY[size] = Double.parseDouble(record.get("home_y"));
+				size++;
+			}
+		}
+
+		return new AgentIndex(tables, Arrays.copyOf(persons, size), Arrays.copyOf(homeX, size), Arrays.copyOf(homeY, size));
+	}
+
+	int size() {
+		return persons.length;
+	}
+
+	/**
+	 * index of an agent or -1 if the person is not within the study area
+	 */
+	int indexOf(String person) {
+		return indexPerPerson.getInt(person);
+	}
+
+	/**
+	 * index of the agent of a row of the {@link OutputTables} or -1 if the person is not within the study area
+	 */
+	int indexOf(OutputTables.Movements movements, int row) {
+		int code = movements.getPersonCode(row);
+		int[] mapping = indexPerPersonCode;
+		if (code >= mapping.length) {
+			mapping = updatePersonCodes();
+		}
+		return mapping[code];
+	}
+
+	/**
+	 * the person dictionary only grows, so the mapping is rebuilt whenever a code beyond the known ones is requested
+	 */
+	private synchronized int[] updatePersonCodes() {
+		int[] mapping = new int[tables.getPersonCount()];
+		Arrays.fill(mapping, -1);
+		for (int i = 0; i < persons.length; i++) {
+			int code = tables.getPersonCode(persons[i]);
+			if (code >= 0) {
+				mapping[code] = i;
+			}
+		}
+		indexPerPersonCode = mapping;
+		return mapping;
+	}
+
+	String getPerson(int index) {
+		return persons[index];
+	}
+
+	double getHomeX(int index) {
+		return homeX[index];
+	}
+
+	double getHomeY(int index) {
+		return homeY[index];
+	}
+
+	/**
+	 * creates a new metric without any values
+	 */
+	AgentLiveabilityTable.DoubleColumn createMetric() {
+		return new AgentLiveabilityTable.DoubleColumn(null, persons.length);
+	}
+
+	/**
+	 * creates a new metric with the given value for every agent
+	 */
+	AgentLiveabilityTable.DoubleColumn createMetric(double initialValue) {
+		AgentLiveabilityTable.DoubleColumn metric = createMetric();
+		for (int i = 0; i < persons.length; i++) {
+			metric.set(i, initialValue);
+		}
+		return metric;
+	}
+}
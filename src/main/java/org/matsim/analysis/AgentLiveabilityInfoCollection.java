@@ -3,21 +3,8 @@ package org.matsim.analysis;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
 import com.opencsv.exceptions.CsvValidationException;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.geotools.api.data.FileDataStore;
-import org.geotools.api.data.FileDataStoreFinder;
-import org.geotools.api.data.SimpleFeatureSource;
-import org.geotools.api.feature.simple.SimpleFeature;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.FeatureIterator;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.Point;
 import org.matsim.application.ApplicationUtils;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.MATSimAppCommand;
@@ -30,8 +17,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 import static org.matsim.dashboard.RunLiveabilityDashboard.*;
 
@@ -68,7 +53,6 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	private final Path studyAreaShpPath = ApplicationUtils.matchInput("studyArea.shp", getValidInputDirectory());
 
 	private final Path outputAgentLiveabilityCSVPath = getValidLiveabilityOutputDirectory().resolve("overall_stats_agentLiveabilityInfo.csv");
-	private final Path tempAgentLiveabilityOutputPath = getValidLiveabilityOutputDirectory().resolve("overall_stats_agentLiveabilityInfo_tmp.csv");
 
 	private final Path outputIndicatorValuesCsvPath = getValidLiveabilityOutputDirectory().resolve("overall_stats_indicatorValues.csv");
 	private final Path tempIndicatorValuesCsvPath = getValidLiveabilityOutputDirectory().resolve("overall_stats_indicatorValues_tmp.csv");
@@ -76,8 +60,19 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	private final Path outputCategoryRankingCsvPath = getValidLiveabilityOutputDirectory().resolve("overall_tiles_indexDimensionValues.csv");
 	private final Path tempSummaryTilesOutputPath = getValidLiveabilityOutputDirectory().resolve("overall_tiles_indexDimensionValues_tmp.csv");
 
-	private Geometry studyAreaGeometry;
-	private final GeometryFactory geometryFactory = new GeometryFactory();
+	/**
+	 * lock for all read-modify-write operations on the shared files, dimensions may run in parallel
+	 */
+	private static final Object SHARED_FILES_LOCK = new Object();
+
+	/**
+	 * contribution of the dimension running on the current thread, if set the shared files are only written by {@link #commit(Contribution)}
+	 */
+	private static final ThreadLocal<Contribution> CONTRIBUTION = new ThreadLocal<>();
+
+	private AgentLiveabilityTable agentLiveabilityTable;
+
+	private StudyAreaClassifier studyArea;
 
 	private long counter = 0L;
 	private long nextCounterMsg = 1L;
@@ -86,7 +81,7 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 
-		loadStudyArea(studyAreaShpPath.toString());
+		studyArea = StudyAreaClassifier.read(studyAreaShpPath);
 		generateLiveabilityData();
 
 		generateSummaryTilesFile();
@@ -97,35 +92,26 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	}
 
 	/**
-	 * 	method writes csv for SimWrapper XYT Maps from given valueMap and coordinateMap
+	 * 	method writes a gzipped csv for SimWrapper XYT Maps from a metric of the study area agents, agents without a value are skipped
  	 */
-	public static void writeXYTDataToCSV(Path filePath, Map<String, Double> dataMap,
-										 Map<String, List<String>> coordinatesMap) throws IOException {
-		try (CSVWriter writer = new CSVWriter(new FileWriter(String.valueOf(filePath)),
-			CSVWriter.DEFAULT_SEPARATOR,
-			CSVWriter.NO_QUOTE_CHARACTER,
-			CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-			CSVWriter.DEFAULT_LINE_END)) {
+	static void writeXYTDataToCSV(Path filePath, AgentIndex agents, AgentLiveabilityTable.DoubleColumn metric) throws IOException {
+		writeXYTDataToCSV(filePath, agents, metric, false);
+	}
 
-			// Write Heading
-			writer.writeNext(new String[]{"# EPSG:25832"});
-			writer.writeNext(new String[]{"time", "x", "y", "value"});
-
-			// Write Data
-			for (Map.Entry<String, Double> entry : dataMap.entrySet()) {
-				String agentName = entry.getKey();
-				List<String> coordinates = coordinatesMap.get(agentName);
-
-				if (coordinates != null && coordinates.size() >= 2) {
-					writer.writeNext(new String[]{
-						String.valueOf(0.0),
-						coordinates.get(0), // X-Coordinate
-						coordinates.get(1), // Y-Coordinate
-						String.valueOf(entry.getValue()) // Value
-					});
+	/**
+	 * 	method writes a gzipped csv for SimWrapper XYT Maps from a metric of the study area agents. Agents without a value are skipped, or
+	 * 	written with the value "null" if withMissingValues is set (as for the maps which contain every study area agent).
+ 	 */
+	static void writeXYTDataToCSV(Path filePath, AgentIndex agents, AgentLiveabilityTable.DoubleColumn metric, boolean withMissingValues)
+		throws IOException {
+		try (XYTMapWriter writer = new XYTMapWriter(filePath)) {
+			for (int i = 0; i < agents.size(); i++) {
+				if (metric.isSet(i)) {
+					writer.add(agents.getHomeX(i), agents.getHomeY(i), metric.get(i));
+				} else if (withMissingValues) {
+					writer.addMissing(agents.getHomeX(i), agents.getHomeY(i));
 				}
 			}
-			log.info("XYT Map written: {}", filePath);
 		}
 	}
 
@@ -137,26 +123,30 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 			throw new IllegalArgumentException("Map is empty");
 		}
 
-		// Filter out null values
-		List<Double> sortedValues = values.values().stream()
-			.filter(Objects::nonNull)  // Remove null values
-			.collect(Collectors.toList());
+		// null values are skipped, the median is selected without sorting all values
+		double[] nonNullValues = values.values().stream()
+			.filter(Objects::nonNull)
+			.mapToDouble(Double::doubleValue)
+			.toArray();
 
 		// If all values were null, throw an exception
-		if (sortedValues.isEmpty()) {
+		if (nonNullValues.length == 0) {
 			throw new IllegalArgumentException("Map contains only null values");
 		}
 
-		Collections.sort(sortedValues);
+		return Quantiles.median(nonNullValues);
+	}
 
-		int size = sortedValues.size();
-		if (size % 2 == 0) {
-			// Average of the two middle values with an even number
-			return (sortedValues.get(size / 2 - 1) + sortedValues.get(size / 2)) / 2.0;
-		} else {
-			// The average value for an odd number
-			return sortedValues.get(size/2);
+	/**
+	 * method calculates Median of the set values of a metric
+	 */
+	static double calculateMedian(AgentLiveabilityTable.DoubleColumn metric) {
+		double[] values = metric.toArray();
+		if (values.length == 0) {
+			throw new IllegalArgumentException("Metric contains no values");
 		}
+		// the values are a copy of the metric, so they are reordered in place
+		return Quantiles.quantileInPlace(values, values.length, 0.5);
 	}
 
 	/**
@@ -171,11 +161,10 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 
 		log.info("Starting spatial check for agents within study area.");
 
-		try (InputStream fileStream = new FileInputStream(personsCsvPath.toFile());
-			 InputStream gzipStream = new GZIPInputStream(fileStream);
-			 Reader personsReader = new InputStreamReader(gzipStream);
-			 CSVParser personsParser = new CSVParser(personsReader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'));
-			 CSVWriter agentLiveabilityWriter = new CSVWriter(new FileWriter(outputAgentLiveabilityCSVPath.toFile()),
+		// persons are read once and shared with the other dimensions
+		OutputTables.Persons persons = getRunOutputContext().getOutputTables().persons(personsCsvPath);
+
+		try (CSVWriter agentLiveabilityWriter = new CSVWriter(new FileWriter(outputAgentLiveabilityCSVPath.toFile()),
 				 CSVWriter.DEFAULT_SEPARATOR,
 				 CSVWriter.NO_QUOTE_CHARACTER,
 				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
@@ -183,10 +172,16 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 
 			agentLiveabilityWriter.writeNext(new String[]{"person", "home_x", "home_y"});
 
-			for (CSVRecord csvPersonRecord : personsParser) {
-				String person = csvPersonRecord.get("person");
-				String homeX = (csvPersonRecord.get("home_x"));
-				String homeY = (csvPersonRecord.get("home_y"));
+			// all home locations are classified in one parallel batch, persons without (valid) home coordinates are NaN and therefore outside
+			double[] homeX = new double[persons.size()];
+			double[] homeY = new double[persons.size()];
+			for (int row = 0; row < persons.size(); row++) {
+				homeX[row] = persons.getHomeX(row);
+				homeY[row] = persons.getHomeY(row);
+			}
+			boolean[] insideStudyArea = studyArea.isInside(homeX, homeY);
+
+			for (int row = 0; row < persons.size(); row++) {
 
 				// logarithmic counter for logger
 				++this.counter;
@@ -195,16 +190,10 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 					log.info(" person # {}", this.counter);
 				}
 
-				if (homeX != null && !homeX.isEmpty() && homeY != null && !homeY.isEmpty()) {
-					try {
-						double x = Double.parseDouble(homeX);
-						double y = Double.parseDouble(homeY);
-						if (isInsideStudyArea(x, y)) {
-							agentLiveabilityWriter.writeNext(new String[]{person, homeX, homeY});
-						}
-					} catch (NumberFormatException e) {
-						log.error("Invalid coordinates for person {}: {}, {}", person, homeX, homeY);
-					}
+				// persons without (valid) home coordinates are skipped, invalid values are already logged while reading
+				if (persons.hasHome(row) && insideStudyArea[row]) {
+					// the coordinates are written as in the persons file
+					agentLiveabilityWriter.writeNext(new String[]{persons.getPerson(row), persons.getHomeXText(row), persons.getHomeYText(row)});
 				}
 			}
 		}
@@ -214,53 +203,60 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	/**
 	 * method to extend the agentLiveabilityInfo.csv file with agent based information from the analysis classes of the dimensions (this is where they are called).
 	 * Data has to be provided as maps - those are used throughout the code to guarantee agent based values and the mapping of those to the universal peron ids.
+	 * The column is only added in memory, {@link #writeAgentLiveabilityInfoCsv()} has to be called once after all columns of a dimension are added.
 	 */
 	public void extendAgentLiveabilityInfoCsvWithAttribute(Map<String, Double> additionalData, String newAttributeName) throws IOException {
+		getAgentLiveabilityTable().addColumn(newAttributeName, additionalData);
+		log.info("Column added: {}", newAttributeName);
+	}
 
-		try (CSVReader personEntryReader = new CSVReader(new FileReader(outputAgentLiveabilityCSVPath.toFile()));
-			 CSVWriter valueWriter = new CSVWriter(new FileWriter(tempAgentLiveabilityOutputPath.toFile()),
-				 CSVWriter.DEFAULT_SEPARATOR,
-				 CSVWriter.NO_QUOTE_CHARACTER,
-				 CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-				 CSVWriter.DEFAULT_LINE_END)) {
-
-			//read header
-			String[] header = personEntryReader.readNext();
-			if (header == null) {
-				throw new IOException("The persons input csv is empty.");
+	/**
+	 * method to extend the agentLiveabilityInfo.csv file with a metric of the study area agents, agents without a value stay empty.
+	 * Like {@link #extendAgentLiveabilityInfoCsvWithAttribute(Map, String)} the column is only added in memory.
+	 */
+	void extendAgentLiveabilityInfoCsvWithAttribute(AgentIndex agents, AgentLiveabilityTable.DoubleColumn metric, String newAttributeName) throws IOException {
+		AgentLiveabilityTable table = getAgentLiveabilityTable();
+		AgentLiveabilityTable.DoubleColumn column = table.addColumn(newAttributeName);
+		for (int i = 0; i < agents.size(); i++) {
+			if (metric.isSet(i)) {
+				int row = table.indexOf(agents.getPerson(i));
+				if (row >= 0) {
+					column.set(row, metric.get(i));
+				}
 			}
+		}
+		log.info("Column added: {}", newAttributeName);
+	}
 
-			// add new column for the header extracted from the input coming from the analysis classes
-			String[] newHeader = new String[header.length + 1];
-			System.arraycopy(header, 0, newHeader, 0, header.length);
-			newHeader[header.length] = newAttributeName;
-			valueWriter.writeNext(newHeader);
-
-			// extends each person line with the content from the input in a next column
-			String[] line;
-			while ((line = personEntryReader.readNext()) != null) {
-				String personKey = line[0];
-
-				// get new attribute values from the map
-				Object value = additionalData.containsKey(personKey) ? additionalData.get(personKey) : "";
-				String formattedValue = (value != null) ? value.toString() : "";
-
-				// add new column to the line
-				String[] newLine = new String[line.length + 1];
-				System.arraycopy(line, 0, newLine, 0, line.length);
-				newLine[line.length] = formattedValue;
-
-				valueWriter.writeNext(newLine);
-			}
+	/**
+	 * method writes all columns added by the dimension analysis into the agentLiveabilityInfo.csv at once
+	 */
+	public void writeAgentLiveabilityInfoCsv() throws IOException {
+		if (agentLiveabilityTable == null) {
+			return;
+		}
 
-		} catch (CsvValidationException e) {
-			throw new RuntimeException(e);
+		Contribution contribution = CONTRIBUTION.get();
+		if (contribution != null) {
+			contribution.addTable(agentLiveabilityTable);
+			agentLiveabilityTable = null;
+			return;
 		}
 
-		// rewrite original file by temp file
-		Files.move(tempAgentLiveabilityOutputPath, outputAgentLiveabilityCSVPath, StandardCopyOption.REPLACE_EXISTING);
+		synchronized (SHARED_FILES_LOCK) {
+			agentLiveabilityTable.flush();
+		}
+		log.info("Liveability-CSV written with all new columns: {}", outputAgentLiveabilityCSVPath);
+	}
 
-		log.info("File written with new column: {}", newAttributeName);
+	/**
+	 * in-memory table of the agentLiveabilityInfo.csv, which is read on first use
+	 */
+	AgentLiveabilityTable getAgentLiveabilityTable() throws IOException {
+		if (agentLiveabilityTable == null) {
+			agentLiveabilityTable = AgentLiveabilityTable.read(outputAgentLiveabilityCSVPath);
+		}
+		return agentLiveabilityTable;
 	}
 
 	/**
@@ -287,6 +283,19 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	 */
 	public void extendSummaryTilesCsvWithAttribute(String dimensionValue, String dimensionName) throws IOException {
 
+		Contribution contribution = CONTRIBUTION.get();
+		if (contribution != null) {
+			contribution.addSummaryTile(dimensionValue, dimensionName);
+			return;
+		}
+
+		synchronized (SHARED_FILES_LOCK) {
+			appendSummaryTile(dimensionValue, dimensionName);
+		}
+	}
+
+	private void appendSummaryTile(String dimensionValue, String dimensionName) throws IOException {
+
 		try (CSVReader tilesReader = new CSVReader(new FileReader(outputCategoryRankingCsvPath.toFile()));
 			 CSVWriter tilesWriter = new CSVWriter(new FileWriter(tempSummaryTilesOutputPath.toFile()))) {
 
@@ -339,6 +348,19 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	 */
 	public void extendIndicatorValuesCsvWithAttribute(String dimension, String indicator, String medianValue, String limit, String indicatorValue) throws IOException {
 
+		Contribution contribution = CONTRIBUTION.get();
+		if (contribution != null) {
+			contribution.addIndicatorValue(dimension, indicator, medianValue, limit, indicatorValue);
+			return;
+		}
+
+		synchronized (SHARED_FILES_LOCK) {
+			appendIndicatorValue(dimension, indicator, medianValue, limit, indicatorValue);
+		}
+	}
+
+	private void appendIndicatorValue(String dimension, String indicator, String medianValue, String limit, String indicatorValue) throws IOException {
+
 		try (CSVReader indicatorReader = new CSVReader(new FileReader(outputIndicatorValuesCsvPath.toFile()));
 			 CSVWriter indicatorWriter = new CSVWriter(new FileWriter(tempIndicatorValuesCsvPath.toFile()),
 				 CSVWriter.DEFAULT_SEPARATOR,
@@ -362,28 +384,146 @@ public class AgentLiveabilityInfoCollection implements MATSimAppCommand {
 	}
 
 	/**
-	 * method prepares study area geometry from shapefile for isInsideStudyArea method
+	 * method starts collecting the contributions of the dimension running on the current thread instead of writing them into the shared files
+	 */
+	static Contribution beginContribution() {
+		Contribution contribution = new Contribution();
+		CONTRIBUTION.set(contribution);
+		return contribution;
+	}
+
+	/**
+	 * method stops collecting contributions on the current thread
 	 */
-	private void loadStudyArea(String shapefilePath) throws IOException {
-		File file = new File(shapefilePath);
-		FileDataStore store = FileDataStoreFinder.getDataStore(file);
-		SimpleFeatureSource featureSource = store.getFeatureSource();
-		SimpleFeatureCollection featureCollection = featureSource.getFeatures();
-
-		try (FeatureIterator<SimpleFeature> features = featureCollection.features()) {
-			if (features.hasNext()) {
-				SimpleFeature feature = features.next();
-				studyAreaGeometry = (Geometry) feature.getDefaultGeometry();
+	static void endContribution() {
+		CONTRIBUTION.remove();
+	}
+
+	/**
+	 * method writes a collected contribution into the shared files - the columns are merged into the current agentLiveabilityInfo.csv, which
+	 * may already contain the columns of other dimensions
+	 */
+	void commit(Contribution contribution) throws IOException {
+		synchronized (SHARED_FILES_LOCK) {
+			if (contribution.hasColumns()) {
+				AgentLiveabilityTable table = AgentLiveabilityTable.read(outputAgentLiveabilityCSVPath);
+				for (AgentLiveabilityTable contributedTable : contribution.tables) {
+					for (AgentLiveabilityTable.DoubleColumn column : contributedTable.getColumns()) {
+						table.addColumn(column);
+					}
+				}
+				table.flush();
+				log.info("Liveability-CSV written with all new columns: {}", outputAgentLiveabilityCSVPath);
+			}
+			for (String[] tile : contribution.summaryTiles) {
+				appendSummaryTile(tile[0], tile[1]);
+			}
+			for (String[] indicator : contribution.indicatorValues) {
+				appendIndicatorValue(indicator[0], indicator[1], indicator[2], indicator[3], indicator[4]);
 			}
 		}
 	}
 
 	/**
-	 * method checks whether a point (agent) is within the given study area based on the given coordinates
+	 * Columns, summary tiles and indicator values of one dimension, collected while the dimension runs in parallel to other dimensions.
 	 */
-	private boolean isInsideStudyArea(double x, double y) {
-		Point point = geometryFactory.createPoint(new Coordinate(x, y));
-		boolean inside = studyAreaGeometry != null && studyAreaGeometry.contains(point);
-		return inside;
+	static final class Contribution {
+
+		private final List<AgentLiveabilityTable> tables = new ArrayList<>();
+		private final List<String[]> summaryTiles = new ArrayList<>();
+		private final List<String[]> indicatorValues = new ArrayList<>();
+
+		void addTable(AgentLiveabilityTable table) {
+			tables.add(table);
+		}
+
+		void addSummaryTile(String dimensionValue, String dimensionName) {
+			summaryTiles.add(new String[]{dimensionValue, dimensionName});
+		}
+
+		void addIndicatorValue(String dimension, String indicator, String medianValue, String limit, String indicatorValue) {
+			indicatorValues.add(new String[]{dimension, indicator, medianValue, limit, indicatorValue});
+		}
+
+		/**
+		 * method writes the contribution into a file with the columns per person and a file with the summary tiles and indicator values
+		 */
+		void write(Path columnsPath, Path rowsPath) throws IOException {
+			Files.deleteIfExists(columnsPath);
+			if (hasColumns()) {
+				List<AgentLiveabilityTable.DoubleColumn> columns = new ArrayList<>();
+				for (AgentLiveabilityTable table : tables) {
+					columns.addAll(table.getColumns());
+				}
+				AgentLiveabilityTable persons = tables.get(0);
+
+				try (CSVWriter writer = new CSVWriter(new FileWriter(columnsPath.toFile()),
+					CSVWriter.DEFAULT_SEPARATOR,
+					CSVWriter.NO_QUOTE_CHARACTER,
+					CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+					CSVWriter.DEFAULT_LINE_END)) {
+
+					String[] line = new String[columns.size() + 1];
+					line[0] = "person";
+					for (int c = 0; c < columns.size(); c++) {
+						line[c + 1] = columns.get(c).getName();
+					}
+					writer.writeNext(line);
+
+					for (int i = 0; i < persons.size(); i++) {
+						line[0] = persons.getPerson(i);
+						for (int c = 0; c < columns.size(); c++) {
+							line[c + 1] = columns.get(c).isSet(i) ? String.valueOf(columns.get(c).get(i)) : "";
+						}
+						writer.writeNext(line);
+					}
+				}
+			}
+
+			// tiles and indicator values may contain any text, so they are quoted
+			try (CSVWriter writer = new CSVWriter(new FileWriter(rowsPath.toFile()))) {
+				for (String[] tile : summaryTiles) {
+					writer.writeNext(new String[]{"tile", tile[0], tile[1]});
+				}
+				for (String[] indicator : indicatorValues) {
+					writer.writeNext(new String[]{"indicator", indicator[0], indicator[1], indicator[2], indicator[3], indicator[4]});
+				}
+			}
+		}
+
+		/**
+		 * method reads a contribution written by {@link #write(Path, Path)}
+		 */
+		static Contribution read(Path columnsPath, Path rowsPath) throws IOException {
+			Contribution contribution = new Contribution();
+			if (Files.exists(columnsPath)) {
+				AgentLiveabilityTable table = AgentLiveabilityTable.read(columnsPath);
+				table.parseExistingColumns();
+				contribution.tables.add(table);
+			}
+
+			try (CSVReader reader = new CSVReader(new FileReader(rowsPath.toFile()))) {
+				String[] line;
+				while ((line = reader.readNext()) != null) {
+					if (line[0].equals("tile")) {
+						contribution.summaryTiles.add(Arrays.copyOfRange(line, 1, 3));
+					} else {
+						contribution.indicatorValues.add(Arrays.copyOfRange(line, 1, 6));
+					}
+				}
+			} catch (CsvValidationException e) {
+				throw new IOException(e);
+			}
+			return contribution;
+		}
+
+		private boolean hasColumns() {
+			for (AgentLiveabilityTable table : tables) {
+				if (!table.getColumns().isEmpty()) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 }
@@ -0,0 +1,283 @@
+package org.matsim.analysis;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory, column based representation of the overall_stats_agentLiveabilityInfo.csv. Persons are kept in file order and addressed by
+ * a dense index, columns added by the dimension analyses are stored as primitive double arrays. The file is read once and written once
+ * with {@link #flush()} instead of being rewritten for every single column.
+ */
+final class AgentLiveabilityTable {
+
+	private final Path path;
+	private final String personColumn;
+	private final String[] persons;
+	private final Object2IntMap<String> personIndex;
+
+	/**
+	 * Columns already contained in the file, kept as read to stay byte compatible.
+	 */
+	private final List<String> existingNames = new ArrayList<>();
+	private final List<String[]> existingValues = new ArrayList<>();
+
+	private final List<DoubleColumn> columns = new ArrayList<>();
+
+	private AgentLiveabilityTable(Path path, String personColumn, String[] persons, Object2IntMap<String> personIndex) {
+		this.path = path;
+		this.personColumn = personColumn;
+		this.persons = persons;
+		this.personIndex = personIndex;
+	}
+
+	/**
+	 * method reads the agent liveability info file with all its existing columns into memory
+	 */
+	static AgentLiveabilityTable read(Path path) throws IOException {
+
+		List<String[]> rows = new ArrayList<>();
+		String[] header;
+
+		try (CSVReader reader = new CSVReader(new FileReader(path.toFile()))) {
+			header = reader.readNext();
+			if (header == null) {
+				throw new IOException("The persons input csv is empty.");
+			}
+
+			String[] line;
+			while ((line = reader.readNext()) != null) {
+				rows.add(line);
+			}
+		} catch (CsvValidationException e) {
+			throw new RuntimeException(e);
+		}
+
+		String[] persons = new String[rows.size()];
+		Object2IntMap<String> personIndex = new Object2IntOpenHashMap<>(rows.size());
+		personIndex.defaultReturnValue(-1);
+
+		for (int i = 0; i < rows.size(); i++) {
+			persons[i] = rows.get(i)[0];
+			personIndex.put(persons[i], i);
+		}
+
+		AgentLiveabilityTable table = new AgentLiveabilityTable(path, header[0], persons, personIndex);
+
+		for (int c = 1; c < header.length; c++) {
+			String[] values = new String[rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				String[] row = rows.get(i);
+				values[i] = c < row.length ? row[c] : "";
+			}
+			table.existingNames.add(header[c]);
+			table.existingValues.add(values);
+		}
+
+		return table;
+	}
+
+	int size() {
+		return persons.length;
+	}
+
+	/**
+	 * dense index of a person or -1 if the person is not part of the table
+	 */
+	int indexOf(String person) {
+		return personIndex.getInt(person);
+	}
+
+	String getPerson(int index) {
+		return persons[index];
+	}
+
+	/**
+	 * registers a new, initially empty, column which is appended at the end of the file
+	 */
+	DoubleColumn addColumn(String name) {
+		DoubleColumn column = new DoubleColumn(name, persons.length);
+		columns.add(column);
+		return column;
+	}
+
+	/**
+	 * registers a new column filled from a map of person ids - persons not contained in the map or with null values stay empty
+	 */
+	DoubleColumn addColumn(String name, Map<String, Double> values) {
+		DoubleColumn column = addColumn(name);
+		for (int i = 0; i < persons.length; i++) {
+			Double value = values.get(persons[i]);
+			if (value != null) {
+				column.set(i, value);
+			}
+		}
+		return column;
+	}
+
+	/**
+	 * registers a copy of a column added to another table of the same file, the persons of both tables have to be equal
+	 */
+	DoubleColumn addColumn(DoubleColumn other) {
+		if (other.values.length != persons.length) {
+			throw new IllegalStateException("Column " + other.name + " has " + other.values.length + " rows, the table has " + persons.length);
+		}
+		DoubleColumn column = addColumn(other.name);
+		System.arraycopy(other.values, 0, column.values, 0, persons.length);
+		column.present.or(other.present);
+		return column;
+	}
+
+	/**
+	 * method turns the columns read from the file into double columns as if they were added, empty cells stay unset
+	 */
+	void parseExistingColumns() {
+		for (int c = 0; c < existingNames.size(); c++) {
+			DoubleColumn column = addColumn(existingNames.get(c));
+			String[] values = existingValues.get(c);
+			for (int i = 0; i < persons.length; i++) {
+				if (!values[i].isEmpty()) {
+					column.set(i, Double.parseDouble(values[i]));
+				}
+			}
+		}
+		existingNames.clear();
+		existingValues.clear();
+	}
+
+	/**
+	 * columns added to this table since it was read
+	 */
+	List<DoubleColumn> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+	/**
+	 * method writes all columns into a temporary file which then atomically replaces the original file
+	 */
+	void flush() throws IOException {
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (CSVWriter writer = new CSVWriter(new FileWriter(tmp.toFile()),
+			CSVWriter.DEFAULT_SEPARATOR,
+			CSVWriter.NO_QUOTE_CHARACTER,
+			CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+			CSVWriter.DEFAULT_LINE_END)) {
+
+			int width = 1 + existingNames.size() + columns.size();
+
+			String[] header = new String[width];
+			header[0] = personColumn;
+			for (int c = 0; c < existingNames.size(); c++) {
+				header[1 + c] = existingNames.get(c);
+			}
+			for (int c = 0; c < columns.size(); c++) {
+				header[1 + existingNames.size() + c] = columns.get(c).name;
+			}
+			writer.writeNext(header);
+
+			String[] line = new String[width];
+			for (int i = 0; i < persons.length; i++) {
+				line[0] = persons[i];
+				for (int c = 0; c < existingValues.size(); c++) {
+					line[1 + c] = existingValues.get(c)[i];
+				}
+				for (int c = 0; c < columns.size(); c++) {
+					line[1 + existingNames.size() + c] = columns.get(c).format(i);
+				}
+				writer.writeNext(line);
+			}
+		}
+
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Primitive double column with a marker for values that are not set (like a missing map entry), which are written as empty cells. Unnamed
+	 * columns over the {@link AgentIndex} hold the per agent metrics of the dimension analyses.
+	 */
+	static final class DoubleColumn {
+
+		private final String name;
+		private final double[] values;
+		private final BitSet present;
+
+		DoubleColumn(String name, int size) {
+			this.name = name;
+			this.values = new double[size];
+			this.present = new BitSet(size);
+		}
+
+		String getName() {
+			return name;
+		}
+
+		void set(int index, double value) {
+			values[index] = value;
+			present.set(index);
+		}
+
+		/**
+		 * adds the value to the current value of the row, rows without a value start at 0
+		 */
+		void add(int index, double value) {
+			values[index] = present.get(index) ? values[index] + value : value;
+			present.set(index);
+		}
+
+		boolean isSet(int index) {
+			return present.get(index);
+		}
+
+		double get(int index) {
+			return values[index];
+		}
+
+		double getOrDefault(int index, double defaultValue) {
+			return present.get(index) ? values[index] : defaultValue;
+		}
+
+		/**
+		 * number of rows with a value
+		 */
+		int count() {
+			return present.cardinality();
+		}
+
+		/**
+		 * all set values in row order
+		 */
+		double[] toArray() {
+			double[] result = new double[present.cardinality()];
+			int n = 0;
+			for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+				result[n++] = values[i];
+			}
+			return result;
+		}
+
+		private String format(int index) {
+			return present.get(index) ? String.valueOf(values[index]) : "";
+		}
+	}
+}
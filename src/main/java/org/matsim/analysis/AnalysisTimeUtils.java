@@ -0,0 +1,133 @@
+package org.matsim.analysis;
+
+/**
+ * Time parsing, formatting and bucketing for the liveability analyses. Times are handled as int seconds since midnight of the simulated day,
+ * times past 24:00:00 are valid. Parsing works directly on the characters (or bytes) of a field and formatting and bucketing only use integer
+ * arithmetic, so no Date, Calendar or formatter objects are created in the loops over trips and legs.
+ */
+final class AnalysisTimeUtils {
+
+	static final int SECONDS_PER_DAY = 24 * 3600;
+
+	private AnalysisTimeUtils() {
+	}
+
+	/**
+	 * method parses a time in the format hh:mm:ss, hh:mm or plain seconds into seconds, the hours may exceed 24 - every part needs at least
+	 * one digit
+	 */
+	static int parseTime(CharSequence time) {
+		int length = time.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("Invalid time format: " + time);
+		}
+
+		int seconds = 0;
+		int part = 0;
+		int parts = 1;
+		boolean digits = false;
+		for (int pos = 0; pos < length; pos++) {
+			char c = time.charAt(pos);
+			if (c >= '0' && c <= '9') {
+				part = part * 10 + (c - '0');
+				digits = true;
+			} else if (c == ':' && parts < 3 && digits) {
+				seconds = (seconds + part) * 60;
+				part = 0;
+				parts++;
+				digits = false;
+			} else {
+				throw new IllegalArgumentException("Invalid time format: " + time);
+			}
+		}
+		if (!digits) {
+			throw new IllegalArgumentException("Invalid time format: " + time);
+		}
+		return combine(seconds, part, parts);
+	}
+
+	/**
+	 * method parses a time like {@link #parseTime(CharSequence)} from the ascii bytes in [from, to) - returns -1 if the bytes are no valid time
+	 */
+	static int parseTime(byte[] bytes, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+
+		int seconds = 0;
+		int part = 0;
+		int parts = 1;
+		boolean digits = false;
+		for (int pos = from; pos < to; pos++) {
+			byte b = bytes[pos];
+			if (b >= '0' && b <= '9') {
+				part = part * 10 + (b - '0');
+				digits = true;
+			} else if (b == ':' && parts < 3 && digits) {
+				seconds = (seconds + part) * 60;
+				part = 0;
+				parts++;
+				digits = false;
+			} else {
+				return -1;
+			}
+		}
+		if (!digits) {
+			return -1;
+		}
+		return combine(seconds, part, parts);
+	}
+
+	private static int combine(int seconds, int lastPart, int parts) {
+		if (parts == 2) {
+			// hh:mm
+			return (seconds + lastPart) * 60;
+		}
+		return seconds + lastPart;
+	}
+
+	/**
+	 * method formats seconds as hh:mm:ss, hours are not wrapped at 24 and have at least two digits
+	 */
+	static String formatTime(long seconds) {
+		if (seconds < 0) {
+			return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+		}
+
+		StringBuilder builder = new StringBuilder(8);
+		appendTwoDigits(builder, seconds / 3600).append(':');
+		appendTwoDigits(builder, (seconds % 3600) / 60).append(':');
+		return appendTwoDigits(builder, seconds % 60).toString();
+	}
+
+	/**
+	 * method formats seconds as hh:mm, hours are not wrapped at 24 and have at least two digits
+	 */
+	static String formatHoursMinutes(long seconds) {
+		StringBuilder builder = new StringBuilder(5);
+		appendTwoDigits(builder, seconds / 3600).append(':');
+		return appendTwoDigits(builder, (seconds % 3600) / 60).toString();
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder builder, long value) {
+		if (value < 10) {
+			builder.append('0');
+		}
+		return builder.append(value);
+	}
+
+	/**
+	 * method returns the start (in seconds) of the fixed width interval containing the given time, intervals start at 00:00:00
+	 */
+	static int getIntervalStart(int seconds, int intervalInSeconds) {
+		return seconds - Math.floorMod(seconds, intervalInSeconds);
+	}
+
+	/**
+	 * method returns the start of the interval containing the given time as time of day (hh:mm), times past midnight are assigned to the
+	 * intervals of the early morning
+	 */
+	static String getTimeOfDayIntervalStart(int seconds, int intervalInMinutes) {
+		return formatHoursMinutes(getIntervalStart(Math.floorMod(seconds, SECONDS_PER_DAY), intervalInMinutes * 60));
+	}
+}
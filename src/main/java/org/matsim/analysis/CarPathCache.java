@@ -0,0 +1,84 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of congested car travel times between two nodes per departure time bin. Trips with the same origin and destination node departing
+ * in the same bin are only routed once.
+ * <p>
+ * Every route is calculated for the middle of the departure bin, so the departure time is shifted by at most half a bin. With bins of the
+ * size of the link travel time bins the first link is always evaluated in the bin of the actual departure, the travel times of later links
+ * may be taken from the neighbouring bin.
+ */
+final class CarPathCache {
+
+	private static final Logger log = LogManager.getLogger(CarPathCache.class);
+
+	/**
+	 * marker for node pairs without a route
+	 */
+	private static final double NO_ROUTE = Double.NaN;
+
+	private final ThreadLocal<LeastCostPathCalculator> router;
+	private final Map<Key, Double> cache = new ConcurrentHashMap<>();
+	private final int capacity;
+	private final double binSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	CarPathCache(Supplier<LeastCostPathCalculator> routerFactory, int capacity, double binSize) {
+		this.router = ThreadLocal.withInitial(routerFactory);
+		this.capacity = capacity;
+		this.binSize = binSize;
+	}
+
+	/**
+	 * method returns the car travel time from the start to the end node or null if there is no route - can be called from multiple threads,
+	 * routes are calculated with the router of the calling thread, once the capacity is reached new routes are no longer cached
+	 */
+	Double getTravelTime(Node startNode, Node endNode, double departureTime) {
+		int bin = (int) (departureTime / binSize);
+		Key key = new Key(startNode.getId().index(), endNode.getId().index(), bin);
+
+		Double travelTime = cache.get(key);
+		if (travelTime != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			// two threads may route the same key at once, both get the same result as the route only depends on the bin
+			LeastCostPathCalculator.Path path = router.get().calcLeastCostPath(startNode, endNode, (bin + 0.5) * binSize, null, null);
+			travelTime = path == null ? NO_ROUTE : path.travelTime;
+			if (cache.size() < capacity) {
+				cache.putIfAbsent(key, travelTime);
+			}
+		}
+
+		return Double.isNaN(travelTime) ? null : travelTime;
+	}
+
+	/**
+	 * share of requests answered from the cache
+	 */
+	double getHitRate() {
+		long hitCount = hits.sum();
+		long requests = hitCount + misses.sum();
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	void logStatistics() {
+		log.info("Car path cache: {} hits, {} misses, hit rate {}%, {} cached routes in bins of {} s", hits.sum(), misses.sum(),
+			String.format("%.1f", 100 * getHitRate()), cache.size(), binSize);
+	}
+
+	private record Key(int startNode, int endNode, int bin) {
+	}
+}
@@ -0,0 +1,127 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Daily volumes of a fixed set of links (e.g. the count links of the dtv comparison) per network mode. Other than the
+ * {@link VolumesAnalyzer} no hourly bins are kept for every link of the network: link leave events of links outside the
+ * set are dropped with one array lookup and the volume of a counted link is a single counter per mode. Like the VolumesAnalyzer a vehicle is
+ * counted with the network mode of its last vehicle enters traffic event, link leave events of vehicles without one are ignored.
+ */
+final class CountLinkVolumeCollector implements LinkLeaveEventHandler, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
+
+	private static final int NO_LINK = -1;
+
+	private final List<Id<Link>> links;
+
+	/**
+	 * position in {@link #links} per link id index, {@link #NO_LINK} for links which are not counted
+	 */
+	private final int[] slotPerLinkIndex;
+
+	private final List<String> modes = new ArrayList<>();
+
+	/**
+	 * volumes per mode code and link slot
+	 */
+	private int[][] volumes = new int[0][];
+
+	/**
+	 * mode code + 1 of the vehicles currently in traffic per vehicle id index, 0 for vehicles which are not in traffic
+	 */
+	private int[] modePerVehicleIndex = new int[1024];
+
+	CountLinkVolumeCollector(Collection<Id<Link>> countLinks) {
+		this.links = new ArrayList<>();
+		int maxIndex = -1;
+		for (Id<Link> link : countLinks) {
+			maxIndex = Math.max(maxIndex, link.index());
+		}
+
+		this.slotPerLinkIndex = new int[maxIndex + 1];
+		Arrays.fill(slotPerLinkIndex, NO_LINK);
+		for (Id<Link> link : countLinks) {
+			if (slotPerLinkIndex[link.index()] == NO_LINK) {
+				slotPerLinkIndex[link.index()] = links.size();
+				links.add(link);
+			}
+		}
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		int vehicle = event.getVehicleId().index();
+		if (vehicle >= modePerVehicleIndex.length) {
+			modePerVehicleIndex = Arrays.copyOf(modePerVehicleIndex, Math.max(vehicle + 1, modePerVehicleIndex.length * 2));
+		}
+		modePerVehicleIndex[vehicle] = getModeCode(event.getNetworkMode()) + 1;
+	}
+
+	@Override
+	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		int vehicle = event.getVehicleId().index();
+		if (vehicle < modePerVehicleIndex.length) {
+			modePerVehicleIndex[vehicle] = 0;
+		}
+	}
+
+	@Override
+	public void handleEvent(LinkLeaveEvent event) {
+		int link = event.getLinkId().index();
+		if (link >= slotPerLinkIndex.length || slotPerLinkIndex[link] == NO_LINK) {
+			return;
+		}
+
+		int vehicle = event.getVehicleId().index();
+		if (vehicle < modePerVehicleIndex.length && modePerVehicleIndex[vehicle] > 0) {
+			volumes[modePerVehicleIndex[vehicle] - 1][slotPerLinkIndex[link]]++;
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		for (int[] modeVolumes : volumes) {
+			Arrays.fill(modeVolumes, 0);
+		}
+		Arrays.fill(modePerVehicleIndex, 0);
+	}
+
+	/**
+	 * daily volume of a counted link for the given network mode, 0 if the link is not counted or the mode was not seen
+	 */
+	int getVolume(Id<Link> link, String mode) {
+		int index = link.index();
+		int code = modes.indexOf(mode);
+		if (index >= slotPerLinkIndex.length || slotPerLinkIndex[index] == NO_LINK || code < 0) {
+			return 0;
+		}
+		return volumes[code][slotPerLinkIndex[index]];
+	}
+
+	/**
+	 * there are only few network modes, so they are looked up linearly - this is only done when a vehicle enters traffic
+	 */
+	private int getModeCode(String mode) {
+		for (int i = 0; i < modes.size(); i++) {
+			if (modes.get(i).equals(mode)) {
+				return i;
+			}
+		}
+		modes.add(mode);
+		volumes = Arrays.copyOf(volumes, modes.size());
+		volumes[modes.size() - 1] = new int[links.size()];
+		return modes.size() - 1;
+	}
+}
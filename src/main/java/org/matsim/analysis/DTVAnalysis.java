@@ -63,9 +63,9 @@ public class DTVAnalysis implements MATSimAppCommand {
 
 		Network network = input.getNetwork();
 
-		//reading events file & create volumes
+		//reading events file & create volumes, only the links of the dtv file are counted
 		EventsManager eventsManager = EventsUtils.createEventsManager();
-		VolumesAnalyzer volume = new VolumesAnalyzer(3600, 86400, network, true);
+		CountLinkVolumeCollector volume = new CountLinkVolumeCollector(getCountLinks(dtv));
 		eventsManager.addHandler(volume);
 		eventsManager.initProcessing();
 		EventsUtils.readEvents(eventsManager, input.getEventsPath());
@@ -104,7 +104,20 @@ public class DTVAnalysis implements MATSimAppCommand {
 		return 0;
 	}
 
-	private Table createSimDtvTable(Table dtv, Network network, VolumesAnalyzer volume) {
+	private static Set<Id<Link>> getCountLinks(Table dtv) {
+		Set<Id<Link>> links = new LinkedHashSet<>();
+		for (Row row : dtv) {
+			for (String column : List.of("from_link", "to_link")) {
+				String link = row.getString(column);
+				if (link != null && !link.isBlank()) {
+					links.add(Id.createLinkId(link));
+				}
+			}
+		}
+		return links;
+	}
+
+	private Table createSimDtvTable(Table dtv, Network network, CountLinkVolumeCollector volume) {
 
 		dtv.addColumns(
 			TextColumn.create("link_id"),
@@ -124,12 +137,12 @@ public class DTVAnalysis implements MATSimAppCommand {
 			double volCar = 0;
 			if (fromLink != null && !fromLink.isBlank()) {
 				linkId = Id.createLinkId(fromLink);
-				volCar = sum(volume.getVolumesForLink(linkId, TransportMode.car)) / sample.getSample();
+				volCar = volume.getVolume(linkId, TransportMode.car) / sample.getSample();
 			}
 
 			if (toLink != null && !toLink.isBlank()) {
 				linkId = Id.createLinkId(toLink);
-				volCar += sum(volume.getVolumesForLink(linkId, TransportMode.car)) / sample.getSample();
+				volCar += volume.getVolume(linkId, TransportMode.car) / sample.getSample();
 			}
 
 			row.setText("link_id", linkId.toString());
@@ -150,8 +163,4 @@ public class DTVAnalysis implements MATSimAppCommand {
 
 		return dtv;
 	}
-
-	private static double sum(int[] volumes) {
-		return volumes == null ? 0 : Arrays.stream(volumes).sum();
-	}
 }
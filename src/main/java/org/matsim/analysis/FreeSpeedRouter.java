@@ -0,0 +1,139 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.speedy.SpeedyGraphBuilder;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Free speed routing for the loss time indicator of the {@link AgentBasedTrafficQualityAnalysis}.
+ * The routing graph is built once per network and mode. All legs sharing the same origin node are routed with one
+ * one-to-many least cost path tree and the origins are processed in parallel on the threads left to the analysis by the
+ * {@link LiveabilityAnalysisScheduler}, every thread with its own tree and fallback router.
+ */
+final class FreeSpeedRouter {
+
+	private final Network network;
+	private final String mode;
+	private final TravelTime freeSpeedTravelTime;
+	private final SpeedyGraph graph;
+	private final TravelDisutility travelDisutility;
+	private final LongAdder failedRoutings = new LongAdder();
+
+	FreeSpeedRouter(Network network, String mode) {
+		this.network = network;
+		this.mode = mode;
+
+		// links that do not allow the mode are excluded from the tree, these legs are handled by the fallback routing
+		this.freeSpeedTravelTime = (link, time, person, vehicle) ->
+			link.getAllowedModes().contains(mode) ? link.getLength() / link.getFreespeed() : Double.POSITIVE_INFINITY;
+
+		this.graph = SpeedyGraphBuilder.build(network);
+		this.travelDisutility = new OnlyTimeDependentTravelDisutility(freeSpeedTravelTime);
+	}
+
+	/**
+	 * method to calculate the free speed travel times of all given legs - the backup travel time (the simulated travel time) is used whenever no
+	 * route using only links of this mode is found, which is counted as a failed routing
+	 */
+	double[] calcTravelTimes(Node[] startNodes, Node[] endNodes, double[] backupTravelTimes) {
+
+		double[] result = new double[startNodes.length];
+
+		// group legs by their origin node to route them with one search
+		Map<Node, List<Integer>> legsPerOrigin = new HashMap<>();
+		for (int i = 0; i < startNodes.length; i++) {
+			legsPerOrigin.computeIfAbsent(startNodes[i], k -> new ArrayList<>()).add(i);
+		}
+
+		List<Map.Entry<Node, List<Integer>>> origins = new ArrayList<>(legsPerOrigin.entrySet());
+
+		ParallelWorkers.forEach(LiveabilityAnalysisScheduler.threadBudget(), origins.size(),
+			Worker::new, (worker, o) -> {
+			Node startNode = origins.get(o).getKey();
+			List<Integer> legs = origins.get(o).getValue();
+			LeastCostPathTree lcpTree = worker.lcpTree;
+
+			lcpTree.calculate(startNode.getId().index(), 0, null, null);
+
+			for (int i : legs) {
+				double travelTime = lcpTree.getCost(endNodes[i].getId().index());
+
+				// identical start and end node never produced a route with links
+				if (startNode == endNodes[i]) {
+					failedRoutings.increment();
+					result[i] = backupTravelTimes[i];
+				} else if (Double.isFinite(travelTime) && travelTime <= backupTravelTimes[i]) {
+					result[i] = travelTime;
+				} else {
+					// the former routing penalised forbidden links with the backup time, this case is resolved the same way
+					result[i] = worker.calcTravelTimeWithForbiddenLinks(startNode, endNodes[i], backupTravelTimes[i]);
+				}
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * number of legs that could not be routed on links allowing the mode, i.e. legs that got the backup travel time or a route using
+	 * links not allowing the mode - the former per leg routing counted every evaluation of such a link during the search instead, so the
+	 * values are lower than before
+	 */
+	long getFailedRoutings() {
+		return failedRoutings.sum();
+	}
+
+	/**
+	 * routers of one thread - the fallback router is created once and reads the backup travel time of the current leg
+	 */
+	private final class Worker {
+
+		private final LeastCostPathTree lcpTree = new LeastCostPathTree(graph, freeSpeedTravelTime, travelDisutility);
+		private final LeastCostPathCalculator fallbackRouter;
+		private double backupTravelTime;
+
+		private Worker() {
+			TravelTime travelTime = (link, time, person, vehicle) ->
+				link.getAllowedModes().contains(mode) ? link.getLength() / link.getFreespeed() : backupTravelTime;
+			this.fallbackRouter = new DijkstraFactory().createPathCalculator(network, new OnlyTimeDependentTravelDisutility(travelTime), travelTime);
+		}
+
+		/**
+		 * fallback for legs that can not be routed on the links of this mode alone - links not allowing the mode are passable but cost
+		 * the backup travel time of the leg
+		 */
+		private double calcTravelTimeWithForbiddenLinks(Node startNode, Node endNode, double backupTravelTime) {
+
+			this.backupTravelTime = backupTravelTime;
+			LeastCostPathCalculator.Path path = fallbackRouter.calcLeastCostPath(startNode, endNode, 0, null, null);
+
+			if (path == null || path.links.isEmpty()) {
+				failedRoutings.increment();
+				return backupTravelTime;
+			}
+
+			for (Link link : path.links) {
+				if (!link.getAllowedModes().contains(mode)) {
+					failedRoutings.increment();
+					break;
+				}
+			}
+
+			return path.travelTime;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Time sliced link travel times of the congested network, one double per link and 15 minute bin. The matrix is sampled once from the
+ * event based travel times and persisted next to the analysis output, so that repeated runs on the same simulation output can memory map
+ * the file instead of reading the events again. The file stores a fingerprint of the events file and is ignored when it does not match.
+ * <p>
+ * The travel times have to be constant within the bins of this matrix, like the averaged travel times of a
+ * {@link org.matsim.core.trafficmonitoring.TravelTimeCalculator} with the same time slice and max time. The matrix then returns exactly
+ * the same travel time for every point in time.
+ */
+final class LinkTravelTimeMatrix implements TravelTime {
+
+	private static final Logger log = LogManager.getLogger(LinkTravelTimeMatrix.class);
+
+	static final int BIN_SIZE = 900;
+	static final int BINS = 30 * 3600 / BIN_SIZE;
+
+	private static final int MAGIC = 0x4c54544d;
+	private static final int VERSION = 2;
+
+	/**
+	 * row of the matrix per link id index, -1 for links not contained
+	 */
+	private final int[] rowPerLinkIndex;
+	private final DoubleBuffer values;
+
+	private LinkTravelTimeMatrix(int[] rowPerLinkIndex, DoubleBuffer values) {
+		this.rowPerLinkIndex = rowPerLinkIndex;
+		this.values = values;
+	}
+
+	/**
+	 * method samples the given travel times of all links at the start of every time bin
+	 */
+	static LinkTravelTimeMatrix create(Network network, TravelTime travelTime) {
+		Link[] links = network.getLinks().values().toArray(new Link[0]);
+		DoubleBuffer values = DoubleBuffer.allocate(links.length * BINS);
+
+		for (Link link : links) {
+			for (int bin = 0; bin < BINS; bin++) {
+				values.put(travelTime.getLinkTravelTime(link, bin * BIN_SIZE, null, null));
+			}
+		}
+		values.flip();
+
+		return new LinkTravelTimeMatrix(rowsPerLinkIndex(links), values);
+	}
+
+	/**
+	 * method memory maps a persisted matrix - returns null if the file does not exist or does not match the network or the fingerprint
+	 */
+	static LinkTravelTimeMatrix load(Path path, Network network, long fingerprint) throws IOException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.remaining() < 28 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint
+			|| buffer.getInt() != BIN_SIZE || buffer.getInt() != BINS) {
+			log.info("Link travel time matrix {} does not match the simulation output and is recomputed", path);
+			return null;
+		}
+
+		int linkCount = buffer.getInt();
+		if (linkCount != network.getLinks().size()) {
+			log.info("Link travel time matrix {} does not match the network and is recomputed", path);
+			return null;
+		}
+
+		Link[] links = new Link[linkCount];
+		for (int i = 0; i < linkCount; i++) {
+			byte[] id = new byte[buffer.getShort() & 0xffff];
+			buffer.get(id);
+			links[i] = network.getLinks().get(Id.createLinkId(new String(id, StandardCharsets.UTF_8)));
+			if (links[i] == null) {
+				log.info("Link travel time matrix {} does not match the network and is recomputed", path);
+				return null;
+			}
+		}
+
+		DoubleBuffer values = buffer.slice().asDoubleBuffer();
+		if (values.remaining() != linkCount * BINS) {
+			log.info("Link travel time matrix {} is incomplete and is recomputed", path);
+			return null;
+		}
+
+		return new LinkTravelTimeMatrix(rowsPerLinkIndex(links), values);
+	}
+
+	/**
+	 * method writes the matrix to a temporary file which then replaces the given file
+	 */
+	void write(Path path, Network network, long fingerprint) throws IOException {
+		Link[] links = new Link[network.getLinks().size()];
+		for (Link link : network.getLinks().values()) {
+			links[rowPerLinkIndex[link.getId().index()]] = link;
+		}
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(BIN_SIZE);
+			out.writeInt(BINS);
+			out.writeInt(links.length);
+
+			for (Link link : links) {
+				byte[] id = link.getId().toString().getBytes(StandardCharsets.UTF_8);
+				out.writeShort(id.length);
+				out.write(id);
+			}
+
+			for (int i = 0; i < values.limit(); i++) {
+				out.writeDouble(values.get(i));
+			}
+		}
+
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * fingerprint of the events file the matrix is derived from
+	 */
+	static long fingerprint(Path eventsPath) throws IOException {
+		return 31 * Files.size(eventsPath) + Files.getLastModifiedTime(eventsPath).toMillis();
+	}
+
+	/**
+	 * time bin of a point in time, times after the last bin use the last bin
+	 */
+	static int getBin(double time) {
+		return Math.min(Math.max((int) (time / BIN_SIZE), 0), BINS - 1);
+	}
+
+	@Override
+	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+		int index = link.getId().index();
+		int row = index < rowPerLinkIndex.length ? rowPerLinkIndex[index] : -1;
+		if (row < 0) {
+			throw new IllegalArgumentException("Link " + link.getId() + " is not part of the link travel time matrix");
+		}
+		return values.get(row * BINS + getBin(time));
+	}
+
+	private static int[] rowsPerLinkIndex(Link[] links) {
+		int[] rows = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(rows, -1);
+		for (int i = 0; i < links.length; i++) {
+			rows[links[i].getId().index()] = i;
+		}
+		return rows;
+	}
+}
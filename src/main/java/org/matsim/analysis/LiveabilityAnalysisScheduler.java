@@ -0,0 +1,391 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.CommandSpec;
+import org.matsim.application.Dependency;
+import org.matsim.application.MATSimAppCommand;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the liveability analyses along the dependency graph given by the {@code dependsOn} of their {@link CommandSpec}. Analyses whose
+ * dependencies are finished run in parallel on a bounded pool, as long as the sum of their memory budgets (shares of the max heap) fits.
+ * <p>
+ * The contributions of an analysis to the shared files of the {@link AgentLiveabilityInfoCollection} (columns of the agentLiveabilityInfo.csv,
+ * summary tiles and indicator values) are collected while it runs and written once it is finished. They are written in the order the
+ * analyses were added (after sorting by dependencies), so the shared files look like after a serial run. An analysis is only started
+ * once the contributions of all its dependencies are written.
+ * <p>
+ * With a {@link LiveabilityManifest} analyses whose inputs, configuration and code are unchanged since their last run are skipped, their
+ * stored contribution is written instead.
+ * <p>
+ * Every analysis gets only those of the arguments whose options it declares, and the available processors are split between the analyses
+ * running in parallel, see {@link #threadBudget()}.
+ */
+public final class LiveabilityAnalysisScheduler {
+
+	private static final Logger log = LogManager.getLogger(LiveabilityAnalysisScheduler.class);
+
+	private static final ThreadLocal<Integer> THREAD_BUDGET = new ThreadLocal<>();
+
+	private final int threads;
+	private final Map<Class<? extends MATSimAppCommand>, Double> memoryShares = new LinkedHashMap<>();
+	private Path manifestDirectory;
+	private Path liveabilityDirectory;
+	private boolean forceRecompute;
+
+	public LiveabilityAnalysisScheduler(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, got " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * adds an analysis with the share of the max heap it is expected to need at most
+	 */
+	public LiveabilityAnalysisScheduler add(Class<? extends MATSimAppCommand> analysis, double memoryShare) {
+		if (memoryShare <= 0 || memoryShare > 1) {
+			throw new IllegalArgumentException("Memory share of " + analysis.getSimpleName() + " has to be in (0, 1], got " + memoryShare);
+		}
+		memoryShares.put(analysis, memoryShare);
+		return this;
+	}
+
+	/**
+	 * method returns the number of threads an analysis may use for its own parallel work - analyses run by the scheduler share the available
+	 * processors, otherwise all of them are available
+	 */
+	public static int threadBudget() {
+		Integer budget = THREAD_BUDGET.get();
+		return budget != null ? budget : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * skips analyses whose outputs in the liveability directory are up to date according to the manifest in the given directory, with
+	 * forceRecompute all analyses are run and the manifest is only updated
+	 */
+	public LiveabilityAnalysisScheduler withManifest(Path manifestDirectory, Path liveabilityDirectory, boolean forceRecompute) {
+		this.manifestDirectory = manifestDirectory;
+		this.liveabilityDirectory = liveabilityDirectory;
+		this.forceRecompute = forceRecompute;
+		return this;
+	}
+
+	/**
+	 * method runs all added analyses with the given arguments and returns once all are finished, the first failure is rethrown after the
+	 * running analyses are finished - every analysis gets the arguments of the options it declares
+	 */
+	public void run(String... args) throws Exception {
+
+		List<Task> tasks = sortByDependencies();
+		long start = System.currentTimeMillis();
+		LiveabilityManifest manifest = manifestDirectory != null ? new LiveabilityManifest(manifestDirectory, liveabilityDirectory) : null;
+
+		int poolSize = Math.min(threads, tasks.size());
+		int threadBudget = Math.max(1, Runtime.getRuntime().availableProcessors() / poolSize);
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		CompletionService<Task> completionService = new ExecutorCompletionService<>(executor);
+		Set<String> acceptedOptions = new HashSet<>();
+
+		double reservedMemory = 0;
+		int running = 0;
+		int committed = 0;
+		Exception failure = null;
+
+		try {
+			while (committed < tasks.size()) {
+				boolean progress = false;
+
+				// start every task whose dependencies are written, as long as its memory budget fits - a single task is always started
+				if (failure == null) {
+					for (Task task : tasks) {
+						if (task.state != State.PENDING || !isReady(task, tasks, committed)) {
+							continue;
+						}
+						if (task.args == null) {
+							task.args = argumentsOf(task.analysis, args);
+							acceptedOptions.addAll(optionsOf(task.args));
+						}
+						if (manifest != null && skipIfUpToDate(task, manifest, args)) {
+							progress = true;
+							continue;
+						}
+						if (running > 0 && (running >= threads || reservedMemory + task.memoryShare > 1.0)) {
+							continue;
+						}
+
+						task.state = State.RUNNING;
+						reservedMemory += task.memoryShare;
+						running++;
+						progress = true;
+						log.info("Starting {} ({} running, {}% of the heap reserved)", task.name(), running, Math.round(reservedMemory * 100));
+						completionService.submit(() -> task.execute(threadBudget));
+					}
+				}
+
+				// contributions are written in the order of the tasks
+				while (failure == null && committed < tasks.size() && tasks.get(committed).state == State.FINISHED) {
+					new AgentLiveabilityInfoCollection().commit(tasks.get(committed).contribution);
+					tasks.get(committed).state = State.COMMITTED;
+					committed++;
+					progress = true;
+				}
+
+				// skipped tasks may have made further tasks ready, which are started before waiting
+				if (progress && failure == null) {
+					continue;
+				}
+				if (running == 0) {
+					break;
+				}
+
+				Task finished;
+				try {
+					finished = completionService.take().get();
+				} catch (ExecutionException e) {
+					// the task itself catches all failures, so this only happens for errors of the scheduling
+					throw new IllegalStateException("Analysis could not be executed", e.getCause());
+				}
+
+				running--;
+				reservedMemory -= finished.memoryShare;
+
+				if (finished.failure != null) {
+					finished.state = State.FAILED;
+					log.error("{} failed after {} s", finished.name(), finished.seconds());
+					if (failure == null) {
+						failure = finished.failure;
+					}
+					continue;
+				}
+				finished.state = State.FINISHED;
+				log.info("{} finished in {} s", finished.name(), finished.seconds());
+
+				if (manifest != null && finished.fingerprint != null) {
+					manifest.write(finished.analysis, finished.fingerprint, finished.contribution);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		for (String option : optionsOf(args)) {
+			if (!acceptedOptions.contains(option)) {
+				log.warn("Option {} is not declared by any of the liveability analyses and was ignored", option);
+			}
+		}
+
+		log.info("{} liveability analyses finished in {} s", tasks.size(), (System.currentTimeMillis() - start) / 1000);
+	}
+
+	/**
+	 * method marks the task as finished with its stored contribution if its outputs are up to date, otherwise the fingerprint is kept to
+	 * write the manifest once the task is finished
+	 */
+	private boolean skipIfUpToDate(Task task, LiveabilityManifest manifest, String[] args) {
+		// tasks waiting for memory are only checked once
+		if (task.checked) {
+			return false;
+		}
+		task.checked = true;
+		try {
+			task.fingerprint = manifest.fingerprint(task.analysis, args);
+			if (forceRecompute || !manifest.isUpToDate(task.analysis, task.fingerprint)) {
+				return false;
+			}
+			task.contribution = manifest.readContribution(task.analysis);
+		} catch (IOException | RuntimeException e) {
+			// the analysis is simply run if its fingerprint can not be determined or the stored contribution can not be read
+			log.warn("Could not check whether the outputs of {} are up to date, it is recomputed", task.name(), e);
+			task.contribution = null;
+			return false;
+		}
+
+		task.state = State.FINISHED;
+		log.info("Skipping {}, its outputs are up to date", task.name());
+		return true;
+	}
+
+	/**
+	 * method returns the arguments of the options declared by the analysis, including its mixins - values belong to the preceding option,
+	 * arguments before the first option are kept
+	 */
+	static String[] argumentsOf(Class<? extends MATSimAppCommand> analysis, String[] args) {
+		MATSimAppCommand instance;
+		try {
+			instance = analysis.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Analysis " + analysis.getSimpleName() + " could not be created", e);
+		}
+		CommandLine.Model.CommandSpec spec = CommandLine.Model.CommandSpec.forAnnotatedObject(instance);
+
+		List<String> declared = new ArrayList<>();
+		boolean accepted = true;
+		for (String arg : args) {
+			if (isOption(arg)) {
+				accepted = spec.findOption(optionName(arg)) != null;
+			}
+			if (accepted) {
+				declared.add(arg);
+			}
+		}
+		return declared.toArray(String[]::new);
+	}
+
+	private static List<String> optionsOf(String[] args) {
+		return Arrays.stream(args).filter(LiveabilityAnalysisScheduler::isOption).map(LiveabilityAnalysisScheduler::optionName).toList();
+	}
+
+	/**
+	 * negative numbers are values, not options
+	 */
+	private static boolean isOption(String arg) {
+		return arg.length() > 1 && arg.charAt(0) == '-' && !Character.isDigit(arg.charAt(1)) && arg.charAt(1) != '.';
+	}
+
+	private static String optionName(String arg) {
+		int separator = arg.indexOf('=');
+		return separator < 0 ? arg : arg.substring(0, separator);
+	}
+
+	/**
+	 * a task is ready if all its dependencies are written, the dependencies are always before the task
+	 */
+	private static boolean isReady(Task task, List<Task> tasks, int committed) {
+		for (Class<?> dependency : task.dependencies) {
+			int index = indexOf(tasks, dependency);
+			if (index >= committed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(List<Task> tasks, Class<?> analysis) {
+		for (int i = 0; i < tasks.size(); i++) {
+			if (tasks.get(i).analysis == analysis) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * method sorts the analyses topologically, analyses without dependencies between them keep the order in which they were added -
+	 * dependencies on analyses which are not added are expected to be run before
+	 */
+	private List<Task> sortByDependencies() {
+
+		Map<Class<? extends MATSimAppCommand>, List<Class<?>>> dependencies = new LinkedHashMap<>();
+		for (Class<? extends MATSimAppCommand> analysis : memoryShares.keySet()) {
+			List<Class<?>> analysisDependencies = new ArrayList<>();
+			CommandSpec spec = analysis.getAnnotation(CommandSpec.class);
+			if (spec != null) {
+				for (Dependency dependency : spec.dependsOn()) {
+					checkProduced(analysis, dependency);
+					if (memoryShares.containsKey(dependency.value()) && !analysisDependencies.contains(dependency.value())) {
+						analysisDependencies.add(dependency.value());
+					}
+				}
+			}
+			dependencies.put(analysis, analysisDependencies);
+		}
+
+		List<Task> sorted = new ArrayList<>();
+		while (sorted.size() < dependencies.size()) {
+			Class<? extends MATSimAppCommand> next = null;
+			for (Map.Entry<Class<? extends MATSimAppCommand>, List<Class<?>>> entry : dependencies.entrySet()) {
+				if (indexOf(sorted, entry.getKey()) < 0 && entry.getValue().stream().allMatch(d -> indexOf(sorted, d) >= 0)) {
+					next = entry.getKey();
+					break;
+				}
+			}
+			if (next == null) {
+				throw new IllegalStateException("Cyclic dependencies between the liveability analyses: " + dependencies);
+			}
+			sorted.add(new Task(next, dependencies.get(next), memoryShares.get(next)));
+		}
+		return sorted;
+	}
+
+	/**
+	 * files an analysis depends on should be listed in the produces of the dependency
+	 */
+	private static void checkProduced(Class<?> analysis, Dependency dependency) {
+		CommandSpec dependencySpec = dependency.value().getAnnotation(CommandSpec.class);
+		List<String> produced = dependencySpec != null ? Arrays.asList(dependencySpec.produces()) : List.of();
+		for (String file : dependency.files()) {
+			if (!produced.contains(file)) {
+				log.warn("{} depends on {} of {}, which is not listed in its produced files", analysis.getSimpleName(), file, dependency.value().getSimpleName());
+			}
+		}
+	}
+
+	private enum State {PENDING, RUNNING, FINISHED, FAILED, COMMITTED}
+
+	private static final class Task {
+
+		private final Class<? extends MATSimAppCommand> analysis;
+		private final List<Class<?>> dependencies;
+		private final double memoryShare;
+
+		// state is only changed by the scheduling thread, the other fields are written by the worker before the task is returned
+		private State state = State.PENDING;
+		private String[] args;
+		private AgentLiveabilityInfoCollection.Contribution contribution;
+		private String fingerprint;
+		private boolean checked;
+		private Exception failure;
+		private long duration;
+
+		private Task(Class<? extends MATSimAppCommand> analysis, List<Class<?>> dependencies, double memoryShare) {
+			this.analysis = analysis;
+			this.dependencies = dependencies;
+			this.memoryShare = memoryShare;
+		}
+
+		private Task execute(int threadBudget) {
+			long start = System.currentTimeMillis();
+			contribution = AgentLiveabilityInfoCollection.beginContribution();
+			THREAD_BUDGET.set(threadBudget);
+			try {
+				analysis.getDeclaredConstructor().newInstance().execute(args);
+			} catch (Exception e) {
+				failure = e;
+			} finally {
+				THREAD_BUDGET.remove();
+				AgentLiveabilityInfoCollection.endContribution();
+				duration = System.currentTimeMillis() - start;
+			}
+			return this;
+		}
+
+		private String name() {
+			return analysis.getSimpleName();
+		}
+
+		private long seconds() {
+			return duration / 1000;
+		}
+	}
+}
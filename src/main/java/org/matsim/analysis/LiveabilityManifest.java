@@ -0,0 +1,300 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.CommandSpec;
+import org.matsim.application.Dependency;
+import org.matsim.application.MATSimAppCommand;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Manifest of the liveability analyses for incremental runs. The fingerprint of an analysis is a SHA-256 digest over
+ * <ul>
+ *     <li>the code version: implementation version of the jar and the digest of the class file of the analysis,</li>
+ *     <li>the configuration: all simple (primitive, string, enum) fields after parsing the arguments, e.g. limits and sample sizes,</li>
+ *     <li>the inputs: content digests of all files referenced by path fields outside the liveability output directory,</li>
+ *     <li>the fingerprints of all analyses it depends on.</li>
+ * </ul>
+ * After a successful run the fingerprint, the digests of the produced files and the contribution to the shared files of the
+ * {@link AgentLiveabilityInfoCollection} are stored. An analysis is up to date if its fingerprint is unchanged and all produced files still
+ * have the stored digests, the stored contribution is then replayed instead of running the analysis.
+ * <p>
+ * File digests are cached by path, size and modification time, so that large inputs like the events are only hashed once they changed.
+ */
+final class LiveabilityManifest {
+
+	private static final Logger log = LogManager.getLogger(LiveabilityManifest.class);
+
+	private static final String FILE_DIGESTS = "fileDigests.properties";
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String OUTPUT_PREFIX = "output.";
+
+	private final Path manifestDirectory;
+	private final Path liveabilityDirectory;
+	private final Properties fileDigests = new Properties();
+	private final Map<Class<?>, String> fingerprints = new HashMap<>();
+
+	LiveabilityManifest(Path manifestDirectory, Path liveabilityDirectory) throws IOException {
+		this.manifestDirectory = manifestDirectory;
+		this.liveabilityDirectory = liveabilityDirectory.toAbsolutePath().normalize();
+		Files.createDirectories(manifestDirectory);
+
+		Path fileDigestsPath = manifestDirectory.resolve(FILE_DIGESTS);
+		if (Files.exists(fileDigestsPath)) {
+			try (Reader reader = Files.newBufferedReader(fileDigestsPath, StandardCharsets.UTF_8)) {
+				fileDigests.load(reader);
+			}
+		}
+	}
+
+	/**
+	 * method checks whether the stored outputs of the analysis belong to the given fingerprint and are unchanged since they were written
+	 */
+	synchronized boolean isUpToDate(Class<? extends MATSimAppCommand> analysis, String fingerprint) throws IOException {
+		Path manifestPath = manifestPath(analysis);
+		if (!Files.exists(manifestPath) || !Files.exists(rowsPath(analysis))) {
+			return false;
+		}
+
+		Properties manifest = new Properties();
+		try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+			manifest.load(reader);
+		}
+		if (!fingerprint.equals(manifest.getProperty(FINGERPRINT))) {
+			return false;
+		}
+
+		for (String file : produces(analysis)) {
+			String stored = manifest.getProperty(OUTPUT_PREFIX + file);
+			Path path = liveabilityDirectory.resolve(file);
+			if (stored == null ? Files.exists(path) : !Files.isRegularFile(path) || !stored.equals(fileDigest(path))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * method reads the stored contribution of an analysis which is up to date
+	 */
+	AgentLiveabilityInfoCollection.Contribution readContribution(Class<? extends MATSimAppCommand> analysis) throws IOException {
+		return AgentLiveabilityInfoCollection.Contribution.read(columnsPath(analysis), rowsPath(analysis));
+	}
+
+	/**
+	 * method stores the fingerprint, the digests of the produced files and the contribution after a successful run of the analysis
+	 */
+	synchronized void write(Class<? extends MATSimAppCommand> analysis, String fingerprint,
+							AgentLiveabilityInfoCollection.Contribution contribution) throws IOException {
+
+		// an interrupted write must not leave a manifest matching the fingerprint
+		Files.deleteIfExists(manifestPath(analysis));
+		contribution.write(columnsPath(analysis), rowsPath(analysis));
+
+		Properties manifest = new Properties();
+		manifest.setProperty(FINGERPRINT, fingerprint);
+		for (String file : produces(analysis)) {
+			Path path = liveabilityDirectory.resolve(file);
+			if (Files.isRegularFile(path)) {
+				manifest.setProperty(OUTPUT_PREFIX + file, fileDigest(path));
+			} else {
+				log.warn("{} did not produce {}", analysis.getSimpleName(), file);
+			}
+		}
+		try (Writer writer = Files.newBufferedWriter(manifestPath(analysis), StandardCharsets.UTF_8)) {
+			manifest.store(writer, analysis.getName());
+		}
+		writeFileDigests();
+	}
+
+	/**
+	 * method computes the fingerprint of an analysis run with the given arguments, including the fingerprints of its dependencies - only
+	 * the arguments of the options declared by the analysis are used
+	 */
+	synchronized String fingerprint(Class<? extends MATSimAppCommand> analysis, String... args) throws IOException {
+		String fingerprint = fingerprints.get(analysis);
+		if (fingerprint != null) {
+			return fingerprint;
+		}
+
+		MessageDigest digest = newDigest();
+		update(digest, "version=" + LiveabilityManifest.class.getPackage().getImplementationVersion());
+		update(digest, "class=" + classDigest(analysis));
+
+		MATSimAppCommand instance;
+		try {
+			instance = analysis.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Analysis " + analysis.getSimpleName() + " could not be created", e);
+		}
+		new CommandLine(instance).parseArgs(LiveabilityAnalysisScheduler.argumentsOf(analysis, args));
+
+		for (Field field : fieldsOf(analysis)) {
+			Object value;
+			try {
+				field.setAccessible(true);
+				value = field.get(instance);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				continue;
+			}
+
+			if (value instanceof Path path) {
+				Path normalized = path.toAbsolutePath().normalize();
+				// files within the liveability directory are produced by the analyses and covered by the fingerprints of the producers
+				if (!normalized.startsWith(liveabilityDirectory) && Files.isRegularFile(normalized)) {
+					update(digest, field.getName() + "=" + fileDigest(normalized));
+					for (Path sibling : shapefileSiblings(normalized)) {
+						update(digest, field.getName() + "." + sibling.getFileName() + "=" + fileDigest(sibling));
+					}
+				}
+			} else if (value == null || value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum<?>) {
+				update(digest, field.getName() + "=" + value);
+			}
+		}
+
+		CommandSpec spec = analysis.getAnnotation(CommandSpec.class);
+		if (spec != null) {
+			for (Dependency dependency : spec.dependsOn()) {
+				if (dependency.value() != analysis) {
+					update(digest, "dependency=" + dependency.value().getName() + ":" + fingerprint(dependency.value(), args));
+				}
+			}
+		}
+
+		fingerprint = HexFormat.of().formatHex(digest.digest());
+		fingerprints.put(analysis, fingerprint);
+		return fingerprint;
+	}
+
+	/**
+	 * all non static fields of the class and its super classes sorted by name, so that the fingerprint does not depend on the field order
+	 */
+	private static List<Field> fieldsOf(Class<?> type) {
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+					fields.add(field);
+				}
+			}
+		}
+		fields.sort(Comparator.comparing(Field::getName).thenComparing(f -> f.getDeclaringClass().getName()));
+		return fields;
+	}
+
+	/**
+	 * the attributes and the projection of a shapefile are stored next to it
+	 */
+	private static List<Path> shapefileSiblings(Path path) {
+		List<Path> siblings = new ArrayList<>();
+		String name = path.getFileName().toString();
+		if (name.endsWith(".shp")) {
+			String base = name.substring(0, name.length() - 4);
+			for (String extension : new String[]{".dbf", ".shx", ".prj", ".cpg"}) {
+				Path sibling = path.resolveSibling(base + extension);
+				if (Files.isRegularFile(sibling)) {
+					siblings.add(sibling);
+				}
+			}
+		}
+		return siblings;
+	}
+
+	private static String classDigest(Class<?> type) throws IOException {
+		String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+		try (InputStream in = type.getResourceAsStream(resource)) {
+			if (in == null) {
+				return "unknown";
+			}
+			return digest(in);
+		}
+	}
+
+	/**
+	 * method returns the content digest of a file, cached by its size and modification time
+	 */
+	private String fileDigest(Path path) throws IOException {
+		String key = path.toAbsolutePath().normalize().toString();
+		String stamp = Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis() + ":";
+
+		String cached = fileDigests.getProperty(key);
+		if (cached != null && cached.startsWith(stamp)) {
+			return cached.substring(stamp.length());
+		}
+
+		long start = System.currentTimeMillis();
+		String digest;
+		try (InputStream in = Files.newInputStream(path)) {
+			digest = digest(in);
+		}
+		log.info("Digest of {} computed in {} ms", path, System.currentTimeMillis() - start);
+		fileDigests.setProperty(key, stamp + digest);
+		return digest;
+	}
+
+	private void writeFileDigests() throws IOException {
+		try (Writer writer = Files.newBufferedWriter(manifestDirectory.resolve(FILE_DIGESTS), StandardCharsets.UTF_8)) {
+			fileDigests.store(writer, "size:lastModified:digest per file");
+		}
+	}
+
+	private static String digest(InputStream in) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[1 << 16];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			digest.update(buffer, 0, read);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	private static String[] produces(Class<?> analysis) {
+		CommandSpec spec = analysis.getAnnotation(CommandSpec.class);
+		return spec != null ? spec.produces() : new String[0];
+	}
+
+	private Path manifestPath(Class<?> analysis) {
+		return manifestDirectory.resolve(analysis.getSimpleName() + ".properties");
+	}
+
+	private Path columnsPath(Class<?> analysis) {
+		return manifestDirectory.resolve(analysis.getSimpleName() + "_columns.csv");
+	}
+
+	private Path rowsPath(Class<?> analysis) {
+		return manifestDirectory.resolve(analysis.getSimpleName() + "_rows.csv");
+	}
+}
@@ -37,7 +37,7 @@ import static org.matsim.dashboard.RunLiveabilityDashboard.getValidLiveabilityOu
 	},
 	produces = {
 		"overall_tiles_ranking.csv",
-		"overall_XYT_AgentRankingForSummary.xyt.csv",
+		"overall_XYT_AgentRankingForSummary.xyt.csv.gz",
 		"overall_tiles_highestLowestIndicator.csv"
 	}
 )
@@ -55,7 +55,7 @@ public class LiveabilitySummaryAnalysis implements MATSimAppCommand {
 
 	//output Path
 	private final Path outputOverallRankingPath = getValidLiveabilityOutputDirectory().resolve("overall_tiles_ranking.csv");
-	private final Path XYTMapOutputPath = getValidLiveabilityOutputDirectory().resolve("overall_XYT_AgentRankingForSummary.xyt.csv");
+	private final Path XYTMapOutputPath = getValidLiveabilityOutputDirectory().resolve("overall_XYT_AgentRankingForSummary.xyt.csv.gz");
 	private final Path overallHighestLowestIndicatorPath = getValidLiveabilityOutputDirectory().resolve("overall_tiles_highestLowestIndicator.csv");
 
 	private static final Logger log = LogManager.getLogger(LiveabilitySummaryAnalysis.class);
@@ -69,100 +69,92 @@ public class LiveabilitySummaryAnalysis implements MATSimAppCommand {
 
 		log.info("Starting LiveabilitySummaryAnalysis...");
 
-		Map<String, Map<String, Double>> indexValuesPerAgent = new HashMap<>();
-		Map<String, List<String>> homeCoordinatesPerAgentInStudyArea = new HashMap<>();
-		Map<String, Double> worstValuePerAgent = new HashMap<>();
-		Map<String, String> worstCategoryPerAgent = new HashMap<>();
-		Map<String, Double> bestValuePerAgent = new HashMap<>();
-		Map<String, String> bestCategoryPerAgent = new HashMap<>();
+		// the agents are streamed once: worst and best indicator, the overall index and the category frequencies are reduced per record and
+		// the XYT map is written on the fly, so the memory does not depend on the number of agents
+		String[] valueColumns;
+		int[] worstCount;
+		int[] bestCount;
+		int agentsWithValues = 0;
 
 		// Counter for all Agents with all Livability Index <= 0;
 		long countHighLivabilityAgents = 0;
 
-		try (CSVParser agentLiveabilityInfoParser = new CSVParser(new FileReader(String.valueOf(agentLivabilityInfoPath)), CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(','));) {
+		try (CSVParser agentLiveabilityInfoParser = new CSVParser(new FileReader(String.valueOf(agentLivabilityInfoPath)), CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(','));
+			 XYTMapWriter xytWriter = new XYTMapWriter(XYTMapOutputPath)) {
 
 			// Check whether the file is empty
 			if (agentLiveabilityInfoParser.getHeaderMap().isEmpty()) {
 				throw new IOException("The CSV file is empty or does not contain any valid headers.");
 			}
 
-			Set<String> headers = agentLiveabilityInfoParser.getHeaderMap().keySet();
-			List<String> valueColumns = new ArrayList<>();
-
-			// Check whether columns with “indexValue_” exist
-			for (String header : headers) {
+			// Check whether columns with “indexValue_” exist - they are compared in hash order of their names, so that ties between
+			// indicators are resolved as before
+			Set<String> indexValueColumns = new HashSet<>();
+			for (String header : agentLiveabilityInfoParser.getHeaderMap().keySet()) {
 				if (header.startsWith("indexValue_")) {
-					valueColumns.add(header);
+					indexValueColumns.add(header);
 				}
 			}
 
-			if (valueColumns.isEmpty()) {
+			if (indexValueColumns.isEmpty()) {
 				throw new IOException("No columns with 'indexValue_' found in the header.");
 			}
 
+			valueColumns = indexValueColumns.toArray(new String[0]);
+			int[] columnPositions = new int[valueColumns.length];
+			for (int column = 0; column < valueColumns.length; column++) {
+				columnPositions[column] = agentLiveabilityInfoParser.getHeaderMap().get(valueColumns[column]);
+			}
+			worstCount = new int[valueColumns.length];
+			bestCount = new int[valueColumns.length];
+
 			for (CSVRecord record : agentLiveabilityInfoParser) {
-				String personKey = record.get("person");
-				String homeX = record.get("home_x");
-				String homeY = record.get("home_y");
-				homeCoordinatesPerAgentInStudyArea.put(personKey, Arrays.asList(homeX, homeY));
 
-				Map<String, Double> valuesMap = new HashMap<>();
+				// identifying maximum and minimum indicator index values of the agent
+				int worstColumn = -1;
+				double worstValue = Double.NEGATIVE_INFINITY;
+				int bestColumn = -1;
+				double bestValue = Double.POSITIVE_INFINITY;
 
-				for (String column : valueColumns) {
+				for (int column = 0; column < valueColumns.length; column++) {
+					double value;
 					try {
-						// Try to parse the value and add it to the valuesMap
-						valuesMap.put(column, Double.valueOf(record.get(column)));
+						value = Double.parseDouble(record.get(columnPositions[column]));
 					} catch (NumberFormatException e) {
-						continue; // Proceed to the next iteration
+						continue; // Proceed to the next column
 					}
-				}
-
-				indexValuesPerAgent.put(personKey, valuesMap);
-			}
-		}
-
-		// identifying maximum and minimum indicator index values per agent
-		for (Map.Entry<String, Map<String, Double>> agentEntry : indexValuesPerAgent.entrySet()) {
-			String agent = agentEntry.getKey();
-			Map<String, Double> values = agentEntry.getValue();
-
-			if (values.isEmpty()) {
-				continue;
-			}
 
-			String worstCategory = null;
-			double worstValue = Double.NEGATIVE_INFINITY;
-			String bestCategory = null;
-			double bestValue = Double.POSITIVE_INFINITY;
+					if (value > worstValue) {
+						worstValue = value;
+						worstColumn = column;
+					}
 
-			for (Map.Entry<String, Double> valueEntry : values.entrySet()) {
-				String category = valueEntry.getKey();
-				double value = valueEntry.getValue();
+					if (value < bestValue) {
+						bestValue = value;
+						bestColumn = column;
+					}
+				}
 
-				if (value > worstValue) {
-					worstValue = value;
-					worstCategory = category;
+				if (worstColumn < 0) {
+					continue;
 				}
 
-				if (value < bestValue) {
-					bestValue = value;
-					bestCategory = category;
+				agentsWithValues++;
+				worstCount[worstColumn]++;
+				bestCount[bestColumn]++;
+				if (worstValue <= 0) {
+					countHighLivabilityAgents++;
 				}
-			}
 
-			worstValuePerAgent.put(agent, worstValue);
-			worstCategoryPerAgent.put(agent, worstCategory);
-			bestValuePerAgent.put(agent, bestValue);
-			bestCategoryPerAgent.put(agent, bestCategory);
+				xytWriter.add(Double.parseDouble(record.get("home_x")), Double.parseDouble(record.get("home_y")), worstValue);
+			}
 		}
 
-		AgentLiveabilityInfoCollection.writeXYTDataToCSV(XYTMapOutputPath, worstValuePerAgent, homeCoordinatesPerAgentInStudyArea);
-
 		try(CSVWriter overallRankingWriter = new CSVWriter(new FileWriter(String.valueOf(outputOverallRankingPath)));
 			CSVWriter highestLowestIndicatorTileWriter = new CSVWriter(new FileWriter(String.valueOf(overallHighestLowestIndicatorPath)));){
 
-			Map.Entry<String, Double> resultWorst = findMostFrequentCategory(worstCategoryPerAgent);
-			Map.Entry<String, Double> resultBest = findMostFrequentCategory(bestCategoryPerAgent);
+			Map.Entry<String, Double> resultWorst = findMostFrequentCategory(countsPerCategory(valueColumns, worstCount), agentsWithValues);
+			Map.Entry<String, Double> resultBest = findMostFrequentCategory(countsPerCategory(valueColumns, bestCount), agentsWithValues);
 
 			String worstIndicatorName = resultWorst.getKey();
 			String formattedWorstIndicatorName = worstIndicatorName.substring(worstIndicatorName.indexOf('_') + 1);
@@ -171,8 +163,7 @@ public class LiveabilitySummaryAnalysis implements MATSimAppCommand {
 			String formattedBestIndicatorName = bestIndicatorName.substring(bestIndicatorName.indexOf('_') + 1);
 			String formattedPercentageBestIndicator = String.format(Locale.US, "%.2f%%", resultBest.getValue()*100);
 
-			countHighLivabilityAgents = worstValuePerAgent.values().stream().filter(value -> value <= 0).count();
-			double overallRankingValue = (double) countHighLivabilityAgents / worstValuePerAgent.size();
+			double overallRankingValue = (double) countHighLivabilityAgents / agentsWithValues;
 			String formattedOverallRankingValue = String.format(Locale.US, "%.2f%%", overallRankingValue*100);
 
 			highestLowestIndicatorTileWriter.writeNext(new String[]{"Worst Indicator", formattedWorstIndicatorName});
@@ -187,15 +178,19 @@ public class LiveabilitySummaryAnalysis implements MATSimAppCommand {
 		return 0;
 	}
 
-	// method to extract the most frequent category to identify the best and worst indicator in the scenario
-	public static Map.Entry<String, Double> findMostFrequentCategory(Map<String, String> CategoryPerAgent) {
+	// method to collect the counted categories, categories which never occurred are left out
+	private static Map<String, Integer> countsPerCategory(String[] categories, int[] counts) {
 		Map<String, Integer> categoryCount = new HashMap<>();
-		int totalAgents = CategoryPerAgent.size();
-
-		// Count the frequency of each maxCategory
-		for (String category : CategoryPerAgent.values()) {
-			categoryCount.put(category, categoryCount.getOrDefault(category, 0) + 1);
+		for (int i = 0; i < categories.length; i++) {
+			if (counts[i] > 0) {
+				categoryCount.put(categories[i], counts[i]);
+			}
 		}
+		return categoryCount;
+	}
+
+	// method to extract the most frequent category from the number of agents per category to identify the best and worst indicator
+	private static Map.Entry<String, Double> findMostFrequentCategory(Map<String, Integer> categoryCount, int totalAgents) {
 
 		// Determine the most frequent maxCategory
 		String mostFrequentCategory = null;
@@ -0,0 +1,519 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for the semicolon separated, gzipped output tables of a run (output_trips, output_legs, output_persons).
+ * The file is decompressed on a separate thread while the rows are split directly on the raw bytes, so no Strings are created per row unless
+ * a consumer asks for one. Every row is handed to all registered {@link RowConsumer}s, so that multiple consumers share one pass over the file.
+ */
+final class OutputCsvScanner {
+
+	private static final Logger log = LogManager.getLogger(OutputCsvScanner.class);
+
+	private static final int BLOCK_SIZE = 1 << 20;
+	private static final byte[] EOF = new byte[0];
+
+	private final List<RowConsumer> consumers = new ArrayList<>();
+
+	/**
+	 * registers a consumer for the next scan
+	 */
+	OutputCsvScanner addConsumer(RowConsumer consumer) {
+		consumers.add(consumer);
+		return this;
+	}
+
+	/**
+	 * method reads the file once and passes the header and every row to all registered consumers
+	 */
+	void scan(Path path) throws IOException {
+
+		BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(8);
+		IOException[] inflaterError = new IOException[1];
+
+		// decompression runs in parallel to the parsing
+		Thread inflater = new Thread(() -> {
+			try (InputStream in = openStream(path)) {
+				while (true) {
+					byte[] block = in.readNBytes(BLOCK_SIZE);
+					if (block.length == 0) {
+						break;
+					}
+					blocks.put(block);
+				}
+			} catch (IOException e) {
+				inflaterError[0] = e;
+			} catch (InterruptedException e) {
+				// the scan was aborted, nobody waits for the end of the file anymore
+				return;
+			}
+			try {
+				blocks.put(EOF);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "inflate-" + path.getFileName());
+
+		inflater.setDaemon(true);
+		inflater.start();
+
+		Row row = new Row();
+		byte[] line = new byte[4096];
+		int lineLength = 0;
+		long rows = 0;
+		boolean completed = false;
+
+		try {
+			while (true) {
+				byte[] block = blocks.take();
+				if (block == EOF) {
+					break;
+				}
+
+				for (byte b : block) {
+					if (b == '\n') {
+						if (row.parse(line, lineLength)) {
+							dispatch(row);
+							rows++;
+						}
+						lineLength = 0;
+					} else if (b != '\r') {
+						if (lineLength == line.length) {
+							line = Arrays.copyOf(line, line.length * 2);
+						}
+						line[lineLength++] = b;
+					}
+				}
+			}
+
+			// last line without line break
+			if (lineLength > 0 && row.parse(line, lineLength)) {
+				dispatch(row);
+				rows++;
+			}
+			completed = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + path, e);
+		} finally {
+			if (!completed) {
+				// parser or consumer failed, the inflater must not stay blocked on the full queue with the file open
+				inflater.interrupt();
+				blocks.clear();
+			}
+			awaitTermination(inflater);
+		}
+
+		if (inflaterError[0] != null) {
+			throw inflaterError[0];
+		}
+
+		log.info("Scanned {} rows of {} for {} consumer(s)", rows - 1, path.getFileName(), consumers.size());
+	}
+
+	/**
+	 * method waits until the inflater has closed the file, an interrupt of the calling thread is kept for the caller
+	 */
+	private static void awaitTermination(Thread inflater) {
+		boolean interrupted = false;
+		while (inflater.isAlive()) {
+			try {
+				inflater.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+				inflater.interrupt();
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void dispatch(Row row) {
+		if (!row.headerRead) {
+			row.readHeader();
+			for (RowConsumer consumer : consumers) {
+				consumer.header(row);
+			}
+		} else {
+			for (RowConsumer consumer : consumers) {
+				consumer.accept(row);
+			}
+		}
+	}
+
+	private static InputStream openStream(Path path) throws IOException {
+		InputStream in = new FileInputStream(path.toFile());
+		if (path.getFileName().toString().endsWith(".gz")) {
+			return new GZIPInputStream(in, 1 << 16);
+		}
+		return in;
+	}
+
+	/**
+	 * Receives the rows of a scan. The row instance is reused and only valid during the call.
+	 */
+	interface RowConsumer {
+
+		/**
+		 * called once before the first row, column indices can be looked up here
+		 */
+		default void header(Row header) {
+		}
+
+		void accept(Row row);
+	}
+
+	/**
+	 * One row of the file, fields are only decoded on request.
+	 */
+	static final class Row {
+
+		private byte[] line;
+		private int[] start = new int[32];
+		private int[] end = new int[32];
+		private int size;
+
+		private boolean headerRead;
+		private String[] header;
+
+		/**
+		 * splits the line into fields, returns false for empty lines
+		 */
+		private boolean parse(byte[] line, int length) {
+			if (length == 0) {
+				return false;
+			}
+
+			this.line = line;
+			this.size = 0;
+
+			int pos = 0;
+			while (pos <= length) {
+				int fieldStart = pos;
+				int fieldEnd;
+
+				if (pos < length && line[pos] == '"') {
+					// quoted field, delimiters within quotes are ignored and escaped quotes ("") are unescaped in place
+					fieldStart = ++pos;
+					int write = pos;
+					while (pos < length) {
+						if (line[pos] == '"') {
+							if (pos + 1 < length && line[pos + 1] == '"') {
+								line[write++] = '"';
+								pos += 2;
+								continue;
+							}
+							break;
+						}
+						line[write++] = line[pos++];
+					}
+					fieldEnd = write;
+					while (pos < length && line[pos] != ';') {
+						pos++;
+					}
+				} else {
+					while (pos < length && line[pos] != ';') {
+						pos++;
+					}
+					fieldEnd = pos;
+				}
+
+				if (size == start.length) {
+					start = Arrays.copyOf(start, size * 2);
+					end = Arrays.copyOf(end, size * 2);
+				}
+				start[size] = fieldStart;
+				end[size] = fieldEnd;
+				size++;
+
+				// skip delimiter
+				pos++;
+			}
+
+			return true;
+		}
+
+		private void readHeader() {
+			header = new String[size];
+			for (int i = 0; i < size; i++) {
+				header[i] = getString(i);
+			}
+			headerRead = true;
+		}
+
+		/**
+		 * index of a column, throws an exception if the column does not exist
+		 */
+		int getColumn(String name) {
+			for (int i = 0; i < header.length; i++) {
+				if (header[i].equals(name)) {
+					return i;
+				}
+			}
+			throw new IllegalArgumentException("Column " + name + " not found in header " + Arrays.toString(header));
+		}
+
+		/**
+		 * index of a column or -1 if the column does not exist
+		 */
+		int findColumn(String name) {
+			for (int i = 0; i < header.length; i++) {
+				if (header[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean isEmpty(int field) {
+			return field >= size || start[field] == end[field];
+		}
+
+		String getString(int field) {
+			if (field >= size) {
+				return "";
+			}
+			return new String(line, start[field], end[field] - start[field], StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * parses a decimal number without creating a String for plain values (optional sign and fraction), everything else is left to
+		 * {@link Double#parseDouble(String)}
+		 */
+		double getDouble(int field) {
+			if (isEmpty(field)) {
+				throw new NumberFormatException("Empty field " + field);
+			}
+
+			int pos = start[field];
+			int to = end[field];
+
+			boolean negative = false;
+			if (line[pos] == '-' || line[pos] == '+') {
+				negative = line[pos] == '-';
+				pos++;
+			}
+
+			long mantissa = 0;
+			int digits = 0;
+			int scale = 0;
+			boolean fraction = false;
+
+			for (; pos < to; pos++) {
+				byte b = line[pos];
+				if (b >= '0' && b <= '9') {
+					// more digits than a long can hold are left to the JDK parser
+					if (++digits > 18) {
+						return Double.parseDouble(getString(field));
+					}
+					mantissa = mantissa * 10 + (b - '0');
+					if (fraction) {
+						scale++;
+					}
+				} else if (b == '.' && !fraction) {
+					fraction = true;
+				} else {
+					// exponents, NaN, Infinity and anything unusual are handled by the JDK
+					return Double.parseDouble(getString(field));
+				}
+			}
+
+			// a sign or a dot alone is no number
+			if (digits == 0) {
+				return Double.parseDouble(getString(field));
+			}
+
+			// mantissa and powers of ten up to 22 are exact doubles, so this division is correctly rounded and equals the JDK result
+			if (mantissa > MAX_EXACT_MANTISSA || scale > 22) {
+				return Double.parseDouble(getString(field));
+			}
+			double value = mantissa / POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+
+		/**
+		 * parses a time in the format hh:mm:ss (or plain seconds) into seconds, missing fields are invalid like empty ones
+		 */
+		int getTime(int field) {
+			int time = field < size ? AnalysisTimeUtils.parseTime(line, start[field], end[field]) : -1;
+			if (time < 0) {
+				throw new IllegalArgumentException("Invalid time format: " + getString(field));
+			}
+			return time;
+		}
+
+		/**
+		 * hash code of the raw bytes of a field, used for dictionary lookups
+		 */
+		int hash(int field) {
+			int h = 1;
+			for (int i = start[field]; i < end[field]; i++) {
+				h = 31 * h + line[i];
+			}
+			return h;
+		}
+
+		/**
+		 * compares the raw bytes of a field with the given bytes
+		 */
+		boolean fieldEquals(int field, byte[] bytes) {
+			int length = end[field] - start[field];
+			return length == bytes.length && Arrays.equals(line, start[field], end[field], bytes, 0, length);
+		}
+
+		byte[] getBytes(int field) {
+			return Arrays.copyOfRange(line, start[field], end[field]);
+		}
+
+		/**
+		 * number n of a field in the form &lt;prefix&gt;_n where the prefix is the content of another field (e.g. trip ids consisting of
+		 * the person id and the trip number), -1 if the field does not have this form
+		 */
+		int getSuffixNumber(int field, int prefixField) {
+			int prefixLength = end[prefixField] - start[prefixField];
+			int pos = start[field] + prefixLength;
+
+			if (pos + 1 >= end[field] || line[pos] != '_'
+				|| !Arrays.equals(line, start[field], pos, line, start[prefixField], end[prefixField])) {
+				return -1;
+			}
+
+			// leading zeros would not be restored when the field is rebuilt from the number
+			if (line[pos + 1] == '0' && pos + 2 < end[field]) {
+				return -1;
+			}
+
+			int number = 0;
+			for (pos++; pos < end[field]; pos++) {
+				byte b = line[pos];
+				if (b < '0' || b > '9' || number > (Integer.MAX_VALUE - 9) / 10) {
+					return -1;
+				}
+				number = number * 10 + (b - '0');
+			}
+			return number;
+		}
+
+		private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+		private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+		};
+	}
+
+	/**
+	 * Maps the byte content of fields to dense int codes, so that repeated values (person ids, modes, link ids) are only decoded once.
+	 * New codes are only assigned by one thread at a time, but {@link #get(int)} of an already assigned code may be called concurrently
+	 * (e.g. while another table is scanned), therefore the values are published via a volatile array which is replaced when it grows.
+	 */
+	static final class Dictionary {
+
+		private byte[][] keys = new byte[1024][];
+		private int[] codes = new int[1024];
+		private volatile String[] values = new String[1024];
+		private int size = 0;
+
+		/**
+		 * code of the field content, a new code is assigned for unknown values
+		 */
+		int code(Row row, int field) {
+			int mask = keys.length - 1;
+			int slot = mix(row.hash(field)) & mask;
+
+			while (keys[slot] != null) {
+				if (row.fieldEquals(field, keys[slot])) {
+					return codes[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			int code = size;
+			keys[slot] = row.getBytes(field);
+			codes[slot] = code;
+
+			String[] current = values;
+			if (code == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+				current[code] = new String(keys[slot], StandardCharsets.UTF_8);
+				values = current;
+			} else {
+				current[code] = new String(keys[slot], StandardCharsets.UTF_8);
+			}
+			size++;
+
+			if (size * 2 > keys.length) {
+				rehash();
+			}
+			return code;
+		}
+
+		/**
+		 * code of an already known value or -1
+		 */
+		int find(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			int mask = keys.length - 1;
+			int slot = mix(Arrays.hashCode(bytes)) & mask;
+
+			while (keys[slot] != null) {
+				if (Arrays.equals(keys[slot], bytes)) {
+					return codes[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		String get(int code) {
+			return values[code];
+		}
+
+		int size() {
+			return size;
+		}
+
+		private void rehash() {
+			byte[][] oldKeys = keys;
+			int[] oldCodes = codes;
+			keys = new byte[oldKeys.length * 2][];
+			codes = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == null) {
+					continue;
+				}
+				int slot = mix(Arrays.hashCode(oldKeys[i])) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				codes[slot] = oldCodes[i];
+			}
+		}
+
+		private static int mix(int h) {
+			return h ^ (h >>> 16);
+		}
+	}
+}
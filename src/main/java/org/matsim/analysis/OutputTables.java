@@ -0,0 +1,354 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared scan stage for the output tables of a run used by the liveability dimensions. Each of output_trips, output_legs and output_persons
+ * is decompressed and parsed only once per run with the {@link OutputCsvScanner}, the fields needed by the dimensions are kept in primitive
+ * columns. Person ids, modes and link ids are dictionary encoded with codes shared between the tables, trip ids are stored as the trip number
+ * of the person.
+ * <p>
+ * An instance belongs to the {@link RunOutputContext} of a run, the tables and dictionaries are released together with the context.
+ */
+final class OutputTables {
+
+	private static final Logger log = LogManager.getLogger(OutputTables.class);
+
+	private final OutputCsvScanner.Dictionary personDictionary = new OutputCsvScanner.Dictionary();
+	private final OutputCsvScanner.Dictionary modeDictionary = new OutputCsvScanner.Dictionary();
+	private final OutputCsvScanner.Dictionary linkDictionary = new OutputCsvScanner.Dictionary();
+
+	/**
+	 * trip ids not following the person_n convention, referenced with negative trip numbers
+	 */
+	private final OutputCsvScanner.Dictionary irregularTripIds = new OutputCsvScanner.Dictionary();
+
+	private final Map<Path, Movements> trips = new HashMap<>();
+	private final Map<Path, Movements> legs = new HashMap<>();
+	private final Map<Path, Persons> persons = new HashMap<>();
+
+	OutputTables() {
+	}
+
+	/**
+	 * trips of the output_trips file, read on first use
+	 */
+	synchronized Movements trips(Path path) throws IOException {
+		Movements table = trips.get(path);
+		if (table == null) {
+			table = new Movements("main_mode", "euclidean_distance");
+			scan(path, table);
+			trips.put(path, table);
+		}
+		return table;
+	}
+
+	/**
+	 * legs of the output_legs file, read on first use
+	 */
+	synchronized Movements legs(Path path) throws IOException {
+		Movements table = legs.get(path);
+		if (table == null) {
+			table = new Movements("mode", "distance");
+			scan(path, table);
+			legs.put(path, table);
+		}
+		return table;
+	}
+
+	/**
+	 * persons of the output_persons file, read on first use
+	 */
+	synchronized Persons persons(Path path) throws IOException {
+		Persons table = persons.get(path);
+		if (table == null) {
+			table = new Persons();
+			scan(path, table);
+			persons.put(path, table);
+		}
+		return table;
+	}
+
+	private static void scan(Path path, OutputCsvScanner.RowConsumer table) throws IOException {
+		long start = System.currentTimeMillis();
+		new OutputCsvScanner().addConsumer(table).scan(path);
+		log.info("Read {} in {} ms", path.getFileName(), System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * dictionary code of a mode as used by {@link Movements#getModeCode(int)}, -1 if the mode does not occur in any table read so far
+	 */
+	synchronized int getModeCode(String mode) {
+		return modeDictionary.find(mode);
+	}
+
+	/**
+	 * mode of a dictionary code as used by {@link Movements#getModeCode(int)}
+	 */
+	synchronized String getMode(int code) {
+		return modeDictionary.get(code);
+	}
+
+	/**
+	 * dictionary code of a person as used by {@link Movements#getPersonCode(int)}, -1 if the person does not occur in any table read so far
+	 */
+	synchronized int getPersonCode(String person) {
+		return personDictionary.find(person);
+	}
+
+	/**
+	 * number of person codes assigned so far
+	 */
+	synchronized int getPersonCount() {
+		return personDictionary.size();
+	}
+
+	/**
+	 * Trips or legs, one row per movement in file order.
+	 */
+	final class Movements implements OutputCsvScanner.RowConsumer {
+
+		private final String modeColumn;
+		private final String distanceColumn;
+
+		private int personField;
+		private int tripField;
+		private int modeField;
+		private int depTimeField;
+		private int travTimeField;
+		private int startXField;
+		private int startYField;
+		private int endXField;
+		private int endYField;
+		private int startLinkField;
+		private int endLinkField;
+		private int distanceField;
+
+		private final IntArrayList person = new IntArrayList();
+		private final IntArrayList tripNumber = new IntArrayList();
+		private final IntArrayList mode = new IntArrayList();
+		private final IntArrayList depTime = new IntArrayList();
+		private final IntArrayList travTime = new IntArrayList();
+		private final DoubleArrayList startX = new DoubleArrayList();
+		private final DoubleArrayList startY = new DoubleArrayList();
+		private final DoubleArrayList endX = new DoubleArrayList();
+		private final DoubleArrayList endY = new DoubleArrayList();
+		private final IntArrayList startLink = new IntArrayList();
+		private final IntArrayList endLink = new IntArrayList();
+		private final DoubleArrayList distance = new DoubleArrayList();
+
+		private Movements(String modeColumn, String distanceColumn) {
+			this.modeColumn = modeColumn;
+			this.distanceColumn = distanceColumn;
+		}
+
+		@Override
+		public void header(OutputCsvScanner.Row header) {
+			personField = header.getColumn("person");
+			tripField = header.getColumn("trip_id");
+			modeField = header.getColumn(modeColumn);
+			depTimeField = header.getColumn("dep_time");
+			travTimeField = header.getColumn("trav_time");
+			startXField = header.getColumn("start_x");
+			startYField = header.getColumn("start_y");
+			endXField = header.getColumn("end_x");
+			endYField = header.getColumn("end_y");
+			startLinkField = header.findColumn("start_link");
+			endLinkField = header.findColumn("end_link");
+			distanceField = header.findColumn(distanceColumn);
+		}
+
+		@Override
+		public void accept(OutputCsvScanner.Row row) {
+			person.add(personDictionary.code(row, personField));
+
+			int number = row.getSuffixNumber(tripField, personField);
+			tripNumber.add(number >= 0 ? number : -1 - irregularTripIds.code(row, tripField));
+
+			mode.add(modeDictionary.code(row, modeField));
+			depTime.add(row.getTime(depTimeField));
+			travTime.add(row.getTime(travTimeField));
+			startX.add(row.getDouble(startXField));
+			startY.add(row.getDouble(startYField));
+			endX.add(row.getDouble(endXField));
+			endY.add(row.getDouble(endYField));
+			startLink.add(startLinkField >= 0 ? linkDictionary.code(row, startLinkField) : -1);
+			endLink.add(endLinkField >= 0 ? linkDictionary.code(row, endLinkField) : -1);
+			distance.add(distanceField >= 0 && !row.isEmpty(distanceField) ? row.getDouble(distanceField) : Double.NaN);
+		}
+
+		int size() {
+			return person.size();
+		}
+
+		String getPerson(int row) {
+			return personDictionary.get(person.getInt(row));
+		}
+
+		/**
+		 * dictionary code of the person, shared by all tables
+		 */
+		int getPersonCode(int row) {
+			return person.getInt(row);
+		}
+
+		String getTripId(int row) {
+			int number = tripNumber.getInt(row);
+			return number >= 0 ? getPerson(row) + "_" + number : irregularTripIds.get(-1 - number);
+		}
+
+		/**
+		 * key identifying the trip of this row, equal for a trip and its legs
+		 */
+		long getTripKey(int row) {
+			return ((long) person.getInt(row) << 32) | (tripNumber.getInt(row) & 0xffffffffL);
+		}
+
+		String getMode(int row) {
+			return modeDictionary.get(mode.getInt(row));
+		}
+
+		/**
+		 * dictionary code of the mode, shared by all tables
+		 */
+		int getModeCode(int row) {
+			return mode.getInt(row);
+		}
+
+		int getDepTime(int row) {
+			return depTime.getInt(row);
+		}
+
+		int getTravTime(int row) {
+			return travTime.getInt(row);
+		}
+
+		double getStartX(int row) {
+			return startX.getDouble(row);
+		}
+
+		double getStartY(int row) {
+			return startY.getDouble(row);
+		}
+
+		double getEndX(int row) {
+			return endX.getDouble(row);
+		}
+
+		double getEndY(int row) {
+			return endY.getDouble(row);
+		}
+
+		String getStartLink(int row) {
+			int code = startLink.getInt(row);
+			return code >= 0 ? linkDictionary.get(code) : null;
+		}
+
+		String getEndLink(int row) {
+			int code = endLink.getInt(row);
+			return code >= 0 ? linkDictionary.get(code) : null;
+		}
+
+		/**
+		 * euclidean distance for trips, routed distance for legs, NaN if not available
+		 */
+		double getDistance(int row) {
+			return distance.getDouble(row);
+		}
+	}
+
+	/**
+	 * Persons with their home location in file order, home coordinates are NaN if missing. The original text of the coordinates is kept
+	 * as well, so that they can be written unchanged.
+	 */
+	final class Persons implements OutputCsvScanner.RowConsumer {
+
+		private int personField;
+		private int homeXField;
+		private int homeYField;
+
+		private final IntArrayList person = new IntArrayList();
+		private final DoubleArrayList homeX = new DoubleArrayList();
+		private final DoubleArrayList homeY = new DoubleArrayList();
+		private final ObjectArrayList<String> homeXText = new ObjectArrayList<>();
+		private final ObjectArrayList<String> homeYText = new ObjectArrayList<>();
+
+		private Persons() {
+		}
+
+		@Override
+		public void header(OutputCsvScanner.Row header) {
+			personField = header.getColumn("person");
+			homeXField = header.getColumn("home_x");
+			homeYField = header.getColumn("home_y");
+		}
+
+		@Override
+		public void accept(OutputCsvScanner.Row row) {
+			person.add(personDictionary.code(row, personField));
+
+			double x = Double.NaN;
+			double y = Double.NaN;
+			if (!row.isEmpty(homeXField) && !row.isEmpty(homeYField)) {
+				try {
+					x = row.getDouble(homeXField);
+					y = row.getDouble(homeYField);
+				} catch (NumberFormatException e) {
+					log.error("Invalid coordinates for person {}: {}, {}", row.getString(personField), row.getString(homeXField), row.getString(homeYField));
+					x = Double.NaN;
+					y = Double.NaN;
+				}
+			}
+			homeX.add(x);
+			homeY.add(y);
+			homeXText.add(row.getString(homeXField));
+			homeYText.add(row.getString(homeYField));
+		}
+
+		int size() {
+			return person.size();
+		}
+
+		String getPerson(int row) {
+			return personDictionary.get(person.getInt(row));
+		}
+
+		/**
+		 * true if both home coordinates are given
+		 */
+		boolean hasHome(int row) {
+			return !Double.isNaN(homeX.getDouble(row)) && !Double.isNaN(homeY.getDouble(row));
+		}
+
+		double getHomeX(int row) {
+			return homeX.getDouble(row);
+		}
+
+		double getHomeY(int row) {
+			return homeY.getDouble(row);
+		}
+
+		/**
+		 * home x coordinate as written in the file
+		 */
+		String getHomeXText(int row) {
+			return homeXText.get(row);
+		}
+
+		/**
+		 * home y coordinate as written in the file
+		 */
+		String getHomeYText(int row) {
+			return homeYText.get(row);
+		}
+	}
+}
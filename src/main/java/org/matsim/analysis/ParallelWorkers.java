@@ -0,0 +1,70 @@
+package org.matsim.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Parallel loops for the batch routing of the analyses. Every worker creates its own state, e.g. routers which are not thread safe, and takes
+ * the next index from a shared counter until all indices are processed. The workers run on a pool which is shut down afterwards, so their
+ * state is released with the loop - unlike thread locals on the threads of the common pool, which live as long as the JVM.
+ */
+final class ParallelWorkers {
+
+	private ParallelWorkers() {
+	}
+
+	/**
+	 * method calls the action for every index in [0, size) on at most the given number of threads, every thread with its own state - the
+	 * remaining indices are skipped after a failure, which is rethrown
+	 */
+	static <S> void forEach(int threads, int size, Supplier<S> state, ObjIntConsumer<S> action) {
+		if (size == 0) {
+			return;
+		}
+
+		int workers = Math.max(1, Math.min(threads, size));
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+		try {
+			List<Future<?>> futures = new ArrayList<>(workers);
+			for (int w = 0; w < workers; w++) {
+				futures.add(executor.submit(() -> {
+					try {
+						S workerState = state.get();
+						for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+							action.accept(workerState, i);
+						}
+					} catch (RuntimeException | Error e) {
+						next.set(size);
+						throw e;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			next.set(size);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the workers", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.matsim.analysis;
+
+import ch.sbb.matsim.routing.pt.raptor.RaptorRoute;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.facilities.Facility;
+import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Profile based pt routing for the {@link AgentBasedPtQualityAnalysis}. Trips are grouped by the grid cells of their origin and destination and
+ * their departure hour. One range query is run per group from the origin to the destination of the first trip of the group, the pt travel time
+ * and the max walk distance of every trip are then taken from the pareto set of routes departing within the hour. Trips without a suitable
+ * route in the profile (e.g. departing after the last connection of the hour) are left to the point in time routing.
+ * <p>
+ * The groups are routed in parallel on the threads left to the analysis by the {@link LiveabilityAnalysisScheduler}, every thread with its own
+ * raptor.
+ */
+final class PtProfileRouter {
+
+	private static final Logger log = LogManager.getLogger(PtProfileRouter.class);
+
+	private final Supplier<SwissRailRaptor> raptorFactory;
+	private final double cellSize;
+
+	private final LongAdder rangeQueries = new LongAdder();
+	private final LongAdder resolvedTrips = new LongAdder();
+
+	PtProfileRouter(Supplier<SwissRailRaptor> raptorFactory, double cellSize) {
+		this.raptorFactory = raptorFactory;
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * method returns the pt travel time and max walk distance per trip as {travelTime, legWalkMaxDistance} - null for trips which have to be
+	 * routed individually
+	 */
+	double[][] calcTravelTimes(Facility[] startFacilities, Facility[] endFacilities, double[] departureTimes) {
+
+		Map<GroupKey, List<Integer>> tripsPerGroup = new HashMap<>();
+		for (int i = 0; i < startFacilities.length; i++) {
+			tripsPerGroup.computeIfAbsent(createKey(startFacilities[i].getCoord(), endFacilities[i].getCoord(), departureTimes[i]), k -> new ArrayList<>()).add(i);
+		}
+
+		List<Map.Entry<GroupKey, List<Integer>>> groups = new ArrayList<>(tripsPerGroup.entrySet());
+		double[][] result = new double[startFacilities.length][];
+
+		ParallelWorkers.forEach(LiveabilityAnalysisScheduler.threadBudget(), groups.size(), raptorFactory, (raptor, g) -> {
+			GroupKey key = groups.get(g).getKey();
+			List<Integer> trips = groups.get(g).getValue();
+			int first = trips.get(0);
+
+			double windowStart = key.hour() * 3600.;
+			List<RaptorRoute> profile = raptor.calcRoutes(startFacilities[first], endFacilities[first],
+				windowStart, windowStart, windowStart + 3600., null, new AttributesImpl());
+			rangeQueries.increment();
+
+			if (profile == null || profile.isEmpty()) {
+				return;
+			}
+
+			for (int i : trips) {
+				result[i] = selectRoute(profile, departureTimes[i]);
+				if (result[i] != null) {
+					resolvedTrips.increment();
+				}
+			}
+		});
+
+		log.info("Pt profile routing: {} trips in {} groups, {} range queries, {} trips resolved from the profiles",
+			startFacilities.length, groups.size(), rangeQueries.sum(), resolvedTrips.sum());
+
+		return result;
+	}
+
+	/**
+	 * route of the profile arriving first when departing at the given time - walk only routes can be used at any time
+	 */
+	private static double[] selectRoute(List<RaptorRoute> profile, double departureTime) {
+		double bestArrival = Double.POSITIVE_INFINITY;
+		RaptorRoute best = null;
+
+		for (RaptorRoute route : profile) {
+			double arrival;
+			if (isWalkOnly(route)) {
+				arrival = departureTime + route.getTravelTime();
+			} else if (route.getDepartureTime() >= departureTime) {
+				arrival = route.getDepartureTime() + route.getTravelTime();
+			} else {
+				continue;
+			}
+
+			if (arrival < bestArrival) {
+				bestArrival = arrival;
+				best = route;
+			}
+		}
+
+		if (best == null) {
+			return null;
+		}
+
+		double legWalkMaxDistance = 0.0;
+		for (RaptorRoute.RoutePart part : best.getParts()) {
+			if (Objects.equals(part.mode, "walk")) {
+				legWalkMaxDistance = Math.max(legWalkMaxDistance, part.distance);
+			}
+		}
+
+		return new double[]{bestArrival - departureTime, legWalkMaxDistance};
+	}
+
+	private static boolean isWalkOnly(RaptorRoute route) {
+		for (RaptorRoute.RoutePart part : route.getParts()) {
+			if (part.line != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private GroupKey createKey(Coord start, Coord end, double departureTime) {
+		return new GroupKey((int) Math.floor(start.getX() / cellSize), (int) Math.floor(start.getY() / cellSize),
+			(int) Math.floor(end.getX() / cellSize), (int) Math.floor(end.getY() / cellSize), (int) (departureTime / 3600));
+	}
+
+	private record GroupKey(int startX, int startY, int endX, int endY, int hour) {
+	}
+}
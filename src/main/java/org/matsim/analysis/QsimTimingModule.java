@@ -4,29 +4,79 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ReplanningEvent;
+import org.matsim.core.controler.events.ScoringEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.events.StartupEvent;
 import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ReplanningListener;
+import org.matsim.core.controler.listener.ScoringListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
 import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
 import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * This module measures the runtime of the QSim and writes it to a CSV file.
+ * This module measures the runtime of the QSim and writes it to a CSV file. In addition, every iteration is instrumented:
+ * <ul>
+ *     <li>qsim_phases.csv: wall time per iteration and phase (replanning, preparation and routing before the mobsim, mobsim, after mobsim,
+ *     scoring and the end of the iteration)</li>
+ *     <li>qsim_sim_time.csv: samples of simulation time vs wall time every n simulated seconds with heap usage and gc counters</li>
+ *     <li>qsim_threads.csv: cpu time and utilisation of every thread which was busy during the mobsim, e.g. the qsim workers</li>
+ * </ul>
+ * The current values can optionally be read via JMX as {@link QsimTimingMXBean}.
  */
 public final class QsimTimingModule extends AbstractModule {
 
+	private final Settings settings;
+
+	public QsimTimingModule() {
+		this(900, false);
+	}
+
+	/**
+	 * @param sampleInterval simulated seconds between two samples of the simulation time
+	 * @param registerMBean  whether the current values are exposed via JMX
+	 */
+	public QsimTimingModule(int sampleInterval, boolean registerMBean) {
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("Sample interval has to be positive, got " + sampleInterval);
+		}
+		this.settings = new Settings(sampleInterval, registerMBean);
+	}
+
 	@Override
 	public void install() {
 		// bind the timer, so that it can be injected into CheckForLastIteration
@@ -34,6 +84,36 @@ public final class QsimTimingModule extends AbstractModule {
 		bind(Timer.class).in(Singleton.class);
 		addMobsimListenerBinding().to(Timer.class);
 		addControlerListenerBinding().to(CheckForLastIteration.class);
+
+		// the instrumentation listens to the controler and to the mobsim, both need the same instance
+		bind(Settings.class).toInstance(settings);
+		bind(Instrumentation.class).in(Singleton.class);
+		addMobsimListenerBinding().to(Instrumentation.class);
+		addControlerListenerBinding().to(Instrumentation.class);
+	}
+
+	/**
+	 * Current values of the instrumentation, registered as org.matsim.analysis:type=QsimTiming.
+	 */
+	public interface QsimTimingMXBean {
+
+		int getIteration();
+
+		String getPhase();
+
+		double getSimulationTime();
+
+		/**
+		 * simulated seconds per wall second over the last sample interval
+		 */
+		double getRealTimeRatio();
+
+		long getLastMobsimMillis();
+
+		int getNumberOfThreads();
+	}
+
+	private record Settings(int sampleInterval, boolean registerMBean) {
 	}
 
 	private static final class CheckForLastIteration implements BeforeMobsimListener {
@@ -101,4 +181,258 @@ public final class QsimTimingModule extends AbstractModule {
 				.build();
 		}
 	}
+
+	/**
+	 * The phases are measured between the notifications of this listener, so each phase also contains the other listeners of the same
+	 * controler event which are notified after this one. Events are written during the mobsim, closing the events file is part of after_mobsim.
+	 */
+	private static final class Instrumentation implements StartupListener, IterationStartsListener, ReplanningListener, BeforeMobsimListener,
+		ScoringListener, IterationEndsListener, ShutdownListener, MobsimInitializedListener, MobsimAfterSimStepListener, MobsimBeforeCleanupListener,
+		QsimTimingMXBean {
+
+		private static final Logger log = LogManager.getLogger(Instrumentation.class);
+		private static final String MBEAN_NAME = "org.matsim.analysis:type=QsimTiming";
+
+		private final Config config;
+		private final OutputDirectoryHierarchy outDir;
+		private final Settings settings;
+		private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		private CSVPrinter phases;
+		private CSVPrinter simTime;
+		private CSVPrinter threadUsage;
+
+		// written by the controler and mobsim thread, read via jmx
+		private volatile int iteration;
+		private volatile String phase = "startup";
+		private volatile double currentSimTime;
+		private volatile double realTimeRatio;
+		private volatile long lastMobsimMillis;
+
+		private long phaseStart;
+		private long mobsimStart;
+		private double nextSample;
+		private double lastSampleSimTime;
+		private long lastSampleWall;
+		private final Map<Long, Long> cpuTimeAtMobsimStart = new HashMap<>();
+
+		@Inject
+		private Instrumentation(Config config, OutputDirectoryHierarchy outDir, Settings settings) {
+			this.config = config;
+			this.outDir = outDir;
+			this.settings = settings;
+		}
+
+		@Override
+		public void notifyStartup(StartupEvent event) {
+			try {
+				phases = createPrinter("qsim_phases.csv", "iteration", "phase", "duration_ms");
+				simTime = createPrinter("qsim_sim_time.csv", "iteration", "sim_time", "wall_time_ms", "rtr", "heap_used_mb", "gc_count", "gc_time_ms");
+				threadUsage = createPrinter("qsim_threads.csv", "iteration", "thread", "cpu_time_ms", "utilisation");
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			if (settings.registerMBean()) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, QsimTimingMXBean.class, true), new ObjectName(MBEAN_NAME));
+				} catch (JMException e) {
+					log.warn("QsimTiming could not be registered via JMX", e);
+				}
+			}
+		}
+
+		@Override
+		public void notifyIterationStarts(IterationStartsEvent event) {
+			iteration = event.getIteration();
+			startPhase("iteration_start");
+		}
+
+		@Override
+		public void notifyReplanning(ReplanningEvent event) {
+			startPhase("replanning");
+		}
+
+		@Override
+		public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+			// includes the routing of plans which were changed or not routed yet
+			startPhase("before_mobsim");
+		}
+
+		@Override
+		public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+			startPhase("mobsim");
+			mobsimStart = System.nanoTime();
+			lastSampleWall = mobsimStart;
+			lastSampleSimTime = config.qsim().getStartTime().orElse(0);
+			nextSample = lastSampleSimTime + settings.sampleInterval();
+
+			cpuTimeAtMobsimStart.clear();
+			if (threads.isThreadCpuTimeSupported()) {
+				for (long id : threads.getAllThreadIds()) {
+					cpuTimeAtMobsimStart.put(id, threads.getThreadCpuTime(id));
+				}
+			}
+		}
+
+		@Override
+		public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+			double time = e.getSimulationTime();
+			currentSimTime = time;
+			if (time < nextSample) {
+				return;
+			}
+			while (nextSample <= time) {
+				nextSample += settings.sampleInterval();
+			}
+			writeSample(time);
+		}
+
+		@Override
+		public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+			long now = System.nanoTime();
+			lastMobsimMillis = (now - mobsimStart) / 1_000_000;
+			writeSample(currentSimTime);
+			writeThreadUsage(now - mobsimStart);
+			startPhase("after_mobsim");
+		}
+
+		@Override
+		public void notifyScoring(ScoringEvent event) {
+			startPhase("scoring");
+		}
+
+		@Override
+		public void notifyIterationEnds(IterationEndsEvent event) {
+			startPhase("iteration_end");
+			flush();
+		}
+
+		@Override
+		public void notifyShutdown(ShutdownEvent event) {
+			startPhase("shutdown");
+			try {
+				for (CSVPrinter printer : new CSVPrinter[]{phases, simTime, threadUsage}) {
+					if (printer != null) {
+						printer.close();
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			if (settings.registerMBean()) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+				} catch (JMException e) {
+					log.warn("QsimTiming could not be unregistered from JMX", e);
+				}
+			}
+		}
+
+		/**
+		 * method ends the current phase and writes its duration
+		 */
+		private void startPhase(String next) {
+			long now = System.nanoTime();
+			if (!phase.equals("startup")) {
+				print(phases, iteration, phase, (now - phaseStart) / 1_000_000);
+			}
+			phase = next;
+			phaseStart = now;
+		}
+
+		private void writeSample(double time) {
+			long now = System.nanoTime();
+			double wallSeconds = (now - lastSampleWall) / 1e9;
+			if (wallSeconds > 0) {
+				realTimeRatio = (time - lastSampleSimTime) / wallSeconds;
+			}
+			lastSampleWall = now;
+			lastSampleSimTime = time;
+
+			long gcCount = 0;
+			long gcTime = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				gcCount += Math.max(gc.getCollectionCount(), 0);
+				gcTime += Math.max(gc.getCollectionTime(), 0);
+			}
+			long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+
+			print(simTime, iteration, time, (now - mobsimStart) / 1_000_000, realTimeRatio, heapUsed, gcCount, gcTime);
+		}
+
+		/**
+		 * threads started during the mobsim (e.g. the workers of the qsim) count from 0, threads which already ended are missing
+		 */
+		private void writeThreadUsage(long wallNanos) {
+			if (!threads.isThreadCpuTimeSupported() || wallNanos <= 0) {
+				return;
+			}
+			for (long id : threads.getAllThreadIds()) {
+				long cpuTime = threads.getThreadCpuTime(id);
+				ThreadInfo info = threads.getThreadInfo(id);
+				if (cpuTime < 0 || info == null) {
+					continue;
+				}
+				long used = cpuTime - cpuTimeAtMobsimStart.getOrDefault(id, 0L);
+				if (used > 0) {
+					print(threadUsage, iteration, info.getThreadName(), used / 1_000_000, (double) used / wallNanos);
+				}
+			}
+		}
+
+		private void flush() {
+			try {
+				phases.flush();
+				simTime.flush();
+				threadUsage.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private static void print(CSVPrinter printer, Object... values) {
+			try {
+				printer.printRecord(values);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private CSVPrinter createPrinter(String file, String... header) throws IOException {
+			BufferedWriter writer = Files.newBufferedWriter(Paths.get(outDir.getOutputFilename(file)));
+			return new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(header).build());
+		}
+
+		@Override
+		public int getIteration() {
+			return iteration;
+		}
+
+		@Override
+		public String getPhase() {
+			return phase;
+		}
+
+		@Override
+		public double getSimulationTime() {
+			return currentSimTime;
+		}
+
+		@Override
+		public double getRealTimeRatio() {
+			return realTimeRatio;
+		}
+
+		@Override
+		public long getLastMobsimMillis() {
+			return lastMobsimMillis;
+		}
+
+		@Override
+		public int getNumberOfThreads() {
+			return config.qsim().getNumberOfThreads();
+		}
+	}
 }
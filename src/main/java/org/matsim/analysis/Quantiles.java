@@ -0,0 +1,324 @@
+package org.matsim.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Quantiles of primitive double values for the analyses.
+ * <ul>
+ *     <li>{@link #quantile(double[], double)} and {@link #median(double[])} are exact. They select the order statistics in linear time
+ *     instead of sorting all values. Between two order statistics they interpolate linearly, so the median of an even number of values is the
+ *     mean of the two middle values as before.</li>
+ *     <li>{@link Sketch} is a mergeable t-digest for values which are streamed or collected by several threads. Its memory only depends on
+ *     the compression, the error is smallest at the tails, e.g. for the p90.</li>
+ * </ul>
+ * NaN values are ignored by both.
+ */
+final class Quantiles {
+
+	/**
+	 * below this size a range is sorted by insertion instead of being partitioned
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private Quantiles() {
+	}
+
+	/**
+	 * median of the values, NaN if there are none - the array is not changed
+	 */
+	static double median(double[] values) {
+		return quantile(values, 0.5);
+	}
+
+	/**
+	 * exact quantile q in [0, 1] of the values, NaN if there are none - the array is not changed
+	 */
+	static double quantile(double[] values, double q) {
+		return quantileInPlace(values.clone(), values.length, q);
+	}
+
+	/**
+	 * exact quantile of the first size values, which are reordered - NaN values are moved behind the other values and ignored
+	 */
+	static double quantileInPlace(double[] values, int size, double q) {
+		checkQuantile(q);
+
+		// the selection is only defined for ordered values
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (!Double.isNaN(values[i])) {
+				swap(values, i, n++);
+			}
+		}
+		size = n;
+
+		if (size == 0) {
+			return Double.NaN;
+		}
+
+		double position = q * (size - 1);
+		int lower = (int) Math.floor(position);
+		select(values, 0, size - 1, lower);
+		if (lower == size - 1 || position == lower) {
+			return values[lower];
+		}
+
+		// after the selection all values behind the lower order statistic are at least as large, the next one is their minimum
+		double upper = values[lower + 1];
+		for (int i = lower + 2; i < size; i++) {
+			upper = Math.min(upper, values[i]);
+		}
+		// weighted this way the median of an even number of values is exactly the mean of the two middle values
+		double fraction = position - lower;
+		return (1 - fraction) * values[lower] + fraction * upper;
+	}
+
+	/**
+	 * method reorders the range so that the value at k is the one of the sorted range, smaller values are before and larger values behind it
+	 */
+	private static void select(double[] values, int left, int right, int k) {
+		while (right - left > INSERTION_SORT_THRESHOLD) {
+			// median of three as pivot, which avoids the quadratic case for sorted input
+			int middle = (left + right) >>> 1;
+			if (values[middle] < values[left]) swap(values, middle, left);
+			if (values[right] < values[left]) swap(values, right, left);
+			if (values[right] < values[middle]) swap(values, right, middle);
+			double pivot = values[middle];
+
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (values[i] < pivot) i++;
+				while (values[j] > pivot) j--;
+				if (i <= j) {
+					swap(values, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+
+		for (int i = left + 1; i <= right; i++) {
+			double value = values[i];
+			int j = i - 1;
+			while (j >= left && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+
+	private static void swap(double[] values, int i, int j) {
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	private static void checkQuantile(double q) {
+		if (!(q >= 0 && q <= 1)) {
+			throw new IllegalArgumentException("Quantile has to be in [0, 1], got " + q);
+		}
+	}
+
+	/**
+	 * Mergeable t-digest: the values are summarized by centroids (mean and weight) sorted by their mean. A centroid at the quantile q holds at most
+	 * 4 n q (1 - q) / compression values, so the centroids are small at the tails and the number of centroids is about compression * pi / 2.
+	 * Added values are buffered and merged into the centroids in one linear pass once the buffer is full.
+	 * <p>
+	 * A sketch is not thread safe. Every thread fills its own sketch and the sketches are combined with {@link #merge(Sketch)}, e.g. as combiner
+	 * of {@code Stream.collect}.
+	 */
+	static final class Sketch {
+
+		static final double DEFAULT_COMPRESSION = 200;
+
+		private final double compression;
+
+		// centroids sorted by their mean
+		private double[] means;
+		private double[] weights;
+		private int centroids;
+
+		private final double[] buffer;
+		private int buffered;
+
+		private double totalWeight;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+
+		Sketch() {
+			this(DEFAULT_COMPRESSION);
+		}
+
+		Sketch(double compression) {
+			if (compression < 10) {
+				throw new IllegalArgumentException("Compression has to be at least 10, got " + compression);
+			}
+			this.compression = compression;
+			int capacity = (int) Math.ceil(2 * compression) + 10;
+			this.means = new double[capacity];
+			this.weights = new double[capacity];
+			this.buffer = new double[Math.max(capacity * 4, 1024)];
+		}
+
+		/**
+		 * adds a value, NaN is ignored
+		 */
+		void add(double value) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			if (buffered == buffer.length) {
+				flush();
+			}
+			buffer[buffered++] = value;
+			totalWeight++;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		/**
+		 * adds all values of the other sketch, which is not changed - returns this sketch
+		 */
+		Sketch merge(Sketch other) {
+			other.flush();
+			if (other.centroids == 0) {
+				return this;
+			}
+			flush();
+			mergeCentroids(other.means, other.weights, other.centroids);
+			totalWeight += other.totalWeight;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			return this;
+		}
+
+		/**
+		 * number of added values
+		 */
+		long count() {
+			return (long) totalWeight;
+		}
+
+		double median() {
+			return quantile(0.5);
+		}
+
+		/**
+		 * estimated quantile q in [0, 1], NaN if no values were added - min and max are exact
+		 */
+		double quantile(double q) {
+			checkQuantile(q);
+			flush();
+			if (centroids == 0) {
+				return Double.NaN;
+			}
+			if (q == 0) {
+				return min;
+			}
+			if (q == 1) {
+				return max;
+			}
+
+			// the mean of a centroid is placed at the middle of its weight, in between is interpolated linearly
+			double target = q * totalWeight;
+			double cumulative = 0;
+			double previousCenter = 0;
+			double previousMean = min;
+			for (int i = 0; i < centroids; i++) {
+				double center = cumulative + weights[i] / 2;
+				if (target < center) {
+					return interpolate(previousMean, means[i], (target - previousCenter) / (center - previousCenter));
+				}
+				cumulative += weights[i];
+				previousCenter = center;
+				previousMean = means[i];
+			}
+			return interpolate(previousMean, max, (target - previousCenter) / (totalWeight - previousCenter));
+		}
+
+		private static double interpolate(double from, double to, double fraction) {
+			return fraction <= 0 ? from : from + Math.min(fraction, 1) * (to - from);
+		}
+
+		/**
+		 * method merges the buffered values into the centroids
+		 */
+		private void flush() {
+			if (buffered == 0) {
+				return;
+			}
+			Arrays.sort(buffer, 0, buffered);
+			double[] ones = new double[buffered];
+			Arrays.fill(ones, 1);
+			// the weight of the buffered values is already counted in the total weight
+			mergeCentroids(buffer, ones, buffered);
+			buffered = 0;
+		}
+
+		/**
+		 * method merges sorted centroids into the centroids of this sketch in one pass over both sorted lists
+		 */
+		private void mergeCentroids(double[] otherMeans, double[] otherWeights, int otherSize) {
+			int size = centroids + otherSize;
+			double[] mergedMeans = new double[size];
+			double[] mergedWeights = new double[size];
+			int i = 0;
+			int j = 0;
+			for (int n = 0; n < size; n++) {
+				if (j == otherSize || (i < centroids && means[i] <= otherMeans[j])) {
+					mergedMeans[n] = means[i];
+					mergedWeights[n] = weights[i++];
+				} else {
+					mergedMeans[n] = otherMeans[j];
+					mergedWeights[n] = otherWeights[j++];
+				}
+			}
+
+			double total = 0;
+			for (int n = 0; n < size; n++) {
+				total += mergedWeights[n];
+			}
+
+			// greedy pass: neighbouring centroids are combined as long as the result respects the size limit at its quantile
+			centroids = 0;
+			double soFar = 0;
+			double mean = mergedMeans[0];
+			double weight = mergedWeights[0];
+			for (int n = 1; n < size; n++) {
+				double proposed = weight + mergedWeights[n];
+				double q = (soFar + proposed / 2) / total;
+				double limit = Math.max(1, 4 * total * q * (1 - q) / compression);
+				if (proposed <= limit) {
+					mean += (mergedMeans[n] - mean) * mergedWeights[n] / proposed;
+					weight = proposed;
+				} else {
+					appendCentroid(mean, weight);
+					soFar += weight;
+					mean = mergedMeans[n];
+					weight = mergedWeights[n];
+				}
+			}
+			appendCentroid(mean, weight);
+		}
+
+		private void appendCentroid(double mean, double weight) {
+			if (centroids == means.length) {
+				means = Arrays.copyOf(means, centroids * 2);
+				weights = Arrays.copyOf(weights, centroids * 2);
+			}
+			means[centroids] = mean;
+			weights[centroids] = weight;
+			centroids++;
+		}
+	}
+}
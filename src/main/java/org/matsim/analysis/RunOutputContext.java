@@ -0,0 +1,426 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.application.ApplicationUtils;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.NetworkCleaner;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.trafficmonitoring.TravelTimeCalculator;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.simwrapper.SimWrapperConfigGroup;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared access to the output of a run for the analysis commands. The config, the network, the cleaned network, the transit schedule and
+ * the congested link travel times are loaded on first use and kept until the context is closed, so that analyses running one after another
+ * or in parallel on the same run directory parse the large xml files only once. All returned objects are shared and must not be modified.
+ * The owner of a run, e.g. the {@code RunLiveabilityDashboard}, closes the context after its analyses, which releases the loaded objects.
+ * <p>
+ * The parsed network is cached as a binary snapshot in the cache directory, which is read instead of the xml as long as the network file is
+ * unchanged. The link travel times derived from the events are cached there as {@link LinkTravelTimeMatrix}.
+ */
+public final class RunOutputContext implements AutoCloseable {
+
+	private static final Logger log = LogManager.getLogger(RunOutputContext.class);
+
+	private static final Map<Path, RunOutputContext> contexts = new HashMap<>();
+
+	private static final int SNAPSHOT_MAGIC = 0x4e455453;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private static final byte STRING = 0;
+	private static final byte DOUBLE = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte BOOLEAN = 4;
+
+	private final Path runDirectory;
+	private final Path cacheDirectory;
+
+	// every object has its own lock, so that e.g. reading the events for the travel times does not block the access to the network
+	private final Object configLock = new Object();
+	private final Object networkLock = new Object();
+	private final Object cleanedNetworkLock = new Object();
+	private final Object transitScheduleLock = new Object();
+	private final Object linkTravelTimesLock = new Object();
+
+	private Config config;
+	private Network network;
+	private Network cleanedNetwork;
+	private TransitSchedule transitSchedule;
+	private LinkTravelTimeMatrix linkTravelTimes;
+
+	private final OutputTables outputTables = new OutputTables();
+
+	private RunOutputContext(Path runDirectory, Path cacheDirectory) {
+		this.runDirectory = runDirectory;
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * context of a run directory, the cache directory is only used by the call that creates the context. The context stays registered
+	 * until it is closed.
+	 */
+	public static synchronized RunOutputContext of(Path runDirectory, Path cacheDirectory) {
+		return contexts.computeIfAbsent(runDirectory.toAbsolutePath().normalize(), dir -> new RunOutputContext(dir, cacheDirectory));
+	}
+
+	/**
+	 * method removes the context from the registry and releases the loaded config, networks, transit schedule and travel times, the output
+	 * tables are released together with the context. The next call of {@link #of(Path, Path)} for the run directory creates a new context.
+	 */
+	@Override
+	public void close() {
+		synchronized (RunOutputContext.class) {
+			contexts.remove(runDirectory, this);
+		}
+		synchronized (configLock) {
+			config = null;
+		}
+		synchronized (networkLock) {
+			network = null;
+		}
+		synchronized (cleanedNetworkLock) {
+			cleanedNetwork = null;
+		}
+		synchronized (transitScheduleLock) {
+			transitSchedule = null;
+		}
+		synchronized (linkTravelTimesLock) {
+			linkTravelTimes = null;
+		}
+		log.info("Run output of {} released", runDirectory);
+	}
+
+	/**
+	 * output config of the run, the simwrapper config group is always present
+	 */
+	public Config getConfig() {
+		synchronized (configLock) {
+			if (config == null) {
+				// the shared instance is only read by the analyses
+				config = readConfig();
+			}
+			return config;
+		}
+	}
+
+	/**
+	 * separate instance of the output config with the simwrapper config group, for callers that modify the config
+	 */
+	public Config readConfig() {
+		long start = System.currentTimeMillis();
+		Config config = ConfigUtils.loadConfig(ApplicationUtils.matchInput("config.xml", runDirectory).toAbsolutePath().toString());
+		ConfigUtils.addOrGetModule(config, SimWrapperConfigGroup.class);
+		log.info("Config read in {} ms", System.currentTimeMillis() - start);
+		return config;
+	}
+
+	/**
+	 * trips, legs and persons of the run, each table is read on first use
+	 */
+	OutputTables getOutputTables() {
+		return outputTables;
+	}
+
+	/**
+	 * output network of the run
+	 */
+	public Network getNetwork() throws IOException {
+		synchronized (networkLock) {
+			if (network == null) {
+				network = loadNetwork();
+			}
+			return network;
+		}
+	}
+
+	/**
+	 * separate instance of the output network with only the links that are reachable from each other, as created by the {@link NetworkCleaner}
+	 */
+	public Network getCleanedNetwork() throws IOException {
+		synchronized (cleanedNetworkLock) {
+			if (cleanedNetwork == null) {
+				Network network = loadNetwork();
+				new NetworkCleaner().run(network);
+				cleanedNetwork = network;
+			}
+			return cleanedNetwork;
+		}
+	}
+
+	/**
+	 * method reads a new instance of the output network, from the snapshot if it is up to date
+	 */
+	private Network loadNetwork() throws IOException {
+		long start = System.currentTimeMillis();
+		Path networkPath = ApplicationUtils.matchInput("network.xml.gz", runDirectory);
+		long fingerprint = LinkTravelTimeMatrix.fingerprint(networkPath);
+		Path snapshotPath = cacheDirectory.resolve("network.snapshot");
+
+		Network network = readSnapshot(snapshotPath, fingerprint);
+		if (network != null) {
+			log.info("Network read from snapshot {} in {} ms", snapshotPath, System.currentTimeMillis() - start);
+			return network;
+		}
+
+		network = NetworkUtils.readNetwork(networkPath.toString());
+		log.info("Network read from {} in {} ms", networkPath, System.currentTimeMillis() - start);
+		try {
+			writeSnapshot(network, snapshotPath, fingerprint);
+		} catch (IOException | RuntimeException e) {
+			// the snapshot is only a cache
+			log.warn("Network snapshot {} could not be written", snapshotPath, e);
+		}
+		return network;
+	}
+
+	/**
+	 * output transit schedule of the run
+	 */
+	public TransitSchedule getTransitSchedule() {
+		synchronized (transitScheduleLock) {
+			if (transitSchedule == null) {
+				long start = System.currentTimeMillis();
+				Path schedulePath = ApplicationUtils.matchInput("transitSchedule.xml.gz", runDirectory);
+				Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+				new TransitScheduleReader(scenario).readFile(schedulePath.toString());
+				transitSchedule = scenario.getTransitSchedule();
+				log.info("Transit schedule read from {} in {} ms", schedulePath, System.currentTimeMillis() - start);
+			}
+			return transitSchedule;
+		}
+	}
+
+	/**
+	 * time sliced link travel times of the output network derived from the events, loaded from the cache if the events are unchanged
+	 */
+	public TravelTime getLinkTravelTimes() throws IOException {
+		synchronized (linkTravelTimesLock) {
+			if (linkTravelTimes == null) {
+				Network network = getNetwork();
+				Path eventsPath = ApplicationUtils.matchInput("events.xml.gz", runDirectory);
+				Path matrixPath = cacheDirectory.resolve("linkTravelTimes.bin");
+				long fingerprint = LinkTravelTimeMatrix.fingerprint(eventsPath);
+
+				linkTravelTimes = LinkTravelTimeMatrix.load(matrixPath, network, fingerprint);
+				if (linkTravelTimes != null) {
+					log.info("Link travel times loaded from {}", matrixPath);
+				} else {
+					EventsManager manager = EventsUtils.createEventsManager();
+					// the bins of the calculator equal the ones of the matrix, so that the sampled travel times are exact
+					TravelTimeCalculator travelTimeCalculator = new TravelTimeCalculator.Builder(network)
+						.setTimeslice(LinkTravelTimeMatrix.BIN_SIZE)
+						.setMaxTime(LinkTravelTimeMatrix.BINS * LinkTravelTimeMatrix.BIN_SIZE)
+						.build();
+					manager.addHandler(travelTimeCalculator);
+					manager.initProcessing();
+					new MatsimEventsReader(manager).readFile(eventsPath.toString());
+					manager.finishProcessing();
+
+					linkTravelTimes = LinkTravelTimeMatrix.create(network, travelTimeCalculator.getLinkTravelTimes());
+					Files.createDirectories(cacheDirectory);
+					linkTravelTimes.write(matrixPath, network, fingerprint);
+					log.info("Link travel times derived from the events and written to {}", matrixPath);
+				}
+			}
+			return linkTravelTimes;
+		}
+	}
+
+	/**
+	 * method reads the network snapshot - returns null if it does not exist, is outdated or can not be read
+	 */
+	private static Network readSnapshot(Path path, long fingerprint) {
+		if (!Files.exists(path)) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION || in.readLong() != fingerprint) {
+				return null;
+			}
+
+			Network network = NetworkUtils.createNetwork();
+			NetworkFactory factory = network.getFactory();
+			network.setCapacityPeriod(in.readDouble());
+			network.setEffectiveLaneWidth(in.readDouble());
+			readAttributes(in, network.getAttributes());
+
+			int nodes = in.readInt();
+			for (int i = 0; i < nodes; i++) {
+				Id<Node> id = Id.createNodeId(in.readUTF());
+				double x = in.readDouble();
+				double y = in.readDouble();
+				Coord coord = in.readBoolean() ? new Coord(x, y, in.readDouble()) : new Coord(x, y);
+				Node node = factory.createNode(id, coord);
+				readAttributes(in, node.getAttributes());
+				network.addNode(node);
+			}
+
+			int links = in.readInt();
+			for (int i = 0; i < links; i++) {
+				Id<Link> id = Id.createLinkId(in.readUTF());
+				Node from = network.getNodes().get(Id.createNodeId(in.readUTF()));
+				Node to = network.getNodes().get(Id.createNodeId(in.readUTF()));
+				Link link = factory.createLink(id, from, to);
+				link.setLength(in.readDouble());
+				link.setFreespeed(in.readDouble());
+				link.setCapacity(in.readDouble());
+				link.setNumberOfLanes(in.readDouble());
+
+				int modes = in.readInt();
+				Set<String> allowedModes = new HashSet<>(modes);
+				for (int m = 0; m < modes; m++) {
+					allowedModes.add(in.readUTF());
+				}
+				link.setAllowedModes(allowedModes);
+				readAttributes(in, link.getAttributes());
+				network.addLink(link);
+			}
+			return network;
+		} catch (IOException | RuntimeException e) {
+			log.warn("Network snapshot {} could not be read, the network file is read instead", path, e);
+			return null;
+		}
+	}
+
+	/**
+	 * method writes the network snapshot, networks with attributes of other types than strings, numbers and booleans are not cached
+	 */
+	private static void writeSnapshot(Network network, Path path, long fingerprint) throws IOException {
+		if (!hasSimpleAttributes(network.getAttributes())
+			|| !network.getNodes().values().stream().allMatch(node -> hasSimpleAttributes(node.getAttributes()))
+			|| !network.getLinks().values().stream().allMatch(link -> hasSimpleAttributes(link.getAttributes()))) {
+			log.info("Network has attributes which can not be stored in a snapshot, it will be read from the network file next time");
+			return;
+		}
+
+		Files.createDirectories(path.getParent());
+		// the network and the cleaned network may be read at the same time, so every writer has its own temporary file
+		Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(fingerprint);
+			out.writeDouble(network.getCapacityPeriod());
+			out.writeDouble(network.getEffectiveLaneWidth());
+			writeAttributes(out, network.getAttributes());
+
+			out.writeInt(network.getNodes().size());
+			for (Node node : network.getNodes().values()) {
+				out.writeUTF(node.getId().toString());
+				out.writeDouble(node.getCoord().getX());
+				out.writeDouble(node.getCoord().getY());
+				out.writeBoolean(node.getCoord().hasZ());
+				if (node.getCoord().hasZ()) {
+					out.writeDouble(node.getCoord().getZ());
+				}
+				writeAttributes(out, node.getAttributes());
+			}
+
+			out.writeInt(network.getLinks().size());
+			for (Link link : network.getLinks().values()) {
+				out.writeUTF(link.getId().toString());
+				out.writeUTF(link.getFromNode().getId().toString());
+				out.writeUTF(link.getToNode().getId().toString());
+				out.writeDouble(link.getLength());
+				out.writeDouble(link.getFreespeed());
+				out.writeDouble(link.getCapacity());
+				out.writeDouble(link.getNumberOfLanes());
+				out.writeInt(link.getAllowedModes().size());
+				for (String mode : link.getAllowedModes()) {
+					out.writeUTF(mode);
+				}
+				writeAttributes(out, link.getAttributes());
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Network snapshot written to {}", path);
+	}
+
+	private static boolean hasSimpleAttributes(Attributes attributes) {
+		for (Object value : attributes.getAsMap().values()) {
+			if (!(value instanceof String || value instanceof Double || value instanceof Integer || value instanceof Long || value instanceof Boolean)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeAttributes(DataOutputStream out, Attributes attributes) throws IOException {
+		Map<String, Object> values = attributes.getAsMap();
+		out.writeInt(values.size());
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			out.writeUTF(entry.getKey());
+			switch (entry.getValue()) {
+				case String value -> {
+					out.writeByte(STRING);
+					out.writeUTF(value);
+				}
+				case Double value -> {
+					out.writeByte(DOUBLE);
+					out.writeDouble(value);
+				}
+				case Integer value -> {
+					out.writeByte(INTEGER);
+					out.writeInt(value);
+				}
+				case Long value -> {
+					out.writeByte(LONG);
+					out.writeLong(value);
+				}
+				case Boolean value -> {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean(value);
+				}
+				default -> throw new IllegalStateException("Unsupported attribute " + entry.getKey());
+			}
+		}
+	}
+
+	private static void readAttributes(DataInputStream in, Attributes attributes) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String key = in.readUTF();
+			byte type = in.readByte();
+			Object value = switch (type) {
+				case STRING -> in.readUTF();
+				case DOUBLE -> in.readDouble();
+				case INTEGER -> in.readInt();
+				case LONG -> in.readLong();
+				case BOOLEAN -> in.readBoolean();
+				default -> throw new IOException("Unknown attribute type " + type);
+			};
+			attributes.putAttribute(key, value);
+		}
+	}
+}
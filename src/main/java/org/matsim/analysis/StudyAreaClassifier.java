@@ -0,0 +1,160 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.feature.FeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Point in polygon classifier for the study area. All features of the study area shapefile are merged into one (multi) polygon, which is
+ * prepared once. A regular grid over its envelope stores per cell whether the cell lies completely inside, completely outside or on the
+ * boundary of the study area, only points in boundary cells are tested against the prepared geometry. The result equals
+ * {@link Geometry#contains(Geometry)} of the point, i.e. points on the boundary are outside. All methods can be called from multiple threads.
+ */
+final class StudyAreaClassifier {
+
+	private static final Logger log = LogManager.getLogger(StudyAreaClassifier.class);
+
+	/**
+	 * number of grid cells along the longer side of the study area envelope
+	 */
+	private static final int GRID_RESOLUTION = 512;
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BOUNDARY = 2;
+
+	private final GeometryFactory geometryFactory = new GeometryFactory();
+
+	private final PreparedGeometry studyArea;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final byte[] cells;
+
+	private StudyAreaClassifier(Geometry studyAreaGeometry) {
+		Envelope envelope = studyAreaGeometry.getEnvelopeInternal();
+		this.studyArea = PreparedGeometryFactory.prepare(studyAreaGeometry);
+		this.minX = envelope.getMinX();
+		this.minY = envelope.getMinY();
+		this.cellSize = Math.max(Math.max(envelope.getWidth(), envelope.getHeight()) / GRID_RESOLUTION, 1.0);
+		this.columns = (int) Math.floor(envelope.getWidth() / cellSize) + 1;
+		this.rows = (int) Math.floor(envelope.getHeight() / cellSize) + 1;
+		this.cells = new byte[columns * rows];
+
+		IntStream.range(0, cells.length).parallel().forEach(this::classifyCell);
+
+		int boundaryCells = 0;
+		for (byte cell : cells) {
+			if (cell == BOUNDARY) {
+				boundaryCells++;
+			}
+		}
+		log.info("Study area grid with {} x {} cells of {} m created, {} cells on the boundary", columns, rows, cellSize, boundaryCells);
+	}
+
+	/**
+	 * method reads all features of the study area shapefile, returns a classifier without any inside points if the file contains no geometry
+	 */
+	static StudyAreaClassifier read(Path shapefilePath) throws IOException {
+		List<Geometry> geometries = new ArrayList<>();
+
+		FileDataStore store = FileDataStoreFinder.getDataStore(shapefilePath.toFile());
+		try (FeatureIterator<SimpleFeature> features = store.getFeatureSource().getFeatures().features()) {
+			while (features.hasNext()) {
+				Geometry geometry = (Geometry) features.next().getDefaultGeometry();
+				if (geometry != null && !geometry.isEmpty()) {
+					geometries.add(geometry);
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+
+		log.info("Study area read with {} features from {}", geometries.size(), shapefilePath);
+		return create(geometries);
+	}
+
+	/**
+	 * method creates the classifier for the union of the given geometries
+	 */
+	static StudyAreaClassifier create(List<Geometry> geometries) {
+		Geometry union = geometries.size() == 1 ? geometries.get(0) : UnaryUnionOp.union(geometries);
+		if (union == null) {
+			union = new GeometryFactory().createPolygon();
+		}
+		return new StudyAreaClassifier(union);
+	}
+
+	/**
+	 * method checks whether a point is within the study area
+	 */
+	boolean isInside(double x, double y) {
+		if (Double.isNaN(x) || Double.isNaN(y)) {
+			return false;
+		}
+
+		int column = (int) Math.floor((x - minX) / cellSize);
+		int row = (int) Math.floor((y - minY) / cellSize);
+		if (column < 0 || row < 0 || column >= columns || row >= rows) {
+			return false;
+		}
+
+		byte cell = cells[row * columns + column];
+		if (cell != BOUNDARY) {
+			return cell == INSIDE;
+		}
+		return studyArea.contains(geometryFactory.createPoint(new Coordinate(x, y)));
+	}
+
+	/**
+	 * method classifies a batch of points in parallel, the result holds one entry per point in the given order
+	 */
+	boolean[] isInside(double[] xs, double[] ys) {
+		boolean[] inside = new boolean[xs.length];
+		IntStream.range(0, xs.length).parallel().forEach(i -> inside[i] = isInside(xs[i], ys[i]));
+		return inside;
+	}
+
+	/**
+	 * a cell is inside if it does not touch the boundary of the study area at all and outside if it has no point in common with it, so that
+	 * the result for any point of the (closed) cell is known without testing the point
+	 */
+	private void classifyCell(int index) {
+		if (studyArea.getGeometry().isEmpty()) {
+			cells[index] = OUTSIDE;
+			return;
+		}
+
+		double cellMinX = minX + (index % columns) * cellSize;
+		double cellMinY = minY + (index / columns) * cellSize;
+		// the cell is slightly enlarged, so that rounding of the cell index of a point can not move the point out of its cell
+		double margin = cellSize * 1e-6;
+		Geometry cell = geometryFactory.toGeometry(new Envelope(cellMinX - margin, cellMinX + cellSize + margin, cellMinY - margin, cellMinY + cellSize + margin));
+
+		if (studyArea.containsProperly(cell)) {
+			cells[index] = INSIDE;
+		} else if (!studyArea.intersects(cell)) {
+			cells[index] = OUTSIDE;
+		} else {
+			cells[index] = BOUNDARY;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package org.matsim.analysis;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -10,8 +12,8 @@ import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
-import org.matsim.core.router.DijkstraFactory;
 import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.speedy.SpeedyALTFactory;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
@@ -28,6 +30,7 @@ import tech.tablesaw.io.csv.CsvReadOptions;
 import java.io.BufferedReader;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import static tech.tablesaw.aggregate.AggregateFunctions.mean;
 
@@ -43,6 +46,8 @@ import static tech.tablesaw.aggregate.AggregateFunctions.mean;
 )
 public class TravelTimeComparison implements MATSimAppCommand {
 
+	private static final Logger log = LogManager.getLogger(TravelTimeComparison.class);
+
 	@CommandLine.Mixin
 	private InputOptions input = InputOptions.ofCommand(TravelTimeComparison.class);
 
@@ -71,30 +76,54 @@ public class TravelTimeComparison implements MATSimAppCommand {
 		TravelTime tt = collectTravelTimes(network).getLinkTravelTimes();
 		TravelTime fs = new FreeSpeedTravelTime();
 
-		OnlyTimeDependentTravelDisutility util = new OnlyTimeDependentTravelDisutility(tt);
-
-		LeastCostPathCalculator congestedRouter = new DijkstraFactory(false).createPathCalculator(network, util, tt);
-		LeastCostPathCalculator freeflowRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(fs), fs);
+		// the routing graph and the landmarks are built once per factory, every worker gets its own routers
+		// the factories cache them without synchronization, so the routers are created under the lock of their factory
+		SpeedyALTFactory congestedFactory = new SpeedyALTFactory();
+		SpeedyALTFactory freeflowFactory = new SpeedyALTFactory();
+		OnlyTimeDependentTravelDisutility congestedUtil = new OnlyTimeDependentTravelDisutility(tt);
+		OnlyTimeDependentTravelDisutility freeflowUtil = new OnlyTimeDependentTravelDisutility(fs);
+
+		// the rows are read before routing, tablesaw rows are not thread safe
+		int rows = data.rowCount();
+		Node[] fromNodes = new Node[rows];
+		Node[] toNodes = new Node[rows];
+		double[] departureTimes = new double[rows];
+		for (Row row : data) {
+			fromNodes[row.getRowNumber()] = network.getNodes().get(Id.createNodeId(row.getString("from_node")));
+			toNodes[row.getRowNumber()] = network.getNodes().get(Id.createNodeId(row.getString("to_node")));
+			departureTimes[row.getRowNumber()] = row.getInt("hour") * 3600;
+		}
 
+		double[] simulated = new double[rows];
+		double[] freeFlow = new double[rows];
+
+		ParallelWorkers.forEach(Runtime.getRuntime().availableProcessors(), rows, () -> {
+			LeastCostPathCalculator congested;
+			synchronized (congestedFactory) {
+				congested = congestedFactory.createPathCalculator(network, congestedUtil, tt);
+			}
+			LeastCostPathCalculator freeflow;
+			synchronized (freeflowFactory) {
+				freeflow = freeflowFactory.createPathCalculator(network, freeflowUtil, fs);
+			}
+			return new Routers(congested, freeflow);
+		}, (routers, i) -> {
+			simulated[i] = computeSpeed(routers.congested().calcLeastCostPath(fromNodes[i], toNodes[i], departureTimes[i], null, null));
+			freeFlow[i] = computeSpeed(routers.freeflow().calcLeastCostPath(fromNodes[i], toNodes[i], departureTimes[i], null, null));
+		});
+
+		// every thread summarizes its routes in an own sketch, the sketches are merged afterwards
+		Quantiles.Sketch speedRatios = IntStream.range(0, rows).parallel().collect(Quantiles.Sketch::new,
+			(sketch, i) -> sketch.add(simulated[i] / freeFlow[i]), Quantiles.Sketch::merge);
+		log.info("Simulated to free flow speed of {} routes: median {}, p10 {}", speedRatios.count(),
+			speedRatios.median(), speedRatios.quantile(0.1));
+
+		// results are stored by row index, so the output keeps the order of the reference file
 		data.addColumns(
-			DoubleColumn.create("simulated", data.rowCount()),
-			DoubleColumn.create("free_flow", data.rowCount())
+			DoubleColumn.create("simulated", simulated),
+			DoubleColumn.create("free_flow", freeFlow)
 		);
 
-		for (Row row : data) {
-			LeastCostPathCalculator.Path congested = computePath(network, congestedRouter, row);
-			double dist = congested.links.stream().mapToDouble(Link::getLength).sum();
-			double speed = 3.6 * dist / congested.travelTime;
-
-			row.setDouble("simulated", speed);
-
-			LeastCostPathCalculator.Path freeflow = computePath(network, freeflowRouter, row);
-			dist = freeflow.links.stream().mapToDouble(Link::getLength).sum();
-			speed = 3.6 * dist / freeflow.travelTime;
-
-			row.setDouble("free_flow", speed);
-		}
-
 		data.addColumns(
 			data.doubleColumn("simulated").subtract(data.doubleColumn("mean")).setName("bias")
 		);
@@ -118,11 +147,12 @@ public class TravelTimeComparison implements MATSimAppCommand {
 		return 0;
 	}
 
-	private LeastCostPathCalculator.Path computePath(Network network, LeastCostPathCalculator router, Row row) {
-		Node fromNode = network.getNodes().get(Id.createNodeId(row.getString("from_node")));
-		Node toNode = network.getNodes().get(Id.createNodeId(row.getString("to_node")));
-
-		return router.calcLeastCostPath(fromNode, toNode, row.getInt("hour") * 3600, null, null);
+	/**
+	 * average speed of a path in km/h
+	 */
+	private static double computeSpeed(LeastCostPathCalculator.Path path) {
+		double dist = path.links.stream().mapToDouble(Link::getLength).sum();
+		return 3.6 * dist / path.travelTime;
 	}
 
 	private TravelTimeCalculator collectTravelTimes(Network network) {
@@ -144,4 +174,10 @@ public class TravelTimeComparison implements MATSimAppCommand {
 		return travelTimes;
 	}
 
+	/**
+	 * routers of one worker
+	 */
+	private record Routers(LeastCostPathCalculator congested, LeastCostPathCalculator freeflow) {
+	}
+
 }
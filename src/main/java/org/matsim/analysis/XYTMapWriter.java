@@ -0,0 +1,61 @@
+package org.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writer for the SimWrapper XYT maps of the liveability dimensions. The points (time, x, y, value) are written gzipped, which shrinks the
+ * text by a factor of about five and is decompressed by SimWrapper while loading.
+ */
+final class XYTMapWriter implements Closeable {
+
+	private static final Logger log = LogManager.getLogger(XYTMapWriter.class);
+
+	private final Path path;
+	private final Writer writer;
+	private final StringBuilder line = new StringBuilder(64);
+	private long points;
+
+	XYTMapWriter(Path path) throws IOException {
+		this.path = path;
+		this.writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(path), 1 << 16), StandardCharsets.UTF_8));
+		writer.write("# EPSG:25832\n");
+		writer.write("time,x,y,value\n");
+	}
+
+	/**
+	 * method writes one point of the map at time 0
+	 */
+	void add(double x, double y, double value) throws IOException {
+		line.setLength(0);
+		line.append(0.0).append(',').append(x).append(',').append(y).append(',').append(value).append('\n');
+		writer.append(line);
+		points++;
+	}
+
+	/**
+	 * method writes one point without a value at time 0, the value is written as "null"
+	 */
+	void addMissing(double x, double y) throws IOException {
+		line.setLength(0);
+		line.append(0.0).append(',').append(x).append(',').append(y).append(",null\n");
+		writer.append(line);
+		points++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+		log.info("XYT Map written: {} ({} points)", path, points);
+	}
+}
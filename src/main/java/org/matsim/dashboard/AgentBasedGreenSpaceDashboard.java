@@ -38,7 +38,7 @@ public class AgentBasedGreenSpaceDashboard implements Dashboard {
 				viz.description = "The Green Space target dimension is represented by showing the deviation from a limit that the agent is below on all green space indicators. " +
 					"It is therefore the maximum indicator index value of green space distance or utilization per agent, which is displayed on the agent's home location";
 
-				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTAgentBasedGreenSpaceMap.xyt.csv");
+				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTAgentBasedGreenSpaceMap.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -144,7 +144,7 @@ public class AgentBasedGreenSpaceDashboard implements Dashboard {
 				viz.title = "GreenSpace distance index value map";
 				viz.description = "The map shows each agent's deviation value from the limit of 500 m distance from their home displayed at their home location.";
 
-				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTGreenSpaceDistanceMap.xyt.csv");
+				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTGreenSpaceDistanceMap.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -155,7 +155,7 @@ public class AgentBasedGreenSpaceDashboard implements Dashboard {
 				viz.title = "GreenSpace utilization index value map";
 				viz.description = "The map shows each agent's deviation value from the limit of 6 m² per person displayed at their home location";
 
-				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTGreenSpaceUtilizationMap.xyt.csv");
+				viz.file = data.compute(AgentBasedGreenSpaceAnalysis.class, "XYTGreenSpaceUtilizationMap.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -34,7 +34,7 @@ public class AgentBasedPtQualityDashboard implements Dashboard {
 					"It is therefore the maximum indicator index value of pt to car travel time ratio or maximum walk distance to a pt stop per agent, " +
 					"which is displayed on the agent's home location";
 
-				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_agentBasedPtQuality.csv");
+				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_agentBasedPtQuality.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -126,7 +126,7 @@ public class AgentBasedPtQualityDashboard implements Dashboard {
 				viz.title = "Pt To Car Travel Time Ratio Index Value Map";
 				viz.description = "The map shows each agent's deviation value from the limit of 2 for pt to car travel time ratio displayed at their home location.";
 
-				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_PtToCarRatioPerAgent.csv");
+				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_PtToCarRatioPerAgent.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -137,7 +137,7 @@ public class AgentBasedPtQualityDashboard implements Dashboard {
 				viz.title = "Walk to Pt Index Value Map";
 				viz.description = "The map shows each agent's deviation value from the 500 m walk distance limit displayed at their home location";
 
-				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_maxWalkToPTPerAgent.csv");
+				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_maxWalkToPTPerAgent.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -161,7 +161,7 @@ public class AgentBasedPtQualityDashboard implements Dashboard {
 				viz.title = "EcoMobility to Car travel time ratio Index Value Map";
 				viz.description = "The map shows the deviation of trips made by environmentally friendly modes compared to car trips in terms of their travel time, with a limit of 2.";
 
-				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv");
+				viz.file = data.compute(AgentBasedPtQualityAnalysis.class, "ptQuality_XYT_EcoMobilityToCarRatioPerAgent.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -33,7 +33,7 @@ public class AgentBasedTrafficQualityDashboard implements Dashboard {
 				viz.description = "The agent's traffic quality index value represents the deviation from a limit that the agent is below on all traffic quality indicators. " +
 					"It is therefore the maximum indicator index value of longest trip or loss time per agent and is displayed on the agent's home location.";
 
-				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedTrafficQuality.xyt.csv");
+				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedTrafficQuality.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -128,7 +128,7 @@ public class AgentBasedTrafficQualityDashboard implements Dashboard {
 				viz.title = "Longest Trip Index Value Map";
 				viz.description = "The map shows each agent's deviation value from the 30 min for car and 60 min for pt and ride limits displayed at their home location.";
 
-				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedLongestTrip.xyt.csv");
+				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedLongestTrip.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
@@ -139,7 +139,7 @@ public class AgentBasedTrafficQualityDashboard implements Dashboard {
 				viz.title = "Loss Time Index Value Map";
 				viz.description = "The map shows each agent's deviation value from the 20 % loss time limit displayed at their home location.";
 
-				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedLossTime.xyt.csv");
+				viz.file = data.compute(AgentBasedTrafficQualityAnalysis.class, "travelTime_XYT_agentBasedLossTime.xyt.csv.gz");
 				viz.height = 15.0;
 				viz.radius = 15.0;
 				String[] colors = {"#008000", "#6eaa5e", "#93bf85", "#f0a08a", "#d86043", "#c93c20", "#af230c", "#9b88d3", "#7863c4", "#4f3fb4", "#001ca4", "#191350","#0d0a28", "#363636"};
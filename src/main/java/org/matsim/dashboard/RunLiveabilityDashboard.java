@@ -2,12 +2,11 @@ package org.matsim.dashboard;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.analysis.AgentLiveabilityInfoCollection;
-import org.matsim.application.ApplicationUtils;
+import org.matsim.analysis.*;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.config.Config;
-import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.simwrapper.*;
 import picocli.CommandLine;
 
@@ -15,6 +14,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @CommandSpec(
 	group="liveability"
@@ -27,6 +31,24 @@ public class RunLiveabilityDashboard implements MATSimAppCommand {
 	private static Path inputDirectory;
 	@CommandLine.Option(names = "--outputDirectory",description = "Path to the output directory")
 	private static Path outputDirectory;
+	@CommandLine.Option(names = "--analysis-threads", defaultValue = "3", description = "Number of liveability analyses running in parallel")
+	private int analysisThreads;
+	@CommandLine.Option(names = "--recompute-analyses", defaultValue = "false", description = "Run all liveability analyses, even if their outputs are up to date")
+	private boolean recomputeAnalyses;
+	@CommandLine.Option(names = "--analysis-memory-share", description = "Share of the max heap an analysis is expected to need at most, overrides its default, e.g. AgentBasedPtQualityAnalysis=0.4")
+	private Map<String, Double> memoryShares = new HashMap<>();
+	// options of the single analyses, e.g. --pt-profile-routing or --green-space-distance, are forwarded to the analyses declaring them
+	@CommandLine.Unmatched
+	private List<String> analysisArgs = new ArrayList<>();
+
+	// expected maximum heap usage of the analyses, in the order in which their contributions are written
+	private static final Map<Class<? extends MATSimAppCommand>, Double> DEFAULT_MEMORY_SHARES = new LinkedHashMap<>();
+	static {
+		DEFAULT_MEMORY_SHARES.put(AgentBasedTrafficQualityAnalysis.class, 0.3);
+		DEFAULT_MEMORY_SHARES.put(AgentBasedPtQualityAnalysis.class, 0.5);
+		DEFAULT_MEMORY_SHARES.put(AgentBasedGreenSpaceAnalysis.class, 0.2);
+		DEFAULT_MEMORY_SHARES.put(LiveabilitySummaryAnalysis.class, 0.1);
+	}
 
 	// option to insert standard input and output paths for users
 	private static final Path DEFAULT_INPUT_DIRECTORY = Paths.get("Insert your input path here");
@@ -52,32 +74,68 @@ public class RunLiveabilityDashboard implements MATSimAppCommand {
 
 		createLiveabilityDirectory();
 
-		new AgentLiveabilityInfoCollection().execute();
+		// the run output is shared by all analyses of this run and released afterwards
+		try (RunOutputContext context = getRunOutputContext()) {
+
+			new AgentLiveabilityInfoCollection().execute();
+
+			// simwrapper gets its own config instance, the one of the context is shared read-only with the analyses
+			SimWrapper sw = SimWrapper.create(context.readConfig());
+
+			// calling the seperate liveability-dimension dashboards and thereby activating them
+			sw.addDashboard( new AgentBasedTrafficQualityDashboard());
+			sw.addDashboard( new AgentBasedPtQualityDashboard());
+			sw.addDashboard( new AgentBasedGreenSpaceDashboard());
 
-		Path configPath = ApplicationUtils.matchInput("config.xml", getValidOutputDirectory());
-		Config config = ConfigUtils.loadConfig(configPath.toString());
-		SimWrapper sw = SimWrapper.create(config);
+			// todo: implement safety, noise and emissions based on the contribs but with agent-specific output
+			//sw.addDashboard( new AgentBasedNoiseDashboard());
+			//sw.addDashboard( new AgentBasedEmissionsDashboard());
+			//sw.addDashboard( new AgentBasedSafetyDashboard());
 
-		// calling the seperate liveability-dimension dashboards and thereby activating them
-		sw.addDashboard( new AgentBasedTrafficQualityDashboard());
-		sw.addDashboard( new AgentBasedPtQualityDashboard());
-		sw.addDashboard( new AgentBasedGreenSpaceDashboard());
+			sw.addDashboard( new LiveabilitySummaryDashboard());
 
-		// todo: implement safety, noise and emissions based on the contribs but with agent-specific output
-		//sw.addDashboard( new AgentBasedNoiseDashboard());
-		//sw.addDashboard( new AgentBasedEmissionsDashboard());
-		//sw.addDashboard( new AgentBasedSafetyDashboard());
+			sw.generate(getValidOutputDirectory());
 
-		sw.addDashboard( new LiveabilitySummaryDashboard());
+			// the analyses of the liveability dashboards are run by the scheduler instead of sw.run(), independent dimensions run in parallel
+			// analyses whose inputs, options and code did not change since the last run are skipped
+			LiveabilityAnalysisScheduler scheduler = new LiveabilityAnalysisScheduler(analysisThreads)
+				.withManifest(getValidLiveabilityOutputDirectory().resolve(".manifest"), getValidLiveabilityOutputDirectory(), recomputeAnalyses);
+			for (Map.Entry<Class<? extends MATSimAppCommand>, Double> entry : DEFAULT_MEMORY_SHARES.entrySet()) {
+				scheduler.add(entry.getKey(), memoryShares.getOrDefault(entry.getKey().getSimpleName(), entry.getValue()));
+			}
+			for (String analysis : memoryShares.keySet()) {
+				if (DEFAULT_MEMORY_SHARES.keySet().stream().noneMatch(c -> c.getSimpleName().equals(analysis))) {
+					throw new IllegalArgumentException("Memory share given for unknown analysis " + analysis);
+				}
+			}
 
-		sw.generate(getValidOutputDirectory());
-		sw.run(getValidOutputDirectory());
+			List<String> args = new ArrayList<>(List.of("--run-directory", getValidOutputDirectory().toString()));
+			args.addAll(analysisArgs);
+			scheduler.run(args.toArray(String[]::new));
+
+			runDefaultDashboardAnalyses(context.readConfig());
+		}
 
 		log.info("RunLiveabilityDashboard completed.");
 
 		return 0;
 	}
 
+	/**
+	 * runs the analyses of the simwrapper default dashboards, whose dashboards were generated together with the liveability dashboards - a
+	 * simwrapper without the liveability dashboards registers the analyses while generating into a temporary directory
+	 */
+	private static void runDefaultDashboardAnalyses(Config config) throws IOException {
+		SimWrapper defaults = SimWrapper.create(config);
+		Path dashboards = Files.createTempDirectory("simwrapper");
+		try {
+			defaults.generate(dashboards);
+			defaults.run(getValidOutputDirectory());
+		} finally {
+			IOUtils.deleteDirectoryRecursively(dashboards);
+		}
+	}
+
 	/**
 	* deciding whether path given as absolute path or via command line is used for the input path
 	 */
@@ -106,6 +164,14 @@ public class RunLiveabilityDashboard implements MATSimAppCommand {
 	return validLiveabilityOutputDirectory;
 	}
 
+	/**
+	 * shared config, network, transit schedule and travel times of the run output, cached in the liveability directory - the context is
+	 * registered until it is closed, which {@link #call()} does after all analyses of the run
+	 */
+	public static RunOutputContext getRunOutputContext() {
+		return RunOutputContext.of(getValidOutputDirectory(), getValidLiveabilityOutputDirectory().resolve(".cache"));
+	}
+
 	/**
 	 * creates liveability directory
 	 */
@@ -0,0 +1,204 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.optaplanner.core.api.score.director.ScoreDirector;
+import org.optaplanner.core.impl.partitionedsearch.partitioner.SolutionPartitioner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the plan assignment problem into parts that can be solved in parallel.
+ * <p>
+ * Count stations are clustered by the persons whose plans cover them, so that persons are mostly affecting only one cluster. The clusters
+ * are distributed to the parts by the number of persons. Persons affecting more than one part are boundary persons, their selected plans
+ * are kept fixed in all parts and are only optimized by the following global phase. Because the observed counts of all persons outside a
+ * part are included, the score of a part is the score of the whole problem.
+ */
+public final class CountPartitioner implements SolutionPartitioner<PlanAssignmentProblem> {
+
+	private int partCount = -1;
+
+	/**
+	 * Number of parts, by default the number of available threads.
+	 */
+	public void setPartCount(int partCount) {
+		this.partCount = partCount;
+	}
+
+	@Override
+	public List<PlanAssignmentProblem> splitWorkingSolution(ScoreDirector<PlanAssignmentProblem> scoreDirector, Integer runnablePartThreadLimit) {
+
+		int n = partCount;
+		if (n <= 0)
+			n = runnablePartThreadLimit != null ? runnablePartThreadLimit : Runtime.getRuntime().availableProcessors();
+
+		return split(scoreDirector.getWorkingSolution(), n);
+	}
+
+	/**
+	 * Split the problem into at most n parts, parts without any person are omitted.
+	 */
+	static List<PlanAssignmentProblem> split(PlanAssignmentProblem problem, int n) {
+
+		if (n < 1)
+			throw new IllegalArgumentException("Number of parts must be at least 1, but was " + n);
+
+		List<PlanPerson> persons = problem.getPersons();
+		int stations = problem.counts.length / RunCountOptimization.H;
+
+		// Stations affected by any plan of each person
+		int[][] personStations = new int[persons.size()][];
+		int[] weight = new int[stations];
+		for (int i = 0; i < persons.size(); i++) {
+			personStations[i] = stations(persons.get(i), problem.getMaxK());
+			for (int s : personStations[i])
+				weight[s]++;
+		}
+
+		int[] partOfStation = clusterStations(personStations, weight, n);
+
+		List<List<PlanPerson>> parts = new ArrayList<>();
+		for (int p = 0; p < n; p++)
+			parts.add(new ArrayList<>());
+
+		int boundary = 0;
+		for (int i = 0; i < persons.size(); i++) {
+			int p = partOf(personStations[i], partOfStation);
+			if (p >= 0)
+				parts.get(p).add(persons.get(i).copy());
+			else
+				boundary++;
+		}
+
+		// Observed counts of all persons, the ones of each part are subtracted again
+		int[] observed = new int[problem.counts.length];
+		for (PlanPerson person : persons)
+			add(observed, person, 1);
+
+		List<PlanAssignmentProblem> result = new ArrayList<>();
+		for (List<PlanPerson> part : parts) {
+			if (part.isEmpty())
+				continue;
+
+			int[] fixed = observed.clone();
+			for (PlanPerson person : part)
+				add(fixed, person, -1);
+
+			result.add(problem.createPart(part, fixed));
+		}
+
+		RunCountOptimization.log.info("Split {} persons into {} parts of sizes {}, {} boundary persons remain for the global phase",
+			persons.size(), result.size(), result.stream().map(PlanAssignmentProblem::getSize).toList(), boundary);
+
+		return result;
+	}
+
+	/**
+	 * Distinct stations affected by any of the plans of a person.
+	 */
+	private static int[] stations(PlanPerson person, int maxK) {
+		IntSet set = new IntOpenHashSet();
+		for (int k = 0; k < maxK; k++) {
+			for (int idx : person.get(k).keySet())
+				set.add(idx / RunCountOptimization.H);
+		}
+		int[] result = set.toIntArray();
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Part of the persons stations, or -1 if they belong to different parts or there are none.
+	 */
+	private static int partOf(int[] stations, int[] partOfStation) {
+		int p = -1;
+		for (int s : stations) {
+			if (p == -1)
+				p = partOfStation[s];
+			else if (p != partOfStation[s])
+				return -1;
+		}
+		return p;
+	}
+
+	private static void add(int[] observed, PlanPerson person, int sign) {
+		int[] indices = person.selectedIndices();
+		int[] increments = person.selectedIncrements();
+		for (int i = 0; i < indices.length; i++)
+			observed[indices[i]] += sign * increments[i];
+	}
+
+	/**
+	 * Cluster stations that are covered by the same persons and distribute the clusters to n parts. Stations are merged with union find as
+	 * long as a cluster does not exceed the average weight of a part. The clusters are then assigned largest first to the lightest part.
+	 */
+	static int[] clusterStations(int[][] personStations, int[] weight, int n) {
+
+		int stations = weight.length;
+		long total = Arrays.stream(weight).asLongStream().sum();
+		long capacity = Math.max(1, (total + n - 1) / n);
+
+		int[] parent = new int[stations];
+		long[] clusterWeight = new long[stations];
+		for (int s = 0; s < stations; s++) {
+			parent[s] = s;
+			clusterWeight[s] = weight[s];
+		}
+
+		// Persons with few stations first, they connect stations most specifically
+		Integer[] order = new Integer[personStations.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(personStations[a].length, personStations[b].length));
+
+		for (int i : order) {
+			int[] ps = personStations[i];
+			for (int j = 1; j < ps.length; j++) {
+				int a = find(parent, ps[0]);
+				int b = find(parent, ps[j]);
+				if (a != b && clusterWeight[a] + clusterWeight[b] <= capacity) {
+					parent[b] = a;
+					clusterWeight[a] += clusterWeight[b];
+				}
+			}
+		}
+
+		IntArrayList roots = new IntArrayList();
+		for (int s = 0; s < stations; s++) {
+			if (find(parent, s) == s)
+				roots.add(s);
+		}
+		roots.sort((a, b) -> Long.compare(clusterWeight[b], clusterWeight[a]));
+
+		int[] partOfRoot = new int[stations];
+		long[] load = new long[n];
+		for (int root : roots) {
+			int lightest = 0;
+			for (int p = 1; p < n; p++) {
+				if (load[p] < load[lightest])
+					lightest = p;
+			}
+			partOfRoot[root] = lightest;
+			load[lightest] += clusterWeight[root];
+		}
+
+		int[] partOfStation = new int[stations];
+		for (int s = 0; s < stations; s++)
+			partOfStation[s] = partOfRoot[find(parent, s)];
+
+		return partOfStation;
+	}
+
+	private static int find(int[] parent, int s) {
+		while (parent[s] != s) {
+			// path halving
+			parent[s] = parent[parent[s]];
+			s = parent[s];
+		}
+		return s;
+	}
+}
@@ -7,10 +7,13 @@ import org.optaplanner.core.api.domain.solution.cloner.SolutionCloner;
 import org.optaplanner.core.api.domain.valuerange.CountableValueRange;
 import org.optaplanner.core.api.domain.valuerange.ValueRangeFactory;
 import org.optaplanner.core.api.domain.valuerange.ValueRangeProvider;
-import org.optaplanner.core.api.score.buildin.simplebigdecimal.SimpleBigDecimalScore;
+import org.optaplanner.core.api.score.buildin.simplelong.SimpleLongScore;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Planning problem containing all entities and information.
@@ -20,32 +23,67 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 
 	final int[] counts;
 	final ErrorMetric metric;
+	/**
+	 * Scale of the fixed point error, i.e. 10^precision.
+	 */
+	final double scale;
+	/**
+	 * Number of calculated scores, shared by all clones.
+	 */
+	final LongAdder calculations;
+	/**
+	 * Observed counts of persons that are not part of this problem, e.g. of other partitions.
+	 */
+	final int[] fixed;
 	private final int maxK;
 	@PlanningEntityCollectionProperty
 	private final List<PlanPerson> persons;
 	@PlanningScore
-	private SimpleBigDecimalScore score;
+	private SimpleLongScore score;
+
+	/**
+	 * Create a new problem.
+	 *
+	 * @param precision number of decimal places of the error that are considered by the score
+	 */
+	public PlanAssignmentProblem(int maxK, ErrorMetric metric, int precision, List<PlanPerson> persons, int[] counts) {
+		if (precision < 0 || precision > 9)
+			throw new IllegalArgumentException("Precision must be between 0 and 9, but was " + precision);
 
-	public PlanAssignmentProblem(int maxK, ErrorMetric metric, List<PlanPerson> persons, int[] counts) {
 		this.maxK = maxK;
 		this.metric = metric;
+		this.scale = Math.pow(10, precision);
+		this.calculations = new LongAdder();
 		this.persons = persons;
 		this.counts = counts;
-		this.score = SimpleBigDecimalScore.ofUninitialized(-1, BigDecimal.ZERO);
+		this.fixed = new int[counts.length];
+		this.score = SimpleLongScore.ofUninitialized(-1, 0);
 
 		persons.sort(new PlanPerson.DifficultyComparator());
 		Collections.reverse(persons);
 	}
 
 
-	private PlanAssignmentProblem(int maxK, ErrorMetric metric, List<PlanPerson> persons, int[] counts, SimpleBigDecimalScore score) {
+	private PlanAssignmentProblem(int maxK, ErrorMetric metric, double scale, LongAdder calculations, List<PlanPerson> persons, int[] counts,
+								  int[] fixed, SimpleLongScore score) {
 		this.maxK = maxK;
 		this.metric = metric;
+		this.scale = scale;
+		this.calculations = calculations;
 		this.persons = persons;
 		this.counts = counts;
+		this.fixed = fixed;
 		this.score = score;
 	}
 
+	/**
+	 * Create a problem for a subset of the persons. The observed counts of all other persons are kept fixed, so that the error is still
+	 * the one of the whole problem.
+	 */
+	PlanAssignmentProblem createPart(List<PlanPerson> part, int[] fixed) {
+		return new PlanAssignmentProblem(maxK, metric, scale, calculations, part, counts, fixed, score);
+	}
+
 	public int getMaxK() {
 		return maxK;
 	}
@@ -58,14 +96,28 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 		return persons.size();
 	}
 
-	public SimpleBigDecimalScore getScore() {
+	public SimpleLongScore getScore() {
 		return score;
 	}
 
-	public void setScore(SimpleBigDecimalScore score) {
+	public void setScore(SimpleLongScore score) {
 		this.score = score;
 	}
 
+	/**
+	 * Error of the current score, converted back from fixed point.
+	 */
+	public double getError() {
+		return -score.score() / scale;
+	}
+
+	/**
+	 * Number of scores calculated for this problem and its clones so far.
+	 */
+	public long getCalculationCount() {
+		return calculations.sum();
+	}
+
 	@ValueRangeProvider(id = "numPlans")
 	public CountableValueRange<Integer> getPlanRange() {
 		return ValueRangeFactory.createIntValueRange(0, maxK);
@@ -78,8 +130,10 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 
 	/**
 	 * Iterative pre optimization using change plan exp beta logic.
+	 *
+	 * @param threads number of threads, with one thread all persons draw from one random generator in order
 	 */
-	public void iterate(int n, double prob, double beta, double w) {
+	public void iterate(int n, double prob, double beta, double w, int threads) {
 
 		ScoreCalculator calc = new ScoreCalculator();
 		calc.resetWorkingSolution(this);
@@ -89,42 +143,60 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 
 		SplittableRandom rnd = new SplittableRandom(0);
 
+		// With more threads each person has its own generator, so that the result does not depend on the thread scheduling
+		SplittableRandom[] personRnd = threads > 1 ? Stream.generate(rnd::split).limit(persons.size()).toArray(SplittableRandom[]::new) : null;
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
 		double step = prob / n;
 
-		double best = score.score().doubleValue();
+		long best = score.score();
 		int noBest = 0;
 
-		for (int i = 0; i < n; i++) {
+		try {
+			for (int i = 0; i < n; i++) {
 
-			calc.resetWorkingSolution(this);
-			score = calc.calculateScore();
+				calc.resetWorkingSolution(this);
+				score = calc.calculateScore();
 
-			if (i % 100 == 0)
-				RunCountOptimization.log.info("Iteration {} score: {}", i, score);
-
-			if (score.score().doubleValue() >= best) {
-				best = score.score().doubleValue();
-				noBest = 0;
-			} else {
-				noBest++;
-			}
+				if (i % 100 == 0)
+					RunCountOptimization.log.info("Iteration {} error: {}", i, getError());
 
-			if (noBest >= 30) {
-				RunCountOptimization.log.info("Stopping after {} with score: {}", i, score);
-				break;
-			}
-
-			// Best p and beta are not known, so it will be annealed
-			double p = prob - step * i;
-			double b = beta - (beta / n) * i;
+				if (score.score() >= best) {
+					best = score.score();
+					noBest = 0;
+				} else {
+					noBest++;
+				}
 
-			for (PlanPerson person : persons) {
+				if (noBest >= 30) {
+					RunCountOptimization.log.info("Stopping after {} with error: {}", i, getError());
+					break;
+				}
 
-				if (rnd.nextDouble() < p) {
-					person.setScore(calc);
-					person.setK(person.changePlanExpBeta(b, w, rnd));
+				// Best p and beta are not known, so it will be annealed
+				double p = prob - step * i;
+				double b = beta - (beta / n) * i;
+
+				if (pool == null) {
+					for (PlanPerson person : persons)
+						changePlan(person, calc, p, b, w, rnd);
+				} else {
+					// The calculator is only read while plans are changed, so persons are processed in parallel
+					pool.submit(() -> IntStream.range(0, persons.size()).parallel()
+						.forEach(j -> changePlan(persons.get(j), calc, p, b, w, personRnd[j]))
+					).join();
 				}
 			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	private static void changePlan(PlanPerson person, ScoreCalculator calc, double p, double b, double w, SplittableRandom rnd) {
+		if (rnd.nextDouble() < p) {
+			person.setScore(calc);
+			person.setK(person.changePlanExpBeta(b, w, rnd));
 		}
 	}
 
@@ -138,7 +210,8 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 			for (PlanPerson person : original.persons) {
 				personsCopy.add(person.copy());
 			}
-			return new PlanAssignmentProblem(original.maxK, original.metric, personsCopy, original.counts, original.score);
+			return new PlanAssignmentProblem(original.maxK, original.metric, original.scale, original.calculations,
+					personsCopy, original.counts, original.fixed, original.score);
 		}
 	}
 
@@ -42,6 +42,12 @@ public final class PlanPerson {
 	 */
 	private final Int2IntMap[] plans;
 
+	/**
+	 * Affected count indices and increments of each plan, the same as in {@link #plans}, but as primitive arrays for the score calculation.
+	 */
+	private final int[][] indices;
+	private final int[][] increments;
+
 	/**
 	 * Scores of each plan.
 	 */
@@ -57,6 +63,19 @@ public final class PlanPerson {
 		this.offset = offset;
 		this.plans = plans;
 		this.k = 0;
+		this.indices = new int[plans.length][];
+		this.increments = new int[plans.length][];
+
+		for (int i = 0; i < plans.length; i++) {
+			indices[i] = new int[plans[i].size()];
+			increments[i] = new int[plans[i].size()];
+
+			int j = 0;
+			for (Int2IntMap.Entry e : plans[i].int2IntEntrySet()) {
+				indices[i][j] = e.getIntKey();
+				increments[i][j++] = e.getIntValue();
+			}
+		}
 
 		int max = 0;
 		for (Int2IntMap plan : plans) {
@@ -71,11 +90,13 @@ public final class PlanPerson {
 	/**
 	 * Constructor for cloning.
 	 */
-	private PlanPerson(Integer k, Id<Person> id, int offset, Int2IntMap[] plans, double[] scores, int maxImpact) {
+	private PlanPerson(Integer k, Id<Person> id, int offset, Int2IntMap[] plans, int[][] indices, int[][] increments, double[] scores, int maxImpact) {
 		this.k = k;
 		this.id = id;
 		this.offset = offset;
 		this.plans = plans;
+		this.indices = indices;
+		this.increments = increments;
 		this.scores = scores;
 		this.maxImpact = maxImpact;
 	}
@@ -98,6 +119,20 @@ public final class PlanPerson {
 		return plans[k];
 	}
 
+	/**
+	 * Count indices affected by the selected plan.
+	 */
+	int[] selectedIndices() {
+		return indices[k];
+	}
+
+	/**
+	 * Count increments of the selected plan, in the order of {@link #selectedIndices()}.
+	 */
+	int[] selectedIncrements() {
+		return increments[k];
+	}
+
 	public Int2IntMap get(int idx) {
 		return plans[idx];
 	}
@@ -156,7 +191,7 @@ public final class PlanPerson {
 	}
 
 	PlanPerson copy() {
-		return new PlanPerson(k, id, offset, plans, scores, maxImpact);
+		return new PlanPerson(k, id, offset, plans, indices, increments, scores, maxImpact);
 	}
 
 	/**
@@ -24,6 +24,9 @@ import org.matsim.counts.MeasurementLocation;
 import org.matsim.prepare.RunOpenBerlinCalibration;
 import org.optaplanner.core.api.solver.Solver;
 import org.optaplanner.core.api.solver.SolverFactory;
+import org.optaplanner.core.config.partitionedsearch.PartitionedSearchPhaseConfig;
+import org.optaplanner.core.config.phase.PhaseConfig;
+import org.optaplanner.core.config.solver.SolverConfig;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
@@ -35,7 +38,7 @@ public class RunCountOptimization implements MATSimAppCommand {
 
 	static final Logger log = LogManager.getLogger(RunCountOptimization.class);
 
-	private static final int H = 24;
+	static final int H = 24;
 
 	@CommandLine.Option(names = "--input", description = "Path to input plans (Usually experienced plans).", required = true)
 	private Path input;
@@ -64,6 +67,13 @@ public class RunCountOptimization implements MATSimAppCommand {
 	@CommandLine.Option(names = "--k", description = "Number of plans to use from each agent", defaultValue = "5")
 	private int maxK;
 
+	@CommandLine.Option(names = "--score-precision", description = "Number of decimal places of the error considered by the solver", defaultValue = "" + ScoreCalculator.DEFAULT_PRECISION)
+	private int precision;
+
+	@CommandLine.Option(names = "--threads", defaultValue = "1",
+		description = "Number of threads of the warm start and of parts solved in parallel. Only a single thread is reproducible and skips the partitioned search.")
+	private int threads;
+
 	@CommandLine.Mixin
 	private CsvOptions csv;
 
@@ -109,7 +119,7 @@ public class RunCountOptimization implements MATSimAppCommand {
 
 		List<PlanPerson> persons = processPopulation(input, network, linkCounts);
 
-		problem = new PlanAssignmentProblem(maxK, metric, persons, counts);
+		problem = new PlanAssignmentProblem(maxK, metric, precision, persons, counts);
 
 		log.info("Collected {} relevant plans", persons.size());
 
@@ -123,7 +133,7 @@ public class RunCountOptimization implements MATSimAppCommand {
 			case symmetric_percentage_error -> 300;
 		};
 
-		problem.iterate(5000, 0.5, beta, 0.01);
+		problem.iterate(5000, 0.5, beta, 0.01, threads);
 
 		PlanAssignmentProblem solution = solve(problem);
 
@@ -244,21 +254,53 @@ public class RunCountOptimization implements MATSimAppCommand {
 
 		// Loading fails if xerces is on the classpath
 
-		SolverFactory<PlanAssignmentProblem> factory = SolverFactory.createFromXmlResource("solver.xml");
+		SolverConfig config = SolverConfig.createFromXmlResource("solver.xml");
+
+		// The partitioned search is not reproducible and has nothing to split for a single thread
+		if (threads <= 1)
+			config.getPhaseConfigList().removeIf(phase -> phase instanceof PartitionedSearchPhaseConfig);
+
+		for (PhaseConfig<?> phase : config.getPhaseConfigList()) {
+			if (phase instanceof PartitionedSearchPhaseConfig partitioned) {
+				partitioned.setRunnablePartThreadLimit(String.valueOf(threads));
+				partitioned.setSolutionPartitionerCustomProperties(Map.of("partCount", String.valueOf(threads)));
+			}
+		}
+
+		SolverFactory<PlanAssignmentProblem> factory = SolverFactory.create(config);
 
 		Solver<PlanAssignmentProblem> solver = factory.buildSolver();
 
 		AtomicLong ts = new AtomicLong(System.currentTimeMillis());
+		long start = System.currentTimeMillis();
+		long calculations = problem.getCalculationCount();
 
 		solver.addEventListener(event -> {
 
 			// Only log every x seconds
 			if (ts.get() + 60_000 < System.currentTimeMillis()) {
-				log.info("New best solution: {}", event.getNewBestScore());
+				log.info("New best solution: {} ({} moves/s)", event.getNewBestScore(), movesPerSecond(problem, calculations, start));
 				ts.set(System.currentTimeMillis());
 			}
 		});
 
-		return solver.solve(problem);
+		PlanAssignmentProblem solution = solver.solve(problem);
+
+		log.info("Solved with {} moves/s", movesPerSecond(problem, calculations, start));
+
+		// The fixed point error should only deviate by the rounding of each term
+		double error = ScoreCalculator.calculateError(solution);
+		double tolerance = solution.counts.length / solution.scale;
+
+		log.info("Final error: {} (fixed point: {})", error, solution.getError());
+		if (Math.abs(error - solution.getError()) > tolerance)
+			log.warn("Fixed point error deviates by more than {} from the exact error, consider a higher --score-precision", tolerance);
+
+		return solution;
+	}
+
+	private static long movesPerSecond(PlanAssignmentProblem problem, long calculations, long start) {
+		long millis = Math.max(1, System.currentTimeMillis() - start);
+		return (problem.getCalculationCount() - calculations) * 1000 / millis;
 	}
 }
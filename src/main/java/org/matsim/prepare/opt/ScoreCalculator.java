@@ -3,21 +3,28 @@ package org.matsim.prepare.opt;
 
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import org.apache.commons.math3.util.FastMath;
-import org.optaplanner.core.api.score.buildin.simplebigdecimal.SimpleBigDecimalScore;
+import org.optaplanner.core.api.score.buildin.simplelong.SimpleLongScore;
 import org.optaplanner.core.api.score.calculator.IncrementalScoreCalculator;
 
-import java.math.BigDecimal;
-
 /**
  * Score calculator.
+ * <p>
+ * The error is kept as fixed point number, i.e. the error term of each count is rounded to {@link PlanAssignmentProblem#scale} and summed up
+ * as long. Because the rounded term only depends on the count and the observed value, the incremental updates always sum up to the same value
+ * as a full calculation and there is no score corruption.
  */
-public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAssignmentProblem, SimpleBigDecimalScore> {
+public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAssignmentProblem, SimpleLongScore> {
+
+	/**
+	 * Default number of decimal places of the error.
+	 */
+	static final int DEFAULT_PRECISION = 6;
 
 	private static final double C = 15.0;
 	/**
-	 * Error metric.
+	 * Error metric, scaled by {@link #scale}.
 	 */
-	private double error = 0;
+	private long error = 0;
 
 	/**
 	 * Real counts.
@@ -30,50 +37,91 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 
 	private ErrorMetric metric;
 
-	static double diffChange(ErrorMetric err, int count, int old, int update) {
+	private double scale;
 
-		// Floating point arithmetic still leads to score corruption in full assert mode
-		// logarithm can not even be efficiently calculated using big decimal, the corruption needs to be accepted as this point
+	/**
+	 * Number of calculated scores, which is the number of evaluated moves.
+	 */
+	private long calculations = 0;
+
+	private PlanAssignmentProblem problem;
+
+	/**
+	 * Error of one count station and hour.
+	 */
+	static double errorTerm(ErrorMetric err, int count, int observed) {
+
+		// Log score needs to shift counts to avoid log 0
 
 		return switch (err) {
-			case abs_error -> Math.abs(count - update) - Math.abs(count - old);
-			case log_error -> FastMath.abs(FastMath.log((update + C) / (count + C))) - FastMath.abs(FastMath.log((old + C) / (count + C)));
-			case symmetric_percentage_error -> FastMath.abs((double) (update - count) / (update + count + 2 * C) / 2.) -
-					FastMath.abs((double) (old - count) / (old + count + 2 * C) / 2.);
+			case abs_error -> Math.abs(count - observed);
+			case log_error -> FastMath.abs(FastMath.log((observed + C) / (count + C)));
+			case symmetric_percentage_error -> FastMath.abs((double) (observed - count) / (observed + count + 2 * C) / 2.);
 		};
 	}
 
+	static double diffChange(ErrorMetric err, int count, int old, int update) {
+		return errorTerm(err, count, update) - errorTerm(err, count, old);
+	}
 
-	@Override
-	public void resetWorkingSolution(PlanAssignmentProblem problem) {
+	/**
+	 * Error term rounded to fixed point with the given scale.
+	 */
+	static long fixedErrorTerm(ErrorMetric err, double scale, int count, int observed) {
+		return Math.round(errorTerm(err, count, observed) * scale);
+	}
 
-		observed = new int[problem.counts.length];
-		counts = problem.counts;
-		metric = problem.metric;
+	/**
+	 * Calculate the error of the selected plans in full floating point precision, i.e. without any rounding.
+	 */
+	static double calculateError(PlanAssignmentProblem problem) {
+
+		int[] observed = observe(problem);
 
+		double error = 0;
+		for (int j = 0; j < problem.counts.length; j++)
+			error += errorTerm(problem.metric, problem.counts[j], observed[j]);
+
+		return error;
+	}
+
+	private static int[] observe(PlanAssignmentProblem problem) {
+		int[] observed = problem.fixed.clone();
 		for (PlanPerson person : problem) {
-			for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
-				observed[e.getIntKey()] += e.getIntValue();
+			int[] indices = person.selectedIndices();
+			int[] increments = person.selectedIncrements();
+			for (int i = 0; i < indices.length; i++) {
+				observed[indices[i]] += increments[i];
 			}
 		}
+		return observed;
+	}
+
+	@Override
+	public void resetWorkingSolution(PlanAssignmentProblem problem) {
+
+		// Calculations of the previous working solution are reported before they are lost
+		flushCalculations();
+
+		this.problem = problem;
+		counts = problem.counts;
+		metric = problem.metric;
+		scale = problem.scale;
+		observed = observe(problem);
 
 		calcScoreInternal();
 	}
 
 	private void calcScoreInternal() {
 		error = 0;
+		for (int j = 0; j < counts.length; j++)
+			error += fixedErrorTerm(metric, scale, counts[j], observed[j]);
+	}
 
-		// Log score needs to shift counts by 1.0 to avoid log 0
-
-		if (metric == ErrorMetric.abs_error)
-			for (int j = 0; j < counts.length; j++)
-				error += Math.abs(counts[j] - observed[j]);
-		else if (metric == ErrorMetric.log_error)
-			for (int j = 0; j < counts.length; j++)
-				error += FastMath.abs(Math.log((observed[j] + C) / (counts[j] + C)));
-		else if (metric == ErrorMetric.symmetric_percentage_error) {
-			for (int j = 0; j < counts.length; j++)
-				error += FastMath.abs((double) (observed[j] - counts[j]) / (observed[j] + counts[j] + 2 * C) / 2);
+	private void flushCalculations() {
+		if (problem != null && calculations > 0) {
+			problem.calculations.add(calculations);
+			calculations = 0;
 		}
 	}
 
@@ -92,12 +140,15 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		PlanPerson person = (PlanPerson) entity;
 
 		// remove this persons plan from the calculation
-		for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
+		int[] indices = person.selectedIndices();
+		int[] increments = person.selectedIncrements();
+		for (int i = 0; i < indices.length; i++) {
 
-			int old = observed[e.getIntKey()];
-			int update = observed[e.getIntKey()] -= e.getIntValue();
+			int idx = indices[i];
+			int old = observed[idx];
+			int update = observed[idx] -= increments[i];
 
-			error += diffChange(metric, counts[e.getIntKey()], old, update);
+			error += fixedErrorTerm(metric, scale, counts[idx], update) - fixedErrorTerm(metric, scale, counts[idx], old);
 		}
 
 	}
@@ -109,12 +160,15 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		PlanPerson person = (PlanPerson) entity;
 
 		// add this persons contribution to the score
-		for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
+		int[] indices = person.selectedIndices();
+		int[] increments = person.selectedIncrements();
+		for (int i = 0; i < indices.length; i++) {
 
-			int old = observed[e.getIntKey()];
-			int update = observed[e.getIntKey()] += e.getIntValue();
+			int idx = indices[i];
+			int old = observed[idx];
+			int update = observed[idx] += increments[i];
 
-			error += diffChange(metric, counts[e.getIntKey()], old, update);
+			error += fixedErrorTerm(metric, scale, counts[idx], update) - fixedErrorTerm(metric, scale, counts[idx], old);
 		}
 	}
 
@@ -128,8 +182,13 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 	}
 
 	@Override
-	public SimpleBigDecimalScore calculateScore() {
-		return SimpleBigDecimalScore.of(BigDecimal.valueOf(-error));
+	public SimpleLongScore calculateScore() {
+
+		// Reported in batches, the shared counter is updated by all move threads
+		if (++calculations == 10_000)
+			flushCalculations();
+
+		return SimpleLongScore.of(-error);
 	}
 
 	double scoreEntry(Int2IntMap.Entry e) {
@@ -57,6 +57,15 @@ public class OpenBerlinScenario extends MATSimApplication {
 		defaultValue = DefaultPlanStrategiesModule.DefaultSelector.ChangeExpBeta)
 	private String planSelector;
 
+	@CommandLine.Option(names = "--qsim-timing", description = "Write timings per iteration and phase, simulation time samples and thread usage of the QSim", defaultValue = "false")
+	private boolean qsimTiming;
+
+	@CommandLine.Option(names = "--qsim-timing-interval", description = "Simulated seconds between two samples of the QSim timing", defaultValue = "900")
+	private int qsimTimingInterval;
+
+	@CommandLine.Option(names = "--qsim-timing-jmx", description = "Expose the current QSim timing via JMX", defaultValue = "false")
+	private boolean qsimTimingJmx;
+
 	public OpenBerlinScenario() {
 		super(String.format("input/v%s/berlin-v%s.config.xml", VERSION, VERSION));
 	}
@@ -172,6 +181,10 @@ public class OpenBerlinScenario extends MATSimApplication {
 			});
 		}
 		controler.addOverridingModule(new PersonMoneyEventsAnalysisModule());
+
+		if (qsimTiming) {
+			controler.addOverridingModule(new QsimTimingModule(qsimTimingInterval, qsimTimingJmx));
+		}
 	}
 
 	/**
@@ -0,0 +1,80 @@
+package org.matsim.run.scoring;
+
+import org.apache.commons.rng.core.source64.LongProvider;
+
+/**
+ * Counter based random numbers with the Philox-2x64-10 bijection. A key and a 128 bit counter are mapped directly to two well mixed 64 bit
+ * values, so the random numbers of a choice situation can be computed from its seed without creating, seeding and warming up a generator.
+ * The numbers of different counters are independent, also for counters that differ in a single bit.
+ * <p>
+ * The class is immutable and thread safe. {@link #stream(long)} provides a cheap {@link org.apache.commons.rng.UniformRandomProvider} over
+ * consecutive counters for samplers which need more than one value.
+ */
+final class CounterBasedRandom {
+
+	private static final long MULTIPLIER = 0xD2B74407B1CE6E93L;
+	private static final long WEYL = 0x9E3779B97F4A7C15L;
+	private static final int ROUNDS = 10;
+
+	/**
+	 * 2^-53, scales the upper 53 bits of a long to [0, 1)
+	 */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private final long key;
+
+	CounterBasedRandom(long key) {
+		this.key = key;
+	}
+
+	/**
+	 * first value of the block of the counter (counter, index)
+	 */
+	long nextLong(long counter, long index) {
+		long c0 = counter;
+		long c1 = index;
+		long k = key;
+		for (int round = 0; round < ROUNDS; round++) {
+			long hi = Math.unsignedMultiplyHigh(MULTIPLIER, c0);
+			long lo = MULTIPLIER * c0;
+			c0 = hi ^ k ^ c1;
+			c1 = lo;
+			k += WEYL;
+		}
+		return c0;
+	}
+
+	/**
+	 * uniform value in [0, 1) for the counter (counter, index)
+	 */
+	double nextDouble(long counter, long index) {
+		return (nextLong(counter, index) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * generator returning the values of the counters (counter, 0), (counter, 1), ...
+	 */
+	Stream stream(long counter) {
+		return new Stream(this, counter);
+	}
+
+	/**
+	 * Values of consecutive counters, only the position is state. The state can not be saved, which is not needed for samplers.
+	 */
+	static final class Stream extends LongProvider {
+
+		private final CounterBasedRandom random;
+		private final long counter;
+		private long index;
+
+		private Stream(CounterBasedRandom random, long counter) {
+			this.random = random;
+			this.counter = counter;
+		}
+
+		@Override
+		public long next() {
+			return random.nextLong(counter, index++);
+		}
+	}
+}
@@ -4,12 +4,19 @@ import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
 import org.matsim.core.scoring.functions.ModeUtilityParameters;
 
+import java.util.Arrays;
+
 /**
  * Mode utility with separate marginalUtilityOfDistance_m per distance group.
  */
 public class DistanceGroupModeUtilityParameters extends ModeUtilityParameters {
 
-	private final DistanceGroup[] groups;
+	/**
+	 * Lower bounds, constants and slopes of the distance groups as separate arrays, null if there are no groups.
+	 */
+	private final double[] dists;
+	private final double[] constants;
+	private final double[] utilsPerM;
 
 	/**
 	 * Constructor which copies the base params from given modeParams.
@@ -22,7 +29,24 @@ public class DistanceGroupModeUtilityParameters extends ModeUtilityParameters {
 			modeParams.dailyMoneyConstant,
 			modeParams.dailyUtilityConstant + delta.dailyUtilityConstant);
 
-		this.groups = groups;
+		if (groups == null) {
+			this.dists = null;
+			this.constants = null;
+			this.utilsPerM = null;
+			return;
+		}
+
+		this.dists = new double[groups.length];
+		this.constants = new double[groups.length];
+		this.utilsPerM = new double[groups.length];
+		for (int i = 0; i < groups.length; i++) {
+			if (i > 0 && groups[i].dist() < groups[i - 1].dist()) {
+				throw new IllegalArgumentException("Distance groups must be sorted ascending: " + Arrays.toString(groups));
+			}
+			dists[i] = groups[i].dist();
+			constants[i] = groups[i].constant();
+			utilsPerM[i] = groups[i].utilPerM();
+		}
 	}
 
 	/**
@@ -30,18 +54,48 @@ public class DistanceGroupModeUtilityParameters extends ModeUtilityParameters {
 	 */
 	public double calcUtilityDistDelta(double dist) {
 
-		if (groups == null)
+		if (dists == null)
 			return 0;
 
-		DistanceGroup group = groups[0];
-		for (int i = 1; i < groups.length; i++) {
-			if (groups[i].dist() > dist)
-				break;
+		int group = findGroup(dist);
+		return constants[group] + utilsPerM[group] * (dist - dists[group]);
+	}
 
-			group = groups[i];
+	/**
+	 * Calculate the utility for the distances of several legs, e.g. all legs of a plan. The results are identical to
+	 * {@link #calcUtilityDistDelta(double)}.
+	 *
+	 * @param dist   distances of the legs
+	 * @param result utility per leg, at least as long as dist
+	 */
+	public void calcUtilityDistDelta(double[] dist, double[] result) {
+
+		if (result.length < dist.length) {
+			throw new IllegalArgumentException("Result array is too short: " + result.length + " < " + dist.length);
+		}
+
+		if (dists == null) {
+			Arrays.fill(result, 0, dist.length, 0);
+			return;
 		}
 
-		return group.constant() + group.utilPerM() * (dist - group.dist());
+		for (int i = 0; i < dist.length; i++) {
+			int group = findGroup(dist[i]);
+			result[i] = constants[group] + utilsPerM[group] * (dist[i] - dists[group]);
+		}
+	}
+
+	/**
+	 * The group is the last one whose lower bound is not larger than the distance. As the bounds are sorted, this is the number of such bounds
+	 * after the first one, which is counted without branches over the few groups.
+	 */
+	private int findGroup(double dist) {
+		int group = 0;
+		for (int i = 1; i < dists.length; i++) {
+			// negated comparison, so that NaN distances fall into the last group as in a search for the first larger bound
+			group += !(dists[i] > dist) ? 1 : 0;
+		}
+		return group;
 	}
 
 	static final class DeltaBuilder {
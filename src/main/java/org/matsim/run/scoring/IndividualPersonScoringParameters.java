@@ -3,6 +3,7 @@ package org.matsim.run.scoring;
 import com.google.common.base.Joiner;
 import com.google.common.primitives.Longs;
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
@@ -35,6 +36,7 @@ import org.matsim.pt.config.TransitConfigGroup;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * Scoring parameters for {@link AdvancedScoringConfigGroup}. This makes use of the standard scoring and adds persons specific differences.
@@ -42,6 +44,11 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IndividualPersonScoringParameters implements ScoringParametersForPerson {
 
 	private static final Logger log = LogManager.getLogger(IndividualPersonScoringParameters.class);
+	/**
+	 * Maximum ratio of distinct parameter sets to persons for which the table is compiled. With random deltas per person nearly every person
+	 * has an own set, then the lazy cache is used, which only builds the parameters of persons that are scored.
+	 */
+	static final double MAX_SET_RATIO = 0.5;
 	/**
 	 * Header for info file.
 	 */
@@ -55,9 +62,21 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 	 */
 	private final Map<String, Map<String, ActivityUtilityParameters>> actUtils = new ConcurrentHashMap<>();
 	/**
-	 * Cache instances of {@link ScoringParameters} for each person.
+	 * Builders with the base parameters per subpopulation.
+	 */
+	private final Map<String, ScoringParameters.Builder> baseParams = new ConcurrentHashMap<>();
+	/**
+	 * Cache instances of {@link ScoringParameters} for persons which are not part of the compiled table.
 	 */
 	private final IdMap<Person, ScoringParameters> cache;
+	/**
+	 * Distinct parameter sets, shared by all persons with the same parameters.
+	 */
+	private ScoringParameters[] parameterSets = new ScoringParameters[0];
+	/**
+	 * Index in {@link #parameterSets} per person id index, -1 for persons which are not compiled.
+	 */
+	private int[] parameterSetPerPerson = new int[0];
 	/**
 	 * Cache and reuse distance group arrays.
 	 */
@@ -89,7 +108,7 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 		this.transitConfig = scenario.getConfig().transit();
 		this.globalAvgIncome = computeAvgIncome(scenario.getPopulation());
 		this.categories = Category.fromConfigParams(this.scoring.getScoringParameters());
-		this.cache = new IdMap<>(Person.class, scenario.getPopulation().getPersons().size());
+		this.cache = new IdMap<>(Person.class);
 
 		// Create uncorrelated seed from the global seed
 		SplittableRandom rng = new SplittableRandom(scenario.getConfig().global().getRandomSeed());
@@ -99,6 +118,8 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 
 		byte[] seed = Longs.toByteArray(rng.nextLong());
 		this.rnd = ThreadLocal.withInitial(() -> new Context(seed));
+
+		compile(scenario.getPopulation());
 	}
 
 	static DistanceGroup[] calcDistanceGroups(List<Integer> dists, DoubleList distUtils) {
@@ -177,122 +198,263 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 	@Override
 	public ScoringParameters getScoringParameters(Person person) {
 
+		// compiled persons are looked up by their id index
+		int index = person.getId().index();
+		if (index < parameterSetPerPerson.length && parameterSetPerPerson[index] >= 0) {
+			return parameterSets[parameterSetPerPerson[index]];
+		}
+
+		// persons which were not part of the population when the table was compiled, or all persons if no table was compiled
 		return this.cache.computeIfAbsent(person.getId(), id -> {
+			ParameterSet set = computeParameterSet(person);
+			synchronized (header) {
+				addHeader(person);
+			}
+			return buildParameters(set);
+		});
+	}
 
-			String subpopulation = PopulationUtils.getSubpopulation(person);
-			ScoringConfigGroup.ScoringParameterSet scoringParameters = basicScoring.getScoringParameters(subpopulation);
+	/**
+	 * Computes the parameter set of every person of the population in parallel. Persons with equal parameter sets share one
+	 * {@link ScoringParameters} instance, every person is mapped to the int id of its set. The table is only compiled if the sets are shared,
+	 * i.e. there are at most {@link #MAX_SET_RATIO} sets per person, otherwise the parameters are built lazily per person.
+	 */
+	private void compile(Population population) {
 
-			// Activity params can be reused per subpopulation
-			Map<String, ActivityUtilityParameters> activityParams = actUtils.computeIfAbsent(subpopulation, k -> {
-				Map<String, ActivityUtilityParameters> ap = new TreeMap<>();
-				for (ScoringConfigGroup.ActivityParams params : scoringParameters.getActivityParams()) {
-					ActivityUtilityParameters.Builder factory = new ActivityUtilityParameters.Builder(params);
-					ap.put(params.getActivityType(), factory.build());
-				}
+		Runtime runtime = Runtime.getRuntime();
+		long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+		long start = System.currentTimeMillis();
 
-				// The code to add this activity type is always copied between different scoring implementations
-				// it might not be actually needed anymore (because default staging activities are also added elsewhere)
-				// but it's not clear if it's safe to remove it.
-				if (transitConfig.isUseTransit()) {
-					ScoringConfigGroup.ActivityParams transitActivityParams = new ScoringConfigGroup.ActivityParams(PtConstants.TRANSIT_ACTIVITY_TYPE);
-					transitActivityParams.setTypicalDuration(120.0);
-					transitActivityParams.setOpeningTime(0.);
-					transitActivityParams.setClosingTime(0.);
-					ActivityUtilityParameters.Builder modeParamsBuilder = new ActivityUtilityParameters.Builder(transitActivityParams);
-					modeParamsBuilder.setScoreAtAll(false);
-					ap.put(PtConstants.TRANSIT_ACTIVITY_TYPE, modeParamsBuilder.build());
-				}
+		Person[] persons = population.getPersons().values().toArray(new Person[0]);
+		ParameterSet[] setPerPerson = new ParameterSet[persons.length];
+
+		// the random deltas are seeded per person, so the result does not depend on the threads
+		IntStream.range(0, persons.length).parallel().forEach(i -> setPerPerson[i] = computeParameterSet(persons[i]));
+
+		int maxIndex = -1;
+		for (Person person : persons) {
+			maxIndex = Math.max(maxIndex, person.getId().index());
+		}
 
-				return ap;
+		int[] table = new int[maxIndex + 1];
+		Arrays.fill(table, -1);
+
+		Map<ParameterSet, Integer> ids = new HashMap<>();
+		List<ParameterSet> unique = new ArrayList<>();
+		for (int i = 0; i < persons.length; i++) {
+			table[persons[i].getId().index()] = ids.computeIfAbsent(setPerPerson[i], set -> {
+				unique.add(set);
+				return unique.size() - 1;
 			});
+			// the header is filled in the order of the population
+			addHeader(persons[i]);
+		}
 
-			ScoringParameters.Builder builder = new ScoringParameters.Builder(basicScoring,
-				scoringParameters, activityParams, scenario.getConfig().scenario());
-
-			Double personalIncome = PersonUtils.getIncome(person);
-			// Income dependent scoring might be disabled
-			if (!Double.isNaN(globalAvgIncome) && personalIncome != null) {
-				if (personalIncome != 0) {
-					builder.setMarginalUtilityOfMoney(scoringParameters.getMarginalUtilityOfMoney() *
-						Math.pow(globalAvgIncome / personalIncome, this.scoring.incomeExponent));
-				} else {
-					log.warn("You have set income to {} for person {}. This is invalid and gets ignored.Instead, the marginalUtilityOfMoney is derived from the subpopulation's scoring parameters.", personalIncome, person);
-				}
+		double ratio = persons.length == 0 ? 0 : (double) unique.size() / persons.length;
+		if (ratio > MAX_SET_RATIO) {
+			// the sets are computed again when the persons are scored, they are seeded per person and lead to the same parameters
+			log.info("Scoring parameters of {} persons have {} distinct parameter sets ({} sets per person), parameters are built per person",
+				persons.length, unique.size(), ratio);
+			return;
+		}
+
+		ScoringParameters[] sets = new ScoringParameters[unique.size()];
+		IntStream.range(0, sets.length).parallel().forEach(i -> sets[i] = buildParameters(unique.get(i)));
+
+		this.parameterSetPerPerson = table;
+		this.parameterSets = sets;
+
+		long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+		log.info("Compiled scoring parameters of {} persons into {} parameter sets ({} sets per person) in {} ms, heap used {} MB (+{} MB)",
+			persons.length, sets.length, ratio, System.currentTimeMillis() - start, usedAfter / 1024 / 1024, (usedAfter - usedBefore) / 1024 / 1024);
+	}
+
+	/**
+	 * Computes the subpopulation, marginal utility of money and mode deltas of a person. The debug information and the utilDelta attribute
+	 * of the person are updated as well.
+	 */
+	private ParameterSet computeParameterSet(Person person) {
+
+		String subpopulation = PopulationUtils.getSubpopulation(person);
+		ScoringConfigGroup.ScoringParameterSet scoringParameters = basicScoring.getScoringParameters(subpopulation);
+
+		double marginalUtilityOfMoney = Double.NaN;
+		Double personalIncome = PersonUtils.getIncome(person);
+		// Income dependent scoring might be disabled
+		if (!Double.isNaN(globalAvgIncome) && personalIncome != null) {
+			if (personalIncome != 0) {
+				marginalUtilityOfMoney = scoringParameters.getMarginalUtilityOfMoney() *
+					Math.pow(globalAvgIncome / personalIncome, this.scoring.incomeExponent);
+			} else {
+				log.warn("You have set income to {} for person {}. This is invalid and gets ignored.Instead, the marginalUtilityOfMoney is derived from the subpopulation's scoring parameters.", personalIncome, person);
 			}
+		}
 
-			Map<String, DistanceGroupModeUtilityParameters.DeltaBuilder> deltaParams = new HashMap<>();
+		Map<String, DistanceGroupModeUtilityParameters.DeltaBuilder> deltaParams = new TreeMap<>();
 
-			this.rnd.get().setSeed(person);
+		Context ctx = this.rnd.get();
+		ctx.setSeed(person);
 
-			for (AdvancedScoringConfigGroup.ScoringParameters parameter : scoring.getScoringParameters()) {
+		for (AdvancedScoringConfigGroup.ScoringParameters parameter : scoring.getScoringParameters()) {
 
-				if (Category.matchAttributesWithConfig(person.getAttributes(), parameter, categories)) {
-					for (Map.Entry<String, AdvancedScoringConfigGroup.ModeParams> mode : parameter.getModeParams().entrySet()) {
+			if (Category.matchAttributesWithConfig(person.getAttributes(), parameter, categories)) {
+				for (Map.Entry<String, AdvancedScoringConfigGroup.ModeParams> mode : parameter.getModeParams().entrySet()) {
 
-						DistanceGroupModeUtilityParameters.DeltaBuilder b =
-							deltaParams.computeIfAbsent(mode.getKey(), k -> new DistanceGroupModeUtilityParameters.DeltaBuilder());
+					DistanceGroupModeUtilityParameters.DeltaBuilder b =
+						deltaParams.computeIfAbsent(mode.getKey(), k -> new DistanceGroupModeUtilityParameters.DeltaBuilder());
 
-						b.addUtilsDistance(mode.getValue());
-						addDeltaParams(this.rnd.get(), b, mode.getValue());
-					}
+					b.addUtilsDistance(mode.getValue());
+					addDeltaParams(ctx, b, mode.getValue());
 				}
 			}
+		}
+
+		Object2DoubleMap<String> existing = parseUtilDelta(person.getAttributes().getAttribute("utilDelta"));
+
+		List<ModeDelta> modes = new ArrayList<>(deltaParams.size());
+		for (Map.Entry<String, DistanceGroupModeUtilityParameters.DeltaBuilder> mode : deltaParams.entrySet()) {
+			ModeUtilityParameters params = getBaseParameters(subpopulation).getModeParameters(mode.getKey());
+			DistanceGroupModeUtilityParameters.DeltaBuilder delta = mode.getValue();
+
+			// These arrays are re-used if possible
+			DistanceGroup[] groups = getDistanceGroups(delta.getPerDistGroup());
+
+			// This may overwrite the preferences with the one stored
+			loadPreferences(mode.getKey(), delta, person, existing);
+
+			modes.add(new ModeDelta(mode.getKey(), delta.constant, delta.dailyUtilityConstant, delta.getPerDistGroup()));
+
+			// Collect final adjustments information
+			Object2DoubleMap<String> values = info.computeIfAbsent(person.getId(), k -> new Object2DoubleOpenHashMap<>());
+
+			// Write the overall constants, but only if they are different to the base values
+			if (delta.constant != 0) {
+				values.put(mode.getKey() + "_constant", params.constant + delta.constant);
+				existing.put(mode.getKey() + "_constant", delta.constant);
+			}
 
-			Object attr = person.getAttributes().getAttribute("utilDelta");
-			Object2DoubleMap<String> existing = new Object2DoubleOpenHashMap<>();
-			if (attr instanceof String s) {
-				String[] split = s.split("\\|");
-				for (String s1 : split) {
-					String[] split1 = s1.split("=");
-					existing.put(split1[0], Double.parseDouble(split1[1]));
+			if (delta.dailyUtilityConstant != 0) {
+				values.put(mode.getKey() + "_dailyConstant", params.dailyUtilityConstant + delta.dailyUtilityConstant);
+				existing.put(mode.getKey() + "_dailyConstant", delta.dailyUtilityConstant);
+			}
+
+			if (groups != null) {
+				for (DistanceGroup group : groups) {
+					values.put("%s_dist_%.0f".formatted(mode.getKey(), group.dist()), group.utilPerM());
 				}
 			}
+		}
 
-			for (Map.Entry<String, DistanceGroupModeUtilityParameters.DeltaBuilder> mode : deltaParams.entrySet()) {
-				ModeUtilityParameters params = builder.getModeParameters(mode.getKey());
-				DistanceGroupModeUtilityParameters.DeltaBuilder delta = mode.getValue();
+		if (!existing.isEmpty()) {
+			Joiner.MapJoiner mapJoiner = Joiner.on("|").withKeyValueSeparator("=");
+			person.getAttributes().putAttribute("utilDelta", mapJoiner.join(existing));
+		}
 
-				// These arrays are re-used if possible
-				DistanceGroup[] groups = distGroups.computeIfAbsent(delta.getPerDistGroup(), k -> calcDistanceGroups(scoring.distGroups, k));
+		return new ParameterSet(subpopulation, marginalUtilityOfMoney, modes);
+	}
 
-				// This may overwrite the preferences with the one stored
-				loadPreferences(mode.getKey(), delta, person, existing);
+	/**
+	 * Builds the scoring parameters of a parameter set, which may be shared by many persons.
+	 */
+	private ScoringParameters buildParameters(ParameterSet set) {
 
-				DistanceGroupModeUtilityParameters p = new DistanceGroupModeUtilityParameters(params, delta, groups);
-				builder.setModeParameters(mode.getKey(), p);
+		ScoringConfigGroup.ScoringParameterSet scoringParameters = basicScoring.getScoringParameters(set.subpopulation());
 
-				// Collect final adjustments information
-				Object2DoubleMap<String> values = info.computeIfAbsent(person.getId(), k -> new Object2DoubleOpenHashMap<>());
+		ScoringParameters.Builder builder = new ScoringParameters.Builder(basicScoring,
+			scoringParameters, getActivityParams(set.subpopulation()), scenario.getConfig().scenario());
 
-				// Write the overall constants, but only if they are different to the base values
-				if (delta.constant != 0) {
-					values.put(mode.getKey() + "_constant", p.constant);
-					existing.put(mode.getKey() + "_constant", delta.constant);
-				}
+		if (!Double.isNaN(set.marginalUtilityOfMoney())) {
+			builder.setMarginalUtilityOfMoney(set.marginalUtilityOfMoney());
+		}
 
-				if (delta.dailyUtilityConstant != 0) {
-					values.put(mode.getKey() + "_dailyConstant", p.dailyUtilityConstant);
-					existing.put(mode.getKey() + "_dailyConstant", delta.dailyUtilityConstant);
-				}
+		for (ModeDelta mode : set.modes()) {
+			DistanceGroupModeUtilityParameters.DeltaBuilder delta = new DistanceGroupModeUtilityParameters.DeltaBuilder();
+			delta.constant = mode.constant();
+			delta.dailyUtilityConstant = mode.dailyUtilityConstant();
 
-				if (groups != null) {
-					for (DistanceGroup group : groups) {
-						values.put("%s_dist_%.0f".formatted(mode.getKey(), group.dist()), group.utilPerM());
-					}
-				}
+			ModeUtilityParameters params = builder.getModeParameters(mode.mode());
+			builder.setModeParameters(mode.mode(), new DistanceGroupModeUtilityParameters(params, delta, getDistanceGroups(mode.perDistGroup())));
+		}
+
+		return builder.build();
+	}
+
+	private void addHeader(Person person) {
+		Object2DoubleMap<String> values = info.get(person.getId());
+		if (values != null) {
+			header.addAll(values.keySet());
+		}
+	}
+
+	private DistanceGroup[] getDistanceGroups(DoubleList perDistGroup) {
+		// the key is copied, the list of the delta builder is not stored - lists without groups are not cached and computed again
+		DistanceGroup[] groups = distGroups.get(perDistGroup);
+		if (groups == null) {
+			groups = calcDistanceGroups(scoring.distGroups, perDistGroup);
+			if (groups != null) {
+				distGroups.putIfAbsent(new DoubleArrayList(perDistGroup), groups);
+			}
+		}
+		return groups;
+	}
 
-				header.addAll(values.keySet());
+	/**
+	 * Activity params can be reused per subpopulation.
+	 */
+	private Map<String, ActivityUtilityParameters> getActivityParams(String subpopulation) {
+		return actUtils.computeIfAbsent(String.valueOf(subpopulation), k -> {
+			ScoringConfigGroup.ScoringParameterSet scoringParameters = basicScoring.getScoringParameters(subpopulation);
+			Map<String, ActivityUtilityParameters> ap = new TreeMap<>();
+			for (ScoringConfigGroup.ActivityParams params : scoringParameters.getActivityParams()) {
+				ActivityUtilityParameters.Builder factory = new ActivityUtilityParameters.Builder(params);
+				ap.put(params.getActivityType(), factory.build());
 			}
 
-			if (!existing.isEmpty()) {
-				Joiner.MapJoiner mapJoiner = Joiner.on("|").withKeyValueSeparator("=");
-				person.getAttributes().putAttribute("utilDelta", mapJoiner.join(existing));
+			// The code to add this activity type is always copied between different scoring implementations
+			// it might not be actually needed anymore (because default staging activities are also added elsewhere)
+			// but it's not clear if it's safe to remove it.
+			if (transitConfig.isUseTransit()) {
+				ScoringConfigGroup.ActivityParams transitActivityParams = new ScoringConfigGroup.ActivityParams(PtConstants.TRANSIT_ACTIVITY_TYPE);
+				transitActivityParams.setTypicalDuration(120.0);
+				transitActivityParams.setOpeningTime(0.);
+				transitActivityParams.setClosingTime(0.);
+				ActivityUtilityParameters.Builder modeParamsBuilder = new ActivityUtilityParameters.Builder(transitActivityParams);
+				modeParamsBuilder.setScoreAtAll(false);
+				ap.put(PtConstants.TRANSIT_ACTIVITY_TYPE, modeParamsBuilder.build());
 			}
 
-			return builder.build();
+			return ap;
 		});
 	}
 
+	/**
+	 * Builder with the parameters of the subpopulation, only used to read the base mode parameters.
+	 */
+	private ScoringParameters.Builder getBaseParameters(String subpopulation) {
+		return baseParams.computeIfAbsent(String.valueOf(subpopulation), k -> new ScoringParameters.Builder(basicScoring,
+			basicScoring.getScoringParameters(subpopulation), getActivityParams(subpopulation), scenario.getConfig().scenario()));
+	}
+
+	/**
+	 * Parses the utilDelta attribute, which has the form key=value|key=value.
+	 */
+	static Object2DoubleMap<String> parseUtilDelta(Object attr) {
+		Object2DoubleMap<String> existing = new Object2DoubleOpenHashMap<>();
+		if (attr instanceof String s && !s.isEmpty()) {
+			int start = 0;
+			while (start <= s.length()) {
+				int end = s.indexOf('|', start);
+				if (end < 0) {
+					end = s.length();
+				}
+				int separator = s.indexOf('=', start);
+				existing.put(s.substring(start, separator), Double.parseDouble(s.substring(separator + 1, end)));
+				start = end + 1;
+			}
+		}
+		return existing;
+	}
+
 	private void loadPreferences(String mode, DistanceGroupModeUtilityParameters.DeltaBuilder delta, Person person, Object2DoubleMap<String> existing) {
 
 		boolean isRefPerson = person.getAttributes().getAttribute(TripAnalysis.ATTR_REF_ID) != null;
@@ -341,6 +503,20 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 		}
 	}
 
+	/**
+	 * Delta of the mode parameters of a person, the per distance group deltas are compared by value.
+	 */
+	private record ModeDelta(String mode, double constant, double dailyUtilityConstant, DoubleList perDistGroup) {
+	}
+
+	/**
+	 * Inputs of the scoring parameters of a person, persons with equal parameter sets share their {@link ScoringParameters}.
+	 *
+	 * @param marginalUtilityOfMoney income dependent marginal utility of money, NaN for the one of the subpopulation
+	 */
+	private record ParameterSet(String subpopulation, double marginalUtilityOfMoney, List<ModeDelta> modes) {
+	}
+
 	/**
 	 * Thread-local context for random number generation. This makes generation thread-safe and consistent independently of threads and order of persons.
 	 */
@@ -4,7 +4,6 @@ import com.google.inject.Inject;
 import org.apache.commons.math3.exception.OutOfRangeException;
 import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.rng.UniformRandomProvider;
-import org.apache.commons.rng.core.source64.XoRoShiRo128PlusPlus;
 import org.apache.commons.rng.sampling.distribution.ZigguratSampler;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
@@ -26,6 +25,7 @@ public final class PseudoRandomScorer {
 
 	private final PseudoRandomTripError tripScore;
 	private final long seed;
+	private final CounterBasedRandom random;
 	private final double scale;
 	private final AdvancedScoringConfigGroup.VariationType distribution;
 
@@ -42,6 +42,9 @@ public final class PseudoRandomScorer {
 
 		// Create a random seed from the global one
 		this.seed = rnd.nextLong();
+
+		// the seed is the key, the seed of a trip is the counter - no generator has to be created and warmed up per trip
+		this.random = new CounterBasedRandom(seed);
 	}
 
 	/**
@@ -52,17 +55,14 @@ public final class PseudoRandomScorer {
 		if (tripScore == null || scale == 0)
 			return 0;
 
-		long tripSeed = tripScore.getSeed(personId, mainMode, trip);
-
-		// Need to create a new instance because reusing them will also create a lot of intermediate arrays
-		XoRoShiRo128PlusPlus rng = new XoRoShiRo128PlusPlus(seed, tripSeed);
-		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
-			rng.nextLong();
-		}
+		return sample(tripScore.getSeed(personId, mainMode, trip));
+	}
 
+	private double sample(long tripSeed) {
 		return switch (distribution) {
-			case gumbel -> sampleGumbel(rng, 0, scale);
-			case normal -> sampleNormal(rng, 0, scale);
+			// the gumbel error only needs one uniform value, which is computed directly from the seed of the trip
+			case gumbel -> sampleGumbel(random.nextDouble(tripSeed, 0), 0, scale);
+			case normal -> sampleNormal(random.stream(tripSeed), 0, scale);
 			default -> throw new IllegalStateException("Unsupported distribution: " + distribution);
 		};
 	}
@@ -71,12 +71,12 @@ public final class PseudoRandomScorer {
 	/**
 	 * Sample from a Gumbel distribution.
 	 *
+	 * @param v    uniform value in [0, 1]
 	 * @param mu   location parameter
 	 * @param beta scale parameter (must be positive)
 	 */
-	private double sampleGumbel(UniformRandomProvider rng, double mu, double beta) {
+	private double sampleGumbel(double v, double mu, double beta) {
 
-		double v = rng.nextDouble();
 		if (v < 0.0 || v > 1.0) {
 			throw new OutOfRangeException(v, 0.0, 1.0);
 		} else if (v == 0) {
@@ -0,0 +1,91 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisTimeUtilsTest {
+
+	@Test
+	void parseTime() {
+
+		assertParsed("00:00:00", 0);
+		assertParsed("08:15:30", 8 * 3600 + 15 * 60 + 30);
+		assertParsed("8:5:3", 8 * 3600 + 5 * 60 + 3);
+
+		// times after midnight of the simulated day
+		assertParsed("24:00:00", 24 * 3600);
+		assertParsed("27:45:10", 27 * 3600 + 45 * 60 + 10);
+		assertParsed("100:00:01", 100 * 3600 + 1);
+
+		// hh:mm
+		assertParsed("08:15", 8 * 3600 + 15 * 60);
+		assertParsed("25:30", 25 * 3600 + 30 * 60);
+
+		// plain seconds
+		assertParsed("0", 0);
+		assertParsed("42", 42);
+		assertParsed("90000", 90000);
+	}
+
+	@Test
+	void invalidTime() {
+
+		for (String time : new String[]{"", ":", "08:", ":15", "08::15", "08:15:", "1:2:3:4", "8h", " 08:00", "08:00 ", "-5", "8.5", "08:00:00.5"}) {
+			assertThatThrownBy(() -> AnalysisTimeUtils.parseTime(time))
+				.as(time)
+				.isInstanceOf(IllegalArgumentException.class);
+
+			byte[] bytes = time.getBytes(StandardCharsets.US_ASCII);
+			assertThat(AnalysisTimeUtils.parseTime(bytes, 0, bytes.length))
+				.as(time)
+				.isEqualTo(-1);
+		}
+	}
+
+	@Test
+	void formatTime() {
+
+		assertThat(AnalysisTimeUtils.formatTime(0)).isEqualTo("00:00:00");
+		assertThat(AnalysisTimeUtils.formatTime(8 * 3600 + 5 * 60 + 3)).isEqualTo("08:05:03");
+		assertThat(AnalysisTimeUtils.formatTime(27 * 3600 + 45 * 60 + 10)).isEqualTo("27:45:10");
+		assertThat(AnalysisTimeUtils.formatTime(100 * 3600)).isEqualTo("100:00:00");
+
+		assertThat(AnalysisTimeUtils.formatHoursMinutes(25 * 3600 + 30 * 60 + 59)).isEqualTo("25:30");
+
+		// formatting and parsing are inverse
+		for (int seconds = 0; seconds < 30 * 3600; seconds += 997) {
+			assertThat(AnalysisTimeUtils.parseTime(AnalysisTimeUtils.formatTime(seconds))).isEqualTo(seconds);
+		}
+	}
+
+	@Test
+	void intervals() {
+
+		assertThat(AnalysisTimeUtils.getIntervalStart(0, 900)).isEqualTo(0);
+		assertThat(AnalysisTimeUtils.getIntervalStart(899, 900)).isEqualTo(0);
+		assertThat(AnalysisTimeUtils.getIntervalStart(900, 900)).isEqualTo(900);
+		assertThat(AnalysisTimeUtils.getIntervalStart(25 * 3600 + 100, 3600)).isEqualTo(25 * 3600);
+
+		assertThat(AnalysisTimeUtils.getTimeOfDayIntervalStart(8 * 3600 + 20 * 60, 15)).isEqualTo("08:15");
+		// times after midnight belong to the intervals of the early morning
+		assertThat(AnalysisTimeUtils.getTimeOfDayIntervalStart(25 * 3600 + 40 * 60, 30)).isEqualTo("01:30");
+		assertThat(AnalysisTimeUtils.getTimeOfDayIntervalStart(24 * 3600, 60)).isEqualTo("00:00");
+	}
+
+	private static void assertParsed(String time, int seconds) {
+		assertThat(AnalysisTimeUtils.parseTime(time))
+			.as(time)
+			.isEqualTo(seconds);
+
+		// the byte variant parses fields within a larger line
+		byte[] line = ("x;" + time + ";y").getBytes(StandardCharsets.US_ASCII);
+		assertThat(AnalysisTimeUtils.parseTime(line, 2, 2 + time.length()))
+			.as(time)
+			.isEqualTo(seconds);
+	}
+
+}
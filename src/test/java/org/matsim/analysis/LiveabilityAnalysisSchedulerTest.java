@@ -0,0 +1,28 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveabilityAnalysisSchedulerTest {
+
+	@Test
+	void argumentsOfAnalysis() {
+
+		String[] args = {"--run-directory", "output", "--limit", "-2", "--other", "5", "6", "--input=trips.csv", "--flag"};
+
+		// only the options declared by the analysis are passed on, together with their values
+		assertThat(LiveabilityAnalysisScheduler.argumentsOf(LiveabilityManifestTest.TestAnalysis.class, args))
+			.containsExactly("--limit", "-2", "--input=trips.csv");
+
+		assertThat(LiveabilityAnalysisScheduler.argumentsOf(LiveabilityManifestTest.TestAnalysis.class, new String[0]))
+			.isEmpty();
+	}
+
+	@Test
+	void threadBudget() {
+
+		// outside of the scheduler all processors are available
+		assertThat(LiveabilityAnalysisScheduler.threadBudget()).isEqualTo(Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,176 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.application.CommandSpec;
+import org.matsim.application.MATSimAppCommand;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveabilityManifestTest {
+
+	@TempDir
+	private Path dir;
+
+	private Path liveabilityDirectory;
+	private Path input;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		liveabilityDirectory = Files.createDirectories(dir.resolve("analysis/liveability"));
+		input = dir.resolve("input.csv");
+		Files.writeString(input, "a;b\n1;2\n", StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void fingerprintOfOptions() throws IOException {
+
+		String fingerprint = fingerprint("--input", input.toString());
+
+		assertThat(fingerprint("--input", input.toString())).isEqualTo(fingerprint);
+		// the default value
+		assertThat(fingerprint("--input", input.toString(), "--limit", "1")).isEqualTo(fingerprint);
+		assertThat(fingerprint("--input", input.toString(), "--limit", "2")).isNotEqualTo(fingerprint);
+		assertThat(fingerprint("--input", input.toString(), "--limit=-1")).isNotEqualTo(fingerprint);
+
+		// options of other analyses are not part of the fingerprint
+		assertThat(fingerprint("--input", input.toString(), "--other", "5")).isEqualTo(fingerprint);
+	}
+
+	@Test
+	void fingerprintOfInputs() throws IOException {
+
+		String fingerprint = fingerprint("--input", input.toString());
+
+		Files.writeString(input, "a;b\n1;2\n3;4\n", StandardCharsets.UTF_8);
+		String changed = fingerprint("--input", input.toString());
+		assertThat(changed).isNotEqualTo(fingerprint);
+
+		// only the content counts, not the path or the modification time
+		Path copy = Files.writeString(dir.resolve("copy.csv"), "a;b\n1;2\n3;4\n", StandardCharsets.UTF_8);
+		assertThat(fingerprint("--input", copy.toString())).isEqualTo(changed);
+
+		Files.writeString(input, "a;b\n1;2\n", StandardCharsets.UTF_8);
+		assertThat(fingerprint("--input", input.toString())).isEqualTo(fingerprint);
+
+		// files within the liveability directory are covered by the fingerprints of the analyses producing them
+		Path produced = Files.writeString(liveabilityDirectory.resolve("produced.csv"), "x\n", StandardCharsets.UTF_8);
+		String withProduced = fingerprint("--input", produced.toString());
+		Files.writeString(produced, "x\n1\n", StandardCharsets.UTF_8);
+		assertThat(fingerprint("--input", produced.toString())).isEqualTo(withProduced);
+	}
+
+	@Test
+	void modifiedOutput() throws IOException {
+
+		LiveabilityManifest manifest = newManifest();
+		String fingerprint = manifest.fingerprint(TestAnalysis.class, "--input", input.toString());
+
+		assertThat(manifest.isUpToDate(TestAnalysis.class, fingerprint)).isFalse();
+
+		Path output = Files.writeString(liveabilityDirectory.resolve(TestAnalysis.OUTPUT), "value\n1\n", StandardCharsets.UTF_8);
+		manifest.write(TestAnalysis.class, fingerprint, new AgentLiveabilityInfoCollection.Contribution());
+
+		assertThat(newManifest().isUpToDate(TestAnalysis.class, fingerprint)).isTrue();
+		assertThat(newManifest().isUpToDate(TestAnalysis.class, fingerprint("--input", input.toString(), "--limit", "2"))).isFalse();
+
+		Files.writeString(output, "value\n10\n", StandardCharsets.UTF_8);
+		assertThat(newManifest().isUpToDate(TestAnalysis.class, fingerprint)).isFalse();
+
+		// restoring the content is enough, the modification time does not matter
+		Files.writeString(output, "value\n1\n", StandardCharsets.UTF_8);
+		assertThat(newManifest().isUpToDate(TestAnalysis.class, fingerprint)).isTrue();
+
+		Files.delete(output);
+		assertThat(newManifest().isUpToDate(TestAnalysis.class, fingerprint)).isFalse();
+	}
+
+	@Test
+	void contributionRoundTrip() throws IOException {
+
+		Path agents = Files.writeString(liveabilityDirectory.resolve("agents.csv"), "person,home_x,home_y\np1,1,2\np2,3,4\np3,5,6\n",
+			StandardCharsets.UTF_8);
+
+		AgentLiveabilityTable table = AgentLiveabilityTable.read(agents);
+		AgentLiveabilityTable.DoubleColumn metric = table.addColumn("metric");
+		metric.set(0, 1.5);
+		metric.set(2, -3);
+		table.addColumn("empty");
+
+		AgentLiveabilityInfoCollection.Contribution contribution = new AgentLiveabilityInfoCollection.Contribution();
+		contribution.addTable(table);
+		contribution.addSummaryTile("0.25", "Pt \"quality\", overall");
+		contribution.addIndicatorValue("pt", "walk; to stop", "312.5", "500", "-0.38");
+		contribution.addIndicatorValue("pt", "ratio", "", "2.0", "NaN");
+
+		Path columns = dir.resolve("columns.csv");
+		Path rows = dir.resolve("rows.csv");
+		contribution.write(columns, rows);
+
+		// only the added columns are stored, unset values are empty
+		assertThat(Files.readString(columns)).isEqualTo("person,metric,empty\np1,1.5,\np2,,\np3,-3.0,\n");
+
+		Path columnsAgain = dir.resolve("columnsAgain.csv");
+		Path rowsAgain = dir.resolve("rowsAgain.csv");
+		AgentLiveabilityInfoCollection.Contribution.read(columns, rows).write(columnsAgain, rowsAgain);
+
+		assertThat(Files.readString(columnsAgain)).isEqualTo(Files.readString(columns));
+		assertThat(Files.readString(rowsAgain)).isEqualTo(Files.readString(rows));
+	}
+
+	@Test
+	void contributionWithoutColumns() throws IOException {
+
+		AgentLiveabilityInfoCollection.Contribution contribution = new AgentLiveabilityInfoCollection.Contribution();
+		contribution.addSummaryTile("1", "Traffic");
+
+		Path columns = dir.resolve("columns.csv");
+		Path rows = dir.resolve("rows.csv");
+		Files.writeString(columns, "outdated", StandardCharsets.UTF_8);
+		contribution.write(columns, rows);
+
+		assertThat(Files.exists(columns)).isFalse();
+
+		Path rowsAgain = dir.resolve("rowsAgain.csv");
+		AgentLiveabilityInfoCollection.Contribution.read(columns, rows).write(columns, rowsAgain);
+
+		assertThat(Files.exists(columns)).isFalse();
+		assertThat(Files.readString(rowsAgain)).isEqualTo(Files.readString(rows));
+	}
+
+	/**
+	 * fingerprint of a new manifest, so that no fingerprint is cached
+	 */
+	private String fingerprint(String... args) throws IOException {
+		return newManifest().fingerprint(TestAnalysis.class, args);
+	}
+
+	private LiveabilityManifest newManifest() throws IOException {
+		return new LiveabilityManifest(liveabilityDirectory.resolve(".manifest"), liveabilityDirectory);
+	}
+
+	@CommandLine.Command(name = "test-analysis")
+	@CommandSpec(group = "liveability", produces = TestAnalysis.OUTPUT)
+	static final class TestAnalysis implements MATSimAppCommand {
+
+		static final String OUTPUT = "test_output.csv";
+
+		@CommandLine.Option(names = "--input")
+		private Path input;
+
+		@CommandLine.Option(names = "--limit", defaultValue = "1")
+		private double limit;
+
+		@Override
+		public Integer call() {
+			return 0;
+		}
+	}
+}
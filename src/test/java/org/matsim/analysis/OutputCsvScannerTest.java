@@ -0,0 +1,182 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OutputCsvScannerTest {
+
+	@TempDir
+	private Path dir;
+
+	@Test
+	void quotedFields() throws IOException {
+
+		List<List<String>> rows = scanStrings("a;b;c\n\"x;y\";\"say \"\"hi\"\"\";3\n\"\";plain;\"\"\"\"\n");
+
+		assertThat(rows).containsExactly(
+			List.of("x;y", "say \"hi\"", "3"),
+			List.of("", "plain", "\"")
+		);
+	}
+
+	@Test
+	void lineEndings() throws IOException {
+
+		assertThat(scanStrings("a;b\r\n1;2\r\n3;4\r\n"))
+			.containsExactly(List.of("1", "2"), List.of("3", "4"));
+
+		// the last line is read without a line break, empty lines are skipped
+		assertThat(scanStrings("a;b\n1;2\n\n3;4"))
+			.containsExactly(List.of("1", "2"), List.of("3", "4"));
+
+		assertThat(scanStrings("a;b\r\n1;2\r\n3;4"))
+			.containsExactly(List.of("1", "2"), List.of("3", "4"));
+	}
+
+	@Test
+	void getDouble() throws IOException {
+
+		String[] values = {
+			"0", "1", "-1", "+2.5", "3.14159", "-0.0", "0.1", "1.", ".5", "-.5", "000123.4500",
+			"4594000.123456", "9007199254740993", "123456789012345678901234", "0.000000000000000000000001",
+			"1e5", "1.5E-3", "NaN", "-Infinity",
+			"", "-", "+", ".", "-.", "1.2.3", "abc", "1,5", "1-"
+		};
+
+		StringBuilder csv = new StringBuilder("id;value\n");
+		for (int i = 0; i < values.length; i++) {
+			csv.append(i).append(';').append(values[i]).append('\n');
+		}
+
+		List<String> mismatches = new ArrayList<>();
+		scan(csv.toString(), row -> {
+			String value = values[Integer.parseInt(row.getString(0))];
+			String expected = parse(() -> Double.parseDouble(value));
+			String actual = parse(() -> row.getDouble(1));
+			if (!expected.equals(actual)) {
+				mismatches.add(value + ": " + actual + " instead of " + expected);
+			}
+		});
+
+		assertThat(mismatches).isEmpty();
+	}
+
+	@Test
+	void getTime() throws IOException {
+
+		List<Integer> times = new ArrayList<>();
+		List<String> errors = new ArrayList<>();
+		scan("a;b\n1;25:30:15\n2;08:15\n3;42\n4\n5;\n6;1h\n", row -> {
+			try {
+				times.add(row.getTime(1));
+			} catch (IllegalArgumentException e) {
+				errors.add(row.getString(0));
+			}
+		});
+
+		assertThat(times).containsExactly(25 * 3600 + 30 * 60 + 15, 8 * 3600 + 15 * 60, 42);
+		// a missing field is invalid like an empty one
+		assertThat(errors).containsExactly("4", "5", "6");
+	}
+
+	@Test
+	void getSuffixNumber() throws IOException {
+
+		List<Integer> numbers = new ArrayList<>();
+		scan("person;trip_id\n" +
+			"p1;p1_3\n" +
+			"p1;p1_0\n" +
+			"p_1;p_1_17\n" +
+			"p1;p1_03\n" +
+			"p1;p2_3\n" +
+			"p10;p1_3\n" +
+			"p1;p1_\n" +
+			"p1;p1x3\n" +
+			"p1;p1_3a\n" +
+			"p1;p1_99999999999\n" +
+			"p1;\n", row -> numbers.add(row.getSuffixNumber(1, 0)));
+
+		assertThat(numbers).containsExactly(3, 0, 17, -1, -1, -1, -1, -1, -1, -1, -1);
+	}
+
+	@Test
+	void missingFields() throws IOException {
+
+		scan("a;b;c\n1\n", row -> {
+			assertThat(row.size()).isEqualTo(1);
+			assertThat(row.getString(2)).isEmpty();
+			assertThat(row.isEmpty(2)).isTrue();
+			assertThatThrownBy(() -> row.getDouble(2)).isInstanceOf(NumberFormatException.class);
+		});
+	}
+
+	@Test
+	void failingConsumer() throws IOException {
+
+		// much more than the blocks the queue can hold, so that the inflater would block forever
+		Path path = dir.resolve("large.csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("a;b\n");
+			for (int i = 0; i < 3_000_000; i++) {
+				writer.write("1234567;7654321\n");
+			}
+		}
+
+		OutputCsvScanner scanner = new OutputCsvScanner().addConsumer(row -> {
+			throw new IllegalStateException("consumer failed");
+		});
+
+		assertThatThrownBy(() -> scanner.scan(path))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("consumer failed");
+
+		// the inflater is stopped before the scan returns
+		assertThat(Thread.getAllStackTraces().keySet())
+			.noneMatch(thread -> thread.getName().equals("inflate-large.csv"));
+	}
+
+	private List<List<String>> scanStrings(String content) throws IOException {
+		List<List<String>> rows = new ArrayList<>();
+		scan(content, row -> {
+			List<String> fields = new ArrayList<>();
+			for (int i = 0; i < row.size(); i++) {
+				fields.add(row.getString(i));
+			}
+			rows.add(fields);
+		});
+		return rows;
+	}
+
+	private void scan(String content, OutputCsvScanner.RowConsumer consumer) throws IOException {
+		Path path = dir.resolve("table.csv");
+		Files.writeString(path, content, StandardCharsets.UTF_8);
+		new OutputCsvScanner().addConsumer(consumer).scan(path);
+	}
+
+	/**
+	 * bits of the parsed value or the type of the exception, so that -0.0 and NaN are compared exactly
+	 */
+	private static String parse(DoubleParser parser) {
+		try {
+			return Long.toHexString(Double.doubleToRawLongBits(parser.parse()));
+		} catch (NumberFormatException e) {
+			return "NumberFormatException";
+		}
+	}
+
+	private interface DoubleParser {
+		double parse();
+	}
+
+}
@@ -0,0 +1,114 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OutputTablesTest {
+
+	@TempDir
+	private Path dir;
+
+	@Test
+	void tripsAndLegs() throws IOException {
+
+		Path tripsPath = writeGzip("output_trips.csv.gz",
+			"person;trip_number;trip_id;dep_time;trav_time;main_mode;start_x;start_y;end_x;end_y;start_link;end_link;euclidean_distance\r\n" +
+				"p1;1;p1_1;08:00:00;00:20:00;car;4594000.5;5821000.25;4595000;5822000;l1;l2;1414\r\n" +
+				"p1;2;p1_2;25:10:00;00:05:00;pt;4595000;5822000;4594000.5;5821000.25;l2;l1;\r\n" +
+				"\"p;2\";1;\"p;2_01\";07:00;300;walk;-1.5;+2;0;0;l3;l3;0");
+
+		Path legsPath = writeGzip("output_legs.csv.gz",
+			"person;trip_id;dep_time;trav_time;mode;start_x;start_y;end_x;end_y;distance\n" +
+				"p1;p1_1;08:00:00;00:20:00;car;4594000.5;5821000.25;4595000;5822000;1800\n" +
+				"\"p;2\";\"p;2_01\";07:00:00;00:05:00;walk;-1.5;2;0;0;12.5\n");
+
+		OutputTables tables = new OutputTables();
+		OutputTables.Movements trips = tables.trips(tripsPath);
+		OutputTables.Movements legs = tables.legs(legsPath);
+
+		assertThat(trips.size()).isEqualTo(3);
+		assertThat(trips.getPerson(2)).isEqualTo("p;2");
+		assertThat(trips.getTripId(0)).isEqualTo("p1_1");
+		// trip ids not following the person_n convention are kept as they are
+		assertThat(trips.getTripId(2)).isEqualTo("p;2_01");
+
+		assertThat(trips.getDepTime(1)).isEqualTo(25 * 3600 + 10 * 60);
+		assertThat(trips.getDepTime(2)).isEqualTo(7 * 3600);
+		assertThat(trips.getTravTime(2)).isEqualTo(300);
+		assertThat(trips.getStartX(0)).isEqualTo(4594000.5);
+		assertThat(trips.getStartY(2)).isEqualTo(2);
+		assertThat(trips.getStartX(2)).isEqualTo(-1.5);
+		assertThat(trips.getStartLink(1)).isEqualTo("l2");
+		assertThat(trips.getDistance(0)).isEqualTo(1414);
+		assertThat(trips.getDistance(1)).isNaN();
+
+		// the dictionaries are shared between the tables
+		assertThat(legs.getTripKey(0)).isEqualTo(trips.getTripKey(0));
+		assertThat(legs.getTripKey(1)).isEqualTo(trips.getTripKey(2));
+		assertThat(legs.getTripKey(0)).isNotEqualTo(trips.getTripKey(1));
+		assertThat(legs.getModeCode(0)).isEqualTo(trips.getModeCode(0));
+		assertThat(legs.getPersonCode(1)).isEqualTo(trips.getPersonCode(2));
+		assertThat(tables.getModeCode("walk")).isEqualTo(trips.getModeCode(2));
+		assertThat(tables.getMode(tables.getModeCode("pt"))).isEqualTo("pt");
+		assertThat(tables.getModeCode("bike")).isEqualTo(-1);
+		assertThat(tables.getPersonCount()).isEqualTo(2);
+
+		// legs have no link columns
+		assertThat(legs.getStartLink(0)).isNull();
+		assertThat(legs.getDistance(1)).isEqualTo(12.5);
+
+		// tables are only read once
+		assertThat(tables.trips(tripsPath)).isSameAs(trips);
+	}
+
+	@Test
+	void persons() throws IOException {
+
+		Path path = dir.resolve("output_persons.csv");
+		Files.writeString(path, "person;home_x;home_y;income\np1;4594000.5;5821000;1000\np2;;;\np3;x;5821000;\np4;1e3;-0", StandardCharsets.UTF_8);
+
+		OutputTables.Persons persons = new OutputTables().persons(path);
+
+		assertThat(persons.size()).isEqualTo(4);
+		assertThat(persons.hasHome(0)).isTrue();
+		assertThat(persons.getHomeX(0)).isEqualTo(4594000.5);
+		assertThat(persons.hasHome(1)).isFalse();
+		assertThat(persons.hasHome(2)).isFalse();
+		assertThat(persons.getHomeXText(2)).isEqualTo("x");
+		assertThat(persons.getHomeX(3)).isEqualTo(1000);
+		// the text is written unchanged
+		assertThat(persons.getHomeXText(3)).isEqualTo("1e3");
+		assertThat(persons.getHomeYText(3)).isEqualTo("-0");
+	}
+
+	@Test
+	void invalidTime() throws IOException {
+
+		Path path = dir.resolve("output_trips.csv");
+		Files.writeString(path, "person;trip_id;dep_time;trav_time;main_mode;start_x;start_y;end_x;end_y\np1;p1_1;8h;00:20:00;car;0;0;0;0\n",
+			StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> new OutputTables().trips(path))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("8h");
+	}
+
+	private Path writeGzip(String name, String content) throws IOException {
+		Path path = dir.resolve(name);
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return path;
+	}
+
+}
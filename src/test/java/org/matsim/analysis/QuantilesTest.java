@@ -0,0 +1,164 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class QuantilesTest {
+
+	private static final double[] Q = {0, 0.01, 0.1, 0.25, 0.33, 0.5, 0.75, 0.9, 0.99, 1};
+
+	private final SplittableRandom rnd = new SplittableRandom(1234);
+
+	@Test
+	void exact() {
+
+		for (int size : new int[]{1, 2, 3, 10, 17, 100, 1001, 10_000}) {
+			double[] values = new double[size];
+			for (int i = 0; i < size; i++) {
+				// few distinct values to also cover duplicates
+				values[i] = size % 2 == 0 ? rnd.nextGaussian() : rnd.nextInt(20);
+			}
+
+			double[] sorted = values.clone();
+			Arrays.sort(sorted);
+
+			for (double q : Q) {
+				assertThat(Quantiles.quantile(values, q))
+					.as("size %d, q %s", size, q)
+					.isEqualTo(reference(sorted, q));
+
+				double[] copy = values.clone();
+				assertThat(Quantiles.quantileInPlace(copy, size, q))
+					.as("in place, size %d, q %s", size, q)
+					.isEqualTo(reference(sorted, q));
+
+				// only reordered
+				Arrays.sort(copy);
+				assertThat(copy).isEqualTo(sorted);
+			}
+		}
+	}
+
+	@Test
+	void median() {
+
+		assertThat(Quantiles.median(new double[]{5, 1, 3})).isEqualTo(3);
+		assertThat(Quantiles.median(new double[]{4, 1, 3, 2})).isEqualTo(2.5);
+		assertThat(Quantiles.median(new double[]{7})).isEqualTo(7);
+		assertThat(Quantiles.median(new double[]{2, 1})).isEqualTo(1.5);
+		assertThat(Quantiles.median(new double[0])).isNaN();
+
+		// sorted input is the worst case of a naive pivot
+		double[] ascending = new double[10_001];
+		for (int i = 0; i < ascending.length; i++) {
+			ascending[i] = i;
+		}
+		assertThat(Quantiles.median(ascending)).isEqualTo(5000);
+		assertThat(Quantiles.quantileInPlace(ascending, 10_000, 0.5)).isEqualTo(4999.5);
+	}
+
+	@Test
+	void nan() {
+
+		double[] values = {3, Double.NaN, 1, 4, Double.NaN, 2};
+
+		assertThat(Quantiles.median(values)).isEqualTo(2.5);
+		assertThat(Quantiles.quantile(values, 1)).isEqualTo(4);
+		assertThat(values[1]).isNaN();
+
+		double[] copy = values.clone();
+		assertThat(Quantiles.quantileInPlace(copy, copy.length, 0.5)).isEqualTo(2.5);
+		assertThat(Quantiles.quantileInPlace(values.clone(), values.length, 0)).isEqualTo(1);
+		assertThat(Arrays.stream(copy).filter(Double::isNaN).count()).isEqualTo(2);
+
+		assertThat(Quantiles.median(new double[]{Double.NaN})).isNaN();
+		assertThat(Quantiles.quantileInPlace(new double[]{Double.NaN, Double.NaN}, 2, 0.5)).isNaN();
+
+		Quantiles.Sketch sketch = new Quantiles.Sketch();
+		for (double value : values) {
+			sketch.add(value);
+		}
+		assertThat(sketch.count()).isEqualTo(4);
+		assertThat(sketch.quantile(0)).isEqualTo(1);
+		assertThat(sketch.quantile(1)).isEqualTo(4);
+	}
+
+	@Test
+	void sketchMerge() {
+
+		int n = 1_000_000;
+		double[] values = new double[n];
+
+		// every part is filled like by its own thread, with differently distributed values
+		Quantiles.Sketch[] parts = new Quantiles.Sketch[4];
+		for (int p = 0; p < parts.length; p++) {
+			parts[p] = new Quantiles.Sketch();
+		}
+
+		for (int i = 0; i < n; i++) {
+			int p = i % parts.length;
+			double value = p == 0 ? rnd.nextDouble() * 100 : Math.exp(rnd.nextGaussian() + p);
+			values[i] = value;
+			parts[p].add(value);
+		}
+
+		Quantiles.Sketch merged = new Quantiles.Sketch();
+		for (Quantiles.Sketch part : parts) {
+			merged.merge(part);
+		}
+
+		assertThat(merged.count()).isEqualTo(n);
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		assertThat(merged.quantile(0)).isEqualTo(sorted[0]);
+		assertThat(merged.quantile(1)).isEqualTo(sorted[n - 1]);
+
+		// the error is stated as rank error, i.e. the share of values below the estimate compared to q
+		for (double q : Q) {
+			double estimate = merged.quantile(q);
+			double rank = (double) lowerBound(sorted, estimate) / n;
+
+			double tolerance = q < 0.05 || q > 0.95 ? 0.001 : 0.005;
+			assertThat(rank)
+				.as("rank of estimated quantile %s", q)
+				.isCloseTo(q, within(tolerance));
+		}
+	}
+
+	/**
+	 * Quantile with linear interpolation between the order statistics of the sorted values.
+	 */
+	private static double reference(double[] sorted, double q) {
+		double position = q * (sorted.length - 1);
+		int lower = (int) Math.floor(position);
+		if (lower == sorted.length - 1 || position == lower)
+			return sorted[lower];
+
+		double fraction = position - lower;
+		return (1 - fraction) * sorted[lower] + fraction * sorted[lower + 1];
+	}
+
+	/**
+	 * Number of values smaller than the given one.
+	 */
+	private static int lowerBound(double[] sorted, double value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+
+public class CountPartitionerTest {
+
+	private static final int H = RunCountOptimization.H;
+
+	@Test
+	public void split() {
+
+		int[] counts = new int[4 * H];
+		for (int j = 0; j < counts.length; j++)
+			counts[j] = 10;
+
+		List<PlanPerson> persons = new ArrayList<>();
+
+		// stations 0 and 1 as well as 2 and 3 are used together
+		for (int i = 0; i < 10; i++) {
+			persons.add(person("a" + i, 0, 1));
+			persons.add(person("b" + i, 2, 3));
+		}
+
+		// boundary person
+		persons.add(person("c", 1, 2));
+
+		PlanAssignmentProblem problem = new PlanAssignmentProblem(2, ErrorMetric.abs_error, 0, persons, counts);
+
+		List<PlanAssignmentProblem> parts = CountPartitioner.split(problem, 2);
+
+		assertThat(parts).hasSize(2);
+		assertThat(parts.stream().mapToInt(PlanAssignmentProblem::getSize).sum())
+				.isEqualTo(20);
+
+		for (PlanAssignmentProblem part : parts) {
+			String prefix = part.getPersons().getFirst().getId().toString().substring(0, 1);
+			assertThat(part.getPersons())
+					.allMatch(p -> p.getId().toString().startsWith(prefix));
+
+			// Score of each part is the one of the whole problem
+			assertThat(ScoreCalculator.calculateError(part))
+					.isCloseTo(ScoreCalculator.calculateError(problem), within(1e-9));
+		}
+	}
+
+	@Test
+	public void single() {
+
+		int[] counts = new int[2 * H];
+		List<PlanPerson> persons = new ArrayList<>();
+		persons.add(person("a", 0, 1));
+		persons.add(person("b", 1, 0));
+
+		PlanAssignmentProblem problem = new PlanAssignmentProblem(2, ErrorMetric.abs_error, 0, persons, counts);
+
+		assertThat(CountPartitioner.split(problem, 1))
+				.hasSize(1)
+				.allMatch(p -> p.getSize() == 2);
+	}
+
+	/**
+	 * Person with one plan using the first and one plan using the second station.
+	 */
+	private static PlanPerson person(String id, int first, int second) {
+
+		Int2IntMap[] plans = new Int2IntMap[2];
+		plans[0] = new Int2IntOpenHashMap();
+		plans[0].put(first * H + 8, 4);
+		plans[1] = new Int2IntOpenHashMap();
+		plans[1].put(second * H + 17, 4);
+
+		return new PlanPerson(Id.createPersonId(id), 0, plans);
+	}
+
+}
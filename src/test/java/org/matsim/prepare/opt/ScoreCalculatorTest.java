@@ -1,9 +1,17 @@
 package org.matsim.prepare.opt;
 
 
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 
 
 public class ScoreCalculatorTest {
@@ -49,4 +57,55 @@ public class ScoreCalculatorTest {
 
 	}
 
+	@Test
+	public void fixedPoint() {
+
+		for (ErrorMetric e : ErrorMetric.values()) {
+
+			PlanAssignmentProblem problem = createProblem(e);
+			ScoreCalculator calc = new ScoreCalculator();
+			calc.resetWorkingSolution(problem);
+
+			SplittableRandom rnd = new SplittableRandom(0);
+			for (int i = 0; i < 10_000; i++) {
+				PlanPerson person = problem.getPersons().get(rnd.nextInt(problem.getSize()));
+				calc.beforeVariableChanged(person, "k");
+				person.setK(rnd.nextInt(problem.getMaxK()));
+				calc.afterVariableChanged(person, "k");
+			}
+
+			long incremental = calc.calculateScore().score();
+
+			// Incremental updates must not lead to score corruption
+			calc.resetWorkingSolution(problem);
+			assertThat(calc.calculateScore().score()).isEqualTo(incremental);
+
+			// Each term is rounded by at most half a unit
+			assertThat(-incremental / problem.scale)
+					.isCloseTo(ScoreCalculator.calculateError(problem), within(problem.counts.length * 0.5 / problem.scale));
+		}
+	}
+
+	private static PlanAssignmentProblem createProblem(ErrorMetric e) {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		int[] counts = new int[100];
+		for (int j = 0; j < counts.length; j++)
+			counts[j] = rnd.nextInt(200);
+
+		List<PlanPerson> persons = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Int2IntMap[] plans = new Int2IntMap[3];
+			for (int k = 0; k < plans.length; k++) {
+				plans[k] = new Int2IntOpenHashMap();
+				for (int n = 0; n < 5; n++)
+					plans[k].mergeInt(rnd.nextInt(counts.length), 4, Integer::sum);
+			}
+			persons.add(new PlanPerson(Id.createPersonId(i), 0, plans));
+		}
+
+		return new PlanAssignmentProblem(3, e, ScoreCalculator.DEFAULT_PRECISION, persons, counts);
+	}
+
 }
@@ -0,0 +1,86 @@
+package org.matsim.run.scoring;
+
+import org.apache.commons.rng.sampling.distribution.ZigguratSampler;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class CounterBasedRandomTest {
+
+	private static final int N = 1_000_000;
+
+	private final CounterBasedRandom random = new CounterBasedRandom(1234);
+
+	@Test
+	void deterministic() {
+
+		CounterBasedRandom other = new CounterBasedRandom(1234);
+
+		for (long i = 0; i < 1000; i++) {
+			assertThat(random.nextLong(i, 0)).isEqualTo(other.nextLong(i, 0));
+		}
+
+		assertThat(random.nextLong(1, 0)).isNotEqualTo(new CounterBasedRandom(1235).nextLong(1, 0));
+		assertThat(random.nextLong(1, 0)).isNotEqualTo(random.nextLong(1, 1));
+	}
+
+	@Test
+	void uniform() {
+
+		double sum = 0;
+		double sumSquares = 0;
+		int[] buckets = new int[100];
+		for (int i = 0; i < N; i++) {
+			// consecutive counters like the seeds of similar trips
+			double v = random.nextDouble(i, 0);
+			assertThat(v).isGreaterThanOrEqualTo(0).isLessThan(1);
+			sum += v;
+			sumSquares += v * v;
+			buckets[(int) (v * buckets.length)]++;
+		}
+
+		double mean = sum / N;
+		assertThat(mean).isCloseTo(0.5, within(0.002));
+		assertThat(sumSquares / N - mean * mean).isCloseTo(1.0 / 12, within(0.001));
+
+		// 99 degrees of freedom, the 0.999 quantile is about 149
+		double expected = (double) N / buckets.length;
+		double chiSquare = 0;
+		for (int bucket : buckets) {
+			chiSquare += (bucket - expected) * (bucket - expected) / expected;
+		}
+		assertThat(chiSquare).isLessThan(149);
+	}
+
+	@Test
+	void avalanche() {
+
+		// flipping one bit of the counter flips half of the output bits
+		long flipped = 0;
+		int n = 100_000;
+		for (int i = 0; i < n; i++) {
+			long counter = i * 0x9E3779B97F4A7C15L;
+			flipped += Long.bitCount(random.nextLong(counter, 0) ^ random.nextLong(counter ^ (1L << (i % 64)), 0));
+		}
+
+		assertThat((double) flipped / n).isCloseTo(32, within(0.1));
+	}
+
+	@Test
+	void normal() {
+
+		double sum = 0;
+		double sumSquares = 0;
+		int n = 200_000;
+		for (int i = 0; i < n; i++) {
+			double v = ZigguratSampler.NormalizedGaussian.of(random.stream(i)).sample();
+			sum += v;
+			sumSquares += v * v;
+		}
+
+		double mean = sum / n;
+		assertThat(mean).isCloseTo(0, within(0.01));
+		assertThat(sumSquares / n - mean * mean).isCloseTo(1, within(0.01));
+	}
+}
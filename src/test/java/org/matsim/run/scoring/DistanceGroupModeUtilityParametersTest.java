@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import org.matsim.core.scoring.functions.ModeUtilityParameters;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -85,4 +86,37 @@ class DistanceGroupModeUtilityParametersTest {
 		assertThat(m.calcUtilityDistDelta(2000)).isEqualTo(-2);
 
 	}
+
+	@Test
+	void batch() {
+
+		List<Integer> dists = List.of(1000, 5000, 10000);
+		DistanceGroup[] groups = IndividualPersonScoringParameters.calcDistanceGroups(dists, DoubleList.of(-1d, -0.5d, -0.1d));
+		DistanceGroupModeUtilityParameters m = params(base, dists, DoubleList.of(-1d, -0.5d, -0.1d));
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		double[] legDists = new double[1000];
+		for (int i = 0; i < legDists.length; i++) {
+			legDists[i] = i % 10 == 0 ? dists.get(i % dists.size()) : rnd.nextDouble(0, 30000);
+		}
+
+		double[] result = new double[legDists.length];
+		m.calcUtilityDistDelta(legDists, result);
+
+		for (int i = 0; i < legDists.length; i++) {
+
+			// search over the groups as before the arrays were introduced
+			DistanceGroup group = groups[0];
+			for (int j = 1; j < groups.length; j++) {
+				if (groups[j].dist() > legDists[i])
+					break;
+
+				group = groups[j];
+			}
+
+			double expected = group.constant() + group.utilPerM() * (legDists[i] - group.dist());
+			assertThat(result[i]).isEqualTo(expected);
+			assertThat(m.calcUtilityDistDelta(legDists[i])).isEqualTo(expected);
+		}
+	}
 }